@@ -0,0 +1,134 @@
+package driver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.chrome.ChromeOptions;
+
+import configuration.DriverConfiguration;
+import helper.FileHelper;
+
+/**
+ * Benchmarks of the {@link Driver} setup that every session pays for: extracting the
+ * chromedriver into the {@link DriverCache} (cold and already cached) and building the
+ * {@link ChromeOptions} from the {@link DriverConfiguration}.
+ *
+ * In case no chromedriver is bundled in resources/drivers a random file of the same size
+ * is extracted instead, the cost is the hashing and copying and not the content.
+ *
+ * @author karlomijaljevic
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DriverBenchmark
+{
+	private static final int SYNTHETIC_DRIVER_SIZE = 15 * 1024 * 1024;
+
+	private Path workDirectory;
+	private URL driverResource;
+	private String driverName;
+	private DriverCache warmCache;
+	private DriverCache coldCache;
+
+	@Setup(Level.Trial)
+	public void setupTrial() throws IOException
+	{
+		workDirectory = Files.createTempDirectory("driver-benchmark-");
+		driverName = "chromedriver";
+		driverResource = getClass().getClassLoader().getResource("drivers/" + driverName);
+
+		if (driverResource == null)
+		{
+			Path syntheticDriver = workDirectory.resolve(driverName);
+			byte[] buffer = new byte[64 * 1024];
+			Random random = new Random(42);
+
+			try (OutputStream out = Files.newOutputStream(syntheticDriver))
+			{
+				for (int written = 0; written < SYNTHETIC_DRIVER_SIZE; written += buffer.length)
+				{
+					random.nextBytes(buffer);
+					out.write(buffer);
+				}
+			}
+
+			driverResource = syntheticDriver.toUri().toURL();
+		}
+
+		warmCache = new DriverCache(workDirectory.resolve("warm"));
+		warmCache.resolve(driverResource, driverName);
+
+		DriverConfiguration.update(configuration -> {
+			configuration.getWebDriverOptions().put("--headless", null);
+			configuration.getWebDriverOptions().put("--window-size", "1920,1200");
+			configuration.getWebDriverOptions().put("--incognito", null);
+		});
+	}
+
+	@Setup(Level.Invocation)
+	public void setupInvocation() throws IOException
+	{
+		coldCache = new DriverCache(Files.createTempDirectory(workDirectory, "cold-"));
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDownInvocation()
+	{
+		FileHelper.deleteRecursivelyAsync(coldCache.getCacheRoot()).join();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDownTrial()
+	{
+		FileHelper.deleteRecursivelyAsync(workDirectory).join();
+	}
+
+	/**
+	 * First run on a machine, the driver is hashed and copied into the cache.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Path extractDriverCold() throws IOException
+	{
+		return coldCache.resolve(driverResource, driverName);
+	}
+
+	/**
+	 * Every later run, the driver is only hashed.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Path resolveDriverCached() throws IOException
+	{
+		return warmCache.resolve(driverResource, driverName);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public ChromeOptions buildChromeOptions()
+	{
+		return Driver.getInstance().configureChromeOptions(DriverConfiguration.current());
+	}
+}
@@ -0,0 +1,84 @@
+package driver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.WebDriverException;
+
+import configuration.DriverConfiguration;
+import helper.FileHelper;
+
+/**
+ * Benchmark of {@link Driver#createSession()} against a local headless Chrome, i.e. what a
+ * test pays when the {@link DriverPool} has no idle session. Every invocation launches and
+ * quits a browser so it runs in single shot mode.
+ *
+ * @implNote
+ * This benchmark needs Chrome and a chromedriver in resources/drivers, without them it
+ * fails on its own and the other benchmarks still run.
+ *
+ * @author karlomijaljevic
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+public class SessionBenchmark
+{
+	private DriverSession session;
+
+	@Setup(Level.Trial)
+	public void setupTrial()
+	{
+		DriverConfiguration.update(configuration -> {
+			configuration.getWebDriverOptions().put("--headless", null);
+			configuration.getWebDriverOptions().put("--window-size", "1920,1200");
+			configuration.getWebDriverOptions().put("--incognito", null);
+		});
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDownInvocation()
+	{
+		if (session != null)
+		{
+			try
+			{
+				session.getWebDriver().quit();
+			}
+			catch (WebDriverException wde)
+			{
+				wde.printStackTrace();
+			}
+
+			FileHelper.deleteRecursivelyAsync(session.getDownloadDirectory());
+			session = null;
+		}
+	}
+
+	@Benchmark
+	public DriverSession createSession()
+	{
+		session = Driver.getInstance().createSession();
+
+		if (session == null)
+		{
+			throw new IllegalStateException("No chromedriver found in resources/drivers.");
+		}
+
+		return session;
+	}
+}
@@ -0,0 +1,137 @@
+package helper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the {@link FileHelper} methods tests call after a download: reading a whole
+ * PDF with {@link FileHelper#readPdfFile(String)} and scanning the download directory for the
+ * expected file. The PDFs and the directory contents are generated once per trial.
+ *
+ * @author karlomijaljevic
+ */
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FileHelperBenchmark
+{
+	private static final int LINES_PER_PAGE = 40;
+
+	@State(Scope.Benchmark)
+	public static class PdfState
+	{
+		@Param({ "1", "50", "500" })
+		public int pages;
+
+		private Path pdfFile;
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException
+		{
+			pdfFile = Files.createTempFile("file-helper-benchmark-", ".pdf");
+
+			try (PDDocument document = new PDDocument())
+			{
+				for (int page = 1; page <= pages; page++)
+				{
+					PDPage pdPage = new PDPage();
+					document.addPage(pdPage);
+
+					try (PDPageContentStream content = new PDPageContentStream(document, pdPage))
+					{
+						content.beginText();
+						content.setFont(PDType1Font.HELVETICA, 10);
+						content.setLeading(14);
+						content.newLineAtOffset(40, 750);
+
+						for (int line = 1; line <= LINES_PER_PAGE; line++)
+						{
+							content.showText("Page " + page + " line " + line + " of the generated benchmark document.");
+							content.newLine();
+						}
+
+						content.endText();
+					}
+				}
+
+				document.save(pdfFile.toFile());
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException
+		{
+			Files.deleteIfExists(pdfFile);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class DirectoryState
+	{
+		@Param({ "10", "1000" })
+		public int files;
+
+		private Path downloadDirectory;
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException
+		{
+			downloadDirectory = Files.createTempDirectory("file-helper-benchmark-");
+
+			for (int i = 0; i < files; i++)
+			{
+				try (OutputStream out = Files.newOutputStream(downloadDirectory.resolve("other-" + i + ".bin")))
+				{
+					out.write(new byte[1024]);
+				}
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown()
+		{
+			FileHelper.deleteRecursivelyAsync(downloadDirectory).join();
+		}
+	}
+
+	@Benchmark
+	public String readPdfFile(PdfState state) throws IOException
+	{
+		return FileHelper.readPdfFile(state.pdfFile.toString());
+	}
+
+	/**
+	 * One pass of the {@link DownloadWatcher} without waiting: registering the watch and
+	 * checking for a file that is not there yet, i.e. the overhead on top of the download.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public boolean scanDownloadDirectory(DirectoryState state) throws InterruptedException
+	{
+		return new DownloadWatcher(state.downloadDirectory).await(Duration.ZERO, "export.csv");
+	}
+}
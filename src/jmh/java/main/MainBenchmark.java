@@ -0,0 +1,46 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import configuration.DriverConfiguration;
+
+/**
+ * Benchmark of the command line parsing in {@link Main#setConfigurations(String[])} with a
+ * typical set of chromedriver and framework flags.
+ *
+ * @author karlomijaljevic
+ */
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MainBenchmark
+{
+	private static final String[] ARGS = {
+			"--headless",
+			"--window-size=1920,1200",
+			"--disable-gpu",
+			"--lang=en-US",
+			"--pool-size=4",
+			"--pool-idle-timeout=60",
+			"--threads=4",
+			"--parallel=classes"
+	};
+
+	@Benchmark
+	public DriverConfiguration setConfigurations()
+	{
+		Main.setConfigurations(ARGS);
+
+		return DriverConfiguration.current();
+	}
+}
@@ -10,8 +10,8 @@ import org.openqa.selenium.WebDriver;
  * with CI/CD software e.g. Jenkins.
  * 
  * @implSpec
- * TODO: Maybe in future releases we can extract these configurations to a
- * property file or a JSON file.
+ * These are only the defaults, a '--config' file or '--pref.<name>=<value>' flags can
+ * change them or add more, see {@link ConfigurationFile}.
  * 
  * @author karlomijaljevic
  */
@@ -0,0 +1,166 @@
+package configuration;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Reader of configuration files, so a run does not need a long command line. A file holds the
+ * same flags as the command line, without the leading '--', in a properties file
+ *
+ * <pre>
+ * headless=
+ * window-size=1920,1200
+ * pool-size=8
+ * pref.download.prompt_for_download=false
+ * </pre>
+ *
+ * or in a JSON file
+ *
+ * <pre>
+ * {
+ *   "headless": null,
+ *   "window-size": "1920,1200",
+ *   "pool-size": 8,
+ *   "block-urls": ["defaults", "*.mp4"],
+ *   "pref": { "download.prompt_for_download": false }
+ * }
+ * </pre>
+ *
+ * An empty value (or NULL in JSON) is a switch without a value. Keys starting with 'pref.'
+ * (or the 'pref' object) are Chrome preferences, see {@link ChromeDriverPreferences}.
+ *
+ * @author karlomijaljevic
+ */
+public class ConfigurationFile
+{
+	public static final String PREFERENCE_PREFIX = "pref.";
+
+	private static final String PREFERENCE_OBJECT = "pref";
+	private static final String FLAG_PREFIX = "--";
+
+	private ConfigurationFile()
+	{
+	}
+
+	/**
+	 * Method reads a '.json' or '.properties' file and turns it into command line flags.
+	 *
+	 * @param file -> {@link Path} of the file.
+	 * @return Returns the flags, in the order of the file for JSON and sorted by key for
+	 * properties.
+	 * @throws IOException -> In case the file can not be read or is not valid JSON.
+	 */
+	public static List<String> readFlags(Path file) throws IOException
+	{
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+		{
+			if (file.getFileName().toString().toLowerCase().endsWith(".json"))
+			{
+				return jsonFlags(reader);
+			}
+
+			return propertiesFlags(reader);
+		}
+		catch (JsonParseException | IllegalStateException e)
+		{
+			throw new IOException("Invalid configuration file " + file, e);
+		}
+	}
+
+	/**
+	 * Method turns the value of a preference flag into the type Chrome expects, booleans and
+	 * integers are not strings.
+	 */
+	public static Object parsePreferenceValue(String value)
+	{
+		if (value == null)
+		{
+			return null;
+		}
+		if ("true".equals(value) || "false".equals(value))
+		{
+			return Boolean.valueOf(value);
+		}
+
+		try
+		{
+			return Integer.valueOf(value);
+		}
+		catch (NumberFormatException nfe)
+		{
+			return value;
+		}
+	}
+
+	private static List<String> propertiesFlags(Reader reader) throws IOException
+	{
+		Properties properties = new Properties();
+		properties.load(reader);
+
+		List<String> flags = new ArrayList<String>();
+		properties.stringPropertyNames().stream().sorted().forEach(key -> flags.add(flag(key, properties.getProperty(key))));
+
+		return flags;
+	}
+
+	private static List<String> jsonFlags(Reader reader)
+	{
+		JsonObject root = JsonParser.parseReader(reader).getAsJsonObject();
+		List<String> flags = new ArrayList<String>();
+
+		for (Map.Entry<String, JsonElement> entry : root.entrySet())
+		{
+			if (PREFERENCE_OBJECT.equals(entry.getKey()) && entry.getValue().isJsonObject())
+			{
+				for (Map.Entry<String, JsonElement> preference : entry.getValue().getAsJsonObject().entrySet())
+				{
+					flags.add(flag(PREFERENCE_PREFIX + preference.getKey(), text(preference.getValue())));
+				}
+			}
+			else
+			{
+				flags.add(flag(entry.getKey(), text(entry.getValue())));
+			}
+		}
+
+		return flags;
+	}
+
+	/**
+	 * @return Returns the value as flag text, arrays are joined with commas.
+	 */
+	private static String text(JsonElement value)
+	{
+		if (value.isJsonNull())
+		{
+			return null;
+		}
+		if (value.isJsonArray())
+		{
+			List<String> items = new ArrayList<String>();
+			value.getAsJsonArray().forEach(item -> items.add(item.getAsString()));
+			return String.join(",", items);
+		}
+
+		return value.getAsString();
+	}
+
+	private static String flag(String key, String value)
+	{
+		String name = key.startsWith(FLAG_PREFIX) ? key : FLAG_PREFIX + key;
+
+		return value == null || value.isEmpty() ? name : name + "=" + value;
+	}
+}
@@ -0,0 +1,212 @@
+package configuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import driver.RequestBlocker;
+
+/**
+ * Immutable set of changes a session (or every session of a test class) layers on top of the
+ * published {@link DriverConfiguration}, e.g. a different window size, extra preferences or
+ * more blocked URLs. Pass them when leasing a driver:
+ *
+ * <pre>
+ * private static final ConfigurationOverrides MOBILE = ConfigurationOverrides.builder()
+ * 		.windowSize(390, 844)
+ * 		.blockUrls("*.mp4")
+ * 		.build();
+ *
+ * webDriver = TestConfiguration.configureWebDriver(MOBILE);
+ * </pre>
+ *
+ * Overrides are values, two equal overrides lead to sessions with the same configuration so
+ * the {@link driver.DriverPool} reuses sessions across test classes that ask for the same ones.
+ *
+ * @author karlomijaljevic
+ */
+public final class ConfigurationOverrides
+{
+	public static final ConfigurationOverrides NONE = builder().build();
+
+	private final Map<String, String> options;
+	private final Set<String> removedOptions;
+	private final Map<String, Object> preferences;
+	private final List<String> blockedUrlPatterns;
+	private final List<String> blockedResourceTypes;
+
+	private ConfigurationOverrides(Builder builder)
+	{
+		options = Collections.unmodifiableMap(new LinkedHashMap<String, String>(builder.options));
+		removedOptions = Collections.unmodifiableSet(new LinkedHashSet<String>(builder.removedOptions));
+		preferences = Collections.unmodifiableMap(new LinkedHashMap<String, Object>(builder.preferences));
+		blockedUrlPatterns = Collections.unmodifiableList(new ArrayList<String>(builder.blockedUrlPatterns));
+		blockedResourceTypes = Collections.unmodifiableList(new ArrayList<String>(builder.blockedResourceTypes));
+	}
+
+	public static Builder builder()
+	{
+		return new Builder();
+	}
+
+	/**
+	 * @return Returns overrides that apply these first and the given ones on top.
+	 */
+	public ConfigurationOverrides and(ConfigurationOverrides other)
+	{
+		if (other == null || other.isEmpty())
+		{
+			return this;
+		}
+		if (isEmpty())
+		{
+			return other;
+		}
+
+		Builder builder = builder();
+		builder.add(this);
+		builder.add(other);
+
+		return builder.build();
+	}
+
+	public boolean isEmpty()
+	{
+		return options.isEmpty() && removedOptions.isEmpty() && preferences.isEmpty() && blockedUrlPatterns.isEmpty()
+				&& blockedResourceTypes.isEmpty();
+	}
+
+	/**
+	 * Method applies the overrides to a {@link DriverConfiguration.Builder}.
+	 */
+	void applyTo(DriverConfiguration.Builder builder)
+	{
+		builder.getWebDriverOptions().keySet().removeAll(removedOptions);
+		builder.getWebDriverOptions().putAll(options);
+		builder.getWebDriverPreferences().putAll(preferences);
+		blockedUrlPatterns.stream().filter(pattern -> !builder.getBlockedUrlPatterns().contains(pattern))
+				.forEach(builder.getBlockedUrlPatterns()::add);
+		blockedResourceTypes.stream().filter(type -> !builder.getBlockedResourceTypes().contains(type))
+				.forEach(builder.getBlockedResourceTypes()::add);
+	}
+
+	@Override
+	public boolean equals(Object object)
+	{
+		if (this == object)
+		{
+			return true;
+		}
+		if (!(object instanceof ConfigurationOverrides))
+		{
+			return false;
+		}
+
+		ConfigurationOverrides other = (ConfigurationOverrides) object;
+
+		return options.equals(other.options) && removedOptions.equals(other.removedOptions) && preferences.equals(other.preferences)
+				&& blockedUrlPatterns.equals(other.blockedUrlPatterns) && blockedResourceTypes.equals(other.blockedResourceTypes);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(options, removedOptions, preferences, blockedUrlPatterns, blockedResourceTypes);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "options=" + options + ", removedOptions=" + removedOptions + ", preferences=" + preferences + ", blockedUrlPatterns="
+				+ blockedUrlPatterns + ", blockedResourceTypes=" + blockedResourceTypes;
+	}
+
+	public static final class Builder
+	{
+		private final Map<String, String> options = new LinkedHashMap<String, String>();
+		private final Set<String> removedOptions = new LinkedHashSet<String>();
+		private final Map<String, Object> preferences = new LinkedHashMap<String, Object>();
+		private final List<String> blockedUrlPatterns = new ArrayList<String>();
+		private final List<String> blockedResourceTypes = new ArrayList<String>();
+
+		private Builder()
+		{
+		}
+
+		/**
+		 * Method adds a chromedriver switch without a value, e.g. '--headless'.
+		 */
+		public Builder option(String name)
+		{
+			return option(name, null);
+		}
+
+		public Builder option(String name, String value)
+		{
+			removedOptions.remove(name);
+			options.put(name, value);
+			return this;
+		}
+
+		/**
+		 * Method drops a switch the published configuration has, e.g. '--incognito'.
+		 */
+		public Builder removeOption(String name)
+		{
+			options.remove(name);
+			removedOptions.add(name);
+			return this;
+		}
+
+		public Builder windowSize(int width, int height)
+		{
+			return option("--window-size", width + "," + height);
+		}
+
+		public Builder preference(String name, Object value)
+		{
+			preferences.put(name, value);
+			return this;
+		}
+
+		/**
+		 * Method blocks more URL patterns ('*' wildcards), see {@link RequestBlocker}.
+		 */
+		public Builder blockUrls(String... urlPatterns)
+		{
+			blockedUrlPatterns.addAll(Arrays.asList(urlPatterns));
+			return this;
+		}
+
+		/**
+		 * Method blocks more DevTools resource types, e.g. Font or Media.
+		 *
+		 * @throws IllegalArgumentException -> In case a resource type does not exist.
+		 */
+		public Builder blockResourceTypes(String... resourceTypes)
+		{
+			Arrays.stream(resourceTypes).map(RequestBlocker::normalizeResourceType).forEach(blockedResourceTypes::add);
+			return this;
+		}
+
+		private void add(ConfigurationOverrides overrides)
+		{
+			overrides.removedOptions.forEach(this::removeOption);
+			overrides.options.forEach(this::option);
+			preferences.putAll(overrides.preferences);
+			blockedUrlPatterns.addAll(overrides.blockedUrlPatterns);
+			blockedResourceTypes.addAll(overrides.blockedResourceTypes);
+		}
+
+		public ConfigurationOverrides build()
+		{
+			return new ConfigurationOverrides(this);
+		}
+	}
+}
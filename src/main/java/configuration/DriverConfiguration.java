@@ -1,77 +1,180 @@
 package configuration;
 
-import java.util.HashMap;
-
-import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.openqa.selenium.WebDriver;
 
 /**
- * Singleton class that contains all {@link WebDriver} configuration.
- * This configuration is set up when calling the Main class.
- * 
+ * Immutable snapshot of all {@link WebDriver} configuration. The current snapshot is read
+ * with {@link #current()}, which is a plain volatile read, so sessions can be created from
+ * any number of threads without locking and without copying the option maps. Changes are made
+ * on a {@link Builder} and published atomically with {@link #publish(DriverConfiguration)} or
+ * {@link #update(Consumer)}, snapshots that were already handed out never change.
+ *
+ * The configuration is set up when calling the Main class, from command line flags and
+ * optionally from a properties or JSON file ('--config'). A session can layer
+ * {@link ConfigurationOverrides} on top of it, see {@link #with(ConfigurationOverrides)}.
+ *
  * @author karlomijaljevic
  */
-@Singleton
-public class DriverConfiguration
+public final class DriverConfiguration
 {
-	private static DriverConfiguration instance;
+	public static final int DEFAULT_MAX_POOL_SIZE = 5;
+	public static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 120;
+	public static final long DEFAULT_LEASE_TIMEOUT_SECONDS = 600;
+	public static final long DEFAULT_CACHE_MEMORY_MEGABYTES = 64;
+	public static final long DEFAULT_CACHE_DISK_MEGABYTES = 512;
+	public static final long DEFAULT_GRID_SESSION_TIMEOUT_SECONDS = 300;
+	public static final int DEFAULT_GRID_CONCURRENT_REQUESTS = 4;
+	public static final long DEFAULT_FAILURE_ARTIFACT_MEMORY_MEGABYTES = 64;
+	public static final long DEFAULT_SESSION_MEMORY_LIMIT_MEGABYTES = 2048;
+	public static final long DEFAULT_SESSION_HANG_TIMEOUT_SECONDS = 30;
+
+	private static final AtomicReference<DriverConfiguration> CURRENT = new AtomicReference<DriverConfiguration>(new Builder().build());
 
-	private HashMap<String, String> webDriverOptions;
-	private HashMap<String, Object> webDriverPreferences;
-	private boolean runFromMainClass = false;
+	private final Map<String, String> webDriverOptions;
+	private final Map<String, Object> webDriverPreferences;
+	private final boolean runFromMainClass;
+	private final int maxPoolSize;
+	private final long idleTimeoutSeconds;
+	private final long leaseTimeoutSeconds;
+	private final boolean commandMetricsEnabled;
+	private final String fixtureDirectory;
+	private final long fixtureLatencyMillis;
+	private final long fixtureBandwidthBytesPerSecond;
+	private final List<String> blockedUrlPatterns;
+	private final List<String> blockedResourceTypes;
+	private final boolean cachingProxyEnabled;
+	private final long cacheMemoryMegabytes;
+	private final long cacheDiskMegabytes;
+	private final boolean cacheImmutableAggressively;
+	private final boolean profileTemplateEnabled;
+	private final List<String> profileWarmUpUrls;
+	private final String gridUrl;
+	private final long gridSessionTimeoutSeconds;
+	private final int gridConcurrentRequests;
+	private final boolean failureArtifactsEnabled;
+	private final long failureArtifactMemoryMegabytes;
+	private final long sessionMemoryLimitMegabytes;
+	private final int sessionMaxTests;
+	private final long sessionHangTimeoutSeconds;
+	private final boolean pagePerformanceEnabled;
 
-	private DriverConfiguration()
+	private DriverConfiguration(Builder builder)
 	{
-		setWebDriverOptions(new HashMap<String, String>());
-		setWebDriverPreferences(new HashMap<String, Object>());
-		loadDefaultPreferences();
+		webDriverOptions = Collections.unmodifiableMap(new LinkedHashMap<String, String>(builder.webDriverOptions));
+		webDriverPreferences = Collections.unmodifiableMap(new LinkedHashMap<String, Object>(builder.webDriverPreferences));
+		runFromMainClass = builder.runFromMainClass;
+		maxPoolSize = builder.maxPoolSize;
+		idleTimeoutSeconds = builder.idleTimeoutSeconds;
+		leaseTimeoutSeconds = builder.leaseTimeoutSeconds;
+		commandMetricsEnabled = builder.commandMetricsEnabled;
+		fixtureDirectory = builder.fixtureDirectory;
+		fixtureLatencyMillis = builder.fixtureLatencyMillis;
+		fixtureBandwidthBytesPerSecond = builder.fixtureBandwidthBytesPerSecond;
+		blockedUrlPatterns = Collections.unmodifiableList(new ArrayList<String>(builder.blockedUrlPatterns));
+		blockedResourceTypes = Collections.unmodifiableList(new ArrayList<String>(builder.blockedResourceTypes));
+		cachingProxyEnabled = builder.cachingProxyEnabled;
+		cacheMemoryMegabytes = builder.cacheMemoryMegabytes;
+		cacheDiskMegabytes = builder.cacheDiskMegabytes;
+		cacheImmutableAggressively = builder.cacheImmutableAggressively;
+		profileTemplateEnabled = builder.profileTemplateEnabled;
+		profileWarmUpUrls = Collections.unmodifiableList(new ArrayList<String>(builder.profileWarmUpUrls));
+		gridUrl = builder.gridUrl;
+		gridSessionTimeoutSeconds = builder.gridSessionTimeoutSeconds;
+		gridConcurrentRequests = builder.gridConcurrentRequests;
+		failureArtifactsEnabled = builder.failureArtifactsEnabled;
+		failureArtifactMemoryMegabytes = builder.failureArtifactMemoryMegabytes;
+		sessionMemoryLimitMegabytes = builder.sessionMemoryLimitMegabytes;
+		sessionMaxTests = builder.sessionMaxTests;
+		sessionHangTimeoutSeconds = builder.sessionHangTimeoutSeconds;
+		pagePerformanceEnabled = builder.pagePerformanceEnabled;
 	}
 
-	public static DriverConfiguration getInstance()
+	/**
+	 * @return Returns the configuration snapshot that is currently published.
+	 */
+	public static DriverConfiguration current()
 	{
-		if (instance == null)
-		{
-			instance = new DriverConfiguration();
-		}
+		return CURRENT.get();
+	}
 
-		return instance;
+	/**
+	 * Method publishes a new snapshot, sessions created from now on use it.
+	 */
+	public static void publish(DriverConfiguration configuration)
+	{
+		CURRENT.set(configuration);
 	}
 
 	/**
-	 * Method sets the {@link DriverConfiguration} singleton webDriverOptions with appropriate
-	 * parameters. Those parameters are set as default for a given {@link WebDriver}. The
-	 * configurations are loaded from the ENUM class {@link ChromeDriverPreferences}.
+	 * Method changes the current snapshot and publishes the result. In case another thread
+	 * published in the meantime the change is applied again on top of its snapshot.
+	 *
+	 * @param change -> Change of a {@link Builder} that starts from the current snapshot.
+	 * @return Returns the published {@link DriverConfiguration}.
 	 */
-	private void loadDefaultPreferences()
+	public static DriverConfiguration update(Consumer<Builder> change)
 	{
-		for (ChromeDriverPreferences cdp : ChromeDriverPreferences.values())
+		while (true)
 		{
-			String key = cdp.getParameterName();
-			Object value = cdp.getParameterValue();
+			DriverConfiguration base = CURRENT.get();
+			Builder builder = base.toBuilder();
+			change.accept(builder);
+			DriverConfiguration updated = builder.build();
 
-			getWebDriverPreferences().put(key, value);
+			if (CURRENT.compareAndSet(base, updated))
+			{
+				return updated;
+			}
 		}
 	}
 
-	public HashMap<String, String> getWebDriverOptions()
+	/**
+	 * @return Returns a {@link Builder} that starts from this snapshot.
+	 */
+	public Builder toBuilder()
 	{
-		return webDriverOptions;
+		return new Builder(this);
 	}
 
-	private void setWebDriverOptions(HashMap<String, String> webDriverOptions)
+	/**
+	 * Method layers overrides on top of this snapshot.
+	 *
+	 * @param overrides -> {@link ConfigurationOverrides} of a session or test class.
+	 * @return Returns a new snapshot or this one in case there is nothing to override.
+	 */
+	public DriverConfiguration with(ConfigurationOverrides overrides)
 	{
-		this.webDriverOptions = webDriverOptions;
+		if (overrides == null || overrides.isEmpty())
+		{
+			return this;
+		}
+
+		Builder builder = toBuilder();
+		overrides.applyTo(builder);
+
+		return builder.build();
 	}
 
-	public HashMap<String, Object> getWebDriverPreferences()
+	/**
+	 * @return Returns the chromedriver command line switches, a NULL value is a switch without
+	 * a value (e.g. '--headless').
+	 */
+	public Map<String, String> getWebDriverOptions()
 	{
-		return webDriverPreferences;
+		return webDriverOptions;
 	}
 
-	public void setWebDriverPreferences(HashMap<String, Object> webDriverPreferences)
+	public Map<String, Object> getWebDriverPreferences()
 	{
-		this.webDriverPreferences = webDriverPreferences;
+		return webDriverPreferences;
 	}
 
 	public boolean isRunFromMainClass()
@@ -79,8 +182,409 @@ public class DriverConfiguration
 		return runFromMainClass;
 	}
 
-	public void setRunFromMainClass(boolean runFromMainClass)
+	public int getMaxPoolSize()
 	{
-		this.runFromMainClass = runFromMainClass;
+		return maxPoolSize;
+	}
+
+	public long getIdleTimeoutSeconds()
+	{
+		return idleTimeoutSeconds;
+	}
+
+	public long getLeaseTimeoutSeconds()
+	{
+		return leaseTimeoutSeconds;
+	}
+
+	/**
+	 * @return Returns true if every {@link WebDriver} command is timed, see the metrics package.
+	 */
+	public boolean isCommandMetricsEnabled()
+	{
+		return commandMetricsEnabled;
+	}
+
+	/**
+	 * @return Returns the directory the fixture server serves or NULL in case it serves the
+	 * bundled resources/fixtures folder.
+	 */
+	public String getFixtureDirectory()
+	{
+		return fixtureDirectory;
+	}
+
+	public long getFixtureLatencyMillis()
+	{
+		return fixtureLatencyMillis;
+	}
+
+	/**
+	 * @return Returns the bandwidth limit of the fixture server, 0 means unlimited.
+	 */
+	public long getFixtureBandwidthBytesPerSecond()
+	{
+		return fixtureBandwidthBytesPerSecond;
+	}
+
+	/**
+	 * @return Returns the URL patterns (with '*' wildcards) every session blocks, see
+	 * {@link driver.RequestBlocker}.
+	 */
+	public List<String> getBlockedUrlPatterns()
+	{
+		return blockedUrlPatterns;
+	}
+
+	/**
+	 * @return Returns the DevTools resource types (e.g. Font, Image) every session blocks.
+	 */
+	public List<String> getBlockedResourceTypes()
+	{
+		return blockedResourceTypes;
+	}
+
+	/**
+	 * @return Returns true if every session goes through the shared {@link proxy.CachingProxy}.
+	 */
+	public boolean isCachingProxyEnabled()
+	{
+		return cachingProxyEnabled;
+	}
+
+	public long getCacheMemoryMegabytes()
+	{
+		return cacheMemoryMegabytes;
+	}
+
+	public long getCacheDiskMegabytes()
+	{
+		return cacheDiskMegabytes;
+	}
+
+	/**
+	 * @return Returns true if immutable and fingerprinted responses are never revalidated
+	 * during a run.
+	 */
+	public boolean isCacheImmutableAggressively()
+	{
+		return cacheImmutableAggressively;
+	}
+
+	/**
+	 * @return Returns true if sessions start from a clone of a warmed up profile, see
+	 * {@link driver.ProfileTemplate}.
+	 */
+	public boolean isProfileTemplateEnabled()
+	{
+		return profileTemplateEnabled;
+	}
+
+	/**
+	 * @return Returns the URLs visited while the profile template is built.
+	 */
+	public List<String> getProfileWarmUpUrls()
+	{
+		return profileWarmUpUrls;
+	}
+
+	/**
+	 * @return Returns the address of the Selenium Grid sessions are created on or NULL in
+	 * case browsers are launched locally.
+	 */
+	public String getGridUrl()
+	{
+		return gridUrl;
+	}
+
+	/**
+	 * @return Returns the seconds a session request is retried while the grid is saturated.
+	 */
+	public long getGridSessionTimeoutSeconds()
+	{
+		return gridSessionTimeoutSeconds;
+	}
+
+	/**
+	 * @return Returns the number of session requests sent to the grid at once, the others
+	 * wait in line.
+	 */
+	public int getGridConcurrentRequests()
+	{
+		return gridConcurrentRequests;
+	}
+
+	/**
+	 * @return Returns true if a screenshot, the page source and the browser log are kept for
+	 * every failed test, see {@link report.FailureArtifactListener}.
+	 */
+	public boolean isFailureArtifactsEnabled()
+	{
+		return failureArtifactsEnabled;
+	}
+
+	/**
+	 * @return Returns the memory failure artifacts waiting to be written may take up.
+	 */
+	public long getFailureArtifactMemoryMegabytes()
+	{
+		return failureArtifactMemoryMegabytes;
+	}
+
+	/**
+	 * @return Returns the memory a local browser, its child processes and its chromedriver may
+	 * use before the session is recycled, zero or less for no limit, see {@link driver.SessionWatchdog}.
+	 */
+	public long getSessionMemoryLimitMegabytes()
+	{
+		return sessionMemoryLimitMegabytes;
+	}
+
+	/**
+	 * @return Returns the number of tests a session runs before it is recycled, zero or less
+	 * for no limit.
+	 */
+	public int getSessionMaxTests()
+	{
+		return sessionMaxTests;
+	}
+
+	/**
+	 * @return Returns the seconds a session may take to answer a health check before it is
+	 * considered hung and recycled.
+	 */
+	public long getSessionHangTimeoutSeconds()
+	{
+		return sessionHangTimeoutSeconds;
+	}
+
+	/**
+	 * @return Returns true if every page loaded through get() is captured by
+	 * {@link metrics.PagePerformance}.
+	 */
+	public boolean isPagePerformanceEnabled()
+	{
+		return pagePerformanceEnabled;
+	}
+
+	/**
+	 * Mutable counterpart of a {@link DriverConfiguration}, only used by the thread that
+	 * builds the next snapshot. A new builder starts from the defaults, the preferences come
+	 * from {@link ChromeDriverPreferences}.
+	 */
+	public static final class Builder
+	{
+		private final Map<String, String> webDriverOptions;
+		private final Map<String, Object> webDriverPreferences;
+		private boolean runFromMainClass = false;
+		private int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
+		private long idleTimeoutSeconds = DEFAULT_IDLE_TIMEOUT_SECONDS;
+		private long leaseTimeoutSeconds = DEFAULT_LEASE_TIMEOUT_SECONDS;
+		private boolean commandMetricsEnabled = true;
+		private String fixtureDirectory;
+		private long fixtureLatencyMillis = 0;
+		private long fixtureBandwidthBytesPerSecond = 0;
+		private final List<String> blockedUrlPatterns;
+		private final List<String> blockedResourceTypes;
+		private boolean cachingProxyEnabled = false;
+		private long cacheMemoryMegabytes = DEFAULT_CACHE_MEMORY_MEGABYTES;
+		private long cacheDiskMegabytes = DEFAULT_CACHE_DISK_MEGABYTES;
+		private boolean cacheImmutableAggressively = false;
+		private boolean profileTemplateEnabled = false;
+		private final List<String> profileWarmUpUrls;
+		private String gridUrl;
+		private long gridSessionTimeoutSeconds = DEFAULT_GRID_SESSION_TIMEOUT_SECONDS;
+		private int gridConcurrentRequests = DEFAULT_GRID_CONCURRENT_REQUESTS;
+		private boolean failureArtifactsEnabled = true;
+		private long failureArtifactMemoryMegabytes = DEFAULT_FAILURE_ARTIFACT_MEMORY_MEGABYTES;
+		private long sessionMemoryLimitMegabytes = DEFAULT_SESSION_MEMORY_LIMIT_MEGABYTES;
+		private int sessionMaxTests = 0;
+		private long sessionHangTimeoutSeconds = DEFAULT_SESSION_HANG_TIMEOUT_SECONDS;
+		private boolean pagePerformanceEnabled = false;
+
+		public Builder()
+		{
+			webDriverOptions = new LinkedHashMap<String, String>();
+			webDriverPreferences = new LinkedHashMap<String, Object>();
+			blockedUrlPatterns = new ArrayList<String>();
+			blockedResourceTypes = new ArrayList<String>();
+			profileWarmUpUrls = new ArrayList<String>();
+
+			for (ChromeDriverPreferences cdp : ChromeDriverPreferences.values())
+			{
+				webDriverPreferences.put(cdp.getParameterName(), cdp.getParameterValue());
+			}
+		}
+
+		private Builder(DriverConfiguration configuration)
+		{
+			webDriverOptions = new LinkedHashMap<String, String>(configuration.webDriverOptions);
+			webDriverPreferences = new LinkedHashMap<String, Object>(configuration.webDriverPreferences);
+			runFromMainClass = configuration.runFromMainClass;
+			maxPoolSize = configuration.maxPoolSize;
+			idleTimeoutSeconds = configuration.idleTimeoutSeconds;
+			leaseTimeoutSeconds = configuration.leaseTimeoutSeconds;
+			commandMetricsEnabled = configuration.commandMetricsEnabled;
+			fixtureDirectory = configuration.fixtureDirectory;
+			fixtureLatencyMillis = configuration.fixtureLatencyMillis;
+			fixtureBandwidthBytesPerSecond = configuration.fixtureBandwidthBytesPerSecond;
+			blockedUrlPatterns = new ArrayList<String>(configuration.blockedUrlPatterns);
+			blockedResourceTypes = new ArrayList<String>(configuration.blockedResourceTypes);
+			cachingProxyEnabled = configuration.cachingProxyEnabled;
+			cacheMemoryMegabytes = configuration.cacheMemoryMegabytes;
+			cacheDiskMegabytes = configuration.cacheDiskMegabytes;
+			cacheImmutableAggressively = configuration.cacheImmutableAggressively;
+			profileTemplateEnabled = configuration.profileTemplateEnabled;
+			profileWarmUpUrls = new ArrayList<String>(configuration.profileWarmUpUrls);
+			gridUrl = configuration.gridUrl;
+			gridSessionTimeoutSeconds = configuration.gridSessionTimeoutSeconds;
+			gridConcurrentRequests = configuration.gridConcurrentRequests;
+			failureArtifactsEnabled = configuration.failureArtifactsEnabled;
+			failureArtifactMemoryMegabytes = configuration.failureArtifactMemoryMegabytes;
+			sessionMemoryLimitMegabytes = configuration.sessionMemoryLimitMegabytes;
+			sessionMaxTests = configuration.sessionMaxTests;
+			sessionHangTimeoutSeconds = configuration.sessionHangTimeoutSeconds;
+			pagePerformanceEnabled = configuration.pagePerformanceEnabled;
+		}
+
+		public DriverConfiguration build()
+		{
+			return new DriverConfiguration(this);
+		}
+
+		public Map<String, String> getWebDriverOptions()
+		{
+			return webDriverOptions;
+		}
+
+		public Map<String, Object> getWebDriverPreferences()
+		{
+			return webDriverPreferences;
+		}
+
+		public void setRunFromMainClass(boolean runFromMainClass)
+		{
+			this.runFromMainClass = runFromMainClass;
+		}
+
+		public void setMaxPoolSize(int maxPoolSize)
+		{
+			this.maxPoolSize = maxPoolSize;
+		}
+
+		public void setIdleTimeoutSeconds(long idleTimeoutSeconds)
+		{
+			this.idleTimeoutSeconds = idleTimeoutSeconds;
+		}
+
+		public void setLeaseTimeoutSeconds(long leaseTimeoutSeconds)
+		{
+			this.leaseTimeoutSeconds = leaseTimeoutSeconds;
+		}
+
+		public void setCommandMetricsEnabled(boolean commandMetricsEnabled)
+		{
+			this.commandMetricsEnabled = commandMetricsEnabled;
+		}
+
+		public void setFixtureDirectory(String fixtureDirectory)
+		{
+			this.fixtureDirectory = fixtureDirectory;
+		}
+
+		public void setFixtureLatencyMillis(long fixtureLatencyMillis)
+		{
+			this.fixtureLatencyMillis = fixtureLatencyMillis;
+		}
+
+		public void setFixtureBandwidthBytesPerSecond(long fixtureBandwidthBytesPerSecond)
+		{
+			this.fixtureBandwidthBytesPerSecond = fixtureBandwidthBytesPerSecond;
+		}
+
+		public List<String> getBlockedUrlPatterns()
+		{
+			return blockedUrlPatterns;
+		}
+
+		public List<String> getBlockedResourceTypes()
+		{
+			return blockedResourceTypes;
+		}
+
+		public void setCachingProxyEnabled(boolean cachingProxyEnabled)
+		{
+			this.cachingProxyEnabled = cachingProxyEnabled;
+		}
+
+		public void setCacheMemoryMegabytes(long cacheMemoryMegabytes)
+		{
+			this.cacheMemoryMegabytes = cacheMemoryMegabytes;
+		}
+
+		public void setCacheDiskMegabytes(long cacheDiskMegabytes)
+		{
+			this.cacheDiskMegabytes = cacheDiskMegabytes;
+		}
+
+		public void setCacheImmutableAggressively(boolean cacheImmutableAggressively)
+		{
+			this.cacheImmutableAggressively = cacheImmutableAggressively;
+		}
+
+		public void setProfileTemplateEnabled(boolean profileTemplateEnabled)
+		{
+			this.profileTemplateEnabled = profileTemplateEnabled;
+		}
+
+		public List<String> getProfileWarmUpUrls()
+		{
+			return profileWarmUpUrls;
+		}
+
+		public void setGridUrl(String gridUrl)
+		{
+			this.gridUrl = gridUrl;
+		}
+
+		public void setGridSessionTimeoutSeconds(long gridSessionTimeoutSeconds)
+		{
+			this.gridSessionTimeoutSeconds = gridSessionTimeoutSeconds;
+		}
+
+		public void setGridConcurrentRequests(int gridConcurrentRequests)
+		{
+			this.gridConcurrentRequests = gridConcurrentRequests;
+		}
+
+		public void setFailureArtifactsEnabled(boolean failureArtifactsEnabled)
+		{
+			this.failureArtifactsEnabled = failureArtifactsEnabled;
+		}
+
+		public void setFailureArtifactMemoryMegabytes(long failureArtifactMemoryMegabytes)
+		{
+			this.failureArtifactMemoryMegabytes = failureArtifactMemoryMegabytes;
+		}
+
+		public void setSessionMemoryLimitMegabytes(long sessionMemoryLimitMegabytes)
+		{
+			this.sessionMemoryLimitMegabytes = sessionMemoryLimitMegabytes;
+		}
+
+		public void setSessionMaxTests(int sessionMaxTests)
+		{
+			this.sessionMaxTests = sessionMaxTests;
+		}
+
+		public void setSessionHangTimeoutSeconds(long sessionHangTimeoutSeconds)
+		{
+			this.sessionHangTimeoutSeconds = sessionHangTimeoutSeconds;
+		}
+
+		public void setPagePerformanceEnabled(boolean pagePerformanceEnabled)
+		{
+			this.pagePerformanceEnabled = pagePerformanceEnabled;
+		}
 	}
-}
\ No newline at end of file
+}
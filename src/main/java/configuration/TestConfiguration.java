@@ -1,12 +1,17 @@
 package configuration;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
 import org.openqa.selenium.WebDriver;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.AfterTest;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeTest;
 
-import driver.Driver;
+import driver.DriverCache;
+import driver.DriverPool;
+import fixture.FixtureServer;
 import helper.FileHelper;
 
 /**
@@ -17,28 +22,110 @@ import helper.FileHelper;
  */
 public class TestConfiguration
 {
+	/**
+	 * Switches sessions get when the tests are not run through the Main class (e.g. from the
+	 * IDE), where no command line flags set them.
+	 */
+	private static final ConfigurationOverrides IDE_DEFAULTS = ConfigurationOverrides.builder()
+			.option("--headless")
+			.windowSize(1920, 1200)
+			.option("--incognito")
+			.build();
+
+	private static FixtureServer fixtureServer;
+
 	/**
 	 * This method should be called in every {@link BeforeTest} or
 	 * {@link BeforeClass} method inside a test class.
 	 * 
+	 * The {@link WebDriver} is leased from the {@link DriverPool}, so please give it back
+	 * with releaseWebDriver() instead of quitting it.
+	 * 
 	 * @return Returns a valid {@link WebDriver} instance on success or NULL
 	 * on failure.
 	 */
 	public static WebDriver configureWebDriver()
 	{
-		if (!DriverConfiguration.getInstance().isRunFromMainClass())
+		return configureWebDriver(ConfigurationOverrides.NONE);
+	}
+
+	/**
+	 * Same as configureWebDriver() but the session gets overrides layered on top of the
+	 * {@link DriverConfiguration}, e.g. another window size for every session of a test class.
+	 * The published configuration itself is never changed.
+	 * 
+	 * @param overrides -> {@link ConfigurationOverrides} of the session.
+	 * @return Returns a valid {@link WebDriver} instance on success or NULL
+	 * on failure.
+	 */
+	public static WebDriver configureWebDriver(ConfigurationOverrides overrides)
+	{
+		if (!DriverConfiguration.current().isRunFromMainClass())
+		{
+			overrides = IDE_DEFAULTS.and(overrides);
+		}
+
+		return DriverPool.getInstance().lease(overrides);
+	}
+
+	/**
+	 * This method should be called in every {@link AfterTest} or {@link AfterClass}
+	 * method inside a test class to return the {@link WebDriver} to the {@link DriverPool}.
+	 * 
+	 * @param webDriver -> The {@link WebDriver} returned by configureWebDriver().
+	 * @return Returns true if the session went back to the pool and false if it had to
+	 * be discarded.
+	 */
+	public static boolean releaseWebDriver(WebDriver webDriver)
+	{
+		return DriverPool.getInstance().release(webDriver);
+	}
+
+	/**
+	 * Use in {@link BeforeTest} or in {@link BeforeClass} methods of tests that run against
+	 * local fixtures instead of the internet. The server is shared by every test class, it
+	 * is started on the first call and stopped when the JVM exits. What it serves and how
+	 * slow it is comes from the {@link DriverConfiguration}.
+	 * 
+	 * @return Returns the running {@link FixtureServer} on success or NULL on failure.
+	 */
+	public static synchronized FixtureServer startFixtureServer()
+	{
+		if (fixtureServer != null)
 		{
-			DriverConfiguration.getInstance().getWebDriverOptions().put("--headless", null);
-			DriverConfiguration.getInstance().getWebDriverOptions().put("--window-size", "1920,1200");
-			DriverConfiguration.getInstance().getWebDriverOptions().put("--incognito", null);
+			return fixtureServer;
 		}
 
-		return Driver.getInstance().getWebDriver();
+		DriverConfiguration configuration = DriverConfiguration.current();
+
+		FixtureServer server = configuration.getFixtureDirectory() == null
+				? new FixtureServer()
+				: new FixtureServer(Paths.get(configuration.getFixtureDirectory()));
+
+		server.setLatencyMillis(configuration.getFixtureLatencyMillis());
+		server.setBandwidthBytesPerSecond(configuration.getFixtureBandwidthBytesPerSecond());
+
+		try
+		{
+			server.start();
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+			return null;
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "fixture-server-shutdown"));
+		fixtureServer = server;
+
+		return fixtureServer;
 	}
 
 	/**
 	 * Use in {@link BeforeTest} or in {@link BeforeClass} methods when you have test cases
-	 * that need to download files.
+	 * that need to download files into the shared {@link ChromeDriverPreferences} download
+	 * directory. Sessions leased through configureWebDriver() already have their own download
+	 * directory, see FileHelper.getDownloadDirectory().
 	 * 
 	 * @return Returns true in case of success, and false otherwise.
 	 */
@@ -49,12 +136,13 @@ public class TestConfiguration
 
 	/**
 	 * Method is used to delete any and all support folders that were created for the 
-	 * test cases.
+	 * test cases. The driver binary is not one of them, it is kept in the persistent
+	 * {@link DriverCache} and reused by later runs.
 	 *  
 	 * @return Returns true on success and false otherwise.
 	 */
 	public static boolean cleanSupprotFolders()
 	{
-		return Driver.getInstance().deleteDriver() && FileHelper.deleteDownloadDirectory();
+		return FileHelper.deleteDownloadDirectory();
 	}
 }
\ No newline at end of file
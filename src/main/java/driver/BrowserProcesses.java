@@ -0,0 +1,347 @@
+package driver;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The process tree of one local browser: the Chrome browser process, every process it started
+ * (renderers, GPU, utilities) and the chromedriver that started it. Processes are read from
+ * /proc, so this only works on Linux, elsewhere {@link #find(Snapshot, String)} finds nothing
+ * and sessions are only watched through commands.
+ *
+ * The browser process is the Chrome process started with the session's user data directory
+ * and without a '--type' switch (every child process has one).
+ *
+ * @author karlomijaljevic
+ */
+class BrowserProcesses
+{
+	private static final Path PROC = Paths.get("/proc");
+	private static final String USER_DATA_DIR_SWITCH = ProfileTemplate.USER_DATA_DIR_SWITCH + "=";
+	private static final String TYPE_SWITCH = "--type=";
+
+	/**
+	 * Clock ticks per second of the CPU times in /proc/[pid]/stat, 100 on every Linux the
+	 * tests run on.
+	 */
+	private static final long CLOCK_TICKS = 100;
+
+	/**
+	 * Parent and CPU time of every process at one point in time.
+	 */
+	static final class Snapshot
+	{
+		private final Map<Integer, Integer> parents = new HashMap<Integer, Integer>();
+		private final Map<Integer, Long> cpuTicks = new HashMap<Integer, Long>();
+		private final long takenAt = System.nanoTime();
+
+		/**
+		 * @return Returns a snapshot of all processes, empty in case there is no /proc.
+		 */
+		static Snapshot take()
+		{
+			Snapshot snapshot = new Snapshot();
+
+			if (!Files.isDirectory(PROC))
+			{
+				return snapshot;
+			}
+
+			try (DirectoryStream<Path> processes = Files.newDirectoryStream(PROC, "[0-9]*"))
+			{
+				for (Path process : processes)
+				{
+					snapshot.read(process);
+				}
+			}
+			catch (IOException ioe)
+			{
+				ioe.printStackTrace();
+			}
+
+			return snapshot;
+		}
+
+		private void read(Path process)
+		{
+			String stat;
+
+			try
+			{
+				stat = new String(Files.readAllBytes(process.resolve("stat")), StandardCharsets.US_ASCII);
+			}
+			catch (IOException ioe)
+			{
+				// The process exited while the directory was read.
+				return;
+			}
+
+			// The command name is in parentheses and may itself contain spaces and parentheses.
+			String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+
+			try
+			{
+				int pid = Integer.parseInt(process.getFileName().toString());
+				parents.put(pid, Integer.parseInt(fields[1]));
+				cpuTicks.put(pid, Long.parseLong(fields[11]) + Long.parseLong(fields[12]));
+			}
+			catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+			{
+				// Not a process we understand, skip it.
+			}
+		}
+
+		boolean contains(int pid)
+		{
+			return parents.containsKey(pid);
+		}
+	}
+
+	/**
+	 * Memory and CPU use of the whole tree.
+	 */
+	static final class Usage
+	{
+		private final long rssBytes;
+		private final long cpuTicks;
+		private final long takenAt;
+
+		private Usage(long rssBytes, long cpuTicks, long takenAt)
+		{
+			this.rssBytes = rssBytes;
+			this.cpuTicks = cpuTicks;
+			this.takenAt = takenAt;
+		}
+
+		long getRssBytes()
+		{
+			return rssBytes;
+		}
+
+		/**
+		 * @return Returns the CPU use since the previous sample in percent of one core, or -1
+		 * in case there is no previous sample.
+		 */
+		double cpuPercentSince(Usage previous)
+		{
+			if (previous == null || takenAt <= previous.takenAt)
+			{
+				return -1;
+			}
+
+			double seconds = (takenAt - previous.takenAt) / 1e9;
+
+			return Math.max(0, cpuTicks - previous.cpuTicks) * 100.0 / CLOCK_TICKS / seconds;
+		}
+	}
+
+	private final int browserPid;
+	private final int driverPid;
+	private final String userDataSwitch;
+
+	private BrowserProcesses(int browserPid, int driverPid, String userDataSwitch)
+	{
+		this.browserPid = browserPid;
+		this.driverPid = driverPid;
+		this.userDataSwitch = userDataSwitch;
+	}
+
+	/**
+	 * Method looks for the browser started with the user data directory.
+	 *
+	 * @return Returns the {@link BrowserProcesses} or NULL in case no such browser runs.
+	 */
+	static BrowserProcesses find(Snapshot snapshot, String userDataDir)
+	{
+		String userDataSwitch = USER_DATA_DIR_SWITCH + userDataDir;
+
+		for (int pid : snapshot.parents.keySet())
+		{
+			List<String> arguments = commandLine(pid);
+
+			if (isBrowser(arguments, userDataSwitch))
+			{
+				int parent = snapshot.parents.getOrDefault(pid, -1);
+
+				return new BrowserProcesses(pid, isDriver(commandLine(parent)) ? parent : -1, userDataSwitch);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return Returns true in case the browser process still runs.
+	 */
+	boolean isAlive(Snapshot snapshot)
+	{
+		return snapshot.contains(browserPid);
+	}
+
+	/**
+	 * @return Returns the {@link Usage} of the browser, its children and the chromedriver.
+	 */
+	Usage measure(Snapshot snapshot)
+	{
+		long rssBytes = 0;
+		long cpuTicks = 0;
+
+		for (int pid : members(snapshot))
+		{
+			rssBytes += residentBytes(pid);
+			cpuTicks += snapshot.cpuTicks.getOrDefault(pid, 0L);
+		}
+
+		return new Usage(rssBytes, cpuTicks, snapshot.takenAt);
+	}
+
+	/**
+	 * Method kills the whole tree, used for browsers that no longer answer a quit. Process ids
+	 * are reused, so the browser and the chromedriver are only killed (with their children) in
+	 * case their command lines still show they are the processes of this session.
+	 */
+	void kill()
+	{
+		Snapshot snapshot = Snapshot.take();
+
+		List<String> command = new ArrayList<String>();
+		command.add("kill");
+		command.add("-9");
+
+		if (driverPid > 0 && snapshot.contains(driverPid) && isDriver(commandLine(driverPid)))
+		{
+			command.add(String.valueOf(driverPid));
+		}
+
+		if (snapshot.contains(browserPid) && isBrowser(commandLine(browserPid), userDataSwitch))
+		{
+			tree(snapshot, browserPid).forEach(pid -> command.add(String.valueOf(pid)));
+		}
+
+		if (command.size() == 2)
+		{
+			return;
+		}
+
+		try
+		{
+			Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+			process.getInputStream().close();
+			process.waitFor();
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private List<Integer> members(Snapshot snapshot)
+	{
+		List<Integer> members = new ArrayList<Integer>();
+
+		if (driverPid > 0 && snapshot.contains(driverPid))
+		{
+			members.add(driverPid);
+		}
+
+		members.addAll(tree(snapshot, browserPid));
+
+		return members;
+	}
+
+	/**
+	 * @return Returns the process and every process it started, directly or not.
+	 */
+	private static List<Integer> tree(Snapshot snapshot, int root)
+	{
+		List<Integer> members = new ArrayList<Integer>();
+		Deque<Integer> pending = new ArrayDeque<Integer>();
+		pending.add(root);
+
+		while (!pending.isEmpty())
+		{
+			int pid = pending.poll();
+
+			if (!snapshot.contains(pid))
+			{
+				continue;
+			}
+
+			members.add(pid);
+			snapshot.parents.forEach((child, parent) -> {
+				if (parent == pid)
+				{
+					pending.add(child);
+				}
+			});
+		}
+
+		return members;
+	}
+
+	private static boolean isBrowser(List<String> arguments, String userDataSwitch)
+	{
+		return arguments.contains(userDataSwitch) && arguments.stream().noneMatch(argument -> argument.startsWith(TYPE_SWITCH));
+	}
+
+	private static boolean isDriver(List<String> arguments)
+	{
+		return arguments.stream().findFirst().map(name -> name.contains("chromedriver")).orElse(false);
+	}
+
+	private static List<String> commandLine(int pid)
+	{
+		List<String> arguments = new ArrayList<String>();
+
+		try
+		{
+			for (String argument : new String(Files.readAllBytes(PROC.resolve(pid + "/cmdline")), StandardCharsets.UTF_8).split("\0"))
+			{
+				arguments.add(argument);
+			}
+		}
+		catch (IOException ioe)
+		{
+			// Exited or not ours to read.
+		}
+
+		return arguments;
+	}
+
+	/**
+	 * @return Returns the resident set size from /proc/[pid]/status or 0.
+	 */
+	private static long residentBytes(int pid)
+	{
+		try
+		{
+			for (String line : Files.readAllLines(PROC.resolve(pid + "/status"), StandardCharsets.US_ASCII))
+			{
+				if (line.startsWith("VmRSS:"))
+				{
+					return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+				}
+			}
+		}
+		catch (IOException | NumberFormatException e)
+		{
+			// Exited in the meantime.
+		}
+
+		return 0;
+	}
+}
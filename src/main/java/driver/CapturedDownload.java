@@ -0,0 +1,164 @@
+package driver;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import helper.FileHelper;
+
+/**
+ * A response captured by a {@link DownloadCapture}: URL, status, headers and, once buffered,
+ * the body.
+ *
+ * @author karlomijaljevic
+ */
+public class CapturedDownload
+{
+	private static final Pattern FILE_NAME = Pattern.compile("filename\\*?=(?:UTF-8'')?\"?([^\";]+)\"?", Pattern.CASE_INSENSITIVE);
+
+	private final String url;
+	private final int status;
+	private final Map<String, String> headers;
+	private final byte[] body;
+
+	private CapturedDownload(String url, int status, Map<String, String> headers, byte[] body)
+	{
+		this.url = url;
+		this.status = status;
+		this.headers = headers;
+		this.body = body;
+	}
+
+	/**
+	 * Method reads a Fetch.requestPaused event of the response stage.
+	 */
+	@SuppressWarnings("unchecked")
+	static CapturedDownload of(Map<String, Object> event)
+	{
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		Object responseHeaders = event.get("responseHeaders");
+
+		if (responseHeaders instanceof List)
+		{
+			for (Object header : (List<Object>) responseHeaders)
+			{
+				Map<String, Object> entry = (Map<String, Object>) header;
+				headers.merge(String.valueOf(entry.get("name")).toLowerCase(Locale.ROOT), String.valueOf(entry.get("value")),
+						(first, second) -> first + ", " + second);
+			}
+		}
+
+		Object status = event.get("responseStatusCode");
+
+		return new CapturedDownload(url(event), status instanceof Number ? ((Number) status).intValue() : 0,
+				Collections.unmodifiableMap(headers), null);
+	}
+
+	@SuppressWarnings("unchecked")
+	static String url(Map<String, Object> event)
+	{
+		Object request = event.get("request");
+
+		return request instanceof Map ? String.valueOf(((Map<String, Object>) request).get("url")) : "";
+	}
+
+	CapturedDownload withBody(byte[] body)
+	{
+		return new CapturedDownload(url, status, headers, body);
+	}
+
+	public String getUrl()
+	{
+		return url;
+	}
+
+	public int getStatus()
+	{
+		return status;
+	}
+
+	/**
+	 * @return Returns the response headers keyed by their lower case name.
+	 */
+	public Map<String, String> getHeaders()
+	{
+		return headers;
+	}
+
+	/**
+	 * @return Returns the value of the header or NULL in case there is none.
+	 */
+	public String getHeader(String name)
+	{
+		return headers.get(name.toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * @return Returns the file name from the Content-Disposition header or else the last
+	 * segment of the URL path, the name Chrome would have saved the file under.
+	 */
+	public String getFileName()
+	{
+		String disposition = getHeader("Content-Disposition");
+
+		if (disposition != null)
+		{
+			Matcher matcher = FILE_NAME.matcher(disposition);
+
+			if (matcher.find())
+			{
+				return matcher.group(1).trim();
+			}
+		}
+
+		String path = url.replaceFirst("[?#].*$", "");
+
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+
+	/**
+	 * @return Returns the body or NULL in case it was streamed instead of buffered.
+	 */
+	public byte[] getBytes()
+	{
+		return body;
+	}
+
+	/**
+	 * @return Returns a stream over the buffered body.
+	 * @throws IllegalStateException -> In case the body was streamed instead of buffered.
+	 */
+	public InputStream openStream()
+	{
+		if (body == null)
+		{
+			throw new IllegalStateException("The body of " + url + " was not buffered");
+		}
+
+		return new ByteArrayInputStream(body);
+	}
+
+	/**
+	 * @return Returns the hex encoded SHA-256 of the buffered body.
+	 */
+	public String sha256() throws IOException
+	{
+		try (InputStream in = openStream())
+		{
+			return FileHelper.sha256(in);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return url + " (" + status + ", " + (body == null ? "streamed" : body.length + " bytes") + ")";
+	}
+}
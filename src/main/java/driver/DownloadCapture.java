@@ -0,0 +1,442 @@
+package driver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.devtools.Command;
+import org.openqa.selenium.json.Json;
+
+/**
+ * Captures downloads in memory through the Chrome DevTools Protocol instead of letting Chrome
+ * write them into the download directory. Responses whose URL matches the pattern are paused
+ * once their headers arrive, the body is read with Fetch.takeResponseBodyAsStream and the
+ * browser gets an empty 204 response instead, so nothing is written to disk and nothing
+ * has to be polled. Example:
+ * <pre>
+ * try (DownloadCapture capture = DownloadCapture.start(webDriver, "*&#47;downloads/*.pdf"))
+ * {
+ *     link.click();
+ *     CapturedDownload pdf = capture.await(Duration.ofSeconds(10));
+ *     new PdfVerifier(pdf.getBytes()).containsAll("Total");
+ * }
+ * </pre>
+ * Bodies can also be streamed straight into a reader without buffering them, e.g.
+ * capture.await(timeout, (download, body) -&gt; TabularVerifier.csv(body).expectRowCount(30).verify()).
+ *
+ * @implNote
+ * The capture only sees requests of the tab the session started with, like the
+ * {@link RequestBlocker}. Redirects are followed by the browser and only the final response
+ * is captured.
+ *
+ * @author karlomijaljevic
+ */
+public class DownloadCapture implements Closeable
+{
+	/**
+	 * Largest body await(Duration) buffers in memory unless set otherwise with maxBytes().
+	 */
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	private static final int READ_CHUNK_BYTES = 1024 * 1024;
+
+	/**
+	 * Reader of a captured body.
+	 */
+	public interface BodyReader<T>
+	{
+		/**
+		 * @param download -> URL, status and headers of the response, its bytes are not set.
+		 * @param body -> Stream of the body, read straight from the browser.
+		 */
+		T read(CapturedDownload download, InputStream body) throws IOException;
+	}
+
+	private final FetchInterceptor fetchInterceptor;
+	private final boolean ownsInterceptor;
+	private final Pattern urlPattern;
+	private final BlockingQueue<Map<String, Object>> paused = new LinkedBlockingQueue<Map<String, Object>>();
+	private final FetchInterceptor.Registration registration;
+
+	private long maxBytes = DEFAULT_MAX_BYTES;
+	private volatile boolean closed = false;
+
+	private DownloadCapture(FetchInterceptor fetchInterceptor, boolean ownsInterceptor, String urlPattern)
+	{
+		this.fetchInterceptor = fetchInterceptor;
+		this.ownsInterceptor = ownsInterceptor;
+		this.urlPattern = toRegex(urlPattern);
+
+		Map<String, Object> pattern = new HashMap<String, Object>();
+		pattern.put("urlPattern", urlPattern);
+		pattern.put("requestStage", "Response");
+
+		this.registration = fetchInterceptor.register(Collections.singletonList(pattern), this::onRequestPaused);
+	}
+
+	/**
+	 * Method starts capturing responses of the session.
+	 *
+	 * @param webDriver -> A {@link WebDriver} leased from the {@link DriverPool} or any other
+	 * driver that supports DevTools.
+	 * @param urlPattern -> URL pattern, '*' matches any number of characters and '?' one.
+	 * @return Returns the running {@link DownloadCapture}, close it once done.
+	 * @throws WebDriverException -> In case the driver does not support DevTools.
+	 */
+	public static DownloadCapture start(WebDriver webDriver, String urlPattern)
+	{
+		DriverSession session = DriverPool.getInstance().getSession(webDriver);
+
+		if (session != null)
+		{
+			return new DownloadCapture(session.getFetchInterceptor(), false, urlPattern);
+		}
+
+		FetchInterceptor fetchInterceptor = new FetchInterceptor(webDriver);
+
+		try
+		{
+			return new DownloadCapture(fetchInterceptor, true, urlPattern);
+		}
+		catch (WebDriverException wde)
+		{
+			fetchInterceptor.close();
+			throw wde;
+		}
+	}
+
+	/**
+	 * Limits how much of a body await(Duration) buffers.
+	 *
+	 * @return Returns this {@link DownloadCapture}.
+	 */
+	public DownloadCapture maxBytes(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+		return this;
+	}
+
+	/**
+	 * Method waits for the next matching response and reads its body into memory.
+	 *
+	 * @param timeout -> How long to wait for the response to arrive.
+	 * @return Returns the {@link CapturedDownload}.
+	 * @throws TimeoutException -> In case no matching response arrived in time.
+	 * @throws IOException -> In case the request failed or the body is larger than maxBytes().
+	 */
+	public CapturedDownload await(Duration timeout) throws IOException
+	{
+		return await(timeout, (download, body) -> {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+
+			while ((read = body.read(buffer)) != -1)
+			{
+				if (bytes.size() + read > maxBytes)
+				{
+					throw new IOException("Download " + download.getUrl() + " is larger than " + maxBytes + " bytes");
+				}
+
+				bytes.write(buffer, 0, read);
+			}
+
+			return download.withBody(bytes.toByteArray());
+		});
+	}
+
+	/**
+	 * Method waits for the next matching response and streams its body into the reader. The
+	 * browser is answered once the reader returns, whatever it did not read is discarded.
+	 *
+	 * @param timeout -> How long to wait for the response to arrive.
+	 * @param reader -> {@link BodyReader} the body is streamed into.
+	 * @return Returns what the reader returned.
+	 * @throws TimeoutException -> In case no matching response arrived in time.
+	 * @throws IOException -> In case the request failed or the reader threw.
+	 */
+	public <T> T await(Duration timeout, BodyReader<T> reader) throws IOException
+	{
+		Map<String, Object> event = nextResponse(timeout);
+		Object requestId = event.get("requestId");
+
+		if (event.containsKey("responseErrorReason"))
+		{
+			fetchInterceptor.continueRequest(requestId);
+			throw new IOException("Download " + CapturedDownload.url(event) + " failed: " + event.get("responseErrorReason"));
+		}
+
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("requestId", requestId);
+
+		try
+		{
+			Map<String, Object> result = fetchInterceptor.send(new Command<Map<String, Object>>("Fetch.takeResponseBodyAsStream",
+					parameters, input -> input.read(Json.MAP_TYPE)));
+
+			try (InputStream body = new ProtocolStream(String.valueOf(result.get("stream"))))
+			{
+				return reader.read(CapturedDownload.of(event), body);
+			}
+		}
+		finally
+		{
+			answerBrowser(requestId);
+		}
+	}
+
+	private Map<String, Object> nextResponse(Duration timeout)
+	{
+		long deadline = System.nanoTime() + timeout.toNanos();
+
+		while (true)
+		{
+			Map<String, Object> event;
+
+			try
+			{
+				event = paused.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+				throw new WebDriverException(ie);
+			}
+
+			if (event == null)
+			{
+				throw new TimeoutException("No response matching " + urlPattern + " arrived within " + timeout.toMillis() + " ms");
+			}
+
+			Object status = event.get("responseStatusCode");
+
+			if (status instanceof Number && ((Number) status).intValue() / 100 == 3)
+			{
+				// Let the browser follow the redirect, the target is paused again.
+				fetchInterceptor.continueRequest(event.get("requestId"));
+				continue;
+			}
+
+			return event;
+		}
+	}
+
+	/**
+	 * Method answers the paused request with an empty response so the browser neither
+	 * downloads the file nor leaves the current page.
+	 */
+	private void answerBrowser(Object requestId)
+	{
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("requestId", requestId);
+		parameters.put("responseCode", 204);
+		parameters.put("responseHeaders", new ArrayList<Object>());
+
+		try
+		{
+			fetchInterceptor.send(new Command<Void>("Fetch.fulfillRequest", parameters).doesNotSendResponse());
+		}
+		catch (WebDriverException wde)
+		{
+			// The tab is gone, there is nobody left to answer.
+		}
+	}
+
+	private boolean onRequestPaused(Map<String, Object> event)
+	{
+		if (closed || !FetchInterceptor.isResponseStage(event) || !urlPattern.matcher(CapturedDownload.url(event)).matches())
+		{
+			return false;
+		}
+
+		paused.add(event);
+		return true;
+	}
+
+	/**
+	 * Method stops capturing, responses that were captured but never awaited continue to the
+	 * browser as usual.
+	 */
+	@Override
+	public void close()
+	{
+		closed = true;
+		fetchInterceptor.unregister(registration);
+
+		Map<String, Object> event;
+		while ((event = paused.poll()) != null)
+		{
+			try
+			{
+				fetchInterceptor.continueRequest(event.get("requestId"));
+			}
+			catch (WebDriverException wde)
+			{
+				// The tab is gone and the request with it.
+			}
+		}
+
+		if (ownsInterceptor)
+		{
+			fetchInterceptor.close();
+		}
+	}
+
+	/**
+	 * Method turns a Fetch URL pattern into a regular expression, '\' escapes a wildcard.
+	 */
+	static Pattern toRegex(String urlPattern)
+	{
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+
+		for (int i = 0; i < urlPattern.length(); i++)
+		{
+			char c = urlPattern.charAt(i);
+
+			if (c == '\\' && i + 1 < urlPattern.length())
+			{
+				literal.append(urlPattern.charAt(++i));
+				continue;
+			}
+
+			if (c == '*' || c == '?')
+			{
+				if (literal.length() > 0)
+				{
+					regex.append(Pattern.quote(literal.toString()));
+					literal.setLength(0);
+				}
+
+				regex.append(c == '*' ? ".*" : ".");
+				continue;
+			}
+
+			literal.append(c);
+		}
+
+		if (literal.length() > 0)
+		{
+			regex.append(Pattern.quote(literal.toString()));
+		}
+
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+
+	/**
+	 * Body stream of the DevTools IO domain, read in chunks as the caller consumes it.
+	 */
+	private class ProtocolStream extends InputStream
+	{
+		private final String handle;
+
+		private byte[] chunk = new byte[0];
+		private int position = 0;
+		private boolean eof = false;
+		private boolean closed = false;
+
+		ProtocolStream(String handle)
+		{
+			this.handle = handle;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			byte[] single = new byte[1];
+			int read = read(single, 0, 1);
+
+			return read == -1 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException
+		{
+			if (length == 0)
+			{
+				return 0;
+			}
+
+			while (position == chunk.length)
+			{
+				if (eof)
+				{
+					return -1;
+				}
+
+				fill();
+			}
+
+			int read = Math.min(length, chunk.length - position);
+			System.arraycopy(chunk, position, buffer, offset, read);
+			position += read;
+
+			return read;
+		}
+
+		private void fill() throws IOException
+		{
+			Map<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("handle", handle);
+			parameters.put("size", READ_CHUNK_BYTES);
+
+			Map<String, Object> result;
+
+			try
+			{
+				result = fetchInterceptor.send(new Command<Map<String, Object>>("IO.read", parameters, input -> input.read(Json.MAP_TYPE)));
+			}
+			catch (WebDriverException wde)
+			{
+				throw new IOException("Reading the captured body failed", wde);
+			}
+
+			String data = String.valueOf(result.getOrDefault("data", ""));
+
+			chunk = Boolean.TRUE.equals(result.get("base64Encoded"))
+					? Base64.getDecoder().decode(data)
+					: data.getBytes(StandardCharsets.UTF_8);
+			position = 0;
+			eof = Boolean.TRUE.equals(result.get("eof"));
+		}
+
+		@Override
+		public void close()
+		{
+			if (closed)
+			{
+				return;
+			}
+
+			closed = true;
+
+			Map<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("handle", handle);
+
+			try
+			{
+				fetchInterceptor.send(new Command<Void>("IO.close", parameters).doesNotSendResponse());
+			}
+			catch (WebDriverException wde)
+			{
+				// The stream went away with the tab.
+			}
+		}
+	}
+}
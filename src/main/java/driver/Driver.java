@@ -1,57 +1,76 @@
 package driver;
 
-import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.logging.Level;
 
 import javax.inject.Singleton;
 
-import org.apache.commons.io.FileUtils;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.HasCapabilities;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.chrome.ChromeOptions;
-import org.testng.annotations.AfterTest;
+import org.openqa.selenium.logging.LogType;
+import org.openqa.selenium.logging.LoggingPreferences;
+import org.openqa.selenium.support.events.EventFiringDecorator;
+import org.openqa.selenium.support.events.WebDriverListener;
 
+import configuration.ChromeDriverPreferences;
+import configuration.ConfigurationOverrides;
 import configuration.DriverConfiguration;
+import helper.FileHelper;
+import metrics.CommandLatencyListener;
+import metrics.CommandMetrics;
+import metrics.PagePerformance;
+import metrics.PageTimingListener;
+import proxy.CachingProxy;
 
 /**
  * Singleton class to help with the {@link WebDriver} setup. Looks for a driver
- * in the resources/drivers/ folder. Checks the {@link DriverConfiguration} singleton
+ * in the resources/drivers/ folder. Checks the current {@link DriverConfiguration} snapshot
  * for any driver configurations e.g. if it is headless or not.
  * 
+ * This class is a factory for new {@link WebDriver} sessions, it does not hold on to
+ * them. Sessions are leased out to tests by the {@link DriverPool}.
+ * 
  * @implNote
- * Note that this class will create a directory called 'Driver' next to the .jar
- * file or inside the Development folder in which it will place the ChromeDriver
- * instance. Please delete that instance in the main {@link AfterTest} method using
- * the method deleteDriver() after of course quitting it.
+ * Note that the ChromeDriver is extracted into a persistent {@link DriverCache}
+ * (~/.cache/tests/drivers/ by default) keyed by its content hash. It is reused by every
+ * later run and by every JVM on the machine, so it is never deleted.
+ * 
+ * In case a grid URL is configured sessions are created on that Selenium Grid (or standalone
+ * server) instead, see {@link RemoteSessionFactory}. No local ChromeDriver is needed then.
  * 
  * @author karlomijaljevic
  */
 @Singleton
 public class Driver
 {
-	private static final String SUPPRT_FOLDER = "Driver";
 	private static final String DRIVERS_FOLDER = "drivers/";
+	private static final String DOWNLOAD_DIRECTORY_PREFIX = "tests-downloads-";
+	private static final long MEGABYTE = 1024 * 1024;
 
 	private static Driver instance;
 
-	private WebDriver webDriver;
+	private final DriverCache driverCache = new DriverCache();
+	private final ProfileTemplate profileTemplate = new ProfileTemplate();
+
+	private Path chromeDriverPath;
+	private RemoteSessionFactory remoteSessionFactory;
 
 	private Driver()
 	{
-		setupDriver();
 	}
 
-	public static Driver getInstance()
+	public static synchronized Driver getInstance()
 	{
 		if (instance == null)
 		{
@@ -62,91 +81,271 @@ public class Driver
 	}
 
 	/**
-	 * Method extracts the driver from the resources/drivers/ directory. And sets it up
-	 * as a default driver for tests.
+	 * Method creates a brand new {@link WebDriver} session configured from the current
+	 * {@link DriverConfiguration} snapshot. Every call launches a new browser with
+	 * its own temporary download directory so concurrent sessions never see each
+	 * other's files.
+	 * 
+	 * The launch time is recorded in the {@link CommandMetrics} and, unless disabled in the
+	 * {@link DriverConfiguration}, the driver is decorated with a {@link CommandLatencyListener}
+	 * that times every command. The decorated driver keeps every interface of the ChromeDriver
+	 * (e.g. {@link org.openqa.selenium.chromium.HasCdp}). With page performance enabled every
+	 * get() is followed by a {@link PagePerformance} capture. Requests matching the configured
+	 * blocklist are blocked from the start, see {@link RequestBlocker}.
+	 * 
+	 * In case profile templates are enabled the browser starts from its own clone of a warmed
+	 * up profile, see {@link ProfileTemplate}. Remote sessions get the same options and
+	 * preferences but neither a profile template nor the caching proxy, both only exist on
+	 * this machine.
 	 * 
-	 * @implNote
-	 * The {@link WebDriver} will be set to NULL in case there is a {@link IOException}.
+	 * @return Returns a new {@link DriverSession} instance on success or NULL on failure.
 	 */
-	private void setupDriver()
+	public DriverSession createSession()
 	{
-		final String chromeDriverName = getChromeDriverName();
+		return createSession(ConfigurationOverrides.NONE);
+	}
 
-		ClassLoader classLoader = getClass().getClassLoader();
-		URL resource = classLoader.getResource(DRIVERS_FOLDER + chromeDriverName);
+	/**
+	 * Same as {@link #createSession()} but with overrides layered on top of the current
+	 * {@link DriverConfiguration} snapshot.
+	 * 
+	 * @param overrides -> {@link ConfigurationOverrides} of the session.
+	 * @return Returns a new {@link DriverSession} instance on success or NULL on failure.
+	 */
+	public DriverSession createSession(ConfigurationOverrides overrides)
+	{
+		DriverConfiguration configuration = DriverConfiguration.current().with(overrides);
+		boolean remote = configuration.getGridUrl() != null;
 
-		Path path = Paths.get(SUPPRT_FOLDER);
-		if (!Files.exists(path))
+		if (remote ? getRemoteSessionFactory(configuration) == null : !setupDriver())
 		{
-			File file = new File(SUPPRT_FOLDER);
-			file.mkdirs();
+			return null;
 		}
 
-		String chromeSupprotDriverPath = SUPPRT_FOLDER + File.separator + chromeDriverName;
-		path = Paths.get(chromeSupprotDriverPath);
-		File chromeDriver = new File(chromeSupprotDriverPath);
+		Path downloadDirectory = createDownloadDirectory();
 
-		if (!Files.exists(path))
+		if (downloadDirectory == null)
 		{
-			try
+			return null;
+		}
+
+		HashMap<String, Object> chromePrefs = new HashMap<String, Object>(configuration.getWebDriverPreferences());
+		chromePrefs.put(ChromeDriverPreferences.DOWNLOAD_DEFAULT_DIRECTORY.getParameterName(), downloadDirectory.toString());
+
+		ChromeOptions options = configureChromeOptions(configuration);
+		Path profileDirectory = remote ? null : createProfileDirectory(configuration);
+
+		if (profileDirectory != null)
+		{
+			options.addArguments(ProfileTemplate.USER_DATA_DIR_SWITCH + "=" + profileDirectory);
+		}
+
+		options.setExperimentalOption("prefs", chromePrefs);
+
+		try
+		{
+			long start = System.nanoTime();
+			WebDriver browser = remote ? remoteSessionFactory.create(options) : new ChromeDriver(options);
+			CommandMetrics.getInstance().recordSessionCreation(System.nanoTime() - start);
+
+			WebDriver webDriver = browser;
+			String userDataDirectory = remote ? null : getUserDataDirectory(browser, profileDirectory);
+
+			FetchInterceptor fetchInterceptor = new FetchInterceptor(webDriver);
+			RequestBlocker requestBlocker = installRequestBlocker(fetchInterceptor, configuration);
+
+			List<WebDriverListener> listeners = new ArrayList<WebDriverListener>();
+
+			if (configuration.isCommandMetricsEnabled())
+			{
+				listeners.add(new CommandLatencyListener());
+			}
+			if (configuration.isPagePerformanceEnabled())
 			{
-				chromeDriver.createNewFile();
-				FileUtils.copyURLToFile(resource, chromeDriver);
+				listeners.add(new PageTimingListener());
 			}
-			catch (IOException ioe)
+			if (!listeners.isEmpty())
 			{
-				ioe.printStackTrace();
-				setWebDriver(null);
-				return;
+				webDriver = new EventFiringDecorator<WebDriver>(listeners.toArray(new WebDriverListener[0])).decorate(webDriver);
 			}
+
+			return new DriverSession(webDriver, browser, userDataDirectory, overrides, downloadDirectory, profileDirectory,
+					fetchInterceptor, requestBlocker);
+		}
+		catch (WebDriverException wde)
+		{
+			FileHelper.deleteRecursivelyAsync(downloadDirectory);
+			FileHelper.deleteRecursivelyAsync(profileDirectory);
+			throw wde;
 		}
+	}
+
+	/**
+	 * Method finds the user data directory of a local browser, the {@link SessionWatchdog}
+	 * finds the browser processes by it. ChromeDriver reports the directory it created (or
+	 * was given) in the 'chrome' capability.
+	 * 
+	 * @return Returns the directory or NULL in case it is not known.
+	 */
+	private String getUserDataDirectory(WebDriver browser, Path profileDirectory)
+	{
+		if (profileDirectory != null)
+		{
+			return profileDirectory.toString();
+		}
+		if (!(browser instanceof HasCapabilities))
+		{
+			return null;
+		}
+
+		Capabilities capabilities = ((HasCapabilities) browser).getCapabilities();
+		Object chrome = capabilities.getCapability("chrome");
+
+		if (chrome instanceof Map)
+		{
+			Object userDataDir = ((Map<?, ?>) chrome).get("userDataDir");
+			return userDataDir == null ? null : userDataDir.toString();
+		}
+
+		return null;
+	}
 
-		if (!chromeDriverName.contains("exe"))
+	/**
+	 * Method creates the {@link RemoteSessionFactory} for the configured grid on the first
+	 * call.
+	 * 
+	 * @return Returns the {@link RemoteSessionFactory} or NULL in case the grid URL is invalid.
+	 */
+	private synchronized RemoteSessionFactory getRemoteSessionFactory(DriverConfiguration configuration)
+	{
+		if (remoteSessionFactory == null)
 		{
-			Set<PosixFilePermission> perms = new HashSet<PosixFilePermission>();
-			perms.add(PosixFilePermission.OWNER_READ);
-			perms.add(PosixFilePermission.OWNER_WRITE);
-			perms.add(PosixFilePermission.OWNER_EXECUTE);
-			perms.add(PosixFilePermission.GROUP_EXECUTE);
-			perms.add(PosixFilePermission.GROUP_WRITE);
-			perms.add(PosixFilePermission.GROUP_READ);
-			perms.add(PosixFilePermission.OTHERS_READ);
-			perms.add(PosixFilePermission.OTHERS_WRITE);
-			perms.add(PosixFilePermission.OTHERS_EXECUTE);
 			try
 			{
-				Files.setPosixFilePermissions(chromeDriver.toPath(), perms);
+				remoteSessionFactory = new RemoteSessionFactory(configuration.getGridUrl(),
+						configuration.getGridSessionTimeoutSeconds(), configuration.getGridConcurrentRequests());
 			}
-			catch (IOException ioe)
+			catch (IllegalArgumentException iae)
 			{
-				ioe.printStackTrace();
-				setWebDriver(null);
-				return;
+				iae.printStackTrace();
 			}
 		}
 
-		System.setProperty("webdriver.chrome.driver", chromeDriver.getAbsolutePath());
+		return remoteSessionFactory;
+	}
 
-		HashMap<String, Object> chromePrefs = DriverConfiguration.getInstance().getWebDriverPreferences();
+	/**
+	 * Method clones the {@link ProfileTemplate} for a new session, unless templates are
+	 * disabled or the options already name a user data directory.
+	 * 
+	 * @return Returns the {@link Path} of the profile or NULL in case the session should let
+	 * ChromeDriver create a fresh one.
+	 */
+	private Path createProfileDirectory(DriverConfiguration configuration)
+	{
+		if (!configuration.isProfileTemplateEnabled()
+				|| configuration.getWebDriverOptions().containsKey(ProfileTemplate.USER_DATA_DIR_SWITCH))
+		{
+			return null;
+		}
 
-		ChromeOptions options = configureChromeOptions();
+		return profileTemplate.createClone(configureChromeOptions(configuration), configuration.getProfileWarmUpUrls());
+	}
 
-		options.setExperimentalOption("prefs", chromePrefs);
+	/**
+	 * Method deletes the profile template, called once the run is over.
+	 */
+	void discardProfileTemplate()
+	{
+		profileTemplate.discard();
+	}
+
+	/**
+	 * Method sets up the {@link RequestBlocker} of a new session. A session that can not block
+	 * requests is still usable, it only loads slower.
+	 * 
+	 * @return Returns the {@link RequestBlocker} or NULL in case nothing is blocked.
+	 */
+	private RequestBlocker installRequestBlocker(FetchInterceptor fetchInterceptor, DriverConfiguration configuration)
+	{
+		try
+		{
+			return RequestBlocker.install(fetchInterceptor, configuration);
+		}
+		catch (WebDriverException wde)
+		{
+			wde.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Method creates a new, empty temporary download directory for a session.
+	 * 
+	 * @return Returns the {@link Path} of the directory or NULL on failure.
+	 */
+	Path createDownloadDirectory()
+	{
+		try
+		{
+			return Files.createTempDirectory(DOWNLOAD_DIRECTORY_PREFIX).toAbsolutePath();
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Method resolves the driver from the resources/drivers/ directory through the
+	 * {@link DriverCache} and sets it up as a default driver for tests. The binary is only
+	 * extracted when no copy with the same content hash is cached yet, and the result is
+	 * remembered so later sessions of this JVM skip the lookup entirely.
+	 * 
+	 * @return Returns true on success and false in case there is a {@link IOException}.
+	 */
+	private synchronized boolean setupDriver()
+	{
+		if (chromeDriverPath != null)
+		{
+			return true;
+		}
+
+		final String chromeDriverName = getChromeDriverName();
+
+		ClassLoader classLoader = getClass().getClassLoader();
+		URL resource = classLoader.getResource(DRIVERS_FOLDER + chromeDriverName);
 
-		setWebDriver(new ChromeDriver(options));
+		try
+		{
+			chromeDriverPath = driverCache.resolve(resource, chromeDriverName);
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+			return false;
+		}
+
+		System.setProperty("webdriver.chrome.driver", chromeDriverPath.toAbsolutePath().toString());
+
+		return true;
 	}
 
 	/**
-	 * Method used to configure {@link ChromeOptions} for the {@link WebDriver}.
+	 * Method used to configure {@link ChromeOptions} for the {@link WebDriver}. In case the
+	 * {@link CachingProxy} is enabled it is started on the first call and every local session
+	 * is pointed at it.
 	 * 
+	 * @param configuration -> {@link DriverConfiguration} snapshot of the session.
 	 * @return Returns a {@link ChromeOptions} object.
 	 */
-	private ChromeOptions configureChromeOptions()
+	ChromeOptions configureChromeOptions(DriverConfiguration configuration)
 	{
 		ChromeOptions options = new ChromeOptions();
 		List<String> optionsList = new ArrayList<String>();
 
-		DriverConfiguration.getInstance().getWebDriverOptions().entrySet().forEach(entry -> {
+		configuration.getWebDriverOptions().entrySet().forEach(entry -> {
 			if (entry.getValue() == null)
 			{
 				optionsList.add(entry.getKey());
@@ -157,36 +356,47 @@ public class Driver
 			}
 		});
 
+		if (configuration.isFailureArtifactsEnabled())
+		{
+			// Chrome only keeps the console messages for the failure artifacts when asked to.
+			LoggingPreferences logging = new LoggingPreferences();
+			logging.enable(LogType.BROWSER, Level.ALL);
+			options.setCapability(ChromeOptions.LOGGING_PREFS, logging);
+		}
+
+		if (configuration.isCachingProxyEnabled() && configuration.getGridUrl() == null && startCachingProxy(configuration))
+		{
+			CachingProxy proxy = CachingProxy.getInstance();
+
+			optionsList.add("--proxy-server=" + proxy.getProxyServer());
+
+			if (proxy.isInterceptingHttps())
+			{
+				// The proxy answers HTTPS with its own self-signed certificate.
+				optionsList.add("--ignore-certificate-errors");
+			}
+		}
+
 		return options.addArguments(optionsList);
 	}
 
 	/**
-	 * Method simply deletes the driver created from the resources/drivers/ instance
-	 * which it had placed either next to a executable .jar or inside the development
-	 * directory.
+	 * Method starts the shared {@link CachingProxy} unless it already runs. Sessions are
+	 * still created without it in case it can not be started.
 	 * 
-	 * @return Returns true if the file was successfully deleted and false otherwise. Please
-	 * use this boolean as a assertion in the last {@link AfterTest} so that we know that the
-	 * file was cleaned.
+	 * @return Returns true in case the proxy is running and false otherwise.
 	 */
-	public boolean deleteDriver()
+	private boolean startCachingProxy(DriverConfiguration configuration)
 	{
-		String chromeSupprotDriverPath = SUPPRT_FOLDER + File.separator + getChromeDriverName();
-
-		if (Files.exists(Paths.get(chromeSupprotDriverPath)))
+		try
 		{
-			File chromeDriver = new File(chromeSupprotDriverPath);
-
-			if (chromeDriver.delete())
-			{
-				File supportFolder = new File(SUPPRT_FOLDER);
-
-				return supportFolder.delete();
-			}
-			else
-			{
-				return false;
-			}
+			CachingProxy.getInstance().start(configuration.getCacheMemoryMegabytes() * MEGABYTE,
+					configuration.getCacheDiskMegabytes() * MEGABYTE, configuration.isCacheImmutableAggressively());
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+			return false;
 		}
 
 		return true;
@@ -215,14 +425,4 @@ public class Driver
 			return null;
 		}
 	}
-
-	public WebDriver getWebDriver()
-	{
-		return webDriver;
-	}
-
-	private void setWebDriver(WebDriver webDriver)
-	{
-		this.webDriver = webDriver;
-	}
 }
\ No newline at end of file
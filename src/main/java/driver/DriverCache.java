@@ -0,0 +1,137 @@
+package driver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import helper.FileHelper;
+
+/**
+ * Persistent, process safe cache for driver binaries that are bundled inside the
+ * resources/drivers/ folder. Every binary is stored under a directory named after the
+ * SHA-256 hash of its content, e.g. ~/.cache/tests/drivers/&lt;sha256&gt;/chromedriver.
+ *
+ * A binary is extracted at most once per machine. The copy is written to a temporary file,
+ * made executable and then atomically renamed to its final name, so the existence of the
+ * final file means it is complete. A file lock guards the extraction so concurrent JVMs
+ * on the same machine (e.g. parallel CI jobs) extract once and reuse the result.
+ *
+ * @author karlomijaljevic
+ */
+public class DriverCache
+{
+	private static final String CACHE_FOLDER = "tests" + File.separator + "drivers";
+	private static final String LOCK_FILE = ".lock";
+	private static final String EXECUTABLE_PERMISSIONS = "rwxr-xr-x";
+
+	private final Path cacheRoot;
+
+	public DriverCache()
+	{
+		this(defaultCacheRoot());
+	}
+
+	public DriverCache(Path cacheRoot)
+	{
+		this.cacheRoot = cacheRoot;
+	}
+
+	/**
+	 * Method returns the path of the cached copy of the given resource, extracting it first
+	 * in case no copy with the same content hash is present.
+	 *
+	 * @param resource -> {@link URL} of the bundled driver binary.
+	 * @param fileName -> Name the cached binary should have e.g. chromedriver.exe.
+	 * @return Returns the {@link Path} to the executable binary.
+	 * @throws IOException -> In case the resource could not be read or extracted.
+	 */
+	public Path resolve(URL resource, String fileName) throws IOException
+	{
+		if (resource == null)
+		{
+			throw new IOException("Driver resource " + fileName + " was not found on the classpath.");
+		}
+
+		String hash = hash(resource);
+
+		Path directory = cacheRoot.resolve(hash);
+		Path target = directory.resolve(fileName);
+
+		if (Files.isRegularFile(target))
+		{
+			return target;
+		}
+
+		Files.createDirectories(directory);
+
+		return FileHelper.withFileLock(directory.resolve(LOCK_FILE), () -> {
+			// Another process may have finished the extraction while we waited for the lock.
+			if (!Files.isRegularFile(target))
+			{
+				extract(resource, target);
+			}
+
+			return target;
+		});
+	}
+
+	public Path getCacheRoot()
+	{
+		return cacheRoot;
+	}
+
+	/**
+	 * Method copies the resource to a temporary file next to the target, makes it executable
+	 * and renames it to the target name.
+	 */
+	private void extract(URL resource, Path target) throws IOException
+	{
+		FileHelper.writeAtomically(target, temporary -> {
+			try (InputStream in = resource.openStream())
+			{
+				Files.copy(in, temporary, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+			{
+				Files.setPosixFilePermissions(temporary, PosixFilePermissions.fromString(EXECUTABLE_PERMISSIONS));
+			}
+		});
+	}
+
+	/**
+	 * Method streams the resource through a SHA-256 digest without writing it anywhere.
+	 *
+	 * @return Returns the hex encoded hash.
+	 */
+	private String hash(URL resource) throws IOException
+	{
+		try (InputStream in = resource.openStream())
+		{
+			return FileHelper.sha256(in);
+		}
+	}
+
+	/**
+	 * Method returns the default cache root. Uses $XDG_CACHE_HOME when set and
+	 * ~/.cache otherwise.
+	 */
+	private static Path defaultCacheRoot()
+	{
+		String xdgCacheHome = System.getenv("XDG_CACHE_HOME");
+
+		if (xdgCacheHome != null && !xdgCacheHome.isEmpty())
+		{
+			return Paths.get(xdgCacheHome, CACHE_FOLDER);
+		}
+
+		return Paths.get(System.getProperty("user.home"), ".cache", CACHE_FOLDER);
+	}
+}
\ No newline at end of file
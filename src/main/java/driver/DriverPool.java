@@ -0,0 +1,492 @@
+package driver;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Singleton;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chromium.HasCdp;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+
+import configuration.ConfigurationOverrides;
+import configuration.DriverConfiguration;
+import helper.FileHelper;
+
+/**
+ * Singleton bounded pool of {@link WebDriver} sessions. Test threads lease a session
+ * (usually in a {@link BeforeClass} method) and give it back once they are done (usually
+ * in a {@link AfterClass} method). This way TestNG parallel execution gets one browser per
+ * thread instead of every thread sharing the same ChromeDriver.
+ *
+ * The pool never holds more than {@link DriverConfiguration#getMaxPoolSize()} sessions,
+ * resets every session when it is returned (cookies, storage, extra tabs) and quits
+ * sessions which have been idle longer than {@link DriverConfiguration#getIdleTimeoutSeconds()}.
+ * Sessions that grew too large, ran too many tests, hang or crashed are quit instead of
+ * reused, see {@link SessionWatchdog}.
+ *
+ * @implNote
+ * All sessions are quit when the JVM shuts down.
+ *
+ * @author karlomijaljevic
+ */
+@Singleton
+public class DriverPool
+{
+	private static final String RESET_STORAGE_SCRIPT =
+			"try { window.localStorage.clear(); window.sessionStorage.clear(); } catch (e) {}";
+
+	private static final long SHUTDOWN_CLEANUP_TIMEOUT_SECONDS = 30;
+
+	private static DriverPool instance;
+
+	private final Semaphore leasePermits;
+	private final ConcurrentLinkedDeque<DriverSession> idleSessions = new ConcurrentLinkedDeque<DriverSession>();
+	private final Map<WebDriver, DriverSession> leasedSessions = new ConcurrentHashMap<WebDriver, DriverSession>();
+	private final ScheduledExecutorService evictor;
+	private final SessionWatchdog watchdog = new SessionWatchdog();
+
+	private DriverPool()
+	{
+		DriverConfiguration configuration = DriverConfiguration.current();
+
+		leasePermits = new Semaphore(Math.max(1, configuration.getMaxPoolSize()), true);
+
+		evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "driver-pool-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		long period = Math.max(1, configuration.getIdleTimeoutSeconds() / 2);
+		evictor.scheduleWithFixedDelay(this::evictIdleSessions, period, period, TimeUnit.SECONDS);
+		evictor.scheduleWithFixedDelay(this::inspectSessions, SessionWatchdog.INTERVAL_SECONDS, SessionWatchdog.INTERVAL_SECONDS,
+				TimeUnit.SECONDS);
+
+		Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "driver-pool-shutdown"));
+	}
+
+	public static synchronized DriverPool getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new DriverPool();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Method leases a {@link WebDriver} session to the calling thread. An idle session is
+	 * reused if there is one, otherwise a new one is created. In case the pool is exhausted
+	 * the call blocks until a session is returned or the lease timeout passes.
+	 *
+	 * @return Returns a {@link WebDriver} instance on success or NULL on failure.
+	 */
+	public WebDriver lease()
+	{
+		return lease(ConfigurationOverrides.NONE);
+	}
+
+	/**
+	 * Same as {@link #lease()} but for a session with overrides layered on top of the current
+	 * {@link DriverConfiguration}. Only idle sessions created with equal overrides are reused.
+	 *
+	 * @param overrides -> {@link ConfigurationOverrides} of the session.
+	 * @return Returns a {@link WebDriver} instance on success or NULL on failure.
+	 */
+	public WebDriver lease(ConfigurationOverrides overrides)
+	{
+		DriverSession session = leaseSession(overrides);
+
+		return session == null ? null : session.getWebDriver();
+	}
+
+	/**
+	 * Same as {@link #lease()} but returns the whole {@link DriverSession}.
+	 *
+	 * @return Returns a {@link DriverSession} instance on success or NULL on failure.
+	 */
+	public DriverSession leaseSession()
+	{
+		return leaseSession(ConfigurationOverrides.NONE);
+	}
+
+	/**
+	 * Same as {@link #lease(ConfigurationOverrides)} but returns the whole {@link DriverSession}.
+	 * In case no idle session has these overrides a new session is created next to the idle
+	 * ones, only once the pool is full the least recently used idle session is quit to make
+	 * room, so the pool never holds more sessions than its size. Idle sessions
+	 * that fail the health check are replaced by new ones.
+	 *
+	 * @return Returns a {@link DriverSession} instance on success or NULL on failure.
+	 */
+	public DriverSession leaseSession(ConfigurationOverrides overrides)
+	{
+		try
+		{
+			long timeout = DriverConfiguration.current().getLeaseTimeoutSeconds();
+
+			if (!leasePermits.tryAcquire(timeout, TimeUnit.SECONDS))
+			{
+				System.err.println("No WebDriver session became available within " + timeout + " seconds.");
+				return null;
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+
+		DriverConfiguration configuration = DriverConfiguration.current();
+		DriverSession session = pollIdleSession(overrides);
+		String unhealthy;
+
+		while (session != null && (unhealthy = watchdog.checkLease(session, configuration)) != null)
+		{
+			recycleSession(session, unhealthy);
+			session = pollIdleSession(overrides);
+		}
+
+		if (session == null)
+		{
+			if (idleSessions.size() + leasedSessions.size() >= configuration.getMaxPoolSize())
+			{
+				DriverSession unmatched = idleSessions.pollLast();
+
+				if (unmatched != null)
+				{
+					quitSession(unmatched);
+				}
+			}
+
+			session = createSession(overrides);
+
+			if (session == null)
+			{
+				leasePermits.release();
+				return null;
+			}
+		}
+
+		session.markLeased();
+		leasedSessions.put(session.getWebDriver(), session);
+
+		return session;
+	}
+
+	/**
+	 * Method returns a leased {@link WebDriver} session to the pool. The session is reset
+	 * before another thread can lease it. If the reset fails, or the {@link SessionWatchdog}
+	 * decides the session should be recycled, the session is quit instead.
+	 *
+	 * @param webDriver -> The {@link WebDriver} instance that was returned by {@link #lease()}.
+	 * @return Returns true if the session was returned to the pool, false if it was discarded
+	 * or did not belong to the pool.
+	 */
+	public boolean release(WebDriver webDriver)
+	{
+		if (webDriver == null)
+		{
+			return false;
+		}
+
+		DriverSession session = leasedSessions.remove(webDriver);
+
+		if (session == null)
+		{
+			return false;
+		}
+
+		try
+		{
+			String recycleReason = watchdog.checkLimits(session, DriverConfiguration.current());
+
+			if (recycleReason != null)
+			{
+				recycleSession(session, recycleReason);
+				return false;
+			}
+
+			if (resetSession(session))
+			{
+				session.markReleased();
+				idleSessions.offerFirst(session);
+				return true;
+			}
+
+			quitSession(session);
+			return false;
+		}
+		finally
+		{
+			leasePermits.release();
+		}
+	}
+
+	/**
+	 * Method looks up the {@link DriverSession} of a currently leased {@link WebDriver}.
+	 *
+	 * @param webDriver -> The leased {@link WebDriver} instance.
+	 * @return Returns the {@link DriverSession} or NULL in case the driver is not leased.
+	 */
+	public DriverSession getSession(WebDriver webDriver)
+	{
+		return webDriver == null ? null : leasedSessions.get(webDriver);
+	}
+
+	/**
+	 * Method looks up the {@link DriverSession} a thread leased, for code that does not hold
+	 * the {@link WebDriver} itself (e.g. a TestNG listener).
+	 *
+	 * @param thread -> The thread that called lease().
+	 * @return Returns the {@link DriverSession} or NULL in case the thread holds no session.
+	 */
+	public DriverSession getSessionLeasedBy(Thread thread)
+	{
+		for (DriverSession session : leasedSessions.values())
+		{
+			if (session.getLeaseThread() == thread)
+			{
+				return session;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return Returns the number of sessions the {@link SessionWatchdog} recycled so far by reason.
+	 */
+	public Map<String, Integer> getRecycledSessions()
+	{
+		return watchdog.getRecycled();
+	}
+
+	/**
+	 * Method quits every session the pool knows about.
+	 */
+	public synchronized void shutdown()
+	{
+		evictor.shutdownNow();
+
+		List<DriverSession> sessions = new ArrayList<DriverSession>(leasedSessions.values());
+		leasedSessions.clear();
+
+		DriverSession idle;
+		while ((idle = idleSessions.pollFirst()) != null)
+		{
+			sessions.add(idle);
+		}
+
+		sessions.forEach(this::quitSession);
+		Driver.getInstance().discardProfileTemplate();
+
+		FileHelper.awaitPendingDeletes(Duration.ofSeconds(SHUTDOWN_CLEANUP_TIMEOUT_SECONDS));
+	}
+
+	/**
+	 * Method quits sessions which have been sitting in the pool for longer than the
+	 * configured idle timeout.
+	 */
+	private void evictIdleSessions()
+	{
+		long idleTimeoutMillis = TimeUnit.SECONDS.toMillis(DriverConfiguration.current().getIdleTimeoutSeconds());
+
+		for (DriverSession session : idleSessions)
+		{
+			if (session.isIdleLongerThan(idleTimeoutMillis) && idleSessions.remove(session))
+			{
+				quitSession(session);
+			}
+		}
+	}
+
+	/**
+	 * Method samples every session and recycles the idle ones that are no longer healthy.
+	 * Leased sessions are left to their test, they are checked again when returned. An idle
+	 * session is taken out of the pool while it is checked and put back at the least recently
+	 * used end in case it is healthy.
+	 */
+	private void inspectSessions()
+	{
+		Collection<DriverSession> sessions = new ArrayList<DriverSession>(idleSessions);
+		sessions.addAll(leasedSessions.values());
+
+		watchdog.sample(sessions);
+
+		DriverConfiguration configuration = DriverConfiguration.current();
+
+		for (DriverSession session : new ArrayList<DriverSession>(idleSessions))
+		{
+			// Taken out while it is checked, so no test can lease it in the meantime.
+			if (!idleSessions.removeFirstOccurrence(session))
+			{
+				continue;
+			}
+
+			String reason = watchdog.checkIdle(session, configuration);
+
+			if (reason != null)
+			{
+				recycleSession(session, reason);
+			}
+			else if (evictor.isShutdown())
+			{
+				quitSession(session);
+			}
+			else
+			{
+				idleSessions.offerLast(session);
+			}
+		}
+	}
+
+	/**
+	 * Method takes the most recently returned idle session with the given overrides.
+	 *
+	 * @return Returns the {@link DriverSession} or NULL in case there is none.
+	 */
+	private DriverSession pollIdleSession(ConfigurationOverrides overrides)
+	{
+		for (DriverSession session : idleSessions)
+		{
+			if (session.getOverrides().equals(overrides) && idleSessions.removeFirstOccurrence(session))
+			{
+				return session;
+			}
+		}
+
+		return null;
+	}
+
+	private DriverSession createSession(ConfigurationOverrides overrides)
+	{
+		try
+		{
+			return Driver.getInstance().createSession(overrides);
+		}
+		catch (WebDriverException wde)
+		{
+			wde.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Method brings a session back to a clean state: closes every tab but one, drops
+	 * cookies and storage, swaps in a fresh download directory and navigates to a blank
+	 * page. The old download directory is deleted in the background. The reset goes through
+	 * the undecorated driver so it does not show up in the command metrics or page timings.
+	 *
+	 * @param session -> The {@link DriverSession} to reset.
+	 * @return Returns true on success and false otherwise.
+	 */
+	private boolean resetSession(DriverSession session)
+	{
+		WebDriver webDriver = session.getBrowser();
+
+		try
+		{
+			List<String> handles = new ArrayList<String>(webDriver.getWindowHandles());
+
+			for (int i = 1; i < handles.size(); i++)
+			{
+				webDriver.switchTo().window(handles.get(i)).close();
+			}
+
+			webDriver.switchTo().window(handles.get(0));
+
+			if (webDriver instanceof JavascriptExecutor)
+			{
+				((JavascriptExecutor) webDriver).executeScript(RESET_STORAGE_SCRIPT);
+			}
+
+			if (webDriver instanceof HasCdp)
+			{
+				((HasCdp) webDriver).executeCdpCommand("Network.clearBrowserCookies", new HashMap<String, Object>());
+				rotateDownloadDirectory(session);
+			}
+			else
+			{
+				webDriver.manage().deleteAllCookies();
+				FileHelper.deleteDirectoryContents(session.getDownloadDirectory());
+			}
+
+			webDriver.manage().timeouts().implicitlyWait(Duration.ZERO);
+			webDriver.get("about:blank");
+
+			return true;
+		}
+		catch (WebDriverException | IndexOutOfBoundsException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Method points the browser at a brand new download directory through the Chrome
+	 * DevTools Protocol and schedules the old one for deletion.
+	 */
+	private void rotateDownloadDirectory(DriverSession session)
+	{
+		Path freshDirectory = Driver.getInstance().createDownloadDirectory();
+
+		if (freshDirectory == null)
+		{
+			FileHelper.deleteDirectoryContents(session.getDownloadDirectory());
+			return;
+		}
+
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("behavior", "allow");
+		parameters.put("downloadPath", freshDirectory.toString());
+
+		((HasCdp) session.getBrowser()).executeCdpCommand("Browser.setDownloadBehavior", parameters);
+
+		Path oldDirectory = session.getDownloadDirectory();
+		session.setDownloadDirectory(freshDirectory);
+		FileHelper.deleteRecursivelyAsync(oldDirectory);
+	}
+
+	private void recycleSession(DriverSession session, String reason)
+	{
+		watchdog.recycling(session, reason);
+		quitSession(session);
+	}
+
+	private void quitSession(DriverSession session)
+	{
+		try
+		{
+			session.getFetchInterceptor().close();
+
+			session.getWebDriver().quit();
+		}
+		catch (WebDriverException wde)
+		{
+			wde.printStackTrace();
+		}
+		finally
+		{
+			FileHelper.deleteRecursivelyAsync(session.getDownloadDirectory());
+			FileHelper.deleteRecursivelyAsync(session.getProfileDirectory());
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,245 @@
+package driver;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openqa.selenium.WebDriver;
+
+import configuration.ConfigurationOverrides;
+
+/**
+ * Class that wraps a single pooled {@link WebDriver} session together with the
+ * bookkeeping the {@link DriverPool} needs, e.g. when it was last returned, and the
+ * resources that belong only to this session such as its download directory and profile.
+ * The {@link SessionWatchdog} keeps the latest health figures of the session here as well.
+ *
+ * @author karlomijaljevic
+ */
+public class DriverSession
+{
+	private final WebDriver webDriver;
+	private final WebDriver browser;
+	private final String userDataDirectory;
+	private final ConfigurationOverrides overrides;
+	private final long createdAt;
+
+	private final Path profileDirectory;
+	private final FetchInterceptor fetchInterceptor;
+	private final RequestBlocker requestBlocker;
+
+	private volatile Path downloadDirectory;
+	private volatile long lastReleasedAt;
+	private volatile int leaseCount = 0;
+	private volatile Thread leaseThread;
+	private final AtomicInteger testCount = new AtomicInteger();
+
+	private volatile BrowserProcesses processes;
+	private volatile BrowserProcesses.Usage usage;
+	private volatile double cpuPercent = -1;
+	private volatile String recycleReason;
+
+	DriverSession(WebDriver webDriver, WebDriver browser, String userDataDirectory, ConfigurationOverrides overrides,
+			Path downloadDirectory, Path profileDirectory, FetchInterceptor fetchInterceptor, RequestBlocker requestBlocker)
+	{
+		this.webDriver = webDriver;
+		this.browser = browser;
+		this.userDataDirectory = userDataDirectory;
+		this.overrides = overrides;
+		this.profileDirectory = profileDirectory;
+		this.fetchInterceptor = fetchInterceptor;
+		this.requestBlocker = requestBlocker;
+		this.downloadDirectory = downloadDirectory;
+		this.createdAt = System.currentTimeMillis();
+		this.lastReleasedAt = this.createdAt;
+	}
+
+	/**
+	 * Called by the {@link DriverPool} every time the session is handed out.
+	 */
+	void markLeased()
+	{
+		leaseCount++;
+		leaseThread = Thread.currentThread();
+	}
+
+	/**
+	 * Called by the {@link DriverPool} every time the session is returned.
+	 */
+	void markReleased()
+	{
+		lastReleasedAt = System.currentTimeMillis();
+		leaseThread = null;
+	}
+
+	/**
+	 * Called once for every test that runs on the session, see {@link SessionUsageListener}.
+	 */
+	void recordTest()
+	{
+		testCount.incrementAndGet();
+	}
+
+	/**
+	 * Method stores a new sample of the browser processes taken by the {@link SessionWatchdog}.
+	 */
+	void recordUsage(BrowserProcesses.Usage usage)
+	{
+		cpuPercent = usage.cpuPercentSince(this.usage);
+		this.usage = usage;
+	}
+
+	/**
+	 * Method marks the session to be quit instead of reused once it is returned, e.g. because
+	 * its browser crashed while a test held it.
+	 */
+	void markForRecycling(String reason)
+	{
+		recycleReason = reason;
+	}
+
+	String getRecycleReason()
+	{
+		return recycleReason;
+	}
+
+	/**
+	 * @return Returns the undecorated driver, health checks go through it so they do not show
+	 * up in the command metrics.
+	 */
+	WebDriver getBrowser()
+	{
+		return browser;
+	}
+
+	/**
+	 * @return Returns the user data directory of a local browser or NULL in case it is not known.
+	 */
+	String getUserDataDirectory()
+	{
+		return userDataDirectory;
+	}
+
+	BrowserProcesses getProcesses()
+	{
+		return processes;
+	}
+
+	void setProcesses(BrowserProcesses processes)
+	{
+		this.processes = processes;
+	}
+
+	/**
+	 * @return Returns the thread that leased the session or NULL in case it is not leased.
+	 */
+	Thread getLeaseThread()
+	{
+		return leaseThread;
+	}
+
+	/**
+	 * Method checks if the session has been idle in the pool for longer than the given
+	 * amount of milliseconds.
+	 *
+	 * @param idleTimeoutMillis -> Allowed idle time in milliseconds.
+	 * @return Returns true if the session has been idle for too long, false otherwise.
+	 */
+	boolean isIdleLongerThan(long idleTimeoutMillis)
+	{
+		return System.currentTimeMillis() - lastReleasedAt > idleTimeoutMillis;
+	}
+
+	public WebDriver getWebDriver()
+	{
+		return webDriver;
+	}
+
+	/**
+	 * @return Returns the {@link ConfigurationOverrides} the session was created with.
+	 */
+	public ConfigurationOverrides getOverrides()
+	{
+		return overrides;
+	}
+
+	/**
+	 * The directory the browser of this session downloads files into. It is replaced by a
+	 * fresh one every time the session is returned to the pool.
+	 */
+	public Path getDownloadDirectory()
+	{
+		return downloadDirectory;
+	}
+
+	void setDownloadDirectory(Path downloadDirectory)
+	{
+		this.downloadDirectory = downloadDirectory;
+	}
+
+	/**
+	 * @return Returns the profile cloned from the {@link ProfileTemplate} or NULL in case the
+	 * session uses a profile created by ChromeDriver.
+	 */
+	public Path getProfileDirectory()
+	{
+		return profileDirectory;
+	}
+
+	/**
+	 * @return Returns the {@link FetchInterceptor} every request interception of the session
+	 * goes through.
+	 */
+	public FetchInterceptor getFetchInterceptor()
+	{
+		return fetchInterceptor;
+	}
+
+	/**
+	 * @return Returns the {@link RequestBlocker} of the session or NULL in case nothing is blocked.
+	 */
+	public RequestBlocker getRequestBlocker()
+	{
+		return requestBlocker;
+	}
+
+	public long getCreatedAt()
+	{
+		return createdAt;
+	}
+
+	public long getLastReleasedAt()
+	{
+		return lastReleasedAt;
+	}
+
+	public int getLeaseCount()
+	{
+		return leaseCount;
+	}
+
+	public int getTestCount()
+	{
+		return testCount.get();
+	}
+
+	/**
+	 * @return Returns the resident memory of the browser, its child processes and its
+	 * chromedriver at the last watchdog sample, or -1 in case it is not known (remote sessions,
+	 * other operating systems than Linux).
+	 */
+	public long getRssBytes()
+	{
+		BrowserProcesses.Usage latest = usage;
+
+		return latest == null ? -1 : latest.getRssBytes();
+	}
+
+	/**
+	 * @return Returns the CPU use between the last two watchdog samples in percent of one core,
+	 * or -1 in case it is not known.
+	 */
+	public double getCpuPercent()
+	{
+		return cpuPercent;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,255 @@
+package driver;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.devtools.Command;
+import org.openqa.selenium.devtools.DevTools;
+import org.openqa.selenium.devtools.Event;
+import org.openqa.selenium.devtools.HasDevTools;
+import org.openqa.selenium.json.Json;
+
+/**
+ * Owner of the Chrome DevTools Protocol Fetch domain of one session. Every Fetch.enable call
+ * replaces the patterns of the previous one, so features that pause requests (the
+ * {@link RequestBlocker}, a {@link DownloadCapture}) register their patterns and a handler
+ * here instead of enabling the domain themselves. The interceptor enables the union of all
+ * patterns and hands every paused request to the handlers in the order they registered,
+ * requests nobody handles are continued unchanged.
+ *
+ * The DevTools session is only opened with the first registration, sessions that never pause
+ * requests do not pay for it.
+ *
+ * @author karlomijaljevic
+ */
+public class FetchInterceptor implements Closeable
+{
+	/**
+	 * Handler of paused requests.
+	 */
+	public interface Handler
+	{
+		/**
+		 * Called on a DevTools thread for every paused request.
+		 *
+		 * @param event -> The Fetch.requestPaused event. Requests paused after the response
+		 * arrived carry a responseStatusCode or a responseErrorReason.
+		 * @return Returns true in case the handler takes care of continuing, fulfilling or
+		 * failing the request, false to pass it on.
+		 */
+		boolean onRequestPaused(Map<String, Object> event);
+	}
+
+	/**
+	 * Handle returned by register(), pass it to unregister() to stop intercepting.
+	 */
+	public static final class Registration
+	{
+		private final List<Map<String, Object>> patterns;
+		private final Handler handler;
+
+		private Registration(List<Map<String, Object>> patterns, Handler handler)
+		{
+			this.patterns = patterns;
+			this.handler = handler;
+		}
+	}
+
+	private static final Event<Map<String, Object>> REQUEST_PAUSED = new Event<Map<String, Object>>("Fetch.requestPaused",
+			input -> input.read(Json.MAP_TYPE));
+
+	private final WebDriver webDriver;
+	private final List<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+
+	private DevTools devTools;
+
+	/**
+	 * @param webDriver -> A {@link WebDriver} that supports DevTools, e.g. a ChromeDriver.
+	 */
+	public FetchInterceptor(WebDriver webDriver)
+	{
+		this.webDriver = webDriver;
+	}
+
+	/**
+	 * Method starts pausing requests that match the patterns.
+	 *
+	 * @param patterns -> Fetch RequestPattern objects (urlPattern, resourceType, requestStage).
+	 * @param handler -> {@link Handler} that is asked about every paused request.
+	 * @return Returns the {@link Registration}.
+	 * @throws WebDriverException -> In case the driver does not support DevTools or the
+	 * patterns could not be enabled.
+	 */
+	public synchronized Registration register(List<Map<String, Object>> patterns, Handler handler)
+	{
+		if (devTools == null)
+		{
+			if (!(webDriver instanceof HasDevTools))
+			{
+				throw new WebDriverException("Requests can only be intercepted on a driver that supports DevTools.");
+			}
+
+			DevTools sessionDevTools = ((HasDevTools) webDriver).getDevTools();
+			sessionDevTools.createSessionIfThereIsNotOne();
+			sessionDevTools.addListener(REQUEST_PAUSED, this::dispatch);
+			devTools = sessionDevTools;
+		}
+
+		Registration registration = new Registration(patterns, handler);
+		registrations.add(registration);
+
+		try
+		{
+			enable();
+		}
+		catch (WebDriverException wde)
+		{
+			registrations.remove(registration);
+			throw wde;
+		}
+
+		return registration;
+	}
+
+	/**
+	 * Method stops pausing the requests of the registration, requests that are already
+	 * paused are left to its handler.
+	 */
+	public synchronized void unregister(Registration registration)
+	{
+		if (devTools == null || !registrations.remove(registration))
+		{
+			return;
+		}
+
+		try
+		{
+			enable();
+		}
+		catch (WebDriverException wde)
+		{
+			// The browser is most likely gone, nothing left to intercept.
+		}
+	}
+
+	/**
+	 * Method sends a command of the Fetch domain (or any other) on the intercepting session.
+	 *
+	 * @throws WebDriverException -> In case nothing registered yet or the command failed.
+	 */
+	public <X> X send(Command<X> command)
+	{
+		DevTools current;
+
+		synchronized (this)
+		{
+			current = devTools;
+		}
+
+		if (current == null)
+		{
+			throw new WebDriverException("No DevTools session, nothing is intercepted.");
+		}
+
+		return current.send(command);
+	}
+
+	/**
+	 * Method lets a paused request carry on unchanged, at either stage.
+	 */
+	public void continueRequest(Object requestId)
+	{
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("requestId", requestId);
+
+		send(new Command<Void>("Fetch.continueRequest", parameters).doesNotSendResponse());
+	}
+
+	/**
+	 * Method fails a paused request, e.g. with BlockedByClient or Aborted.
+	 */
+	public void failRequest(Object requestId, String errorReason)
+	{
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("requestId", requestId);
+		parameters.put("errorReason", errorReason);
+
+		send(new Command<Void>("Fetch.failRequest", parameters).doesNotSendResponse());
+	}
+
+	/**
+	 * @return Returns true in case the event was paused after the response arrived.
+	 */
+	public static boolean isResponseStage(Map<String, Object> event)
+	{
+		return event.containsKey("responseStatusCode") || event.containsKey("responseErrorReason");
+	}
+
+	private void enable()
+	{
+		List<Map<String, Object>> patterns = new ArrayList<Map<String, Object>>();
+		registrations.forEach(registration -> patterns.addAll(registration.patterns));
+
+		if (patterns.isEmpty())
+		{
+			devTools.send(new Command<Void>("Fetch.disable", new HashMap<String, Object>()));
+			return;
+		}
+
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("patterns", patterns);
+		devTools.send(new Command<Void>("Fetch.enable", parameters));
+	}
+
+	private void dispatch(Map<String, Object> event)
+	{
+		try
+		{
+			for (Registration registration : registrations)
+			{
+				if (registration.handler.onRequestPaused(event))
+				{
+					return;
+				}
+			}
+
+			continueRequest(event.get("requestId"));
+		}
+		catch (WebDriverException wde)
+		{
+			// The tab is most likely gone, the request with it.
+		}
+	}
+
+	/**
+	 * Method stops intercepting and closes the DevTools session, the browser stays open.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		registrations.clear();
+
+		if (devTools == null)
+		{
+			return;
+		}
+
+		try
+		{
+			devTools.clearListeners();
+			devTools.close();
+		}
+		catch (WebDriverException wde)
+		{
+			wde.printStackTrace();
+		}
+
+		devTools = null;
+	}
+}
@@ -0,0 +1,253 @@
+package driver;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+
+import helper.FileHelper;
+
+/**
+ * Chrome profile (user data directory) that is warmed up once per run and then cloned for
+ * every session. A new ChromeDriver otherwise starts from an empty profile and pays for the
+ * first run setup, component initialisation and an empty disk cache on every launch.
+ *
+ * The template is built on the first clone by launching Chrome with the same options as a
+ * session, visiting the warm-up URLs and quitting. Each session gets its own copy which is
+ * deleted after the session quits, so sessions never share state.
+ *
+ * @implNote
+ * Clones are copied with 'cp --reflink=auto' on Linux, which is a copy-on-write clone on
+ * file systems that support it (btrfs, XFS) and a plain copy elsewhere. Hardlinks are not
+ * used since Chrome writes its SQLite and LevelDB files in place, which would leak into the
+ * template and every other clone.
+ *
+ * @author karlomijaljevic
+ */
+public class ProfileTemplate
+{
+	public static final String USER_DATA_DIR_SWITCH = "--user-data-dir";
+
+	private static final String TEMPLATE_PREFIX = "tests-profile-template-";
+	private static final String CLONE_PREFIX = "tests-profile-";
+	private static final long CLONE_TIMEOUT_SECONDS = 60;
+
+	/**
+	 * Files Chrome uses to tell whether another browser owns the profile, a clone must not
+	 * inherit them.
+	 */
+	private static final Set<String> LOCK_FILES = new HashSet<String>(Arrays.asList(
+			"SingletonLock", "SingletonSocket", "SingletonCookie", "lockfile", "DevToolsActivePort"));
+
+	private Path template;
+	private boolean failed = false;
+	private volatile boolean reflinkAvailable = "Linux".equals(System.getProperty("os.name"));
+
+	/**
+	 * Method creates a new profile for a session from the template, building the template
+	 * first in case there is none yet.
+	 *
+	 * @param options -> {@link ChromeOptions} of the session, used to build the template.
+	 * @param warmUpUrls -> URLs visited while building the template.
+	 * @return Returns the {@link Path} of the new profile or NULL in case there is no template,
+	 * the session should then start with a fresh profile.
+	 */
+	public Path createClone(ChromeOptions options, List<String> warmUpUrls)
+	{
+		Path source = getTemplate(options, warmUpUrls);
+
+		if (source == null)
+		{
+			return null;
+		}
+
+		Path clone = null;
+
+		try
+		{
+			clone = Files.createTempDirectory(CLONE_PREFIX).toAbsolutePath();
+
+			if (!copyOnWrite(source, clone))
+			{
+				copy(source, clone);
+			}
+
+			return clone;
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+			FileHelper.deleteRecursivelyAsync(clone);
+			return null;
+		}
+	}
+
+	/**
+	 * Method schedules the template for deletion, the next clone builds a new one.
+	 */
+	public synchronized void discard()
+	{
+		FileHelper.deleteRecursivelyAsync(template);
+		template = null;
+		failed = false;
+	}
+
+	private synchronized Path getTemplate(ChromeOptions options, List<String> warmUpUrls)
+	{
+		if (template == null && !failed)
+		{
+			template = build(options, warmUpUrls);
+			failed = template == null;
+		}
+
+		return template;
+	}
+
+	/**
+	 * Method launches Chrome on a new profile, visits the warm-up URLs and quits.
+	 *
+	 * @return Returns the {@link Path} of the warmed up profile or NULL on failure.
+	 */
+	private Path build(ChromeOptions options, List<String> warmUpUrls)
+	{
+		Path directory;
+
+		try
+		{
+			directory = Files.createTempDirectory(TEMPLATE_PREFIX).toAbsolutePath();
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+			return null;
+		}
+
+		WebDriver webDriver = null;
+
+		try
+		{
+			webDriver = new ChromeDriver(options.addArguments(USER_DATA_DIR_SWITCH + "=" + directory));
+
+			if (warmUpUrls.isEmpty())
+			{
+				webDriver.get("about:blank");
+			}
+
+			warmUpUrls.forEach(webDriver::get);
+		}
+		catch (WebDriverException wde)
+		{
+			wde.printStackTrace();
+			quit(webDriver);
+			FileHelper.deleteRecursivelyAsync(directory);
+			return null;
+		}
+
+		quit(webDriver);
+
+		return directory;
+	}
+
+	private static void quit(WebDriver webDriver)
+	{
+		if (webDriver == null)
+		{
+			return;
+		}
+
+		try
+		{
+			webDriver.quit();
+		}
+		catch (WebDriverException wde)
+		{
+			wde.printStackTrace();
+		}
+	}
+
+	/**
+	 * Method clones the template with 'cp --reflink=auto'.
+	 *
+	 * @return Returns true on success and false in case the plain copy has to be used.
+	 */
+	private boolean copyOnWrite(Path source, Path target)
+	{
+		if (!reflinkAvailable)
+		{
+			return false;
+		}
+
+		ProcessBuilder processBuilder = new ProcessBuilder("cp", "-a", "--reflink=auto", source + "/.", target.toString());
+		processBuilder.redirectErrorStream(true);
+
+		try
+		{
+			Process process = processBuilder.start();
+			process.getInputStream().close();
+
+			if (process.waitFor(CLONE_TIMEOUT_SECONDS, TimeUnit.SECONDS) && process.exitValue() == 0)
+			{
+				for (String lockFile : LOCK_FILES)
+				{
+					Files.deleteIfExists(target.resolve(lockFile));
+				}
+
+				return true;
+			}
+
+			process.destroyForcibly();
+		}
+		catch (IOException ioe)
+		{
+			// No GNU cp on this machine.
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		reflinkAvailable = false;
+		FileHelper.deleteDirectoryContents(target);
+
+		return false;
+	}
+
+	private static void copy(Path source, Path target) throws IOException
+	{
+		Files.walkFileTree(source, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException
+			{
+				Files.createDirectories(target.resolve(source.relativize(directory).toString()));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException
+			{
+				if (!LOCK_FILES.contains(file.getFileName().toString()) || !file.getParent().equals(source))
+				{
+					Files.copy(file, target.resolve(source.relativize(file).toString()), StandardCopyOption.COPY_ATTRIBUTES,
+							LinkOption.NOFOLLOW_LINKS);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
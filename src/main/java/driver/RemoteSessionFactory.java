@@ -0,0 +1,146 @@
+package driver;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.InvalidArgumentException;
+import org.openqa.selenium.SessionNotCreatedException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.remote.Augmenter;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+/**
+ * Creates {@link RemoteWebDriver} sessions on a Selenium Grid (or a standalone Selenium
+ * server). Session requests wait in a fair queue so only a few of them are sent to the grid at
+ * once, the others are served in the order they arrived. A grid without a free slot answers
+ * with an error once its own queue times out, such requests are retried with an exponential
+ * backoff (with jitter, so the pool threads do not retry in lock step) until the session
+ * timeout runs out.
+ *
+ * Sessions are augmented, so a grid that exposes the DevTools Protocol (se:cdp) keeps the
+ * {@link org.openqa.selenium.devtools.HasDevTools} features like the {@link RequestBlocker}.
+ *
+ * @author karlomijaljevic
+ */
+class RemoteSessionFactory
+{
+	private static final long INITIAL_BACKOFF_MILLIS = 500;
+	private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+	/**
+	 * Answer of the grid in case no node can ever run the requested capabilities, waiting
+	 * does not help.
+	 */
+	private static final String NO_MATCHING_NODE = "No nodes support the capabilities";
+
+	private final URL gridUrl;
+	private final long sessionTimeoutMillis;
+	private final Semaphore requestSlots;
+
+	/**
+	 * @param gridUrl -> Address of the grid, e.g. http://localhost:4444
+	 * @param sessionTimeoutSeconds -> How long a session request is retried.
+	 * @param concurrentRequests -> Number of session requests sent to the grid at once.
+	 * @throws IllegalArgumentException -> In case the address is not a valid URL.
+	 */
+	RemoteSessionFactory(String gridUrl, long sessionTimeoutSeconds, int concurrentRequests)
+	{
+		try
+		{
+			this.gridUrl = new URL(gridUrl);
+		}
+		catch (MalformedURLException mue)
+		{
+			throw new IllegalArgumentException("Invalid grid URL " + gridUrl, mue);
+		}
+
+		this.sessionTimeoutMillis = TimeUnit.SECONDS.toMillis(sessionTimeoutSeconds);
+		this.requestSlots = new Semaphore(Math.max(1, concurrentRequests), true);
+	}
+
+	/**
+	 * Method waits for its turn in the queue and requests a new session until the grid has
+	 * a free slot or the session timeout runs out.
+	 *
+	 * @param options -> {@link ChromeOptions} of the session.
+	 * @return Returns the new (augmented) {@link WebDriver}.
+	 * @throws WebDriverException -> The last error of the grid in case no session could be
+	 * created in time, or right away in case the grid can never create it.
+	 */
+	WebDriver create(ChromeOptions options)
+	{
+		long deadline = System.currentTimeMillis() + sessionTimeoutMillis;
+
+		try
+		{
+			if (!requestSlots.tryAcquire(sessionTimeoutMillis, TimeUnit.MILLISECONDS))
+			{
+				throw new SessionNotCreatedException("Timed out waiting in the session queue for " + gridUrl);
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			throw new SessionNotCreatedException("Interrupted waiting in the session queue for " + gridUrl);
+		}
+
+		try
+		{
+			long backoff = INITIAL_BACKOFF_MILLIS;
+
+			while (true)
+			{
+				try
+				{
+					return new Augmenter().augment(new RemoteWebDriver(gridUrl, options));
+				}
+				catch (WebDriverException wde)
+				{
+					long remaining = deadline - System.currentTimeMillis();
+
+					if (!isRetryable(wde) || remaining <= 0)
+					{
+						throw wde;
+					}
+
+					sleep(Math.min(remaining, ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1)), wde);
+					backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+				}
+			}
+		}
+		finally
+		{
+			requestSlots.release();
+		}
+	}
+
+	private static boolean isRetryable(WebDriverException wde)
+	{
+		if (wde instanceof InvalidArgumentException)
+		{
+			return false;
+		}
+
+		String message = wde.getMessage();
+
+		return message == null || !message.contains(NO_MATCHING_NODE);
+	}
+
+	private static void sleep(long millis, WebDriverException cause)
+	{
+		try
+		{
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			throw cause;
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package driver;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.WebDriverException;
+
+import configuration.DriverConfiguration;
+
+/**
+ * Blocks requests of a browser session by URL pattern and resource type through the Chrome
+ * DevTools Protocol (Fetch domain, see {@link FetchInterceptor}), so page loads do not wait for ads, analytics, fonts and
+ * the like. Only requests matching a pattern are paused by the browser, so everything else
+ * loads without any round trip to the test JVM.
+ *
+ * Every session counts the requests it blocked per resource type. Since a blocked request is
+ * never sent its size is unknown, the bytes saved are estimated per resource type.
+ *
+ * @implNote
+ * The blocker is attached to the tab the session starts with, tabs opened later are not
+ * covered.
+ *
+ * @author karlomijaljevic
+ */
+public class RequestBlocker implements Closeable
+{
+	/**
+	 * Value of the '--block-urls' flag that stands for {@link #DEFAULT_BLOCKED_URL_PATTERNS}.
+	 */
+	public static final String DEFAULTS = "defaults";
+
+	/**
+	 * Common ad, analytics and tracking hosts.
+	 */
+	public static final List<String> DEFAULT_BLOCKED_URL_PATTERNS = Collections.unmodifiableList(Arrays.asList(
+			"*://*.doubleclick.net/*",
+			"*://*.googlesyndication.com/*",
+			"*://*.googleadservices.com/*",
+			"*://*.google-analytics.com/*",
+			"*://*.googletagmanager.com/*",
+			"*://*.googletagservices.com/*",
+			"*://*.adservice.google.com/*",
+			"*://*.facebook.net/*",
+			"*://*.hotjar.com/*",
+			"*://*.scorecardresearch.com/*",
+			"*://*.quantserve.com/*",
+			"*://*.criteo.com/*",
+			"*://*.taboola.com/*",
+			"*://*.outbrain.com/*",
+			"*://*.amazon-adsystem.com/*",
+			"*://*.adnxs.com/*",
+			"*://*.moatads.com/*",
+			"*://*.newrelic.com/*",
+			"*://*.nr-data.net/*",
+			"*://*.segment.io/*"));
+
+	/**
+	 * Resource types as named by the DevTools Protocol.
+	 */
+	public static final List<String> RESOURCE_TYPES = Collections.unmodifiableList(Arrays.asList(
+			"Document", "Stylesheet", "Image", "Media", "Font", "Script", "TextTrack", "XHR", "Fetch",
+			"Prefetch", "EventSource", "WebSocket", "Manifest", "SignedExchange", "Ping",
+			"CSPViolationReport", "Preflight", "Other"));
+
+	private static final long DEFAULT_ESTIMATED_SIZE = 5 * 1024;
+	private static final Map<String, Long> ESTIMATED_SIZES;
+	static
+	{
+		Map<String, Long> sizes = new HashMap<String, Long>();
+		sizes.put("Script", 30L * 1024);
+		sizes.put("Image", 25L * 1024);
+		sizes.put("Font", 30L * 1024);
+		sizes.put("Stylesheet", 10L * 1024);
+		sizes.put("Media", 250L * 1024);
+		sizes.put("Document", 20L * 1024);
+		sizes.put("Ping", 0L);
+		ESTIMATED_SIZES = Collections.unmodifiableMap(sizes);
+	}
+
+	private final FetchInterceptor fetchInterceptor;
+	private final AtomicLong blockedRequests = new AtomicLong();
+	private final AtomicLong estimatedBytesSaved = new AtomicLong();
+	private final Map<String, AtomicLong> blockedByType = new ConcurrentHashMap<String, AtomicLong>();
+
+	private FetchInterceptor.Registration registration;
+
+	private RequestBlocker(FetchInterceptor fetchInterceptor)
+	{
+		this.fetchInterceptor = fetchInterceptor;
+	}
+
+	/**
+	 * Method starts blocking the configured URL patterns and resource types, see
+	 * {@link DriverConfiguration#getBlockedUrlPatterns()} and
+	 * {@link DriverConfiguration#getBlockedResourceTypes()}.
+	 *
+	 * @param fetchInterceptor -> The {@link FetchInterceptor} of a freshly created session.
+	 * @param configuration -> {@link DriverConfiguration} snapshot of the session.
+	 * @return Returns the {@link RequestBlocker} or NULL in case there is nothing to block.
+	 * @throws WebDriverException -> In case the DevTools session could not be set up.
+	 */
+	public static RequestBlocker install(FetchInterceptor fetchInterceptor, DriverConfiguration configuration)
+	{
+		List<Map<String, Object>> patterns = createPatterns(configuration.getBlockedUrlPatterns(), configuration.getBlockedResourceTypes());
+
+		if (patterns.isEmpty())
+		{
+			return null;
+		}
+
+		RequestBlocker blocker = new RequestBlocker(fetchInterceptor);
+		blocker.registration = fetchInterceptor.register(patterns, blocker::onRequestPaused);
+
+		return blocker;
+	}
+
+	/**
+	 * Method builds the Fetch request patterns. A URL pattern blocks every resource type, a
+	 * resource type is blocked for every URL.
+	 */
+	static List<Map<String, Object>> createPatterns(List<String> urlPatterns, List<String> resourceTypes)
+	{
+		List<Map<String, Object>> patterns = new ArrayList<Map<String, Object>>();
+
+		for (String urlPattern : urlPatterns)
+		{
+			Map<String, Object> pattern = new HashMap<String, Object>();
+			pattern.put("urlPattern", urlPattern);
+			pattern.put("requestStage", "Request");
+			patterns.add(pattern);
+		}
+
+		for (String resourceType : resourceTypes)
+		{
+			Map<String, Object> pattern = new HashMap<String, Object>();
+			pattern.put("urlPattern", "*");
+			pattern.put("resourceType", resourceType);
+			pattern.put("requestStage", "Request");
+			patterns.add(pattern);
+		}
+
+		return patterns;
+	}
+
+	/**
+	 * Method maps a resource type to the name used by the DevTools Protocol, ignoring case.
+	 *
+	 * @throws IllegalArgumentException -> In case the resource type does not exist.
+	 */
+	public static String normalizeResourceType(String resourceType)
+	{
+		for (String knownType : RESOURCE_TYPES)
+		{
+			if (knownType.equalsIgnoreCase(resourceType.trim()))
+			{
+				return knownType;
+			}
+		}
+
+		throw new IllegalArgumentException("Unknown resource type " + resourceType + ", expected one of " + RESOURCE_TYPES);
+	}
+
+	/**
+	 * Every pattern of the blocker pauses at the request stage, so every request paused
+	 * before its response is one to block.
+	 */
+	private boolean onRequestPaused(Map<String, Object> event)
+	{
+		if (FetchInterceptor.isResponseStage(event))
+		{
+			return false;
+		}
+
+		String resourceType = String.valueOf(event.getOrDefault("resourceType", "Other"));
+
+		fetchInterceptor.failRequest(event.get("requestId"), "BlockedByClient");
+
+		blockedRequests.incrementAndGet();
+		estimatedBytesSaved.addAndGet(ESTIMATED_SIZES.getOrDefault(resourceType, DEFAULT_ESTIMATED_SIZE));
+		blockedByType.computeIfAbsent(resourceType, key -> new AtomicLong()).incrementAndGet();
+
+		return true;
+	}
+
+	public long getBlockedRequests()
+	{
+		return blockedRequests.get();
+	}
+
+	/**
+	 * @return Returns a rough estimate of the bytes that were not downloaded.
+	 */
+	public long getEstimatedBytesSaved()
+	{
+		return estimatedBytesSaved.get();
+	}
+
+	/**
+	 * @return Returns the number of blocked requests keyed by resource type.
+	 */
+	public Map<String, Long> getBlockedByType()
+	{
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		blockedByType.forEach((type, count) -> counts.put(type, count.get()));
+
+		return counts;
+	}
+
+	/**
+	 * Method stops blocking, the counters keep their values.
+	 */
+	@Override
+	public void close()
+	{
+		fetchInterceptor.unregister(registration);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Blocked " + getBlockedRequests() + " requests (~" + getEstimatedBytesSaved() / 1024 + " KiB) " + getBlockedByType();
+	}
+}
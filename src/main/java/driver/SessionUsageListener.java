@@ -0,0 +1,39 @@
+package driver;
+
+import java.util.Map;
+
+import org.testng.IExecutionListener;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+
+/**
+ * TestNG listener that counts the tests every pooled session runs, so the {@link SessionWatchdog}
+ * can recycle sessions after {@link configuration.DriverConfiguration#getSessionMaxTests()}
+ * tests, and prints how many sessions were recycled once the run is finished.
+ *
+ * @author karlomijaljevic
+ */
+public class SessionUsageListener implements ITestListener, IExecutionListener
+{
+	@Override
+	public void onTestStart(ITestResult result)
+	{
+		DriverSession session = DriverPool.getInstance().getSessionLeasedBy(Thread.currentThread());
+
+		if (session != null)
+		{
+			session.recordTest();
+		}
+	}
+
+	@Override
+	public void onExecutionFinish()
+	{
+		Map<String, Integer> recycled = DriverPool.getInstance().getRecycledSessions();
+
+		if (!recycled.isEmpty())
+		{
+			System.out.println("Recycled WebDriver sessions: " + recycled);
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package driver;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import configuration.DriverConfiguration;
+
+/**
+ * Health checks of the {@link DriverPool} sessions. Long runs slowly bloat browsers (leaked
+ * renderers, growing caches) until they crash or hang in the middle of a test, so sessions
+ * are recycled before that happens:
+ *
+ * <ul>
+ * <li>once the browser, its child processes and its chromedriver use more memory than
+ * {@link DriverConfiguration#getSessionMemoryLimitMegabytes()},</li>
+ * <li>once they ran {@link DriverConfiguration#getSessionMaxTests()} tests,</li>
+ * <li>once they do not answer a cheap command within
+ * {@link DriverConfiguration#getSessionHangTimeoutSeconds()},</li>
+ * <li>once their browser process is gone.</li>
+ * </ul>
+ *
+ * Memory and CPU are read from /proc every {@link #INTERVAL_SECONDS} for every local session,
+ * see {@link BrowserProcesses}. Commands are only sent to sessions no test holds, a leased
+ * session that crashed or grew too large is marked and recycled when it is returned. Recycling
+ * happens between tests only, the next lease simply gets a fresh session.
+ *
+ * @author karlomijaljevic
+ */
+class SessionWatchdog
+{
+	static final long INTERVAL_SECONDS = 15;
+
+	/**
+	 * Upper limit of the health check done right before an idle session is handed out, a test
+	 * should not wait the whole hang timeout for a session that is about to be replaced anyway.
+	 */
+	private static final long LEASE_CHECK_TIMEOUT_SECONDS = 5;
+
+	private static final long MEGABYTE = 1024 * 1024;
+
+	static final String CRASHED = "browser crashed";
+	static final String UNRESPONSIVE = "browser stopped responding";
+	static final String MEMORY = "memory limit exceeded";
+	static final String TESTS = "test limit reached";
+
+	private final ExecutorService checks = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "driver-session-health-check");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Map<String, Integer> recycled = new TreeMap<String, Integer>();
+
+	/**
+	 * Method samples the processes of every local session and marks the leased ones whose
+	 * browser is gone.
+	 */
+	void sample(Collection<DriverSession> sessions)
+	{
+		BrowserProcesses.Snapshot snapshot = BrowserProcesses.Snapshot.take();
+
+		for (DriverSession session : sessions)
+		{
+			if (session.getUserDataDirectory() == null)
+			{
+				continue;
+			}
+
+			BrowserProcesses processes = session.getProcesses();
+
+			if (processes == null)
+			{
+				processes = BrowserProcesses.find(snapshot, session.getUserDataDirectory());
+				session.setProcesses(processes);
+			}
+
+			if (processes == null)
+			{
+				// No /proc or the browser is not up yet.
+				continue;
+			}
+
+			if (!processes.isAlive(snapshot))
+			{
+				session.markForRecycling(CRASHED);
+				continue;
+			}
+
+			session.recordUsage(processes.measure(snapshot));
+		}
+	}
+
+	/**
+	 * Method checks an idle session with the full hang timeout.
+	 *
+	 * @return Returns why the session should be recycled or NULL in case it is healthy.
+	 */
+	String checkIdle(DriverSession session, DriverConfiguration configuration)
+	{
+		String reason = checkLimits(session, configuration);
+
+		if (reason == null && !responds(session, configuration.getSessionHangTimeoutSeconds()))
+		{
+			reason = UNRESPONSIVE;
+		}
+
+		return reason;
+	}
+
+	/**
+	 * Method checks an idle session right before it is leased. Only the cheap checks are done,
+	 * the command round trip is capped at {@link #LEASE_CHECK_TIMEOUT_SECONDS}.
+	 *
+	 * @return Returns why the session should be recycled or NULL in case it is healthy.
+	 */
+	String checkLease(DriverSession session, DriverConfiguration configuration)
+	{
+		String reason = checkLimits(session, configuration);
+
+		if (reason == null && !responds(session, Math.min(LEASE_CHECK_TIMEOUT_SECONDS, configuration.getSessionHangTimeoutSeconds())))
+		{
+			reason = UNRESPONSIVE;
+		}
+
+		return reason;
+	}
+
+	/**
+	 * Method checks a session that is being returned, without sending it a command (the
+	 * reset that follows does that).
+	 *
+	 * @return Returns why the session should be recycled or NULL in case it can be reused.
+	 */
+	String checkLimits(DriverSession session, DriverConfiguration configuration)
+	{
+		if (session.getRecycleReason() != null)
+		{
+			return session.getRecycleReason();
+		}
+
+		long memoryLimit = configuration.getSessionMemoryLimitMegabytes();
+
+		if (memoryLimit > 0 && session.getRssBytes() > memoryLimit * MEGABYTE)
+		{
+			return MEMORY;
+		}
+
+		int maxTests = configuration.getSessionMaxTests();
+
+		if (maxTests > 0 && session.getTestCount() >= maxTests)
+		{
+			return TESTS;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Method records a recycled session and kills the browser processes of sessions that
+	 * would not answer a quit anyway. A crashed browser is not killed, its process is gone
+	 * already and the quit that follows ends the chromedriver.
+	 */
+	void recycling(DriverSession session, String reason)
+	{
+		synchronized (recycled)
+		{
+			recycled.merge(reason, 1, Integer::sum);
+		}
+
+		System.err.println("Recycling WebDriver session after " + session.getTestCount() + " tests (" + reason + describeUsage(session) + ").");
+
+		if (UNRESPONSIVE.equals(reason) && session.getProcesses() != null)
+		{
+			session.getProcesses().kill();
+		}
+	}
+
+	/**
+	 * @return Returns the number of recycled sessions by reason.
+	 */
+	Map<String, Integer> getRecycled()
+	{
+		synchronized (recycled)
+		{
+			return new TreeMap<String, Integer>(recycled);
+		}
+	}
+
+	/**
+	 * Method asks the browser for its window handle, the cheapest command that still needs a
+	 * working renderer. A local browser that does not answer in time is killed right away, so
+	 * the blocked check fails and its thread is freed. The check of a remote session stays
+	 * blocked until the HTTP client gives up.
+	 */
+	private boolean responds(DriverSession session, long timeoutSeconds)
+	{
+		WebDriver browser = session.getBrowser();
+		Future<String> answer = checks.submit(browser::getWindowHandle);
+
+		try
+		{
+			answer.get(timeoutSeconds, TimeUnit.SECONDS);
+			return true;
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			return true;
+		}
+		catch (ExecutionException ee)
+		{
+			return !(ee.getCause() instanceof WebDriverException);
+		}
+		catch (TimeoutException te)
+		{
+			if (session.getProcesses() != null)
+			{
+				session.getProcesses().kill();
+			}
+
+			answer.cancel(true);
+			return false;
+		}
+	}
+
+	private String describeUsage(DriverSession session)
+	{
+		if (session.getRssBytes() < 0)
+		{
+			return "";
+		}
+
+		String description = ", " + session.getRssBytes() / MEGABYTE + " MB";
+
+		if (session.getCpuPercent() >= 0)
+		{
+			description += String.format(", %.0f%% CPU", session.getCpuPercent());
+		}
+
+		return description;
+	}
+}
@@ -5,6 +5,7 @@ import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
 
 import org.openqa.selenium.By;
@@ -14,7 +15,14 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import configuration.TestConfiguration;
+import driver.CapturedDownload;
+import driver.DownloadCapture;
+import fixture.FixtureServer;
+import helper.DomCondition;
+import helper.DomWait;
 import helper.FileHelper;
+import helper.PdfVerifier;
+import helper.TabularVerifier;
 
 /**
  * Random test created to test Selenium setup.
@@ -23,51 +31,56 @@ import helper.FileHelper;
  */
 public class FirstTest
 {
-	private static final String SIMPLE_TEST_URL = "https://www.javatpoint.com/";
-	private static final String DOWNLOAD_TEST_URL = "https://sample-videos.com/download-sample-csv.php/";
-	private static final String DOWNLOAD_PDF_TEST_URL = "https://file-examples.com/storage/feba2ccef1633048d9205d0/2017/10/file-sample_150kB.pdf";
+	private static final String CSV_FILE = "sample.csv";
+	private static final String PDF_FILE = "sample.pdf";
+	private static final Duration ELEMENT_TIMEOUT = Duration.ofSeconds(5);
 
 	private WebDriver webDriver;
+	private FixtureServer fixtureServer;
 
 	/**
-	 * The main {@link BeforeClass} annotation used to create the Downloads folder and 
-	 * used to instantiate the {@link WebDriver} instance.
+	 * The main {@link BeforeClass} annotation used to instantiate the {@link WebDriver} instance.
+	 * Every session comes with its own download directory. The pages and files come from the
+	 * local {@link FixtureServer}. There is no implicit wait, elements are waited for with a
+	 * {@link DomWait} where needed.
 	 */
-	@BeforeClass(description = "Main BeforeClass call. Creates the downloads folder and driver.")
+	@BeforeClass(description = "Main BeforeClass call. Leases the driver.")
 	public void beforeTest()
 	{
-		assertTrue(FileHelper.setupDownloadDirectory(), "Failed to set up Downloads directory");
+		fixtureServer = TestConfiguration.startFixtureServer();
+		assertNotNull(fixtureServer, "Fixture server failed to start!");
 
 		webDriver = TestConfiguration.configureWebDriver();
 		assertNotNull(webDriver, "ChromeDriver failed to initialize!");
 
-		webDriver.manage().timeouts().implicitlyWait(Duration.ofMillis(5000));
 		webDriver.manage().window().maximize();
 	}
 
 	@Test
 	public void simpleSeleniumTest()
 	{
-		webDriver.get(SIMPLE_TEST_URL);
+		webDriver.get(fixtureServer.url("index.html"));
 
 		String URL = webDriver.getCurrentUrl();
 		System.out.print(URL);
 
 		String title = webDriver.getTitle();
 		System.out.println(title);
+
+		assertEquals(title, "Fixture Server");
 	}
 
 	@Test
 	public void fileDownloadTest()
 	{
-		webDriver.get(DOWNLOAD_TEST_URL);
+		webDriver.get(fixtureServer.url("index.html"));
 
-		webDriver.findElement(By.partialLinkText("Click")).click();
+		new DomWait(webDriver, ELEMENT_TIMEOUT).until(DomCondition.visibilityOf(By.partialLinkText("sample CSV"))).click();
 
 		boolean isDownloaded = false;
 		try
 		{
-			isDownloaded = FileHelper.isDownloadFilePresent("SampleCSVFile_2kb.csv", 10);
+			isDownloaded = FileHelper.awaitDownloads(webDriver, Duration.ofSeconds(10), CSV_FILE);
 		}
 		catch (InterruptedException e)
 		{
@@ -75,17 +88,19 @@ public class FirstTest
 		}
 
 		assertEquals(isDownloaded, true);
+
+		assertTrue(performCsvFileIntegrityCheck(), "CSV file not in proper order!");
 	}
 
 	@Test
 	public void pdfFileDownloadAndCheck()
 	{
-		webDriver.get(DOWNLOAD_PDF_TEST_URL);
+		webDriver.get(fixtureServer.url("downloads/" + PDF_FILE));
 
 		boolean isDownloaded = false;
 		try
 		{
-			isDownloaded = FileHelper.isDownloadFilePresent("file-sample_150kB.pdf", 10);
+			isDownloaded = FileHelper.awaitDownloads(webDriver, Duration.ofSeconds(10), PDF_FILE);
 		}
 		catch (InterruptedException e)
 		{
@@ -97,6 +112,34 @@ public class FirstTest
 		assertTrue(performPdfFileIntegrityCheck(), "PDF file not in proper order!");
 	}
 
+	/**
+	 * Same downloads as above but captured in memory, nothing is written to the download
+	 * directory and nothing is polled. The CSV is streamed straight into the verifier.
+	 */
+	@Test
+	public void capturedDownloadsTest() throws IOException
+	{
+		webDriver.get(fixtureServer.url("index.html"));
+
+		try (DownloadCapture capture = DownloadCapture.start(webDriver, "*/downloads/*"))
+		{
+			new DomWait(webDriver, ELEMENT_TIMEOUT).until(DomCondition.visibilityOf(By.partialLinkText("sample CSV"))).click();
+
+			boolean csvPassed = capture.await(Duration.ofSeconds(10),
+					(download, body) -> TabularVerifier.csv(body).expectRowCount(30).verify().isPassed());
+
+			assertTrue(csvPassed, "Captured CSV file not in proper order!");
+
+			new DomWait(webDriver, ELEMENT_TIMEOUT).until(DomCondition.visibilityOf(By.partialLinkText("sample PDF"))).click();
+
+			CapturedDownload pdf = capture.await(Duration.ofSeconds(10));
+
+			assertEquals(pdf.getFileName(), PDF_FILE);
+			assertTrue(new PdfVerifier(pdf.getBytes()).containsAll("Vestibulum neque massa, scelerisque sit amet ligula eu, congue molestie mi."),
+					"Captured PDF file not in proper order!");
+		}
+	}
+
 	/**
 	 * Method to check generic PDF file that was downloaded by the pdfFileDownloadAndCheck()
 	 * test method.
@@ -107,9 +150,30 @@ public class FirstTest
 	{
 		try
 		{
-			String pdfFileContent = FileHelper.readPdfFile("Downloads/file-sample_150kB.pdf");
+			String pdfFilePath = FileHelper.getDownloadDirectory(webDriver).resolve(PDF_FILE).toString();
+
+			return FileHelper.pdfContains(pdfFilePath, "Vestibulum neque massa, scelerisque sit amet ligula eu, congue molestie mi.");
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Method to check generic CSV file that was downloaded by the fileDownloadTest()
+	 * test method. The file is streamed row by row.
+	 * 
+	 * @return Return true if CSV file is in order, false otherwise.
+	 */
+	private boolean performCsvFileIntegrityCheck()
+	{
+		try
+		{
+			Path csvFile = FileHelper.getDownloadDirectory(webDriver).resolve(CSV_FILE);
 
-			return pdfFileContent.contains("Vestibulum neque massa, scelerisque sit amet ligula eu, congue molestie mi.");
+			return TabularVerifier.csv(csvFile).expectRowCount(30).verify().isPassed();
 		}
 		catch (IOException e)
 		{
@@ -119,12 +183,12 @@ public class FirstTest
 	}
 
 	/**
-	 * The main {@link AfterClass} annotation used to delete the support folders.
+	 * The main {@link AfterClass} annotation used to return the driver and delete the support folders.
 	 */
-	@AfterClass(description = "Main AfterClass call. Deletes the support folders.")
+	@AfterClass(description = "Main AfterClass call. Returns the driver and deletes the support folders.")
 	public void afterClass()
 	{
-		webDriver.quit();
+		TestConfiguration.releaseWebDriver(webDriver);
 		assertTrue(TestConfiguration.cleanSupprotFolders(), "Failed to delete the support folders!");
 	}
 }
\ No newline at end of file
@@ -0,0 +1,661 @@
+package fixture;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Small embedded HTTP server that serves test fixtures (pages and files to download) from
+ * the resources/fixtures folder or from a directory on disk, so tests do not depend on the
+ * internet. It only listens on the loopback interface on a random free port, use
+ * {@link #url(String)} to build links.
+ *
+ * Files which are not pages (e.g. CSV, PDF) are sent with 'Content-Disposition: attachment'
+ * so the browser downloads them, '?inline' or '?download' in the query overrides that. Single
+ * byte ranges are supported. A fixed latency per request and a bandwidth limit can be set to
+ * reproduce slow networks on purpose.
+ *
+ * @implNote
+ * Files on disk are sent with {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+ * straight into the response stream, they are never loaded into the heap. The JDK server
+ * hides its socket, so the kernel sendfile path is not available. Fixtures bundled inside
+ * the .jar are streamed with a small buffer.
+ *
+ * @author karlomijaljevic
+ */
+public class FixtureServer
+{
+	public static final String FIXTURES_FOLDER = "fixtures/";
+
+	private static final String INDEX_FILE = "index.html";
+	private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+	private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+	private static final long SHAPING_INTERVAL_MILLIS = 50;
+
+	private static final Map<String, String> CONTENT_TYPES;
+	static
+	{
+		Map<String, String> contentTypes = new HashMap<String, String>();
+		contentTypes.put("html", "text/html; charset=utf-8");
+		contentTypes.put("htm", "text/html; charset=utf-8");
+		contentTypes.put("css", "text/css; charset=utf-8");
+		contentTypes.put("js", "text/javascript; charset=utf-8");
+		contentTypes.put("json", "application/json");
+		contentTypes.put("txt", "text/plain; charset=utf-8");
+		contentTypes.put("svg", "image/svg+xml");
+		contentTypes.put("png", "image/png");
+		contentTypes.put("jpg", "image/jpeg");
+		contentTypes.put("jpeg", "image/jpeg");
+		contentTypes.put("gif", "image/gif");
+		contentTypes.put("ico", "image/x-icon");
+		contentTypes.put("csv", "text/csv");
+		contentTypes.put("pdf", "application/pdf");
+		contentTypes.put("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+		contentTypes.put("zip", "application/zip");
+		CONTENT_TYPES = Collections.unmodifiableMap(contentTypes);
+	}
+
+	/**
+	 * Extensions that are shown in the browser, everything else is downloaded.
+	 */
+	private static final String[] INLINE_EXTENSIONS = { "html", "htm", "css", "js", "json", "txt", "svg", "png", "jpg", "jpeg", "gif", "ico" };
+
+	private final Path rootDirectory;
+	private final String resourceRoot;
+
+	private volatile long latencyMillis = 0;
+	private volatile long bandwidthBytesPerSecond = 0;
+
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * Creates a server for the fixtures in the resources/fixtures folder.
+	 */
+	public FixtureServer()
+	{
+		this.rootDirectory = null;
+		this.resourceRoot = FIXTURES_FOLDER;
+	}
+
+	/**
+	 * Creates a server for the fixtures in a directory.
+	 *
+	 * @param rootDirectory -> {@link Path} of the directory to serve.
+	 */
+	public FixtureServer(Path rootDirectory)
+	{
+		this.rootDirectory = rootDirectory.toAbsolutePath().normalize();
+		this.resourceRoot = null;
+	}
+
+	/**
+	 * Method starts the server on a random free loopback port. Calling it on a running
+	 * server does nothing.
+	 *
+	 * @throws IOException -> In case the server could not bind.
+	 */
+	public synchronized void start() throws IOException
+	{
+		if (server != null)
+		{
+			return;
+		}
+
+		AtomicInteger threadCount = new AtomicInteger();
+		executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "fixture-server-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		httpServer.setExecutor(executor);
+		httpServer.createContext("/", this::handle);
+
+		// The dispatcher thread inherits the daemon flag of the thread that starts the server,
+		// a daemon dispatcher does not keep the JVM alive once the tests are done.
+		Thread starter = new Thread(httpServer::start, "fixture-server-start");
+		starter.setDaemon(true);
+		starter.start();
+
+		try
+		{
+			starter.join();
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		server = httpServer;
+	}
+
+	/**
+	 * Method stops the server, requests that are still running get a second to finish.
+	 */
+	public synchronized void stop()
+	{
+		if (server == null)
+		{
+			return;
+		}
+
+		server.stop(1);
+		executor.shutdownNow();
+
+		server = null;
+		executor = null;
+	}
+
+	public synchronized boolean isRunning()
+	{
+		return server != null;
+	}
+
+	/**
+	 * @return Returns the base URL of the running server, e.g. 'http://127.0.0.1:40123/'.
+	 */
+	public synchronized String getBaseUrl()
+	{
+		if (server == null)
+		{
+			throw new IllegalStateException("The fixture server is not running.");
+		}
+
+		InetSocketAddress address = server.getAddress();
+
+		return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + "/";
+	}
+
+	/**
+	 * @param path -> Path of a fixture relative to the fixture root, e.g. 'downloads/sample.csv'.
+	 * @return Returns the absolute URL of the fixture.
+	 */
+	public String url(String path)
+	{
+		return getBaseUrl() + (path.startsWith("/") ? path.substring(1) : path);
+	}
+
+	public long getLatencyMillis()
+	{
+		return latencyMillis;
+	}
+
+	/**
+	 * @param latencyMillis -> Delay added before every response is sent, 0 disables it.
+	 */
+	public void setLatencyMillis(long latencyMillis)
+	{
+		this.latencyMillis = Math.max(0, latencyMillis);
+	}
+
+	public long getBandwidthBytesPerSecond()
+	{
+		return bandwidthBytesPerSecond;
+	}
+
+	/**
+	 * @param bandwidthBytesPerSecond -> Limit for every single response body, 0 disables it.
+	 */
+	public void setBandwidthBytesPerSecond(long bandwidthBytesPerSecond)
+	{
+		this.bandwidthBytesPerSecond = Math.max(0, bandwidthBytesPerSecond);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException
+	{
+		try
+		{
+			String method = exchange.getRequestMethod();
+
+			if (!"GET".equals(method) && !"HEAD".equals(method))
+			{
+				sendStatus(exchange, 405);
+				return;
+			}
+
+			String path = decodePath(exchange.getRequestURI().getRawPath());
+
+			if (path == null)
+			{
+				sendStatus(exchange, 400);
+				return;
+			}
+
+			if (path.isEmpty() || path.endsWith("/"))
+			{
+				path += INDEX_FILE;
+			}
+
+			delay();
+
+			if (rootDirectory != null)
+			{
+				serveFile(exchange, path);
+			}
+			else
+			{
+				serveResource(exchange, path);
+			}
+		}
+		catch (IOException ioe)
+		{
+			// Most likely the browser dropped the connection, nothing to answer anymore.
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+
+	private void serveFile(HttpExchange exchange, String path) throws IOException, InterruptedException
+	{
+		Path file = rootDirectory.resolve(path).normalize();
+
+		if (!file.startsWith(rootDirectory) || !Files.isRegularFile(file))
+		{
+			sendStatus(exchange, 404);
+			return;
+		}
+
+		sendFile(exchange, file);
+	}
+
+	private void sendFile(HttpExchange exchange, Path file) throws IOException, InterruptedException
+	{
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			long[] range = prepareHeaders(exchange, file.getFileName().toString(), channel.size());
+
+			if (range == null || "HEAD".equals(exchange.getRequestMethod()))
+			{
+				return;
+			}
+
+			try (OutputStream body = exchange.getResponseBody())
+			{
+				WritableByteChannel target = Channels.newChannel(body);
+				long position = range[0];
+				long end = range[1] + 1;
+
+				while (position < end)
+				{
+					long chunk = Math.min(end - position, chunkSize());
+					long start = System.nanoTime();
+					long transferred = channel.transferTo(position, chunk, target);
+
+					if (transferred <= 0)
+					{
+						break;
+					}
+
+					position += transferred;
+					throttle(transferred, start);
+				}
+			}
+		}
+	}
+
+	private void serveResource(HttpExchange exchange, String path) throws IOException, InterruptedException
+	{
+		URL resource = getClass().getClassLoader().getResource(resourceRoot + path);
+
+		if (resource == null || path.contains(".."))
+		{
+			sendStatus(exchange, 404);
+			return;
+		}
+
+		// Fixtures on the file system (e.g. when running from the IDE) can take the fast path.
+		if ("file".equals(resource.getProtocol()))
+		{
+			try
+			{
+				Path file = Paths.get(resource.toURI());
+
+				if (Files.isRegularFile(file))
+				{
+					sendFile(exchange, file);
+					return;
+				}
+			}
+			catch (URISyntaxException use)
+			{
+				// Fall through to streaming the resource.
+			}
+		}
+
+		long size = resource.openConnection().getContentLengthLong();
+		String fileName = path.substring(path.lastIndexOf('/') + 1);
+
+		try (InputStream in = resource.openStream())
+		{
+			long[] range = prepareHeaders(exchange, fileName, size);
+
+			if (range == null || "HEAD".equals(exchange.getRequestMethod()))
+			{
+				return;
+			}
+
+			long skipped = 0;
+			while (skipped < range[0])
+			{
+				long count = in.skip(range[0] - skipped);
+				if (count <= 0)
+				{
+					break;
+				}
+				skipped += count;
+			}
+
+			try (OutputStream body = exchange.getResponseBody())
+			{
+				byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+				long remaining = range[1] - range[0] + 1;
+
+				while (remaining > 0)
+				{
+					long start = System.nanoTime();
+					int read = in.read(buffer, 0, (int) Math.min(remaining, Math.min(buffer.length, chunkSize())));
+
+					if (read < 0)
+					{
+						break;
+					}
+
+					body.write(buffer, 0, read);
+					remaining -= read;
+					throttle(read, start);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method sets the response headers and sends the status line.
+	 *
+	 * @return Returns the {first, last} byte to send or NULL in case the requested range can
+	 * not be satisfied and the response is already complete.
+	 */
+	private long[] prepareHeaders(HttpExchange exchange, String fileName, long size) throws IOException
+	{
+		Headers headers = exchange.getResponseHeaders();
+		String extension = extensionOf(fileName);
+		String query = exchange.getRequestURI().getRawQuery();
+
+		headers.set("Content-Type", CONTENT_TYPES.getOrDefault(extension, DEFAULT_CONTENT_TYPE));
+		headers.set("Accept-Ranges", "bytes");
+		headers.set("Cache-Control", "no-store");
+		headers.set("Content-Disposition", contentDisposition(fileName, isAttachment(extension, query)));
+
+		if (size < 0)
+		{
+			// Unknown length (e.g. a compressed .jar entry), the body is sent chunked.
+			exchange.sendResponseHeaders(200, "HEAD".equals(exchange.getRequestMethod()) ? -1 : 0);
+			return new long[] { 0, Long.MAX_VALUE - 1 };
+		}
+
+		long[] range = { 0, size - 1 };
+		int status = 200;
+
+		String rangeHeader = exchange.getRequestHeaders().getFirst("Range");
+		if (rangeHeader != null)
+		{
+			long[] requested = parseRange(rangeHeader, size);
+
+			if (requested == null)
+			{
+				headers.set("Content-Range", "bytes */" + size);
+				exchange.sendResponseHeaders(416, -1);
+				return null;
+			}
+
+			if (requested.length == 2)
+			{
+				range = requested;
+				status = 206;
+				headers.set("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + size);
+			}
+		}
+
+		long length = range[1] - range[0] + 1;
+
+		if ("HEAD".equals(exchange.getRequestMethod()))
+		{
+			headers.set("Content-Length", String.valueOf(length));
+			exchange.sendResponseHeaders(status, -1);
+		}
+		else
+		{
+			// A length of 0 means chunked for the JDK server, -1 means no body at all.
+			exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+		}
+
+		return range;
+	}
+
+	/**
+	 * Method parses a 'Range' header. Only a single byte range is supported, anything else is
+	 * answered with the whole file as allowed by RFC 7233.
+	 *
+	 * @return Returns {first, last}, an empty array to send the whole file or NULL in case the
+	 * range can not be satisfied.
+	 */
+	static long[] parseRange(String header, long size)
+	{
+		String value = header.trim();
+
+		if (!value.startsWith("bytes=") || value.contains(","))
+		{
+			return new long[0];
+		}
+
+		String[] bounds = value.substring("bytes=".length()).trim().split("-", -1);
+
+		if (bounds.length != 2)
+		{
+			return new long[0];
+		}
+
+		try
+		{
+			long first;
+			long last;
+
+			if (bounds[0].isEmpty())
+			{
+				long suffix = Long.parseLong(bounds[1]);
+
+				if (suffix <= 0)
+				{
+					return null;
+				}
+
+				first = Math.max(0, size - suffix);
+				last = size - 1;
+			}
+			else
+			{
+				first = Long.parseLong(bounds[0]);
+				last = bounds[1].isEmpty() ? size - 1 : Math.min(Long.parseLong(bounds[1]), size - 1);
+			}
+
+			if (first >= size || first > last)
+			{
+				return null;
+			}
+
+			return new long[] { first, last };
+		}
+		catch (NumberFormatException nfe)
+		{
+			return new long[0];
+		}
+	}
+
+	private static boolean isAttachment(String extension, String query)
+	{
+		if (query != null)
+		{
+			for (String parameter : query.split("&"))
+			{
+				if ("download".equals(parameter))
+				{
+					return true;
+				}
+				if ("inline".equals(parameter))
+				{
+					return false;
+				}
+			}
+		}
+
+		for (String inlineExtension : INLINE_EXTENSIONS)
+		{
+			if (inlineExtension.equals(extension))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static String contentDisposition(String fileName, boolean attachment)
+	{
+		String asciiName = fileName.replaceAll("[^\\x20-\\x7E]", "_").replace("\"", "_").replace("\\", "_");
+
+		try
+		{
+			String encodedName = URLEncoder.encode(fileName, "UTF-8").replace("+", "%20");
+
+			return (attachment ? "attachment" : "inline") + "; filename=\"" + asciiName + "\"; filename*=UTF-8''" + encodedName;
+		}
+		catch (UnsupportedEncodingException uee)
+		{
+			return (attachment ? "attachment" : "inline") + "; filename=\"" + asciiName + "\"";
+		}
+	}
+
+	private static String extensionOf(String fileName)
+	{
+		int dot = fileName.lastIndexOf('.');
+
+		return dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @return Returns the decoded path without the leading slash or NULL in case it tries to
+	 * leave the fixture root.
+	 */
+	private static String decodePath(String rawPath)
+	{
+		try
+		{
+			String path = URLDecoder.decode(rawPath == null ? "" : rawPath.replace("+", "%2B"), "UTF-8");
+
+			while (path.startsWith("/"))
+			{
+				path = path.substring(1);
+			}
+
+			for (String segment : path.split("/"))
+			{
+				if ("..".equals(segment))
+				{
+					return null;
+				}
+			}
+
+			return path;
+		}
+		catch (UnsupportedEncodingException | IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+
+	private static void sendStatus(HttpExchange exchange, int status) throws IOException
+	{
+		exchange.sendResponseHeaders(status, -1);
+	}
+
+	private void delay() throws InterruptedException
+	{
+		long latency = latencyMillis;
+
+		if (latency > 0)
+		{
+			Thread.sleep(latency);
+		}
+	}
+
+	/**
+	 * @return Returns how many bytes may be sent at once, a fraction of a second's worth in
+	 * case the bandwidth is limited.
+	 */
+	private long chunkSize()
+	{
+		long bandwidth = bandwidthBytesPerSecond;
+
+		if (bandwidth <= 0)
+		{
+			return Long.MAX_VALUE;
+		}
+
+		return Math.max(1, bandwidth * SHAPING_INTERVAL_MILLIS / 1000);
+	}
+
+	/**
+	 * Method sleeps for as long as sending the given bytes should have taken at the configured
+	 * bandwidth, minus the time it actually took.
+	 */
+	private void throttle(long bytes, long startNanos) throws InterruptedException
+	{
+		long bandwidth = bandwidthBytesPerSecond;
+
+		if (bandwidth <= 0)
+		{
+			return;
+		}
+
+		long expectedNanos = TimeUnit.SECONDS.toNanos(bytes) / bandwidth;
+		long sleepNanos = expectedNanos - (System.nanoTime() - startNanos);
+
+		if (sleepNanos > 0)
+		{
+			TimeUnit.NANOSECONDS.sleep(sleepNanos);
+		}
+	}
+}
@@ -0,0 +1,311 @@
+package helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Class that verifies many downloaded files at once. Every file is checked against its
+ * {@link FileExpectation} on a {@link ForkJoinPool}, and the text search of large PDF files
+ * is split into page ranges that are searched by different workers.
+ *
+ * @author karlomijaljevic
+ */
+public class BatchVerifier
+{
+	/**
+	 * Number of PDF pages searched by a single worker.
+	 */
+	public static final int PAGES_PER_TASK = 25;
+
+	private static final int TEXT_BUFFER_SIZE = 64 * 1024;
+
+	private final ForkJoinPool pool;
+
+	public BatchVerifier()
+	{
+		this(ForkJoinPool.commonPool());
+	}
+
+	public BatchVerifier(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * Method verifies every file against its expectations in parallel.
+	 *
+	 * @param expectations -> Map of files and their {@link FileExpectation}.
+	 * @return Returns a {@link FileVerificationResult} per file, in the order of the given map.
+	 */
+	public Map<Path, FileVerificationResult> verify(Map<Path, FileExpectation> expectations)
+	{
+		List<FileTask> tasks = new ArrayList<FileTask>();
+
+		expectations.forEach((file, expectation) -> tasks.add(new FileTask(file, expectation)));
+
+		return pool.invoke(new RecursiveTask<Map<Path, FileVerificationResult>>()
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected Map<Path, FileVerificationResult> compute()
+			{
+				invokeAll(tasks);
+
+				Map<Path, FileVerificationResult> results = new LinkedHashMap<Path, FileVerificationResult>();
+				tasks.forEach(task -> results.put(task.file, task.join()));
+
+				return results;
+			}
+		});
+	}
+
+	/**
+	 * Verifies a single file. The checksum and the PDF page ranges are forked as separate tasks.
+	 */
+	private static class FileTask extends RecursiveTask<FileVerificationResult>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Path file;
+		private final FileExpectation expectation;
+
+		FileTask(Path file, FileExpectation expectation)
+		{
+			this.file = file;
+			this.expectation = expectation;
+		}
+
+		@Override
+		protected FileVerificationResult compute()
+		{
+			long start = System.nanoTime();
+			List<String> failures = new ArrayList<String>();
+
+			try
+			{
+				verify(failures);
+			}
+			catch (IOException | RuntimeException e)
+			{
+				failures.add("Could not be verified: " + e);
+			}
+
+			return new FileVerificationResult(file, failures, (System.nanoTime() - start) / 1_000_000);
+		}
+
+		private void verify(List<String> failures) throws IOException
+		{
+			if (!Files.isRegularFile(file))
+			{
+				failures.add("File does not exist");
+				return;
+			}
+
+			long size = Files.size(file);
+
+			if (expectation.getMinSize() != null && (size < expectation.getMinSize() || size > expectation.getMaxSize()))
+			{
+				failures.add("Size " + size + " is not between " + expectation.getMinSize() + " and " + expectation.getMaxSize());
+			}
+
+			ChecksumTask checksumTask = null;
+			if (expectation.getSha256() != null)
+			{
+				checksumTask = new ChecksumTask(file);
+				checksumTask.fork();
+			}
+
+			if (isPdf(file))
+			{
+				verifyPdf(failures);
+			}
+			else if (!expectation.getTexts().isEmpty())
+			{
+				Set<String> missing = findMissingText(file, expectation.getTexts());
+				missing.forEach(text -> failures.add("Text not found: " + text));
+			}
+
+			if (checksumTask != null)
+			{
+				String sha256 = checksumTask.join();
+
+				if (!expectation.getSha256().equals(sha256))
+				{
+					failures.add("SHA-256 " + sha256 + " does not match " + expectation.getSha256());
+				}
+			}
+		}
+
+		private void verifyPdf(List<String> failures) throws IOException
+		{
+			if (expectation.getPageCount() == null && expectation.getTexts().isEmpty())
+			{
+				return;
+			}
+
+			int pageCount;
+			try (PDDocument document = Loader.loadPDF(file.toFile()))
+			{
+				if (document.isEncrypted() && !expectation.getTexts().isEmpty())
+				{
+					failures.add("PDF is encrypted, text can not be verified");
+					return;
+				}
+
+				pageCount = document.getNumberOfPages();
+			}
+
+			if (expectation.getPageCount() != null && expectation.getPageCount() != pageCount)
+			{
+				failures.add("Page count " + pageCount + " is not " + expectation.getPageCount());
+			}
+
+			if (expectation.getTexts().isEmpty())
+			{
+				return;
+			}
+
+			List<PdfRangeTask> rangeTasks = new ArrayList<PdfRangeTask>();
+			for (int startPage = 1; startPage <= pageCount; startPage += PAGES_PER_TASK)
+			{
+				int endPage = Math.min(pageCount, startPage + PAGES_PER_TASK - 1);
+				rangeTasks.add(new PdfRangeTask(file, expectation.getTexts(), startPage, endPage));
+			}
+
+			Set<String> found = new HashSet<String>();
+			for (PdfRangeTask rangeTask : invokeAll(rangeTasks))
+			{
+				found.addAll(rangeTask.join());
+			}
+
+			for (String text : expectation.getTexts())
+			{
+				if (!found.contains(text))
+				{
+					failures.add("Text not found: " + text);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Searches a page range of a PDF. Every range after the first one also covers the
+	 * previous page so text split over the range boundary is still found.
+	 */
+	private static class PdfRangeTask extends RecursiveTask<Set<String>>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Path file;
+		private final List<String> texts;
+		private final int startPage;
+		private final int endPage;
+
+		PdfRangeTask(Path file, List<String> texts, int startPage, int endPage)
+		{
+			this.file = file;
+			this.texts = texts;
+			this.startPage = startPage;
+			this.endPage = endPage;
+		}
+
+		@Override
+		protected Set<String> compute()
+		{
+			try
+			{
+				PdfVerifier.Result result = new PdfVerifier(file.toFile())
+						.pages(startPage > 1 ? startPage - 1 : startPage, endPage)
+						.search(texts);
+
+				return result == null ? new HashSet<String>() : new HashSet<String>(result.getFoundOnPage().keySet());
+			}
+			catch (IOException ioe)
+			{
+				ioe.printStackTrace();
+				return new HashSet<String>();
+			}
+		}
+	}
+
+	private static class ChecksumTask extends RecursiveTask<String>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Path file;
+
+		ChecksumTask(Path file)
+		{
+			this.file = file;
+		}
+
+		@Override
+		protected String compute()
+		{
+			try (InputStream in = Files.newInputStream(file))
+			{
+				return FileHelper.sha256(in);
+			}
+			catch (IOException ioe)
+			{
+				ioe.printStackTrace();
+				return null;
+			}
+		}
+	}
+
+	private static boolean isPdf(Path file)
+	{
+		return file.getFileName().toString().toLowerCase().endsWith(".pdf");
+	}
+
+	/**
+	 * Method streams a text file (UTF-8) and returns the texts that are not in it. Only a
+	 * buffer plus the longest text is kept in memory at a time.
+	 */
+	private static Set<String> findMissingText(Path file, List<String> texts) throws IOException
+	{
+		Set<String> missing = new LinkedHashSet<String>(texts);
+
+		int overlap = 0;
+		for (String text : texts)
+		{
+			overlap = Math.max(overlap, text.length() - 1);
+		}
+
+		char[] buffer = new char[TEXT_BUFFER_SIZE];
+		String tail = "";
+
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+		{
+			int read;
+			while (!missing.isEmpty() && (read = reader.read(buffer)) != -1)
+			{
+				String chunk = tail + new String(buffer, 0, read);
+
+				missing.removeIf(chunk::contains);
+
+				tail = chunk.substring(Math.max(0, chunk.length() - overlap));
+			}
+		}
+
+		return missing;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+package helper;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link RowReader} for CSV files (RFC 4180). Supports quoted fields with escaped quotes,
+ * delimiters and line breaks inside them.
+ *
+ * @author karlomijaljevic
+ */
+class CsvRowReader implements RowReader
+{
+	private final Reader reader;
+	private final char delimiter;
+
+	private final List<String> fields = new ArrayList<String>();
+	private final StringBuilder field = new StringBuilder();
+
+	private int pushedBack = -2;
+
+	CsvRowReader(Reader reader, char delimiter)
+	{
+		this.reader = reader;
+		this.delimiter = delimiter;
+	}
+
+	@Override
+	public String[] next() throws IOException
+	{
+		fields.clear();
+		field.setLength(0);
+
+		int c = read();
+		if (c == -1)
+		{
+			return null;
+		}
+
+		boolean quoted = false;
+
+		while (true)
+		{
+			if (quoted)
+			{
+				if (c == -1)
+				{
+					throw new IOException("Unterminated quoted CSV field");
+				}
+
+				if (c == '"')
+				{
+					int following = read();
+
+					if (following == '"')
+					{
+						field.append('"');
+					}
+					else
+					{
+						quoted = false;
+						c = following;
+						continue;
+					}
+				}
+				else
+				{
+					field.append((char) c);
+				}
+			}
+			else if (c == '"' && field.length() == 0)
+			{
+				quoted = true;
+			}
+			else if (c == delimiter)
+			{
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else if (c == '\r' || c == '\n' || c == -1)
+			{
+				if (c == '\r')
+				{
+					int following = read();
+
+					if (following != '\n')
+					{
+						pushedBack = following;
+					}
+				}
+
+				fields.add(field.toString());
+				return fields.toArray(new String[0]);
+			}
+			else
+			{
+				field.append((char) c);
+			}
+
+			c = read();
+		}
+	}
+
+	private int read() throws IOException
+	{
+		if (pushedBack != -2)
+		{
+			int c = pushedBack;
+			pushedBack = -2;
+			return c;
+		}
+
+		return reader.read();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		reader.close();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,189 @@
+package helper;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.WebDriverWait;
+
+/**
+ * Conditions for the {@link DomWait}, the counterpart of ExpectedConditions. Besides being
+ * a plain {@link Function} (so they also work with a {@link WebDriverWait}) a condition knows
+ * how to check itself inside the page, which lets the {@link DomWait} react to DOM changes
+ * instead of polling.
+ *
+ * Like with ExpectedConditions a condition is met once it returns something other than NULL
+ * or false.
+ *
+ * @author karlomijaljevic
+ */
+public class DomCondition<V> implements Function<WebDriver, V>
+{
+	static final String MODE_PRESENT = "present";
+	static final String MODE_VISIBLE = "visible";
+	static final String MODE_ABSENT = "absent";
+	static final String MODE_INVISIBLE = "invisible";
+
+	static final String USING_SCRIPT = "script";
+
+	private final String description;
+	private final String using;
+	private final Object value;
+	private final String mode;
+	private final Function<WebDriver, V> check;
+
+	private DomCondition(String description, String using, Object value, String mode, Function<WebDriver, V> check)
+	{
+		this.description = description;
+		this.using = using;
+		this.value = value;
+		this.mode = mode;
+		this.check = check;
+	}
+
+	/**
+	 * At least one element matches the locator.
+	 *
+	 * @return Returns a condition that resolves to the first matching {@link WebElement}.
+	 */
+	public static DomCondition<WebElement> presenceOf(By locator)
+	{
+		return forLocator("presence of " + locator, locator, MODE_PRESENT, webDriver -> {
+			List<WebElement> elements = webDriver.findElements(locator);
+
+			return elements.isEmpty() ? null : elements.get(0);
+		});
+	}
+
+	/**
+	 * At least one element matching the locator is displayed.
+	 *
+	 * @return Returns a condition that resolves to the first displayed {@link WebElement}.
+	 */
+	public static DomCondition<WebElement> visibilityOf(By locator)
+	{
+		return forLocator("visibility of " + locator, locator, MODE_VISIBLE, webDriver -> {
+			for (WebElement element : webDriver.findElements(locator))
+			{
+				if (element.isDisplayed())
+				{
+					return element;
+				}
+			}
+
+			return null;
+		});
+	}
+
+	/**
+	 * No element matches the locator. Meant for negative checks, they resolve right away in
+	 * case the element is not there instead of waiting for a timeout.
+	 */
+	public static DomCondition<Boolean> absenceOf(By locator)
+	{
+		return forLocator("absence of " + locator, locator, MODE_ABSENT,
+				webDriver -> webDriver.findElements(locator).isEmpty() ? Boolean.TRUE : null);
+	}
+
+	/**
+	 * No element matching the locator is displayed, elements that are not there count as
+	 * invisible.
+	 */
+	public static DomCondition<Boolean> invisibilityOf(By locator)
+	{
+		return forLocator("invisibility of " + locator, locator, MODE_INVISIBLE, webDriver -> {
+			for (WebElement element : webDriver.findElements(locator))
+			{
+				if (element.isDisplayed())
+				{
+					return null;
+				}
+			}
+
+			return Boolean.TRUE;
+		});
+	}
+
+	/**
+	 * A JavaScript function body returns something truthy, e.g.
+	 * "return document.readyState === 'complete' &amp;&amp; !document.querySelector('.spinner');".
+	 */
+	public static DomCondition<Boolean> scriptReturnsTrue(String script)
+	{
+		return new DomCondition<Boolean>("script " + script, USING_SCRIPT, script, MODE_PRESENT, webDriver -> {
+			Object result = ((JavascriptExecutor) webDriver).executeScript("return !!(function() { " + script + " })();");
+
+			return Boolean.TRUE.equals(result) ? Boolean.TRUE : null;
+		});
+	}
+
+	private static <V> DomCondition<V> forLocator(String description, By locator, String mode, Function<WebDriver, V> check)
+	{
+		String using = null;
+		Object value = null;
+
+		if (locator instanceof By.Remotable)
+		{
+			By.Remotable.Parameters parameters = ((By.Remotable) locator).getRemoteParameters();
+
+			using = parameters.using();
+			value = parameters.value();
+		}
+
+		return new DomCondition<V>(description, using, value, mode, check);
+	}
+
+	/**
+	 * Method evaluates the condition through the {@link WebDriver}. Elements that go stale
+	 * while checking count as not met.
+	 *
+	 * @return Returns the value of the condition or NULL in case it is not met.
+	 */
+	@Override
+	public V apply(WebDriver webDriver)
+	{
+		try
+		{
+			V result = check.apply(webDriver);
+
+			return Boolean.FALSE.equals(result) ? null : result;
+		}
+		catch (StaleElementReferenceException sere)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @return Returns true in case the condition can be observed inside the page.
+	 */
+	boolean isObservable()
+	{
+		return using != null && value instanceof String;
+	}
+
+	String getUsing()
+	{
+		return using;
+	}
+
+	Object getValue()
+	{
+		return value;
+	}
+
+	String getMode()
+	{
+		return mode;
+	}
+
+	@Override
+	public String toString()
+	{
+		return description;
+	}
+}
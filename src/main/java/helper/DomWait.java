@@ -0,0 +1,336 @@
+package helper;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.ScriptTimeoutException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.WebDriverWait;
+
+/**
+ * Wait that reacts to DOM changes instead of polling on a fixed interval. It reads like a
+ * {@link WebDriverWait} and is meant to replace implicit waits, e.g.
+ * <pre>
+ * WebElement link = new DomWait(webDriver, Duration.ofSeconds(5)).until(DomCondition.visibilityOf(By.id("download")));
+ * new DomWait(webDriver, Duration.ofSeconds(5)).until(DomCondition.absenceOf(By.cssSelector(".error")));
+ * </pre>
+ *
+ * For a {@link DomCondition} a MutationObserver is installed in the page through an async
+ * script, it answers as soon as a mutation makes the condition true (or right away if it
+ * already is). Everything else, e.g. a plain {@link Function} or a locator that can not be
+ * evaluated in the page, is polled with an exponential backoff that starts at a few
+ * milliseconds and never polls faster than the condition itself takes to evaluate.
+ *
+ * @implNote
+ * Use it with the implicit wait set to 0 (which is what the {@link driver.DriverPool} resets
+ * sessions to), otherwise every negative lookup still waits for the implicit wait.
+ *
+ * @author karlomijaljevic
+ */
+public class DomWait
+{
+	public static final Duration DEFAULT_MIN_POLL_INTERVAL = Duration.ofMillis(10);
+	public static final Duration DEFAULT_MAX_POLL_INTERVAL = Duration.ofMillis(500);
+
+	/**
+	 * Longest a single observer script waits before handing back control, the page may
+	 * navigate in between so it is re-installed after that.
+	 */
+	private static final long OBSERVE_SLICE_MILLIS = 5000;
+	private static final long SCRIPT_TIMEOUT_MARGIN_MILLIS = 1000;
+	private static final int MAX_OBSERVER_FAILURES = 3;
+
+	private static final String OBSERVER_SCRIPT =
+			"var using = arguments[0], value = arguments[1], mode = arguments[2], timeout = arguments[3];"
+			+ "var done = arguments[arguments.length - 1];"
+			+ "function find() {"
+			+ "  if (using === 'css selector') { return Array.prototype.slice.call(document.querySelectorAll(value)); }"
+			+ "  if (using === 'tag name') { return Array.prototype.slice.call(document.getElementsByTagName(value)); }"
+			+ "  if (using === 'xpath') {"
+			+ "    var snapshot = document.evaluate(value, document, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null), nodes = [];"
+			+ "    for (var i = 0; i < snapshot.snapshotLength; i++) { nodes.push(snapshot.snapshotItem(i)); }"
+			+ "    return nodes;"
+			+ "  }"
+			+ "  if (using === 'link text' || using === 'partial link text') {"
+			+ "    return Array.prototype.filter.call(document.getElementsByTagName('a'), function(a) {"
+			+ "      var text = (a.innerText || a.textContent || '').trim();"
+			+ "      return using === 'link text' ? text === value : text.indexOf(value) >= 0;"
+			+ "    });"
+			+ "  }"
+			+ "  if (using === 'script') { return (new Function(value))() ? [true] : []; }"
+			+ "  throw new Error('Unsupported locator ' + using);"
+			+ "}"
+			+ "function visible(e) {"
+			+ "  if (!(e instanceof Element)) { return true; }"
+			+ "  var style = window.getComputedStyle(e);"
+			+ "  return style.visibility !== 'hidden' && style.display !== 'none' && e.getClientRects().length > 0;"
+			+ "}"
+			+ "function check() {"
+			+ "  var found = find();"
+			+ "  if (mode === 'present') { return found.length > 0; }"
+			+ "  if (mode === 'visible') { return found.some(visible); }"
+			+ "  if (mode === 'absent') { return found.length === 0; }"
+			+ "  return !found.some(visible);"
+			+ "}"
+			+ "try { if (check()) { done(true); return; } } catch (e) { done(null); return; }"
+			+ "var finished = false, observer, timer, interval;"
+			+ "function finish(result) {"
+			+ "  if (finished) { return; }"
+			+ "  finished = true; observer.disconnect(); clearTimeout(timer); clearInterval(interval); done(result);"
+			+ "}"
+			+ "function recheck() { try { if (check()) { finish(true); } } catch (e) { finish(null); } }"
+			+ "observer = new MutationObserver(recheck);"
+			+ "observer.observe(document, { childList: true, subtree: true, attributes: true, characterData: true });"
+			// Style changes from stylesheets or animations do not show up as mutations.
+			+ "interval = setInterval(recheck, 250);"
+			+ "timer = setTimeout(function() { finish(false); }, timeout);";
+
+	private final WebDriver webDriver;
+	private final Duration timeout;
+
+	private Duration minPollInterval = DEFAULT_MIN_POLL_INTERVAL;
+	private Duration maxPollInterval = DEFAULT_MAX_POLL_INTERVAL;
+	private String message;
+
+	public DomWait(WebDriver webDriver, Duration timeout)
+	{
+		this.webDriver = webDriver;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Bounds of the exponential backoff used when a condition has to be polled.
+	 */
+	public DomWait pollingBetween(Duration minPollInterval, Duration maxPollInterval)
+	{
+		this.minPollInterval = minPollInterval;
+		this.maxPollInterval = maxPollInterval;
+		return this;
+	}
+
+	/**
+	 * Message added to the {@link TimeoutException}.
+	 */
+	public DomWait withMessage(String message)
+	{
+		this.message = message;
+		return this;
+	}
+
+	/**
+	 * Method waits until the condition is met, reacting to DOM changes when possible.
+	 *
+	 * @param condition -> A {@link DomCondition}.
+	 * @return Returns the value of the condition, e.g. the {@link WebElement} found.
+	 * @throws TimeoutException -> In case the condition was not met in time.
+	 */
+	public <V> V until(DomCondition<V> condition)
+	{
+		long deadline = System.nanoTime() + timeout.toNanos();
+
+		if (!condition.isObservable() || !(webDriver instanceof JavascriptExecutor))
+		{
+			return poll(condition, deadline);
+		}
+
+		int failures = 0;
+
+		while (true)
+		{
+			long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			Boolean observed = observe(condition, Math.max(0, Math.min(remainingMillis, OBSERVE_SLICE_MILLIS)));
+
+			if (observed == null)
+			{
+				if (++failures >= MAX_OBSERVER_FAILURES)
+				{
+					return poll(condition, deadline);
+				}
+			}
+			else if (observed)
+			{
+				V value = condition.apply(webDriver);
+
+				if (value != null)
+				{
+					return value;
+				}
+
+				// The page changed again between the script and the lookup, or the page and the
+				// driver disagree (e.g. on visibility), polling settles both cases.
+				if (++failures >= MAX_OBSERVER_FAILURES)
+				{
+					return poll(condition, deadline);
+				}
+			}
+
+			if (System.nanoTime() - deadline >= 0)
+			{
+				V value = condition.apply(webDriver);
+
+				if (value != null)
+				{
+					return value;
+				}
+
+				throw timeout(condition);
+			}
+		}
+	}
+
+	/**
+	 * Method polls any condition, like {@link WebDriverWait#until(Function)}, with an
+	 * exponential backoff.
+	 *
+	 * @param condition -> Condition that is met once it returns something other than NULL or false.
+	 * @return Returns the value of the condition.
+	 * @throws TimeoutException -> In case the condition was not met in time.
+	 */
+	public <V> V until(Function<? super WebDriver, V> condition)
+	{
+		return poll(condition, System.nanoTime() + timeout.toNanos());
+	}
+
+	/**
+	 * Shortcut for a negative check, the same as until(DomCondition.absenceOf(locator)) but
+	 * answers with false instead of throwing.
+	 *
+	 * @return Returns true if no element matches the locator (any more), false otherwise.
+	 */
+	public boolean isAbsent(By locator)
+	{
+		try
+		{
+			return until(DomCondition.absenceOf(locator));
+		}
+		catch (TimeoutException te)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Method runs the observer script once. The script timeout of the session is raised in
+	 * case it is shorter than the slice and restored afterwards, the session goes back to the
+	 * pool with its own timeout.
+	 *
+	 * @return Returns true if the condition became true, false if it did not within the
+	 * slice and NULL in case the page could not evaluate it.
+	 */
+	private Boolean observe(DomCondition<?> condition, long sliceMillis)
+	{
+		WebDriver.Timeouts timeouts = null;
+		Duration previous = null;
+
+		try
+		{
+			timeouts = webDriver.manage().timeouts();
+			Duration required = Duration.ofMillis(sliceMillis + SCRIPT_TIMEOUT_MARGIN_MILLIS);
+			Duration current = timeouts.getScriptTimeout();
+
+			if (current.compareTo(required) < 0)
+			{
+				timeouts.scriptTimeout(required);
+				previous = current;
+			}
+
+			Object result = ((JavascriptExecutor) webDriver).executeAsyncScript(OBSERVER_SCRIPT,
+					condition.getUsing(), condition.getValue(), condition.getMode(), sliceMillis);
+
+			return result instanceof Boolean ? (Boolean) result : null;
+		}
+		catch (ScriptTimeoutException | TimeoutException e)
+		{
+			return Boolean.FALSE;
+		}
+		catch (WebDriverException wde)
+		{
+			// E.g. the page navigated away while the observer was installed.
+			return null;
+		}
+		finally
+		{
+			if (previous != null)
+			{
+				restoreScriptTimeout(timeouts, previous);
+			}
+		}
+	}
+
+	private static void restoreScriptTimeout(WebDriver.Timeouts timeouts, Duration previous)
+	{
+		try
+		{
+			timeouts.scriptTimeout(previous);
+		}
+		catch (WebDriverException wde)
+		{
+			wde.printStackTrace();
+		}
+	}
+
+	private <V> V poll(Function<? super WebDriver, V> condition, long deadline)
+	{
+		long intervalNanos = minPollInterval.toNanos();
+		RuntimeException lastException = null;
+
+		while (true)
+		{
+			long start = System.nanoTime();
+
+			try
+			{
+				V value = condition.apply(webDriver);
+
+				if (value != null && !Boolean.FALSE.equals(value))
+				{
+					return value;
+				}
+			}
+			catch (WebDriverException wde)
+			{
+				lastException = wde;
+			}
+
+			long now = System.nanoTime();
+
+			if (now - deadline >= 0)
+			{
+				TimeoutException te = timeout(condition);
+				if (lastException != null)
+				{
+					te.initCause(lastException);
+				}
+				throw te;
+			}
+
+			// Never poll faster than the condition takes to evaluate.
+			long sleepNanos = Math.min(Math.max(intervalNanos, now - start), deadline - now);
+
+			try
+			{
+				TimeUnit.NANOSECONDS.sleep(sleepNanos);
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+				throw new WebDriverException(ie);
+			}
+
+			intervalNanos = Math.min(intervalNanos * 2, maxPollInterval.toNanos());
+		}
+	}
+
+	private TimeoutException timeout(Object condition)
+	{
+		String text = "Expected condition failed: waiting for " + condition + " (tried for " + timeout.toMillis() + " ms)";
+
+		return new TimeoutException(message == null ? text : message + ": " + text);
+	}
+}
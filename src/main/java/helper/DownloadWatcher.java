@@ -0,0 +1,223 @@
+package helper;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that waits for downloads to complete using a {@link WatchService} instead of
+ * sleeping and listing the download directory. A download counts as complete once the
+ * file with the exact expected name exists, no partial download (e.g. '.crdownload') of it
+ * is left and its size has not changed for {@link #STABLE_INTERVAL_MILLIS}.
+ *
+ * @author karlomijaljevic
+ */
+public class DownloadWatcher
+{
+	/**
+	 * How long a file size must stay the same for the download to count as complete.
+	 */
+	public static final long STABLE_INTERVAL_MILLIS = 150;
+
+	private static final String[] PARTIAL_DOWNLOAD_SUFFIXES = { ".crdownload", ".part", ".tmp" };
+
+	private final Path directory;
+
+	public DownloadWatcher(Path directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * Method blocks until every expected file is completely downloaded or the timeout passes.
+	 *
+	 * @param timeout -> Maximum {@link Duration} to wait for all of the files.
+	 * @param fileNames -> Exact names of the expected files.
+	 * @return Returns true if all files are complete, false on timeout or in case the
+	 * directory could not be watched.
+	 * @throws InterruptedException in case the {@link Thread} got interrupted.
+	 */
+	public boolean await(Duration timeout, String... fileNames) throws InterruptedException
+	{
+		return await(timeout, Arrays.asList(fileNames));
+	}
+
+	/**
+	 * Same as {@link #await(Duration, String...)} but takes a {@link Collection} of names.
+	 */
+	public boolean await(Duration timeout, Collection<String> fileNames) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + timeout.toNanos();
+
+		Set<String> pending = new LinkedHashSet<String>(fileNames);
+		Map<String, long[]> candidates = new HashMap<String, long[]>();
+
+		try (WatchService watchService = directory.getFileSystem().newWatchService())
+		{
+			directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+
+			// Files which finished before the watch was registered never produce an event.
+			for (String fileName : pending)
+			{
+				if (Files.exists(directory.resolve(fileName)))
+				{
+					candidates.put(fileName, null);
+				}
+			}
+
+			while (true)
+			{
+				checkCandidates(pending, candidates);
+
+				if (pending.isEmpty())
+				{
+					return true;
+				}
+
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0)
+				{
+					return false;
+				}
+
+				long pollNanos = candidates.isEmpty()
+						? remaining
+						: Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(STABLE_INTERVAL_MILLIS));
+
+				WatchKey key = watchService.poll(pollNanos, TimeUnit.NANOSECONDS);
+
+				if (key == null)
+				{
+					continue;
+				}
+
+				for (WatchEvent<?> event : key.pollEvents())
+				{
+					if (event.kind() == OVERFLOW)
+					{
+						for (String fileName : pending)
+						{
+							if (Files.exists(directory.resolve(fileName)))
+							{
+								candidates.putIfAbsent(fileName, null);
+							}
+						}
+						continue;
+					}
+
+					String name = stripPartialSuffix(event.context().toString());
+
+					if (pending.contains(name))
+					{
+						candidates.putIfAbsent(name, null);
+					}
+				}
+
+				if (!key.reset())
+				{
+					return false;
+				}
+			}
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Method checks every candidate file for completion. Completed files are removed from
+	 * both the pending set and the candidates, files which are not there (yet) are only
+	 * removed from the candidates until the next event. Candidate state is kept as
+	 * {size, time the size was last seen changing}.
+	 */
+	private void checkCandidates(Set<String> pending, Map<String, long[]> candidates)
+	{
+		long now = System.currentTimeMillis();
+
+		candidates.entrySet().removeIf(entry -> {
+			String fileName = entry.getKey();
+			Path file = directory.resolve(fileName);
+
+			if (!Files.isRegularFile(file))
+			{
+				return true;
+			}
+
+			if (isPartialDownloadPresent(fileName))
+			{
+				entry.setValue(null);
+				return false;
+			}
+
+			long size;
+			try
+			{
+				size = Files.size(file);
+			}
+			catch (IOException ioe)
+			{
+				entry.setValue(null);
+				return false;
+			}
+
+			long[] state = entry.getValue();
+
+			if (state == null || state[0] != size)
+			{
+				entry.setValue(new long[] { size, now });
+				return false;
+			}
+
+			if (now - state[1] >= STABLE_INTERVAL_MILLIS)
+			{
+				pending.remove(fileName);
+				return true;
+			}
+
+			return false;
+		});
+	}
+
+	private boolean isPartialDownloadPresent(String fileName)
+	{
+		for (String suffix : PARTIAL_DOWNLOAD_SUFFIXES)
+		{
+			if (Files.exists(directory.resolve(fileName + suffix)))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static String stripPartialSuffix(String name)
+	{
+		for (String suffix : PARTIAL_DOWNLOAD_SUFFIXES)
+		{
+			if (name.endsWith(suffix))
+			{
+				return name.substring(0, name.length() - suffix.length());
+			}
+		}
+
+		return name;
+	}
+}
\ No newline at end of file
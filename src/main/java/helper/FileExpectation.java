@@ -0,0 +1,88 @@
+package helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Expectations for a single downloaded file that are checked by the {@link BatchVerifier}.
+ * Every expectation is optional, only the ones that were set are checked.
+ *
+ * @author karlomijaljevic
+ */
+public class FileExpectation
+{
+	private final List<String> texts = new ArrayList<String>();
+	private Integer pageCount;
+	private String sha256;
+	private Long minSize;
+	private Long maxSize;
+
+	public static FileExpectation create()
+	{
+		return new FileExpectation();
+	}
+
+	/**
+	 * The file (PDF or plain text e.g. CSV) must contain every given text.
+	 */
+	public FileExpectation containsText(String... texts)
+	{
+		this.texts.addAll(Arrays.asList(texts));
+		return this;
+	}
+
+	/**
+	 * The PDF file must have exactly this many pages.
+	 */
+	public FileExpectation pageCount(int pageCount)
+	{
+		this.pageCount = pageCount;
+		return this;
+	}
+
+	/**
+	 * The file content must have this SHA-256 hash (hex encoded, case insensitive).
+	 */
+	public FileExpectation sha256(String sha256)
+	{
+		this.sha256 = sha256.toLowerCase();
+		return this;
+	}
+
+	/**
+	 * The file size in bytes must be between the given bounds, inclusive.
+	 */
+	public FileExpectation sizeBetween(long minSize, long maxSize)
+	{
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		return this;
+	}
+
+	public List<String> getTexts()
+	{
+		return Collections.unmodifiableList(texts);
+	}
+
+	public Integer getPageCount()
+	{
+		return pageCount;
+	}
+
+	public String getSha256()
+	{
+		return sha256;
+	}
+
+	public Long getMinSize()
+	{
+		return minSize;
+	}
+
+	public Long getMaxSize()
+	{
+		return maxSize;
+	}
+}
\ No newline at end of file
@@ -2,16 +2,40 @@ package helper;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
-import org.apache.pdfbox.text.PDFTextStripperByArea;
+import org.openqa.selenium.WebDriver;
 
 import configuration.ChromeDriverPreferences;
+import configuration.TestConfiguration;
+import driver.DriverPool;
+import driver.DriverSession;
 
 /**
  * Class used to help with file related operations for example
@@ -22,6 +46,35 @@ import configuration.ChromeDriverPreferences;
  */
 public class FileHelper
 {
+	private static final ExecutorService CLEANUP_EXECUTOR = Executors.newFixedThreadPool(2, runnable -> {
+		Thread thread = new Thread(runnable, "file-cleanup");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+	private static final Set<CompletableFuture<Boolean>> PENDING_DELETES = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Work done while holding a file lock, see {@link FileHelper#withFileLock(Path, LockedAction)}.
+	 */
+	public interface LockedAction<T>
+	{
+		T run() throws IOException;
+	}
+
+	/**
+	 * Writer of the content of a file, see {@link FileHelper#writeAtomically(Path, ContentWriter)}.
+	 */
+	public interface ContentWriter
+	{
+		/**
+		 * @param temporary -> Temporary file next to the target, the content goes here.
+		 */
+		void write(Path temporary) throws IOException;
+	}
+
 	/**
 	 * Setting up a Download directory is driver independent. Only
 	 * depends on the OS the tests are running on.
@@ -52,29 +105,157 @@ public class FileHelper
 	}
 
 	/**
-	 * Method is used to delete the {@link ChromeDriverPreferences} download directory.
+	 * Method is used to delete the {@link ChromeDriverPreferences} download directory. The
+	 * directory is deleted recursively on a background thread.
 	 * 
-	 * @return Returns true on success and false on failure.
+	 * @return Returns true if the deletion was scheduled or there was nothing to delete and
+	 * false on failure.
 	 */
 	public static boolean deleteDownloadDirectory()
 	{
 		String downlaodPath = (String) ChromeDriverPreferences.DOWNLOAD_DEFAULT_DIRECTORY.getParameterValue();
 
-		if (Files.exists(Paths.get(downlaodPath)))
-		{
-			File downloadsDirectory = new File(downlaodPath);
+		Path path = Paths.get(downlaodPath);
 
-			for (File file : downloadsDirectory.listFiles())
+		if (Files.exists(path))
+		{
+			if (!Files.isDirectory(path))
 			{
-				file.delete();
+				return false;
 			}
 
-			return downloadsDirectory.delete();
+			deleteRecursivelyAsync(path);
 		}
 
 		return true;
 	}
 
+	/**
+	 * Method returns the download directory of the given leased {@link WebDriver}. Every pooled
+	 * session downloads into its own directory, for any other driver the
+	 * {@link ChromeDriverPreferences} download directory is returned.
+	 * 
+	 * @param webDriver -> A {@link WebDriver} leased through the {@link TestConfiguration}.
+	 * @return Returns the download directory as a {@link Path}.
+	 */
+	public static Path getDownloadDirectory(WebDriver webDriver)
+	{
+		DriverSession session = DriverPool.getInstance().getSession(webDriver);
+
+		if (session != null)
+		{
+			return session.getDownloadDirectory();
+		}
+
+		return Paths.get((String) ChromeDriverPreferences.DOWNLOAD_DEFAULT_DIRECTORY.getParameterValue());
+	}
+
+	/**
+	 * Method deletes a file or a directory with everything inside it on a background thread
+	 * so the calling test thread is not blocked.
+	 * 
+	 * @param path -> {@link Path} to delete, NULL is ignored.
+	 * @return Returns a {@link CompletableFuture} that completes with true on success and
+	 * false on failure.
+	 */
+	public static CompletableFuture<Boolean> deleteRecursivelyAsync(Path path)
+	{
+		if (path == null)
+		{
+			return CompletableFuture.completedFuture(true);
+		}
+
+		CompletableFuture<Boolean> deletion = CompletableFuture.supplyAsync(() -> deleteRecursively(path, true), CLEANUP_EXECUTOR);
+
+		PENDING_DELETES.add(deletion);
+		deletion.whenComplete((result, throwable) -> PENDING_DELETES.remove(deletion));
+
+		return deletion;
+	}
+
+	/**
+	 * Method deletes everything inside the given directory but keeps the directory itself.
+	 * Runs on the calling thread.
+	 * 
+	 * @param directory -> Directory to empty, NULL is ignored.
+	 * @return Returns true on success and false on failure.
+	 */
+	public static boolean deleteDirectoryContents(Path directory)
+	{
+		return directory == null || deleteRecursively(directory, false);
+	}
+
+	/**
+	 * Method blocks until every deletion scheduled by deleteRecursivelyAsync() has finished
+	 * or the timeout passes. Used on shutdown so temporary directories do not outlive the JVM.
+	 * 
+	 * @param timeout -> Maximum {@link Duration} to wait.
+	 * @return Returns true if all deletions finished, false otherwise.
+	 */
+	public static boolean awaitPendingDeletes(Duration timeout)
+	{
+		CompletableFuture<?>[] pending = PENDING_DELETES.toArray(new CompletableFuture<?>[0]);
+
+		try
+		{
+			CompletableFuture.allOf(pending).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+			return true;
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		catch (ExecutionException | TimeoutException e)
+		{
+			return false;
+		}
+	}
+
+	private static boolean deleteRecursively(Path root, boolean deleteRoot)
+	{
+		if (!Files.exists(root))
+		{
+			return true;
+		}
+
+		try
+		{
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>()
+			{
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException
+				{
+					Files.deleteIfExists(file);
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory(Path directory, IOException exception) throws IOException
+				{
+					if (exception != null)
+					{
+						throw exception;
+					}
+
+					if (deleteRoot || !directory.equals(root))
+					{
+						Files.deleteIfExists(directory);
+					}
+
+					return FileVisitResult.CONTINUE;
+				}
+			});
+
+			return true;
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+			return false;
+		}
+	}
+
 	/**
 	 * Method is used to check the presence of a file in the {@link ChromeDriverPreferences} download
 	 * directory.
@@ -86,39 +267,168 @@ public class FileHelper
 	 * @return Returns true if file is present, false otherwise.
 	 * 
 	 * @throws InterruptedException in case the {@link Thread} got interrupted.
+	 * 
+	 * @deprecated Use awaitDownloads() which returns as soon as the download is complete.
+	 * This method now simply waits up to iterations * 5 seconds for the exact file name.
 	 */
+	@Deprecated
 	public static boolean isDownloadFilePresent(String fileName, int iterations) throws InterruptedException
 	{
-		boolean isFilePresent = false;
+		return awaitDownloads(Duration.ofSeconds(5L * iterations), fileName);
+	}
 
+	/**
+	 * Method waits for one or more files to be completely downloaded into the
+	 * {@link ChromeDriverPreferences} download directory. It returns as soon as every file
+	 * is present under its exact name and its size has stabilised.
+	 * 
+	 * @param timeout -> Maximum {@link Duration} to wait for all of the files.
+	 * @param fileNames -> Exact names of the expected files.
+	 * 
+	 * @return Returns true if all files were downloaded, false otherwise.
+	 * 
+	 * @throws InterruptedException in case the {@link Thread} got interrupted.
+	 */
+	public static boolean awaitDownloads(Duration timeout, String... fileNames) throws InterruptedException
+	{
 		String downlaodPath = (String) ChromeDriverPreferences.DOWNLOAD_DEFAULT_DIRECTORY.getParameterValue();
 
-		File dir = new File(downlaodPath);
+		return new DownloadWatcher(Paths.get(downlaodPath)).await(timeout, fileNames);
+	}
+
+	/**
+	 * Same as awaitDownloads(Duration, String...) but waits inside the download directory of the
+	 * given {@link WebDriver} session.
+	 * 
+	 * @param webDriver -> A {@link WebDriver} leased through the {@link TestConfiguration}.
+	 * @param timeout -> Maximum {@link Duration} to wait for all of the files.
+	 * @param fileNames -> Exact names of the expected files.
+	 * 
+	 * @return Returns true if all files were downloaded, false otherwise.
+	 * 
+	 * @throws InterruptedException in case the {@link Thread} got interrupted.
+	 */
+	public static boolean awaitDownloads(WebDriver webDriver, Duration timeout, String... fileNames) throws InterruptedException
+	{
+		return new DownloadWatcher(getDownloadDirectory(webDriver)).await(timeout, fileNames);
+	}
+
+	/**
+	 * Method streams the given {@link InputStream} through a SHA-256 digest. The stream is
+	 * read to the end but not closed.
+	 * 
+	 * @param in -> The {@link InputStream} to hash.
+	 * @return Returns the hex encoded SHA-256 hash.
+	 * @throws IOException -> In case the stream could not be read.
+	 */
+	public static String sha256(InputStream in) throws IOException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException nsae)
+		{
+			throw new IOException(nsae);
+		}
 
-		for (int waitForDownload = 0; waitForDownload < iterations; waitForDownload++)
+		byte[] buffer = new byte[HASH_BUFFER_SIZE];
+
+		int read;
+		while ((read = in.read(buffer)) != -1)
 		{
-			for(File file : dir.listFiles())
+			digest.update(buffer, 0, read);
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest())
+		{
+			hex.append(String.format("%02x", b));
+		}
+
+		return hex.toString();
+	}
+
+	/**
+	 * Method runs the action while holding an exclusive lock on the lock file, so only one JVM
+	 * on the machine (e.g. parallel CI jobs or shards) runs it at a time. Blocks until the lock
+	 * is free.
+	 * 
+	 * @param lockFile -> {@link Path} of the lock file, created in case it does not exist.
+	 * @param action -> {@link LockedAction} to run under the lock.
+	 * @return Returns what the action returned.
+	 * @throws IOException -> In case the lock could not be taken or the action failed.
+	 */
+	public static <T> T withFileLock(Path lockFile, LockedAction<T> action) throws IOException
+	{
+		try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+		{
+			// Closing the channel releases the lock.
+			lockChannel.lock();
+
+			return action.run();
+		}
+	}
+
+	/**
+	 * Method writes a file through a temporary file in the same directory that is renamed to
+	 * the target once it is complete, so readers see either the old or the new file and never
+	 * a partial one. The rename is atomic where the file system supports it.
+	 * 
+	 * @param target -> {@link Path} of the file to write, replaced in case it exists.
+	 * @param writer -> {@link ContentWriter} that fills the temporary file.
+	 * @throws IOException -> In case the file could not be written.
+	 */
+	public static void writeAtomically(Path target, ContentWriter writer) throws IOException
+	{
+		Path absolute = target.toAbsolutePath();
+		Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+
+		try
+		{
+			writer.write(temporary);
+
+			try
 			{
-				if (file.getName().contains(fileName))
-				{
-					isFilePresent = true;
-					break;
-				}
+				Files.move(temporary, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
 			}
-
-			if (isFilePresent)
+			catch (AtomicMoveNotSupportedException amnse)
 			{
-				break;
+				Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING);
 			}
-
-			Thread.sleep(5000);
 		}
-		return isFilePresent;
+		finally
+		{
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Method verifies files inside the download directory of the given {@link WebDriver}
+	 * session in parallel, see {@link BatchVerifier}.
+	 * 
+	 * @param webDriver -> A {@link WebDriver} leased through the {@link TestConfiguration}.
+	 * @param expectations -> Map of file names and their {@link FileExpectation}.
+	 * @return Returns a {@link FileVerificationResult} per file.
+	 */
+	public static Map<Path, FileVerificationResult> verifyDownloads(WebDriver webDriver, Map<String, FileExpectation> expectations)
+	{
+		Path downloadDirectory = getDownloadDirectory(webDriver);
+		Map<Path, FileExpectation> files = new LinkedHashMap<Path, FileExpectation>();
+
+		expectations.forEach((fileName, expectation) -> files.put(downloadDirectory.resolve(fileName), expectation));
+
+		return new BatchVerifier().verify(files);
 	}
 
 	/**
 	 * Method uses the Apache PdfBox package to read PDF file contents.
 	 * 
+	 * @implNote
+	 * This materialises the whole document as one {@link String}. To check for the presence
+	 * of text please use the {@link PdfVerifier} which searches page by page and stops early.
+	 * 
 	 * @param filePath -> Path to the PDF file as {@link String}
 	 * @return Returns the contents of the PDF file as a {@link String} object. In case
 	 * it returned null that means that the PDF was encrypted.
@@ -129,20 +439,30 @@ public class FileHelper
 		String pdfFileInText = null;
 		File pdfFile = new File(filePath);
 
-		PDDocument document = Loader.loadPDF(pdfFile);
-
-		document.getClass();
-
-		if (!document.isEncrypted())
+		try (PDDocument document = Loader.loadPDF(pdfFile))
 		{
-			PDFTextStripperByArea stripper = new PDFTextStripperByArea();
-			stripper.setSortByPosition(true);
-
-			PDFTextStripper tStripper = new PDFTextStripper();
+			if (!document.isEncrypted())
+			{
+				PDFTextStripper tStripper = new PDFTextStripper();
 
-			pdfFileInText = tStripper.getText(document);
+				pdfFileInText = tStripper.getText(document);
+			}
 		}
 
 		return pdfFileInText;
 	}
+
+	/**
+	 * Method checks that every given text is present in the PDF file, searching page by page
+	 * and stopping as soon as all of them are found.
+	 * 
+	 * @param filePath -> Path to the PDF file as {@link String}
+	 * @param texts -> Texts that need to be present.
+	 * @return Returns true if all texts are present, false otherwise or if the PDF is encrypted.
+	 * @throws IOException -> In case it could not read the PDF file.
+	 */
+	public static boolean pdfContains(String filePath, String... texts) throws IOException
+	{
+		return new PdfVerifier(filePath).containsAll(texts);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package helper;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of verifying a single file against its {@link FileExpectation} in the
+ * {@link BatchVerifier}.
+ *
+ * @author karlomijaljevic
+ */
+public class FileVerificationResult
+{
+	private final Path file;
+	private final List<String> failures;
+	private final long durationMillis;
+
+	FileVerificationResult(Path file, List<String> failures, long durationMillis)
+	{
+		this.file = file;
+		this.failures = Collections.unmodifiableList(failures);
+		this.durationMillis = durationMillis;
+	}
+
+	public boolean isPassed()
+	{
+		return failures.isEmpty();
+	}
+
+	public Path getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * @return Returns a human readable description of every expectation that was not met.
+	 */
+	public List<String> getFailures()
+	{
+		return failures;
+	}
+
+	/**
+	 * @return Returns the wall clock time it took to verify the file.
+	 */
+	public long getDurationMillis()
+	{
+		return durationMillis;
+	}
+
+	@Override
+	public String toString()
+	{
+		return file + (isPassed() ? " passed" : " failed " + failures) + " in " + durationMillis + " ms";
+	}
+}
\ No newline at end of file
@@ -0,0 +1,245 @@
+package helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+/**
+ * Class used to verify the text content of PDF files without materialising the whole
+ * document as a single {@link String}. Text is extracted page by page and the search stops
+ * as soon as every expected piece of text has been found.
+ *
+ * Documents are read through PDFBox's buffered random access file, and in bounded memory
+ * mode every decoded stream goes to a scratch file instead of the heap. Documents are always
+ * closed.
+ *
+ * @author karlomijaljevic
+ */
+public class PdfVerifier
+{
+	/**
+	 * Heap budget for decoded PDF streams in bounded memory mode, everything above this
+	 * goes to a scratch file.
+	 */
+	public static final long BOUNDED_MAIN_MEMORY_BYTES = 8L * 1024 * 1024;
+
+	private final File pdfFile;
+	private final byte[] pdfBytes;
+	private int startPage = 1;
+	private int endPage = Integer.MAX_VALUE;
+	private boolean boundedMemory = false;
+
+	public PdfVerifier(File pdfFile)
+	{
+		this.pdfFile = pdfFile;
+		this.pdfBytes = null;
+	}
+
+	/**
+	 * Verifier of a PDF that is already in memory, e.g. a download captured with a
+	 * {@link driver.DownloadCapture}.
+	 */
+	public PdfVerifier(byte[] pdfBytes)
+	{
+		this.pdfFile = null;
+		this.pdfBytes = pdfBytes;
+	}
+
+	public PdfVerifier(String filePath)
+	{
+		this(new File(filePath));
+	}
+
+	/**
+	 * Limits the search to the given page range.
+	 *
+	 * @param startPage -> First page to search, 1 based.
+	 * @param endPage -> Last page to search, inclusive.
+	 * @return Returns this {@link PdfVerifier}.
+	 */
+	public PdfVerifier pages(int startPage, int endPage)
+	{
+		this.startPage = Math.max(1, startPage);
+		this.endPage = endPage;
+		return this;
+	}
+
+	/**
+	 * Turns on bounded memory mode where decoded streams are kept in a scratch file
+	 * once they exceed {@link #BOUNDED_MAIN_MEMORY_BYTES}.
+	 *
+	 * @return Returns this {@link PdfVerifier}.
+	 */
+	public PdfVerifier boundedMemory()
+	{
+		this.boundedMemory = true;
+		return this;
+	}
+
+	/**
+	 * Method checks if every given text is present in the PDF file.
+	 *
+	 * @param texts -> Texts that need to be present.
+	 * @return Returns true if all of the texts were found, false otherwise or if the PDF
+	 * is encrypted.
+	 * @throws IOException -> In case it could not read the PDF file.
+	 */
+	public boolean containsAll(String... texts) throws IOException
+	{
+		Result result = search(Arrays.asList(texts));
+
+		return result != null && result.isAllFound();
+	}
+
+	/**
+	 * Method checks if at least one of the given texts is present in the PDF file. Stops at
+	 * the first page with a match.
+	 *
+	 * @param texts -> Texts of which one needs to be present.
+	 * @return Returns true if any of the texts was found, false otherwise or if the PDF
+	 * is encrypted.
+	 * @throws IOException -> In case it could not read the PDF file.
+	 */
+	public boolean containsAny(String... texts) throws IOException
+	{
+		Result result = search(Arrays.asList(texts), true);
+
+		return result != null && !result.getFoundOnPage().isEmpty();
+	}
+
+	/**
+	 * Method searches the PDF page by page for all of the given texts in a single pass and
+	 * stops as soon as all of them are found. Text that is split over two pages is still found.
+	 *
+	 * @param texts -> Texts to search for.
+	 * @return Returns a {@link Result} with the page every text was found on, or NULL in case
+	 * the PDF is encrypted.
+	 * @throws IOException -> In case it could not read the PDF file.
+	 */
+	public Result search(Collection<String> texts) throws IOException
+	{
+		return search(texts, false);
+	}
+
+	private Result search(Collection<String> texts, boolean stopAtFirstMatch) throws IOException
+	{
+		Set<String> remaining = new LinkedHashSet<String>(texts);
+		Map<String, Integer> foundOnPage = new LinkedHashMap<String, Integer>();
+
+		int overlap = 0;
+		for (String text : remaining)
+		{
+			overlap = Math.max(overlap, text.length() - 1);
+		}
+
+		try (PDDocument document = load())
+		{
+			if (document.isEncrypted())
+			{
+				return null;
+			}
+
+			int lastPage = Math.min(endPage, document.getNumberOfPages());
+			int pagesSearched = 0;
+
+			PDFTextStripper stripper = new PDFTextStripper();
+			String previousTail = "";
+
+			for (int page = startPage; page <= lastPage && !remaining.isEmpty(); page++)
+			{
+				stripper.setStartPage(page);
+				stripper.setEndPage(page);
+
+				String pageText = previousTail + stripper.getText(document);
+				pagesSearched++;
+
+				for (String text : remaining)
+				{
+					if (pageText.contains(text))
+					{
+						foundOnPage.put(text, page);
+					}
+				}
+
+				remaining.removeAll(foundOnPage.keySet());
+
+				if (stopAtFirstMatch && !foundOnPage.isEmpty())
+				{
+					break;
+				}
+
+				previousTail = pageText.substring(Math.max(0, pageText.length() - overlap));
+			}
+
+			return new Result(foundOnPage, remaining, pagesSearched);
+		}
+	}
+
+	private PDDocument load() throws IOException
+	{
+		if (pdfBytes != null)
+		{
+			return boundedMemory
+					? Loader.loadPDF(pdfBytes, "", null, null, MemoryUsageSetting.setupMixed(BOUNDED_MAIN_MEMORY_BYTES))
+					: Loader.loadPDF(pdfBytes);
+		}
+
+		if (boundedMemory)
+		{
+			return Loader.loadPDF(pdfFile, MemoryUsageSetting.setupMixed(BOUNDED_MAIN_MEMORY_BYTES));
+		}
+
+		return Loader.loadPDF(pdfFile);
+	}
+
+	/**
+	 * Outcome of a {@link PdfVerifier} search.
+	 */
+	public static class Result
+	{
+		private final Map<String, Integer> foundOnPage;
+		private final Set<String> notFound;
+		private final int pagesSearched;
+
+		Result(Map<String, Integer> foundOnPage, Set<String> notFound, int pagesSearched)
+		{
+			this.foundOnPage = Collections.unmodifiableMap(foundOnPage);
+			this.notFound = Collections.unmodifiableSet(notFound);
+			this.pagesSearched = pagesSearched;
+		}
+
+		public boolean isAllFound()
+		{
+			return notFound.isEmpty();
+		}
+
+		/**
+		 * @return Returns the (1 based) page number every found text was found on.
+		 */
+		public Map<String, Integer> getFoundOnPage()
+		{
+			return foundOnPage;
+		}
+
+		public Set<String> getNotFound()
+		{
+			return notFound;
+		}
+
+		public int getPagesSearched()
+		{
+			return pagesSearched;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,20 @@
+package helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Streaming source of table rows used by the {@link TabularVerifier}. Only the current row
+ * is held in memory.
+ *
+ * @author karlomijaljevic
+ */
+interface RowReader extends Closeable
+{
+	/**
+	 * @return Returns the next row as an array of cell values, or NULL when there are no
+	 * more rows. Empty cells are empty strings.
+	 * @throws IOException -> In case the file could not be read or parsed.
+	 */
+	String[] next() throws IOException;
+}
\ No newline at end of file
@@ -0,0 +1,427 @@
+package helper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoublePredicate;
+import java.util.function.Predicate;
+
+/**
+ * Class used to verify CSV and XLSX files row by row in a single pass. The file is streamed
+ * (see {@link CsvRowReader} and {@link XlsxRowReader}) so memory use does not depend on the
+ * number of rows. Header schema, row count, per column predicates and column aggregates
+ * (sum, min, max, average) can be checked in the same pass.
+ *
+ * Example:
+ * <pre>
+ * TabularVerifier.csv(file)
+ *     .expectHeader("Id", "Name", "Amount")
+ *     .expectRowCount(1000)
+ *     .expectEveryValue("Id", value -&gt; value.matches("\\d+"))
+ *     .expectAggregate("Amount", Aggregate.SUM, sum -&gt; sum &gt; 0)
+ *     .verify();
+ * </pre>
+ *
+ * @author karlomijaljevic
+ */
+public class TabularVerifier
+{
+	/**
+	 * Maximum number of failures that are recorded, the rest are only counted.
+	 */
+	public static final int MAX_RECORDED_FAILURES = 100;
+
+	/**
+	 * Aggregates that can be computed over a numeric column.
+	 */
+	public enum Aggregate
+	{
+		SUM, MIN, MAX, AVERAGE
+	}
+
+	private final Path file;
+	private final InputStream stream;
+	private final boolean xlsx;
+	private char delimiter = ',';
+	private int sheetNumber = 1;
+
+	private List<String> expectedHeader;
+	private long minRows = 0;
+	private long maxRows = Long.MAX_VALUE;
+	private final Map<String, List<Predicate<String>>> valuePredicates = new LinkedHashMap<String, List<Predicate<String>>>();
+	private final List<AggregateExpectation> aggregates = new ArrayList<AggregateExpectation>();
+
+	private TabularVerifier(Path file, InputStream stream, boolean xlsx)
+	{
+		this.file = file;
+		this.stream = stream;
+		this.xlsx = xlsx;
+	}
+
+	public static TabularVerifier csv(Path file)
+	{
+		return new TabularVerifier(file, null, false);
+	}
+
+	/**
+	 * CSV read from a stream, e.g. a download captured in memory. The stream can only be
+	 * verified once and is closed by verify().
+	 */
+	public static TabularVerifier csv(InputStream stream)
+	{
+		return new TabularVerifier(null, stream, false);
+	}
+
+	public static TabularVerifier xlsx(Path file)
+	{
+		return new TabularVerifier(file, null, true);
+	}
+
+	/**
+	 * Method picks the reader depending on the file extension (.xlsx or anything else as CSV).
+	 */
+	public static TabularVerifier of(Path file)
+	{
+		return new TabularVerifier(file, null, file.getFileName().toString().toLowerCase().endsWith(".xlsx"));
+	}
+
+	public TabularVerifier delimiter(char delimiter)
+	{
+		this.delimiter = delimiter;
+		return this;
+	}
+
+	/**
+	 * Selects the XLSX sheet by its position, 1 based.
+	 */
+	public TabularVerifier sheet(int sheetNumber)
+	{
+		this.sheetNumber = sheetNumber;
+		return this;
+	}
+
+	/**
+	 * The first row must consist of exactly these column names. Without an expected header the
+	 * first row is still treated as the header so columns can be referred to by name.
+	 */
+	public TabularVerifier expectHeader(String... columns)
+	{
+		this.expectedHeader = Arrays.asList(columns);
+		return this;
+	}
+
+	/**
+	 * The number of data rows (without the header) must be exactly this.
+	 */
+	public TabularVerifier expectRowCount(long rows)
+	{
+		return expectRowCountBetween(rows, rows);
+	}
+
+	public TabularVerifier expectRowCountBetween(long minRows, long maxRows)
+	{
+		this.minRows = minRows;
+		this.maxRows = maxRows;
+		return this;
+	}
+
+	/**
+	 * Every value of the given column must match the predicate.
+	 */
+	public TabularVerifier expectEveryValue(String column, Predicate<String> predicate)
+	{
+		valuePredicates.computeIfAbsent(column, key -> new ArrayList<Predicate<String>>()).add(predicate);
+		return this;
+	}
+
+	/**
+	 * The aggregate of the given numeric column must match the predicate. Values which are not
+	 * numbers are reported as failures.
+	 */
+	public TabularVerifier expectAggregate(String column, Aggregate aggregate, DoublePredicate predicate)
+	{
+		aggregates.add(new AggregateExpectation(column, aggregate, predicate));
+		return this;
+	}
+
+	/**
+	 * Method streams the file once and checks every expectation.
+	 *
+	 * @return Returns a {@link Result} with the failures, row count and computed aggregates.
+	 * @throws IOException -> In case the file could not be read or parsed.
+	 */
+	public Result verify() throws IOException
+	{
+		long start = System.nanoTime();
+		Result result = new Result();
+		List<Accumulator> accumulators = new ArrayList<Accumulator>();
+		aggregates.forEach(aggregate -> accumulators.add(new Accumulator()));
+
+		try (RowReader reader = openReader())
+		{
+			String[] header = reader.next();
+
+			if (header == null)
+			{
+				result.fail("File is empty");
+				return result.finish(start);
+			}
+
+			if (expectedHeader != null && !expectedHeader.equals(Arrays.asList(header)))
+			{
+				result.fail("Header " + Arrays.toString(header) + " is not " + expectedHeader);
+			}
+
+			int[] predicateColumns = resolveColumns(header, new ArrayList<String>(valuePredicates.keySet()), result);
+			List<List<Predicate<String>>> predicates = new ArrayList<List<Predicate<String>>>(valuePredicates.values());
+
+			List<String> aggregateColumnNames = new ArrayList<String>();
+			aggregates.forEach(aggregate -> aggregateColumnNames.add(aggregate.column));
+			int[] aggregateColumns = resolveColumns(header, aggregateColumnNames, result);
+
+			String[] row;
+			while ((row = reader.next()) != null)
+			{
+				result.rowCount++;
+
+				for (int i = 0; i < predicateColumns.length; i++)
+				{
+					if (predicateColumns[i] < 0)
+					{
+						continue;
+					}
+
+					String value = cell(row, predicateColumns[i]);
+
+					for (Predicate<String> predicate : predicates.get(i))
+					{
+						if (!predicate.test(value))
+						{
+							result.fail("Row " + result.rowCount + " column " + header[predicateColumns[i]] + " has unexpected value '" + value + "'");
+						}
+					}
+				}
+
+				for (int i = 0; i < aggregateColumns.length; i++)
+				{
+					if (aggregateColumns[i] >= 0)
+					{
+						accumulators.get(i).accept(cell(row, aggregateColumns[i]), aggregates.get(i).column, result);
+					}
+				}
+			}
+		}
+
+		if (result.rowCount < minRows || result.rowCount > maxRows)
+		{
+			result.fail("Row count " + result.rowCount + " is not between " + minRows + " and " + maxRows);
+		}
+
+		for (int i = 0; i < aggregates.size(); i++)
+		{
+			AggregateExpectation aggregate = aggregates.get(i);
+			double value = accumulators.get(i).value(aggregate.aggregate);
+			result.aggregates.put(aggregate.column + " " + aggregate.aggregate, value);
+
+			if (!aggregate.predicate.test(value))
+			{
+				result.fail(aggregate.aggregate + " of column " + aggregate.column + " is unexpected: " + value);
+			}
+		}
+
+		return result.finish(start);
+	}
+
+	private RowReader openReader() throws IOException
+	{
+		if (xlsx)
+		{
+			return new XlsxRowReader(file, sheetNumber);
+		}
+
+		Reader reader = new PushbackReader(new BufferedReader(new InputStreamReader(stream == null ? Files.newInputStream(file) : stream, StandardCharsets.UTF_8)));
+
+		int first = reader.read();
+		if (first != '\uFEFF' && first != -1)
+		{
+			((PushbackReader) reader).unread(first);
+		}
+
+		return new CsvRowReader(reader, delimiter);
+	}
+
+	private static int[] resolveColumns(String[] header, List<String> columns, Result result)
+	{
+		List<String> headerList = Arrays.asList(header);
+		int[] indexes = new int[columns.size()];
+
+		for (int i = 0; i < columns.size(); i++)
+		{
+			indexes[i] = headerList.indexOf(columns.get(i));
+
+			if (indexes[i] < 0)
+			{
+				result.fail("Column " + columns.get(i) + " does not exist");
+			}
+		}
+
+		return indexes;
+	}
+
+	private static String cell(String[] row, int column)
+	{
+		return column < row.length ? row[column] : "";
+	}
+
+	/**
+	 * Expected aggregate of a single column.
+	 */
+	private static class AggregateExpectation
+	{
+		private final String column;
+		private final Aggregate aggregate;
+		private final DoublePredicate predicate;
+
+		AggregateExpectation(String column, Aggregate aggregate, DoublePredicate predicate)
+		{
+			this.column = column;
+			this.aggregate = aggregate;
+			this.predicate = predicate;
+		}
+	}
+
+	/**
+	 * Running aggregate of a single column during one {@link #verify()}, only a few primitives
+	 * are kept.
+	 */
+	private static class Accumulator
+	{
+		private double sum = 0;
+		private double min = Double.POSITIVE_INFINITY;
+		private double max = Double.NEGATIVE_INFINITY;
+		private long count = 0;
+
+		void accept(String value, String column, Result result)
+		{
+			if (value.isEmpty())
+			{
+				return;
+			}
+
+			try
+			{
+				double number = Double.parseDouble(value.trim());
+
+				sum += number;
+				min = Math.min(min, number);
+				max = Math.max(max, number);
+				count++;
+			}
+			catch (NumberFormatException nfe)
+			{
+				result.fail("Row " + result.rowCount + " column " + column + " is not a number: '" + value + "'");
+			}
+		}
+
+		double value(Aggregate aggregate)
+		{
+			switch (aggregate)
+			{
+				case SUM:
+					return sum;
+				case MIN:
+					return count == 0 ? Double.NaN : min;
+				case MAX:
+					return count == 0 ? Double.NaN : max;
+				case AVERAGE:
+				default:
+					return count == 0 ? Double.NaN : sum / count;
+			}
+		}
+	}
+
+	/**
+	 * Outcome of a {@link TabularVerifier} run.
+	 */
+	public static class Result
+	{
+		private final List<String> failures = new ArrayList<String>();
+		private final Map<String, Double> aggregates = new LinkedHashMap<String, Double>();
+		private long failureCount = 0;
+		private long rowCount = 0;
+		private long durationMillis;
+
+		void fail(String failure)
+		{
+			failureCount++;
+
+			if (failures.size() < MAX_RECORDED_FAILURES)
+			{
+				failures.add(failure);
+			}
+		}
+
+		Result finish(long start)
+		{
+			durationMillis = (System.nanoTime() - start) / 1_000_000;
+			return this;
+		}
+
+		public boolean isPassed()
+		{
+			return failureCount == 0;
+		}
+
+		/**
+		 * @return Returns the first {@link TabularVerifier#MAX_RECORDED_FAILURES} failures.
+		 */
+		public List<String> getFailures()
+		{
+			return Collections.unmodifiableList(failures);
+		}
+
+		public long getFailureCount()
+		{
+			return failureCount;
+		}
+
+		/**
+		 * @return Returns the number of data rows, without the header.
+		 */
+		public long getRowCount()
+		{
+			return rowCount;
+		}
+
+		/**
+		 * @return Returns the computed aggregates keyed by 'column AGGREGATE'.
+		 */
+		public Map<String, Double> getAggregates()
+		{
+			return Collections.unmodifiableMap(aggregates);
+		}
+
+		public long getDurationMillis()
+		{
+			return durationMillis;
+		}
+
+		@Override
+		public String toString()
+		{
+			return (isPassed() ? "passed" : "failed " + failures) + ", " + rowCount + " rows, " + aggregates + " in " + durationMillis + " ms";
+		}
+	}
+}
\ No newline at end of file
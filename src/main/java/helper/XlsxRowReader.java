@@ -0,0 +1,283 @@
+package helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Event based {@link RowReader} for XLSX files. The sheet XML is read straight from the zip
+ * with StAX so the workbook is never loaded as a whole, only the current row is kept.
+ *
+ * @implNote
+ * The shared strings table (xl/sharedStrings.xml) has to be kept in memory because cells
+ * refer to it by index. Its size depends on the number of distinct strings and not on the
+ * number of rows. Sheets are addressed by their position e.g. xl/worksheets/sheet1.xml.
+ *
+ * @author karlomijaljevic
+ */
+class XlsxRowReader implements RowReader
+{
+	private static final String SHARED_STRINGS_ENTRY = "xl/sharedStrings.xml";
+	private static final String SHEET_ENTRY = "xl/worksheets/sheet%d.xml";
+
+	private final ZipFile zipFile;
+	private final InputStream sheetStream;
+	private final XMLStreamReader sheet;
+	private final List<String> sharedStrings;
+
+	private final List<String> cells = new ArrayList<String>();
+
+	XlsxRowReader(Path file, int sheetNumber) throws IOException
+	{
+		zipFile = new ZipFile(file.toFile());
+
+		try
+		{
+			sharedStrings = readSharedStrings();
+
+			ZipEntry sheetEntry = zipFile.getEntry(String.format(SHEET_ENTRY, sheetNumber));
+			if (sheetEntry == null)
+			{
+				throw new IOException("Sheet " + sheetNumber + " does not exist in " + file);
+			}
+
+			sheetStream = zipFile.getInputStream(sheetEntry);
+			sheet = createFactory().createXMLStreamReader(sheetStream);
+		}
+		catch (XMLStreamException | IOException e)
+		{
+			zipFile.close();
+			throw e instanceof IOException ? (IOException) e : new IOException(e);
+		}
+	}
+
+	@Override
+	public String[] next() throws IOException
+	{
+		try
+		{
+			while (sheet.hasNext())
+			{
+				int event = sheet.next();
+
+				if (event == XMLStreamConstants.START_ELEMENT && "row".equals(sheet.getLocalName()))
+				{
+					return readRow();
+				}
+			}
+
+			return null;
+		}
+		catch (XMLStreamException xse)
+		{
+			throw new IOException(xse);
+		}
+	}
+
+	/**
+	 * Method reads the cells of the current row element. Cells that are missing from the
+	 * XML (empty cells) become empty strings.
+	 */
+	private String[] readRow() throws XMLStreamException
+	{
+		cells.clear();
+
+		while (sheet.hasNext())
+		{
+			int event = sheet.next();
+
+			if (event == XMLStreamConstants.START_ELEMENT && "c".equals(sheet.getLocalName()))
+			{
+				int column = columnIndex(sheet.getAttributeValue(null, "r"), cells.size());
+				String type = sheet.getAttributeValue(null, "t");
+				String value = readCell(type);
+
+				while (cells.size() < column)
+				{
+					cells.add("");
+				}
+
+				cells.add(value);
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT && "row".equals(sheet.getLocalName()))
+			{
+				break;
+			}
+		}
+
+		return cells.toArray(new String[0]);
+	}
+
+	/**
+	 * Method reads the value of the current cell element up to its end tag.
+	 */
+	private String readCell(String type) throws XMLStreamException
+	{
+		StringBuilder value = new StringBuilder();
+		boolean inValue = false;
+
+		while (sheet.hasNext())
+		{
+			int event = sheet.next();
+
+			if (event == XMLStreamConstants.START_ELEMENT)
+			{
+				String name = sheet.getLocalName();
+				inValue = "v".equals(name) || "t".equals(name);
+			}
+			else if (event == XMLStreamConstants.CHARACTERS && inValue)
+			{
+				value.append(sheet.getText());
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT)
+			{
+				if ("c".equals(sheet.getLocalName()))
+				{
+					break;
+				}
+
+				inValue = false;
+			}
+		}
+
+		if ("s".equals(type) && value.length() > 0)
+		{
+			return sharedStrings.get(Integer.parseInt(value.toString().trim()));
+		}
+
+		if ("b".equals(type))
+		{
+			return "1".equals(value.toString()) ? "TRUE" : "FALSE";
+		}
+
+		return value.toString();
+	}
+
+	private List<String> readSharedStrings() throws IOException, XMLStreamException
+	{
+		List<String> strings = new ArrayList<String>();
+
+		ZipEntry entry = zipFile.getEntry(SHARED_STRINGS_ENTRY);
+		if (entry == null)
+		{
+			return strings;
+		}
+
+		try (InputStream in = zipFile.getInputStream(entry))
+		{
+			XMLStreamReader reader = createFactory().createXMLStreamReader(in);
+
+			StringBuilder current = null;
+			boolean inText = false;
+			int phoneticDepth = 0;
+
+			while (reader.hasNext())
+			{
+				int event = reader.next();
+
+				if (event == XMLStreamConstants.START_ELEMENT)
+				{
+					String name = reader.getLocalName();
+
+					if ("si".equals(name))
+					{
+						current = new StringBuilder();
+					}
+					else if ("rPh".equals(name))
+					{
+						phoneticDepth++;
+					}
+					else if ("t".equals(name))
+					{
+						inText = phoneticDepth == 0;
+					}
+				}
+				else if (event == XMLStreamConstants.CHARACTERS && inText && current != null)
+				{
+					current.append(reader.getText());
+				}
+				else if (event == XMLStreamConstants.END_ELEMENT)
+				{
+					String name = reader.getLocalName();
+
+					if ("si".equals(name) && current != null)
+					{
+						strings.add(current.toString());
+						current = null;
+					}
+					else if ("rPh".equals(name))
+					{
+						phoneticDepth--;
+					}
+					else if ("t".equals(name))
+					{
+						inText = false;
+					}
+				}
+			}
+
+			reader.close();
+		}
+
+		return strings;
+	}
+
+	/**
+	 * Method turns a cell reference like 'AB12' into a zero based column index.
+	 *
+	 * @param reference -> The cell reference, may be NULL.
+	 * @param fallback -> Index to use when there is no reference.
+	 */
+	static int columnIndex(String reference, int fallback)
+	{
+		if (reference == null)
+		{
+			return fallback;
+		}
+
+		int column = 0;
+		for (int i = 0; i < reference.length() && Character.isLetter(reference.charAt(i)); i++)
+		{
+			column = column * 26 + (Character.toUpperCase(reference.charAt(i)) - 'A' + 1);
+		}
+
+		return column - 1;
+	}
+
+	private static XMLInputFactory createFactory()
+	{
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+		return factory;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			sheet.close();
+		}
+		catch (XMLStreamException xse)
+		{
+			throw new IOException(xse);
+		}
+		finally
+		{
+			sheetStream.close();
+			zipFile.close();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,232 @@
+package load;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.xml.XmlClass;
+
+import main.ShardPlanner;
+
+/**
+ * A user journey made of the test methods (steps) of an existing TestNG test class, so the
+ * functional tests double as load scenarios. Every virtual user gets its own instance of the
+ * class: {@link BeforeClass} methods run once when the user starts (usually leasing the
+ * session), {@link BeforeMethod} and {@link AfterMethod} methods around every step and
+ * {@link AfterClass} methods when the user stops.
+ *
+ * A journey is defined as 'package.Class' for every test method of the class (in the order
+ * TestNG picks them) or 'package.Class#first+second' for chosen methods in the given order.
+ *
+ * @implNote
+ * Steps and configuration methods must not take parameters, data providers and injected
+ * TestNG objects are not available outside of TestNG.
+ *
+ * @author karlomijaljevic
+ */
+public class Journey
+{
+	private static final String METHODS_SEPARATOR = "#";
+	private static final String STEP_SEPARATOR = "\\+";
+	private static final String STEP_NAME_SEPARATOR = " > ";
+
+	private final String definition;
+	private final Class<?> testClass;
+	private final List<Method> steps;
+	private final List<Method> beforeClass;
+	private final List<Method> afterClass;
+	private final List<Method> beforeMethod;
+	private final List<Method> afterMethod;
+
+	private Journey(String definition, Class<?> testClass, List<Method> steps)
+	{
+		this.definition = definition;
+		this.testClass = testClass;
+		this.steps = Collections.unmodifiableList(steps);
+		this.beforeClass = configurationMethods(testClass, BeforeClass.class);
+		this.afterClass = configurationMethods(testClass, AfterClass.class);
+		this.beforeMethod = configurationMethods(testClass, BeforeMethod.class);
+		this.afterMethod = configurationMethods(testClass, AfterMethod.class);
+	}
+
+	/**
+	 * Method parses a journey definition.
+	 *
+	 * @param definition -> 'package.Class' or 'package.Class#first+second'.
+	 * @return Returns the {@link Journey}.
+	 * @throws IllegalArgumentException -> In case the class or a method does not exist or a
+	 * method takes parameters.
+	 */
+	public static Journey parse(String definition)
+	{
+		String[] parts = definition.trim().split(METHODS_SEPARATOR, 2);
+		Class<?> testClass;
+
+		try
+		{
+			testClass = Class.forName(parts[0]);
+		}
+		catch (ClassNotFoundException cnfe)
+		{
+			throw new IllegalArgumentException("Journey class not found: " + parts[0], cnfe);
+		}
+
+		List<String> names = parts.length == 2 ? Arrays.asList(parts[1].split(STEP_SEPARATOR))
+				: ShardPlanner.testMethodNames(new XmlClass(testClass));
+
+		List<Method> steps = new ArrayList<Method>();
+
+		for (String name : names)
+		{
+			try
+			{
+				steps.add(testClass.getMethod(name.trim()));
+			}
+			catch (NoSuchMethodException nsme)
+			{
+				throw new IllegalArgumentException("Journey step " + name + " is not a public method without parameters of "
+						+ testClass.getName(), nsme);
+			}
+		}
+
+		if (steps.isEmpty())
+		{
+			throw new IllegalArgumentException("Journey " + definition + " has no steps.");
+		}
+
+		return new Journey(definition.trim(), testClass, steps);
+	}
+
+	/**
+	 * @return Returns the definition the journey was parsed from, it is reported under it so
+	 * journeys of the same class (or of classes with the same simple name) stay apart.
+	 */
+	public String getName()
+	{
+		return definition;
+	}
+
+	public List<Method> getSteps()
+	{
+		return steps;
+	}
+
+	/**
+	 * @return Returns the name a step is reported under, 'definition > method'.
+	 */
+	public String stepName(Method step)
+	{
+		return getName() + STEP_NAME_SEPARATOR + step.getName();
+	}
+
+	/**
+	 * Method creates the instance of a virtual user and runs the {@link BeforeClass} methods.
+	 *
+	 * @return Returns the test class instance.
+	 * @throws Throwable -> Whatever the constructor or a configuration method threw.
+	 */
+	Object setUp() throws Throwable
+	{
+		Object instance;
+
+		try
+		{
+			instance = testClass.getConstructor().newInstance();
+		}
+		catch (InvocationTargetException ite)
+		{
+			throw ite.getCause();
+		}
+
+		invokeAll(instance, beforeClass);
+
+		return instance;
+	}
+
+	/**
+	 * Method runs one step surrounded by the {@link BeforeMethod} and {@link AfterMethod} methods.
+	 *
+	 * @throws Throwable -> Whatever the step or a configuration method threw, e.g. an
+	 * {@link AssertionError}.
+	 */
+	void runStep(Object instance, Method step) throws Throwable
+	{
+		invokeAll(instance, beforeMethod);
+
+		try
+		{
+			invoke(instance, step);
+		}
+		finally
+		{
+			invokeAll(instance, afterMethod);
+		}
+	}
+
+	/**
+	 * Method runs the {@link AfterClass} methods of a virtual user, failures are only printed.
+	 */
+	void tearDown(Object instance)
+	{
+		try
+		{
+			invokeAll(instance, afterClass);
+		}
+		catch (Throwable t)
+		{
+			t.printStackTrace();
+		}
+	}
+
+	private static void invokeAll(Object instance, List<Method> methods) throws Throwable
+	{
+		for (Method method : methods)
+		{
+			invoke(instance, method);
+		}
+	}
+
+	private static void invoke(Object instance, Method method) throws Throwable
+	{
+		try
+		{
+			method.invoke(instance);
+		}
+		catch (InvocationTargetException ite)
+		{
+			throw ite.getCause();
+		}
+	}
+
+	private static List<Method> configurationMethods(Class<?> testClass, Class<? extends Annotation> annotation)
+	{
+		List<Method> methods = new ArrayList<Method>();
+
+		for (Method method : testClass.getMethods())
+		{
+			if (method.isAnnotationPresent(annotation))
+			{
+				if (method.getParameterCount() > 0)
+				{
+					throw new IllegalArgumentException("Configuration method " + method.getName() + " of " + testClass.getName()
+							+ " takes parameters, it can not run in a load journey.");
+				}
+
+				methods.add(method);
+			}
+		}
+
+		methods.sort(Comparator.comparing(Method::getName));
+
+		return methods;
+	}
+}
@@ -0,0 +1,101 @@
+package load;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shape of a synthetic load run, see {@link LoadRunner}. Set up by the Main class from the
+ * '--load' flags.
+ *
+ * @author karlomijaljevic
+ */
+public class LoadProfile
+{
+	public static final int DEFAULT_USERS = 4;
+	public static final long DEFAULT_DURATION_SECONDS = 60;
+
+	private final List<String> journeys = new ArrayList<String>();
+	private int users = DEFAULT_USERS;
+	private long rampUpSeconds = 0;
+	private double iterationsPerSecond = 0;
+	private long durationSeconds = DEFAULT_DURATION_SECONDS;
+
+	/**
+	 * @return Returns the journey definitions, 'package.Class' for every test method of a class
+	 * or 'package.Class#first+second' for chosen methods in that order, see {@link Journey}.
+	 */
+	public List<String> getJourneys()
+	{
+		return journeys;
+	}
+
+	/**
+	 * @return Returns true in case journeys were given and the run is a load run.
+	 */
+	public boolean isEnabled()
+	{
+		return !journeys.isEmpty();
+	}
+
+	/**
+	 * @return Returns the number of concurrent virtual users, every one with its own session.
+	 */
+	public int getUsers()
+	{
+		return users;
+	}
+
+	public void setUsers(int users)
+	{
+		this.users = users;
+	}
+
+	/**
+	 * @return Returns the seconds over which the users start (closed model) or the rate climbs
+	 * to its target (open model).
+	 */
+	public long getRampUpSeconds()
+	{
+		return rampUpSeconds;
+	}
+
+	public void setRampUpSeconds(long rampUpSeconds)
+	{
+		this.rampUpSeconds = rampUpSeconds;
+	}
+
+	/**
+	 * @return Returns the target journey iterations per second over all users, zero or less lets
+	 * every user start its next iteration as soon as the last one is done.
+	 */
+	public double getIterationsPerSecond()
+	{
+		return iterationsPerSecond;
+	}
+
+	public void setIterationsPerSecond(double iterationsPerSecond)
+	{
+		this.iterationsPerSecond = iterationsPerSecond;
+	}
+
+	/**
+	 * @return Returns true in case iterations start on a fixed schedule (open model).
+	 */
+	public boolean isPaced()
+	{
+		return iterationsPerSecond > 0;
+	}
+
+	/**
+	 * @return Returns how long new iterations are started, running ones are finished.
+	 */
+	public long getDurationSeconds()
+	{
+		return durationSeconds;
+	}
+
+	public void setDurationSeconds(long durationSeconds)
+	{
+		this.durationSeconds = durationSeconds;
+	}
+}
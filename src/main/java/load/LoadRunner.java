@@ -0,0 +1,529 @@
+package load;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.aventstack.extentreports.ExtentTest;
+import com.aventstack.extentreports.markuputils.MarkupHelper;
+import com.google.gson.GsonBuilder;
+
+import metrics.LatencyHistogram;
+import report.ExtentReportManager;
+
+/**
+ * Runs {@link Journey}s repeatedly on concurrent virtual users, each with its own browser
+ * session, and reports throughput and latency percentiles per journey and per step. Meant for
+ * the local fixture server or an application hosted on the same machine, the browsers are the
+ * load generator so a few dozen users are already a lot for one box.
+ *
+ * Two models are supported, see {@link LoadProfile}:
+ * <ul>
+ * <li>Closed - every user starts its next iteration as soon as the last one is done, the
+ * users start spread over the ramp-up. Throughput is whatever the system under test allows.</li>
+ * <li>Open - iterations are due on a fixed schedule over all users, the rate climbs linearly
+ * to its target over the ramp-up. A free user takes the next due iteration.</li>
+ * </ul>
+ *
+ * @implNote
+ * Latencies are coordinated omission aware: in the open model the response time of an
+ * iteration is measured from the moment it was due, not from the moment a user got to it, so
+ * a stall of the system under test shows up in every iteration that queued behind it. The
+ * response time of the first step starts there as well, later steps start where the previous
+ * one ended. The service time (the step alone) is reported next to it. Iterations that were
+ * due but never started before the duration ended are reported as missed and recorded in the
+ * response times of their journey and its first step with the time from when they were due to
+ * the end of the run, a lower bound of what they would have taken. Otherwise only successful
+ * steps and iterations are recorded in the histograms, failures are counted as errors.
+ *
+ * @author karlomijaljevic
+ */
+public class LoadRunner
+{
+	public static final String EXPORT_FILE = "load-report.json";
+
+	private static final long SETUP_BACKOFF_MILLIS = 1000;
+	private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private final LoadProfile profile;
+	private final List<Journey> journeys = new ArrayList<Journey>();
+	private final Map<String, Statistics> journeyStatistics = new LinkedHashMap<String, Statistics>();
+	private final Map<String, Statistics> stepStatistics = new LinkedHashMap<String, Statistics>();
+	private final AtomicLong nextSlot = new AtomicLong();
+	private final AtomicLong started = new AtomicLong();
+	private final AtomicLong missed = new AtomicLong();
+
+	private volatile long startNanos;
+	private long endNanos;
+
+	/**
+	 * @throws IllegalArgumentException -> In case a journey can not be parsed or the profile
+	 * has no users or no duration.
+	 */
+	public LoadRunner(LoadProfile profile)
+	{
+		if (profile.getUsers() < 1 || profile.getDurationSeconds() < 1 || profile.getRampUpSeconds() < 0)
+		{
+			throw new IllegalArgumentException("A load run needs at least one user, a positive duration and no negative ramp-up.");
+		}
+
+		this.profile = profile;
+
+		for (String definition : profile.getJourneys())
+		{
+			Journey journey = Journey.parse(definition);
+			journeys.add(journey);
+			journeyStatistics.putIfAbsent(journey.getName(), new Statistics());
+
+			for (Method step : journey.getSteps())
+			{
+				stepStatistics.putIfAbsent(journey.stepName(step), new Statistics());
+			}
+		}
+	}
+
+	/**
+	 * Method runs the load, blocking until every virtual user is done, and reports the results
+	 * on the standard output, as {@link #EXPORT_FILE} next to the ExtentReports report and in it.
+	 */
+	public void run()
+	{
+		long durationNanos = TimeUnit.SECONDS.toNanos(profile.getDurationSeconds());
+
+		// Every user sets its sessions up first, the clock starts once all of them are ready.
+		CyclicBarrier ready = new CyclicBarrier(profile.getUsers(), () -> {
+			startNanos = System.nanoTime();
+			endNanos = startNanos + durationNanos;
+		});
+
+		List<Thread> users = new ArrayList<Thread>();
+
+		System.out.println("Starting " + profile.getUsers() + " virtual users for " + journeys.size() + " journeys.");
+
+		for (int user = 0; user < profile.getUsers(); user++)
+		{
+			int index = user;
+			Thread thread = new Thread(() -> runUser(index, ready), "load-user-" + user);
+			users.add(thread);
+			thread.start();
+		}
+
+		for (Thread thread : users)
+		{
+			try
+			{
+				thread.join();
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		report(System.nanoTime());
+	}
+
+	private void runUser(int user, CyclicBarrier ready)
+	{
+		Object[] instances = new Object[journeys.size()];
+
+		try
+		{
+			for (int i = 0; i < journeys.size(); i++)
+			{
+				instances[i] = setUp(journeys.get(i));
+			}
+
+			ready.await();
+
+			if (!profile.isPaced())
+			{
+				sleepUntil(startNanos + TimeUnit.SECONDS.toNanos(profile.getRampUpSeconds()) * user / profile.getUsers());
+			}
+
+			while (true)
+			{
+				long slot;
+				long intended;
+
+				if (profile.isPaced())
+				{
+					slot = nextSlot.getAndIncrement();
+					intended = startNanos + offsetNanos(slot);
+
+					if (intended >= endNanos)
+					{
+						break;
+					}
+
+					sleepUntil(intended);
+
+					if (System.nanoTime() >= endNanos)
+					{
+						// Due in time but no user got to it before the end.
+						recordMissed(slot, intended);
+						break;
+					}
+				}
+				else
+				{
+					intended = System.nanoTime();
+
+					if (intended >= endNanos)
+					{
+						break;
+					}
+
+					slot = nextSlot.getAndIncrement();
+				}
+
+				started.incrementAndGet();
+
+				int index = (int) (slot % journeys.size());
+				Journey journey = journeys.get(index);
+
+				if (instances[index] == null)
+				{
+					instances[index] = setUp(journey);
+
+					if (instances[index] == null)
+					{
+						journeyStatistics.get(journey.getName()).failed("Set up failed, see the output.");
+						continue;
+					}
+				}
+
+				if (!iterate(journey, instances[index], intended))
+				{
+					// The session may be broken, the next iteration gets a fresh one.
+					journey.tearDown(instances[index]);
+					instances[index] = null;
+				}
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (BrokenBarrierException bbe)
+		{
+			bbe.printStackTrace();
+		}
+		finally
+		{
+			for (int i = 0; i < journeys.size(); i++)
+			{
+				if (instances[i] != null)
+				{
+					journeys.get(i).tearDown(instances[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return Returns the instance or NULL in case the set up failed, after a short back off
+	 * so a broken environment is not hammered.
+	 */
+	private Object setUp(Journey journey) throws InterruptedException
+	{
+		try
+		{
+			return journey.setUp();
+		}
+		catch (Throwable t)
+		{
+			t.printStackTrace();
+			Thread.sleep(SETUP_BACKOFF_MILLIS);
+
+			return null;
+		}
+	}
+
+	/**
+	 * Method runs every step of a journey once.
+	 *
+	 * @param intended -> Time the iteration was due at, see {@link System#nanoTime()}.
+	 * @return Returns true in case every step passed.
+	 */
+	private boolean iterate(Journey journey, Object instance, long intended)
+	{
+		long stepStart = intended;
+		long serviceStart = System.nanoTime();
+
+		for (Method step : journey.getSteps())
+		{
+			long stepServiceStart = System.nanoTime();
+
+			try
+			{
+				journey.runStep(instance, step);
+			}
+			catch (Throwable t)
+			{
+				String error = journey.stepName(step) + ": " + t;
+
+				stepStatistics.get(journey.stepName(step)).failed(error);
+				journeyStatistics.get(journey.getName()).failed(error);
+
+				return false;
+			}
+
+			long stepEnd = System.nanoTime();
+			stepStatistics.get(journey.stepName(step)).passed(stepEnd - stepStart, stepEnd - stepServiceStart);
+			stepStart = stepEnd;
+		}
+
+		journeyStatistics.get(journey.getName()).passed(stepStart - intended, stepStart - serviceStart);
+
+		return true;
+	}
+
+	/**
+	 * Method records an iteration of the open model that was due but never started.
+	 *
+	 * @param intended -> Time the iteration was due at, see {@link System#nanoTime()}.
+	 */
+	private void recordMissed(long slot, long intended)
+	{
+		Journey journey = journeys.get((int) (slot % journeys.size()));
+		long responseNanos = endNanos - intended;
+
+		missed.incrementAndGet();
+		journeyStatistics.get(journey.getName()).missed(responseNanos);
+		stepStatistics.get(journey.stepName(journey.getSteps().get(0))).missed(responseNanos);
+	}
+
+	/**
+	 * Method computes when an iteration is due in the open model. The rate climbs linearly from
+	 * zero to R over the ramp-up T, so until then the i-th iteration is due when R * t^2 / 2T
+	 * reaches i, afterwards every 1 / R seconds.
+	 *
+	 * @param slot -> Number of the iteration, starting with 0.
+	 * @return Returns the nanoseconds after the start the iteration is due.
+	 */
+	long offsetNanos(long slot)
+	{
+		double rate = profile.getIterationsPerSecond();
+		double rampUp = profile.getRampUpSeconds();
+		double rampUpSlots = rate * rampUp / 2;
+
+		double seconds = slot < rampUpSlots ? Math.sqrt(2 * rampUp * slot / rate) : rampUp + (slot - rampUpSlots) / rate;
+
+		return (long) (seconds * NANOS_PER_SECOND);
+	}
+
+	/**
+	 * @return Returns the number of iterations due in the open model within the given time.
+	 */
+	long dueWithin(long nanos)
+	{
+		double rate = profile.getIterationsPerSecond();
+		double rampUp = profile.getRampUpSeconds();
+		double seconds = nanos / NANOS_PER_SECOND;
+
+		double due = seconds < rampUp ? rate * seconds * seconds / (2 * rampUp) : rate * rampUp / 2 + rate * (seconds - rampUp);
+
+		return (long) Math.ceil(due);
+	}
+
+	private static void sleepUntil(long nanos) throws InterruptedException
+	{
+		long remaining = nanos - System.nanoTime();
+
+		if (remaining > 0)
+		{
+			TimeUnit.NANOSECONDS.sleep(remaining);
+		}
+	}
+
+	private void report(long finishedNanos)
+	{
+		double elapsedSeconds = Math.max(1, finishedNanos - startNanos) / NANOS_PER_SECOND;
+
+		if (profile.isPaced())
+		{
+			// Slots no user even took, every one before them was started or recorded as missed.
+			long due = dueWithin(endNanos - startNanos);
+
+			for (long slot = nextSlot.get(); slot < due; slot++)
+			{
+				recordMissed(slot, startNanos + offsetNanos(slot));
+			}
+		}
+
+		long missed = this.missed.get();
+
+		Map<String, Object> summary = new LinkedHashMap<String, Object>();
+		summary.put("model", profile.isPaced() ? "open" : "closed");
+		summary.put("users", profile.getUsers());
+		summary.put("rampUpSeconds", profile.getRampUpSeconds());
+		summary.put("targetIterationsPerSecond", profile.getIterationsPerSecond());
+		summary.put("durationSeconds", profile.getDurationSeconds());
+		summary.put("elapsedSeconds", round(elapsedSeconds));
+		summary.put("iterations", started.get());
+		summary.put("missedIterations", missed);
+		summary.put("journeys", summarize(journeyStatistics, elapsedSeconds));
+		summary.put("steps", summarize(stepStatistics, elapsedSeconds));
+
+		String[][] table = table(elapsedSeconds);
+
+		System.out.println();
+		System.out.println("Load run of " + round(elapsedSeconds) + "s, " + started.get() + " iterations, " + missed + " missed:");
+		for (String[] row : table)
+		{
+			System.out.println(String.format("%-50s %8s %8s %8s %10s %10s %10s %10s %10s %10s", (Object[]) row));
+		}
+
+		ExtentReportManager reportManager = ExtentReportManager.getInstance();
+		Path exportFile = reportManager.getReportDirectory().resolve(EXPORT_FILE);
+
+		try
+		{
+			Files.createDirectories(exportFile.getParent());
+
+			try (Writer writer = Files.newBufferedWriter(exportFile, StandardCharsets.UTF_8))
+			{
+				writer.write(new GsonBuilder().setPrettyPrinting().create().toJson(summary));
+			}
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+		}
+
+		List<String> errors = new ArrayList<String>();
+		journeyStatistics.forEach((journey, statistics) -> {
+			if (statistics.errors.get() > 0)
+			{
+				errors.add(statistics.errors.get() + " x " + statistics.firstError.get());
+			}
+		});
+
+		long iterations = started.get();
+
+		reportManager.submit(reports -> {
+			ExtentTest test = reports.createTest("Load");
+			test.info(summary.get("model") + " model, " + profile.getUsers() + " users, " + iterations + " iterations, " + missed
+					+ " missed. Response times in milliseconds measured from when an iteration was due, also written to "
+					+ EXPORT_FILE);
+			test.info(MarkupHelper.createTable(table));
+
+			if (!errors.isEmpty())
+			{
+				test.fail(MarkupHelper.createOrderedList(errors));
+			}
+		});
+
+		reportManager.flush();
+	}
+
+	private static Map<String, Object> summarize(Map<String, Statistics> statistics, double elapsedSeconds)
+	{
+		Map<String, Object> summaries = new LinkedHashMap<String, Object>();
+
+		statistics.forEach((name, entry) -> {
+			Map<String, Object> summary = new LinkedHashMap<String, Object>();
+			summary.put("passed", entry.serviceTime.getCount());
+			summary.put("errors", entry.errors.get());
+			summary.put("missed", entry.missed.get());
+			summary.put("throughputPerSecond", round(entry.serviceTime.getCount() / elapsedSeconds));
+			summary.put("responseTime", entry.responseTime.summarize());
+			summary.put("serviceTime", entry.serviceTime.summarize());
+			summary.put("firstError", entry.firstError.get());
+			summaries.put(name, summary);
+		});
+
+		return summaries;
+	}
+
+	/**
+	 * @return Returns the result table, one row per journey followed by its steps.
+	 */
+	private String[][] table(double elapsedSeconds)
+	{
+		List<String[]> rows = new ArrayList<String[]>();
+		rows.add(new String[] { "journey / step", "passed", "errors", "missed", "per second", "p50", "p90", "p99", "max", "service p99" });
+
+		Set<String> listed = new HashSet<String>();
+
+		for (Journey journey : journeys)
+		{
+			if (!listed.add(journey.getName()))
+			{
+				continue;
+			}
+
+			rows.add(row(journey.getName(), journeyStatistics.get(journey.getName()), elapsedSeconds));
+
+			for (Method step : new LinkedHashSet<Method>(journey.getSteps()))
+			{
+				rows.add(row("  " + journey.stepName(step), stepStatistics.get(journey.stepName(step)), elapsedSeconds));
+			}
+		}
+
+		return rows.toArray(new String[0][]);
+	}
+
+	private static String[] row(String name, Statistics statistics, double elapsedSeconds)
+	{
+		LatencyHistogram.Summary response = statistics.responseTime.summarize();
+		long passed = statistics.serviceTime.getCount();
+
+		return new String[] { name, String.valueOf(passed), String.valueOf(statistics.errors.get()),
+				String.valueOf(statistics.missed.get()), String.valueOf(round(passed / elapsedSeconds)), String.valueOf(response.getP50Millis()),
+				String.valueOf(response.getP90Millis()), String.valueOf(response.getP99Millis()),
+				String.valueOf(response.getMaxMillis()), String.valueOf(statistics.serviceTime.summarize().getP99Millis()) };
+	}
+
+	private static double round(double value)
+	{
+		return Math.round(value * 1000) / 1000.0;
+	}
+
+	/**
+	 * Results of one journey or step over all users.
+	 */
+	private static class Statistics
+	{
+		private final LatencyHistogram responseTime = new LatencyHistogram();
+		private final LatencyHistogram serviceTime = new LatencyHistogram();
+		private final AtomicLong errors = new AtomicLong();
+		private final AtomicLong missed = new AtomicLong();
+		private final AtomicReference<String> firstError = new AtomicReference<String>();
+
+		private void passed(long responseNanos, long serviceNanos)
+		{
+			responseTime.record(responseNanos);
+			serviceTime.record(serviceNanos);
+		}
+
+		private void missed(long responseNanos)
+		{
+			responseTime.record(responseNanos);
+			missed.incrementAndGet();
+		}
+
+		private void failed(String error)
+		{
+			errors.incrementAndGet();
+			firstError.compareAndSet(null, error);
+		}
+	}
+}
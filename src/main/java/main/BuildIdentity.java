@@ -0,0 +1,91 @@
+package main;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import helper.FileHelper;
+
+/**
+ * Identifies the build of the tests that is running, so a test that passed on this exact
+ * build does not have to run again, see {@link RerunPlanner}. The id is the start of the
+ * SHA-256 hash of tests.jar, or of every class file when running from the IDE. It can also be
+ * set with the '--build-id' flag, e.g. to the commit hash on CI.
+ *
+ * @author karlomijaljevic
+ */
+public class BuildIdentity
+{
+	private static final int ID_LENGTH = 12;
+	private static final String UNKNOWN = "unknown";
+
+	private BuildIdentity()
+	{
+	}
+
+	/**
+	 * Method hashes the jar (or classes directory) the {@link Main} class was loaded from.
+	 *
+	 * @return Returns the build id or 'unknown' in case it can not be computed.
+	 */
+	public static String compute()
+	{
+		try
+		{
+			Path location = Paths.get(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			String hash;
+
+			if (Files.isDirectory(location))
+			{
+				hash = hashClassFiles(location);
+			}
+			else
+			{
+				try (InputStream in = Files.newInputStream(location))
+				{
+					hash = FileHelper.sha256(in);
+				}
+			}
+
+			return hash.substring(0, ID_LENGTH);
+		}
+		catch (IOException | URISyntaxException | SecurityException e)
+		{
+			e.printStackTrace();
+			return UNKNOWN;
+		}
+	}
+
+	/**
+	 * @return Returns the hash of the names and hashes of every class file below the directory.
+	 */
+	private static String hashClassFiles(Path directory) throws IOException
+	{
+		List<Path> files;
+
+		try (Stream<Path> walk = Files.walk(directory))
+		{
+			files = walk.filter(file -> file.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+		}
+
+		StringBuilder hashes = new StringBuilder();
+
+		for (Path file : files)
+		{
+			try (InputStream in = Files.newInputStream(file))
+			{
+				hashes.append(directory.relativize(file)).append('=').append(FileHelper.sha256(in)).append('\n');
+			}
+		}
+
+		return FileHelper.sha256(new ByteArrayInputStream(hashes.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+}
@@ -0,0 +1,89 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.testng.IExecutionListener;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+
+import main.TestDurations.Outcome;
+
+/**
+ * TestNG listener that measures how long every test method takes and merges the durations,
+ * together with the outcome and the build, into the {@link TestDurations} file once the run is
+ * finished. Invocations of the same method (e.g. with a data provider) are added up since the
+ * method is what gets sharded, one failed invocation fails the method.
+ *
+ * @author karlomijaljevic
+ */
+public class DurationListener implements ITestListener, IExecutionListener
+{
+	private final Path durationsFile;
+	private final String build;
+	private final Map<String, Long> measured = new ConcurrentHashMap<String, Long>();
+	private final Map<String, Outcome> outcomes = new ConcurrentHashMap<String, Outcome>();
+
+	/**
+	 * @param build -> Id of the running build, see {@link BuildIdentity}.
+	 */
+	public DurationListener(Path durationsFile, String build)
+	{
+		this.durationsFile = durationsFile;
+		this.build = build;
+	}
+
+	@Override
+	public void onTestSuccess(ITestResult result)
+	{
+		record(result, Outcome.PASSED);
+	}
+
+	@Override
+	public void onTestFailure(ITestResult result)
+	{
+		record(result, Outcome.FAILED);
+	}
+
+	@Override
+	public void onTestFailedButWithinSuccessPercentage(ITestResult result)
+	{
+		record(result, Outcome.PASSED);
+	}
+
+	@Override
+	public void onTestSkipped(ITestResult result)
+	{
+		// Skipped tests did not really run, their duration says nothing.
+		outcomes.merge(TestDurations.id(result.getMethod()), Outcome.SKIPPED, Outcome::worse);
+	}
+
+	@Override
+	public void onExecutionFinish()
+	{
+		if (measured.isEmpty() && outcomes.isEmpty())
+		{
+			return;
+		}
+
+		try
+		{
+			TestDurations.merge(durationsFile, measured, outcomes, build);
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+		}
+	}
+
+	private void record(ITestResult result, Outcome outcome)
+	{
+		long duration = Math.max(0, result.getEndMillis() - result.getStartMillis());
+		String id = TestDurations.id(result.getMethod());
+
+		measured.merge(id, duration, Long::sum);
+		outcomes.merge(id, outcome, Outcome::worse);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,127 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+
+/**
+ * Orders test methods longest first using the {@link TestDurations} of previous runs, so the
+ * slowest tests start early and do not end up alone at the tail of a (sharded) run.
+ *
+ * Methods of the same class are kept together and classes are ordered by their total
+ * duration. Interleaving classes would keep several classes (and their leased browser
+ * sessions) open at once. Tests without a known duration count as the median.
+ *
+ * With '--failed-first' the classes holding tests that failed in the previous run go first,
+ * and those tests go first within their class, so a red build shows up early.
+ *
+ * @author karlomijaljevic
+ */
+public class DurationOrderInterceptor implements IMethodInterceptor
+{
+	private final TestDurations durations;
+	private final Set<String> failedFirst;
+
+	public DurationOrderInterceptor(TestDurations durations)
+	{
+		this(durations, Collections.<String>emptySet());
+	}
+
+	/**
+	 * @param failedFirst -> Ids of the tests that run before all others.
+	 */
+	public DurationOrderInterceptor(TestDurations durations, Set<String> failedFirst)
+	{
+		this.durations = durations;
+		this.failedFirst = failedFirst;
+	}
+
+	@Override
+	public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context)
+	{
+		if (durations.isEmpty() && failedFirst.isEmpty())
+		{
+			return methods;
+		}
+
+		long median = median(methods);
+
+		Map<Class<?>, List<IMethodInstance>> byClass = new LinkedHashMap<Class<?>, List<IMethodInstance>>();
+		Map<Class<?>, Long> classTotals = new LinkedHashMap<Class<?>, Long>();
+		Set<Class<?>> failedClasses = new HashSet<Class<?>>();
+
+		for (IMethodInstance method : methods)
+		{
+			Class<?> testClass = method.getMethod().getRealClass();
+
+			byClass.computeIfAbsent(testClass, key -> new ArrayList<IMethodInstance>()).add(method);
+			classTotals.merge(testClass, duration(method, median), Long::sum);
+
+			if (failed(method))
+			{
+				failedClasses.add(testClass);
+			}
+		}
+
+		List<Class<?>> classes = new ArrayList<Class<?>>(byClass.keySet());
+		classes.sort(Comparator.comparing((Class<?> testClass) -> !failedClasses.contains(testClass))
+				.thenComparing(Comparator.comparing((Class<?> testClass) -> classTotals.get(testClass)).reversed()));
+
+		List<IMethodInstance> ordered = new ArrayList<IMethodInstance>(methods.size());
+
+		for (Class<?> testClass : classes)
+		{
+			List<IMethodInstance> classMethods = byClass.get(testClass);
+			classMethods.sort(Comparator.comparing((IMethodInstance method) -> !failed(method))
+					.thenComparing(Comparator.comparing((IMethodInstance method) -> duration(method, median)).reversed()));
+			ordered.addAll(classMethods);
+		}
+
+		return ordered;
+	}
+
+	private boolean failed(IMethodInstance method)
+	{
+		return failedFirst.contains(TestDurations.id(method.getMethod()));
+	}
+
+	private long duration(IMethodInstance method, long fallback)
+	{
+		Long duration = durations.get(TestDurations.id(method.getMethod()));
+
+		return duration == null ? fallback : duration;
+	}
+
+	private long median(List<IMethodInstance> methods)
+	{
+		List<Long> known = new ArrayList<Long>();
+
+		for (IMethodInstance method : methods)
+		{
+			Long duration = durations.get(TestDurations.id(method.getMethod()));
+
+			if (duration != null)
+			{
+				known.add(duration);
+			}
+		}
+
+		if (known.isEmpty())
+		{
+			return 0;
+		}
+
+		known.sort(Long::compare);
+
+		return known.get(known.size() / 2);
+	}
+}
\ No newline at end of file
@@ -1,16 +1,45 @@
 package main;
 
-import org.testng.TestListenerAdapter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import org.testng.TestNG;
+import org.testng.xml.XmlClass;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlSuite.ParallelMode;
+import org.testng.xml.XmlTest;
+import org.testng.xml.internal.Parser;
 
+import configuration.ConfigurationFile;
 import configuration.DriverConfiguration;
-import first_test.FirstTest;
+import driver.DriverPool;
+import driver.RequestBlocker;
+import driver.SessionUsageListener;
+import load.LoadProfile;
+import load.LoadRunner;
+import metrics.CommandMetricsListener;
+import metrics.PagePerformance;
+import metrics.PagePerformanceHistory;
+import metrics.PagePerformanceListener;
+import metrics.PerformanceBudget;
+import proxy.CachingProxy;
+import report.ExtentReportListener;
+import report.ExtentReportManager;
+import report.FailureArtifactListener;
 
 /**
  * The Main class. This class will be run once the .jar file is packaged.
- * It should be programmed to run all the test cases. While to run individual
- * TC's one should write up SUT (System Under Test) XML files. In case you have
- * trouble writing SUT files, simply right click on a test class and select
+ * It runs all the test cases it can find on the classpath (see {@link TestClassScanner}).
+ * While to run individual TC's one should write up SUT (System Under Test) XML files
+ * and place them in the resources/suites folder, they can be run with the '--suite' flag.
+ * In case you have trouble writing SUT files, simply right click on a test class and select
  * convert to TestNG class it will generate a appropriate SUT file for the given
  * class.
  * 
@@ -23,6 +52,60 @@ import first_test.FirstTest;
 public class Main
 {
 	public static final String HELP_FLAG = "--help";
+	public static final String CONFIG_FLAG = "--config";
+	public static final String PREFERENCE_FLAG_PREFIX = "--" + ConfigurationFile.PREFERENCE_PREFIX;
+	public static final String POOL_SIZE_FLAG = "--pool-size";
+	public static final String POOL_IDLE_TIMEOUT_FLAG = "--pool-idle-timeout";
+	public static final String PACKAGES_FLAG = "--packages";
+	public static final String GROUPS_FLAG = "--groups";
+	public static final String EXCLUDE_GROUPS_FLAG = "--exclude-groups";
+	public static final String SUITE_FLAG = "--suite";
+	public static final String PARALLEL_FLAG = "--parallel";
+	public static final String THREADS_FLAG = "--threads";
+	public static final String SHARD_FLAG = "--shard";
+	public static final String DURATIONS_FLAG = "--durations";
+	public static final String RERUN_FAILED_FLAG = "--rerun-failed";
+	public static final String FAILED_FIRST_FLAG = "--failed-first";
+	public static final String SKIP_PASSED_FLAG = "--skip-passed";
+	public static final String BUILD_ID_FLAG = "--build-id";
+	public static final String COMMAND_METRICS_FLAG = "--command-metrics";
+	public static final String FIXTURE_DIR_FLAG = "--fixture-dir";
+	public static final String FIXTURE_LATENCY_FLAG = "--fixture-latency";
+	public static final String FIXTURE_BANDWIDTH_FLAG = "--fixture-bandwidth";
+	public static final String BLOCK_URLS_FLAG = "--block-urls";
+	public static final String BLOCK_TYPES_FLAG = "--block-types";
+	public static final String CACHING_PROXY_FLAG = "--caching-proxy";
+	public static final String CACHE_MEMORY_FLAG = "--cache-memory";
+	public static final String CACHE_DISK_FLAG = "--cache-disk";
+	public static final String CACHE_IMMUTABLE_FLAG = "--cache-immutable";
+	public static final String PROFILE_TEMPLATE_FLAG = "--profile-template";
+	public static final String PROFILE_WARM_UP_FLAG = "--profile-warm-up";
+	public static final String GRID_FLAG = "--grid";
+	public static final String GRID_TIMEOUT_FLAG = "--grid-timeout";
+	public static final String GRID_CONCURRENCY_FLAG = "--grid-concurrency";
+	public static final String FAILURE_ARTIFACTS_FLAG = "--failure-artifacts";
+	public static final String FAILURE_ARTIFACT_MEMORY_FLAG = "--failure-artifact-memory";
+	public static final String REPORT_FLUSH_FLAG = "--report-flush";
+	public static final String SESSION_MAX_MEMORY_FLAG = "--session-max-memory";
+	public static final String SESSION_MAX_TESTS_FLAG = "--session-max-tests";
+	public static final String SESSION_HANG_TIMEOUT_FLAG = "--session-hang-timeout";
+	public static final String PAGE_PERFORMANCE_FLAG = "--page-performance";
+	public static final String PERF_BUDGETS_FLAG = "--perf-budgets";
+	public static final String PERF_HISTORY_FLAG = "--perf-history";
+	public static final String LOAD_FLAG = "--load";
+	public static final String LOAD_USERS_FLAG = "--load-users";
+	public static final String LOAD_RAMP_UP_FLAG = "--load-ramp-up";
+	public static final String LOAD_RATE_FLAG = "--load-rate";
+	public static final String LOAD_DURATION_FLAG = "--load-duration";
+
+	private static final String ALL_SUITES = "all";
+	private static final String DEFAULT_SUITE_NAME = "tests";
+	private static final String HEADLESS_SWITCH = "--headless";
+	private static final String WINDOW_SIZE_SWITCH = "--window-size";
+	private static final String DEFAULT_WINDOW_SIZE = "1920,1200";
+
+	private static final RunOptions runOptions = new RunOptions();
+	private static boolean poolSizeSet = false;
 
 	public static void main(String[] args)
 	{
@@ -40,14 +123,276 @@ public class Main
 			setConfigurations(args);
 		}
 
-		DriverConfiguration.getInstance().setRunFromMainClass(true);
+		DriverConfiguration.update(configuration -> {
+			configuration.setRunFromMainClass(true);
+
+			if (!poolSizeSet && runOptions.getThreadCount() != null)
+			{
+				configuration.setMaxPoolSize(runOptions.getThreadCount());
+			}
+		});
+
+		if (runOptions.getLoadProfile().isEnabled())
+		{
+			runLoad(runOptions.getLoadProfile());
+			return;
+		}
+
+		List<XmlSuite> suites;
+		try
+		{
+			suites = createSuites();
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+			System.exit(1);
+			return;
+		}
+
+		Path durationsFile = Paths.get(runOptions.getDurationsFile());
+		TestDurations durations = TestDurations.load(durationsFile);
+		String build = runOptions.getBuildId();
+
+		if (build == null && runOptions.getSkipPassedMinutes() > 0)
+		{
+			// Hashing the jar takes a moment, only done when the run depends on it.
+			build = BuildIdentity.compute();
+		}
+
+		if (!planIncrementalRun(suites, durations, build))
+		{
+			return;
+		}
+
+		if (runOptions.getShardCount() > 1)
+		{
+			int methods = new ShardPlanner(durations).applyTo(suites, runOptions.getShardIndex(), runOptions.getShardCount());
+
+			System.out.println("Running shard " + runOptions.getShardIndex() + "/" + runOptions.getShardCount()
+					+ " with " + methods + " test methods.");
+		}
+
+		ExtentReportManager reportManager = ExtentReportManager.getInstance();
+		reportManager.startIncrementalFlush(runOptions.getReportFlushSeconds());
 
-		TestListenerAdapter testListenerAdapter = new TestListenerAdapter();
 		TestNG testng = new TestNG();
 
-		testng.setTestClasses(new Class[] {FirstTest.class});
-		testng.addListener(testListenerAdapter);
+		testng.setXmlSuites(suites);
+		testng.addListener(new ExtentReportListener(reportManager));
+		testng.addListener(new DurationListener(durationsFile, build));
+		testng.addListener(new CommandMetricsListener());
+		testng.addListener(new SessionUsageListener());
+		testng.addListener(new PagePerformanceListener(Paths.get(runOptions.getPerformanceHistoryFile())));
+
+		if (DriverConfiguration.current().isFailureArtifactsEnabled())
+		{
+			testng.addListener(new FailureArtifactListener(DriverConfiguration.current().getFailureArtifactMemoryMegabytes() * 1024 * 1024));
+		}
+
+		testng.setMethodInterceptor(new DurationOrderInterceptor(durations,
+				runOptions.isFailedFirst() ? durations.getFailedIds() : Collections.<String>emptySet()));
 		testng.run();
+
+		shutdown(reportManager);
+	}
+
+	/**
+	 * Method runs the '--load' journeys instead of the tests, see {@link LoadRunner}. The
+	 * sessions are headless and the pool is sized for one session per user and journey unless
+	 * set otherwise.
+	 */
+	private static void runLoad(LoadProfile profile)
+	{
+		DriverConfiguration.update(configuration -> {
+			configuration.getWebDriverOptions().putIfAbsent(HEADLESS_SWITCH, null);
+			configuration.getWebDriverOptions().putIfAbsent(WINDOW_SIZE_SWITCH, DEFAULT_WINDOW_SIZE);
+
+			if (!poolSizeSet)
+			{
+				configuration.setMaxPoolSize(profile.getUsers() * profile.getJourneys().size());
+			}
+		});
+
+		LoadRunner runner;
+		try
+		{
+			runner = new LoadRunner(profile);
+		}
+		catch (IllegalArgumentException iae)
+		{
+			iae.printStackTrace();
+			System.exit(1);
+			return;
+		}
+
+		ExtentReportManager reportManager = ExtentReportManager.getInstance();
+		reportManager.startIncrementalFlush(runOptions.getReportFlushSeconds());
+
+		runner.run();
+
+		shutdown(reportManager);
+	}
+
+	/**
+	 * Method closes the sessions, the caching proxy and the report at the end of a run.
+	 */
+	private static void shutdown(ExtentReportManager reportManager)
+	{
+		DriverPool.getInstance().shutdown();
+
+		if (CachingProxy.getInstance().isRunning())
+		{
+			System.out.println(CachingProxy.getInstance());
+			CachingProxy.getInstance().stop();
+		}
+
+		reportManager.close();
+	}
+
+	/**
+	 * Method narrows the suites down for '--rerun-failed' and '--skip-passed', see {@link RerunPlanner}.
+	 * 
+	 * @return Returns false in case no test is left to run.
+	 */
+	private static boolean planIncrementalRun(List<XmlSuite> suites, TestDurations durations, String build)
+	{
+		RerunPlanner planner = new RerunPlanner(durations);
+
+		if (runOptions.isRerunFailed())
+		{
+			int methods = planner.retainFailed(suites);
+
+			if (methods == 0)
+			{
+				System.out.println("No test failed in the previous run, nothing to re-run.");
+				return false;
+			}
+
+			System.out.println("Re-running " + methods + " test methods that failed in the previous run.");
+		}
+
+		if (runOptions.getSkipPassedMinutes() > 0)
+		{
+			int methods = planner.skipPassed(suites, build, runOptions.getSkipPassedMinutes());
+
+			if (methods == 0)
+			{
+				System.out.println("Every test already passed on build " + build + ", nothing to run.");
+				return false;
+			}
+
+			System.out.println("Running " + methods + " test methods that did not pass on build " + build + " yet.");
+		}
+
+		return true;
+	}
+
+	/**
+	 * Method creates the {@link XmlSuite}s to run. Either the suite XML files given with the
+	 * '--suite' flag, or a single suite with every test class found on the classpath. The
+	 * group and parallel options are applied to all of them.
+	 * 
+	 * @return Returns a {@link List} of {@link XmlSuite} objects.
+	 * @throws IOException -> In case a suite file or the classpath could not be read.
+	 */
+	private static List<XmlSuite> createSuites() throws IOException
+	{
+		TestClassScanner scanner = new TestClassScanner();
+		List<XmlSuite> suites = new ArrayList<XmlSuite>();
+
+		if (runOptions.getSuites().isEmpty())
+		{
+			XmlSuite suite = new XmlSuite();
+			suite.setName(DEFAULT_SUITE_NAME);
+
+			XmlTest test = new XmlTest(suite);
+			test.setName(DEFAULT_SUITE_NAME);
+
+			List<XmlClass> classes = new ArrayList<XmlClass>();
+			for (Class<?> testClass : scanner.findTestClasses(runOptions.getPackages()))
+			{
+				classes.add(new XmlClass(testClass, false));
+			}
+			test.setXmlClasses(classes);
+
+			suites.add(suite);
+		}
+		else
+		{
+			List<String> suiteNames = new ArrayList<String>();
+			for (String suiteName : runOptions.getSuites())
+			{
+				if (ALL_SUITES.equals(suiteName))
+				{
+					suiteNames.addAll(scanner.findBundledSuites());
+				}
+				else
+				{
+					suiteNames.add(suiteName);
+				}
+			}
+
+			for (String suiteName : suiteNames)
+			{
+				suites.addAll(loadSuite(suiteName));
+			}
+		}
+
+		for (XmlSuite suite : suites)
+		{
+			if (runOptions.getParallelMode() != null)
+			{
+				suite.setParallel(runOptions.getParallelMode());
+			}
+
+			if (runOptions.getThreadCount() != null)
+			{
+				suite.setThreadCount(runOptions.getThreadCount());
+			}
+
+			for (XmlTest test : suite.getTests())
+			{
+				runOptions.getGroups().forEach(test::addIncludedGroup);
+				runOptions.getExcludedGroups().forEach(test::addExcludedGroup);
+
+				if (runOptions.getParallelMode() != null)
+				{
+					test.setParallel(runOptions.getParallelMode());
+				}
+
+				if (runOptions.getThreadCount() != null)
+				{
+					test.setThreadCount(runOptions.getThreadCount());
+				}
+			}
+		}
+
+		return suites;
+	}
+
+	/**
+	 * Method parses a suite XML file. The name is first looked up in the bundled
+	 * resources/suites folder and then on disk.
+	 */
+	private static List<XmlSuite> loadSuite(String suiteName) throws IOException
+	{
+		InputStream bundled = Main.class.getClassLoader().getResourceAsStream(TestClassScanner.SUITES_FOLDER + suiteName);
+
+		if (bundled != null)
+		{
+			try (InputStream in = bundled)
+			{
+				return new ArrayList<XmlSuite>(new Parser(in).parseToList());
+			}
+		}
+
+		if (Files.isRegularFile(Paths.get(suiteName)))
+		{
+			return new ArrayList<XmlSuite>(new Parser(suiteName).parseToList());
+		}
+
+		throw new IOException("Suite " + suiteName + " is neither bundled in " + TestClassScanner.SUITES_FOLDER + " nor a file.");
 	}
 
 	/**
@@ -85,6 +430,78 @@ public class Main
 		output.append("\n").append("to run propperly in headless mode you need to also set the '--window-size'");
 		output.append("\n").append("flag e.g. '--window-size=1920,1200'");
 		output.append("\n");
+		output.append("\n").append("The following flags are not passed to the chromedriver but configure the tests:");
+		output.append("\n").append(CONFIG_FLAG + "=<file>            Read flags from a .properties or .json file (without the leading '--'),");
+		output.append("\n").append("                                  flags after it win");
+		output.append("\n").append(PREFERENCE_FLAG_PREFIX + "<name>=<value>  Set a Chrome preference, e.g. " + PREFERENCE_FLAG_PREFIX + "intl.accept_languages=en-US");
+		output.append("\n").append(POOL_SIZE_FLAG + "=<n>           Maximum number of browser sessions run at once (default "
+				+ DriverConfiguration.DEFAULT_MAX_POOL_SIZE + ")");
+		output.append("\n").append(POOL_IDLE_TIMEOUT_FLAG + "=<s>   Seconds an unused browser session is kept alive (default "
+				+ DriverConfiguration.DEFAULT_IDLE_TIMEOUT_SECONDS + ")");
+		output.append("\n").append(PACKAGES_FLAG + "=<a,b>           Only run test classes inside these packages");
+		output.append("\n").append(GROUPS_FLAG + "=<a,b>             Only run tests in these TestNG groups");
+		output.append("\n").append(EXCLUDE_GROUPS_FLAG + "=<a,b>     Do not run tests in these TestNG groups");
+		output.append("\n").append(SUITE_FLAG + "=<name>              Run a suite XML from resources/suites or from disk instead of");
+		output.append("\n").append("                                  scanning for test classes, '" + SUITE_FLAG + "=" + ALL_SUITES + "' runs every bundled suite");
+		output.append("\n").append(PARALLEL_FLAG + "=<mode>           TestNG parallel mode: methods, classes, tests, instances or none");
+		output.append("\n").append(THREADS_FLAG + "=<n>              Number of TestNG threads, also the default pool size");
+		output.append("\n").append(SHARD_FLAG + "=<i>/<n>            Only run the i-th of n shards, balanced by previous test durations");
+		output.append("\n").append(DURATIONS_FLAG + "=<file>          File the test durations are kept in (default " + TestDurations.DEFAULT_FILE + ")");
+		output.append("\n").append(RERUN_FAILED_FLAG + "                Only run the tests that failed or were skipped in the previous run");
+		output.append("\n").append(FAILED_FIRST_FLAG + "                Run the tests that failed in the previous run first, then the rest");
+		output.append("\n").append(SKIP_PASSED_FLAG + "=<min>         Skip tests that passed on the same build within these minutes (default "
+				+ RerunPlanner.DEFAULT_SKIP_PASSED_MINUTES + ")");
+		output.append("\n").append(BUILD_ID_FLAG + "=<id>              Id of the build for " + SKIP_PASSED_FLAG + ", e.g. the commit hash (default the hash");
+		output.append("\n").append("                                  of tests.jar, only recorded with one of the two flags)");
+		output.append("\n").append(COMMAND_METRICS_FLAG + "=<true|false>  Time every WebDriver command (default true), the latencies are");
+		output.append("\n").append("                                  attached to the report in " + ExtentReportManager.REPORT_DIRECTORY);
+		output.append("\n").append(FIXTURE_DIR_FLAG + "=<dir>         Serve test fixtures from this directory instead of resources/fixtures");
+		output.append("\n").append(FIXTURE_LATENCY_FLAG + "=<ms>      Delay every fixture server response (default 0)");
+		output.append("\n").append(FIXTURE_BANDWIDTH_FLAG + "=<b/s>   Limit the fixture server to this many bytes per second (default unlimited)");
+		output.append("\n").append(BLOCK_URLS_FLAG + "=<a,b>         Block requests to these URL patterns ('*' wildcards), '" + RequestBlocker.DEFAULTS + "' adds");
+		output.append("\n").append("                                  common ad, analytics and tracking hosts");
+		output.append("\n").append(BLOCK_TYPES_FLAG + "=<a,b>        Block these resource types, e.g. Font,Image,Media");
+		output.append("\n").append(CACHING_PROXY_FLAG + "               Send every session through a shared caching proxy, hit/miss");
+		output.append("\n").append("                                  statistics are printed at the end of the run");
+		output.append("\n").append(CACHE_MEMORY_FLAG + "=<MB>        Memory used by the proxy cache (default "
+				+ DriverConfiguration.DEFAULT_CACHE_MEMORY_MEGABYTES + ")");
+		output.append("\n").append(CACHE_DISK_FLAG + "=<MB>          Disk used by the proxy cache (default "
+				+ DriverConfiguration.DEFAULT_CACHE_DISK_MEGABYTES + ")");
+		output.append("\n").append(CACHE_IMMUTABLE_FLAG + "             Never revalidate immutable and fingerprinted (e.g. app.3f9a2c1b.js)");
+		output.append("\n").append("                                  responses during the run");
+		output.append("\n").append(PROFILE_TEMPLATE_FLAG + "            Start every browser from a copy of a profile warmed up once per run");
+		output.append("\n").append(PROFILE_WARM_UP_FLAG + "=<a,b>   URLs visited while the profile template is warmed up");
+		output.append("\n").append(GRID_FLAG + "=<url>               Create sessions on this Selenium Grid or standalone server instead of");
+		output.append("\n").append("                                  launching Chrome locally, e.g. http://localhost:4444");
+		output.append("\n").append(GRID_TIMEOUT_FLAG + "=<s>         Seconds a session request is retried while the grid is full (default "
+				+ DriverConfiguration.DEFAULT_GRID_SESSION_TIMEOUT_SECONDS + ")");
+		output.append("\n").append(GRID_CONCURRENCY_FLAG + "=<n>     Session requests sent to the grid at once, the rest wait in line (default "
+				+ DriverConfiguration.DEFAULT_GRID_CONCURRENT_REQUESTS + ")");
+		output.append("\n").append(REPORT_FLUSH_FLAG + "=<s>          Seconds between two writes of the report during the run, 0 only writes it");
+		output.append("\n").append("                                  at the end (default " + ExtentReportManager.DEFAULT_FLUSH_INTERVAL_SECONDS + ")");
+		output.append("\n").append(FAILURE_ARTIFACTS_FLAG + "=<true|false> Keep a screenshot, the page source and the browser log of every");
+		output.append("\n").append("                                  failed test in the report (default true)");
+		output.append("\n").append(FAILURE_ARTIFACT_MEMORY_FLAG + "=<MB> Memory failure artifacts waiting to be written may take up, beyond");
+		output.append("\n").append("                                  that they are dropped (default " + DriverConfiguration.DEFAULT_FAILURE_ARTIFACT_MEMORY_MEGABYTES + ")");
+		output.append("\n").append(SESSION_MAX_MEMORY_FLAG + "=<MB>   Memory a browser with its child processes may use before its session");
+		output.append("\n").append("                                  is recycled, 0 for no limit (default " + DriverConfiguration.DEFAULT_SESSION_MEMORY_LIMIT_MEGABYTES + ")");
+		output.append("\n").append(SESSION_MAX_TESTS_FLAG + "=<n>     Tests a session runs before it is recycled (default no limit)");
+		output.append("\n").append(SESSION_HANG_TIMEOUT_FLAG + "=<s>   Seconds a session may take to answer a health check before it is");
+		output.append("\n").append("                                  recycled (default " + DriverConfiguration.DEFAULT_SESSION_HANG_TIMEOUT_SECONDS + ")");
+		output.append("\n").append(PAGE_PERFORMANCE_FLAG + "=<true|false> Capture timings, bytes and JS heap of every page loaded through get()");
+		output.append("\n").append("                                  (default false), percentiles are shown in the report");
+		output.append("\n").append(PERF_BUDGETS_FLAG + "=<file>      JSON file of per page budgets (TTFB, LCP, bytes, JS heap), tests exceeding");
+		output.append("\n").append("                                  them fail, implies " + PAGE_PERFORMANCE_FLAG);
+		output.append("\n").append(PERF_HISTORY_FLAG + "=<file>      File the page timings of previous runs are kept in (default "
+				+ PagePerformanceHistory.DEFAULT_FILE + ")");
+		output.append("\n").append(LOAD_FLAG + "=<journeys>         Instead of the tests run comma separated journeys under load, a journey");
+		output.append("\n").append("                                  is 'package.Class' or 'package.Class#step+step', sessions are headless");
+		output.append("\n").append(LOAD_USERS_FLAG + "=<n>           Concurrent virtual users, each with its own sessions (default " + LoadProfile.DEFAULT_USERS + ")");
+		output.append("\n").append(LOAD_RAMP_UP_FLAG + "=<s>         Seconds over which the users start or the rate climbs (default 0)");
+		output.append("\n").append(LOAD_RATE_FLAG + "=<n>            Target iterations per second over all users, latencies are measured");
+		output.append("\n").append("                                  from when an iteration was due (default none, users loop freely)");
+		output.append("\n").append(LOAD_DURATION_FLAG + "=<s>        Seconds new iterations are started (default " + LoadProfile.DEFAULT_DURATION_SECONDS + ")");
+		output.append("\n");
 		output.append("\n").append("--------------------- IMPORTANT ---------------------");
 		output.append("\n").append("Please not that the application is setup for only ChromeDriver, in future releases");
 		output.append("\n").append("we will add the FirefoxDriver setup as well.");
@@ -96,14 +513,43 @@ public class Main
 	}
 
 	/**
-	 * Method sets the {@link DriverConfiguration} singleton webDriverOptions with appropriate
+	 * Method publishes a new {@link DriverConfiguration} snapshot with appropriate
 	 * parameters that have been passed down via the command line or the eclipse 
 	 * JVM parameters list.
 	 * 
 	 * @param args -> A array of {@link String} object's that contains the parameters passed
 	 * to the program.
 	 */
-	private static void setConfigurations(String[] args)
+	static void setConfigurations(String[] args)
+	{
+		DriverConfiguration.Builder configuration = DriverConfiguration.current().toBuilder();
+
+		try
+		{
+			applyFlags(Arrays.asList(args), configuration);
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+			System.exit(1);
+		}
+		catch (IllegalArgumentException iae)
+		{
+			System.err.println(iae.getMessage());
+			printHelp();
+			System.exit(1);
+		}
+
+		DriverConfiguration.publish(configuration.build());
+	}
+
+	/**
+	 * Method applies flags to the {@link DriverConfiguration.Builder} and the {@link RunOptions}.
+	 * The flags of a '--config' file are applied where the flag stands, so later flags win.
+	 * 
+	 * @throws IOException -> In case a configuration file can not be read.
+	 */
+	private static void applyFlags(List<String> args, DriverConfiguration.Builder configuration) throws IOException
 	{
 		for (String parameter : args)
 		{
@@ -112,15 +558,284 @@ public class Main
 
 			if (parameter.contains("="))
 			{
-				parameterName = parameter.split("=")[0];
-				parameterValue = parameter.split("=")[1];
+				parameterName = parameter.split("=", 2)[0];
+				parameterValue = parameter.split("=", 2)[1];
 			}
 			else
 			{
 				parameterName = parameter;
 			}
 
-			DriverConfiguration.getInstance().getWebDriverOptions().put(parameterName, parameterValue);
+			if (CONFIG_FLAG.equals(parameterName))
+			{
+				applyFlags(ConfigurationFile.readFlags(Paths.get(requireValue(parameterName, parameterValue))), configuration);
+			}
+			else if (parameterName.startsWith(PREFERENCE_FLAG_PREFIX))
+			{
+				configuration.getWebDriverPreferences().put(parameterName.substring(PREFERENCE_FLAG_PREFIX.length()),
+						ConfigurationFile.parsePreferenceValue(parameterValue));
+			}
+			else if (POOL_SIZE_FLAG.equals(parameterName))
+			{
+				configuration.setMaxPoolSize(parseInt(parameterName, parameterValue));
+				poolSizeSet = true;
+			}
+			else if (PACKAGES_FLAG.equals(parameterName))
+			{
+				runOptions.getPackages().addAll(splitList(parameterValue));
+			}
+			else if (GROUPS_FLAG.equals(parameterName))
+			{
+				runOptions.getGroups().addAll(splitList(parameterValue));
+			}
+			else if (EXCLUDE_GROUPS_FLAG.equals(parameterName))
+			{
+				runOptions.getExcludedGroups().addAll(splitList(parameterValue));
+			}
+			else if (SUITE_FLAG.equals(parameterName))
+			{
+				runOptions.getSuites().addAll(splitList(parameterValue));
+			}
+			else if (PARALLEL_FLAG.equals(parameterName))
+			{
+				runOptions.setParallelMode(ParallelMode.getValidParallel(requireValue(parameterName, parameterValue)));
+			}
+			else if (THREADS_FLAG.equals(parameterName))
+			{
+				runOptions.setThreadCount(parseInt(parameterName, parameterValue));
+			}
+			else if (SHARD_FLAG.equals(parameterName))
+			{
+				int[] shard = ShardPlanner.parseShard(requireValue(parameterName, parameterValue));
+				runOptions.setShard(shard[0], shard[1]);
+			}
+			else if (DURATIONS_FLAG.equals(parameterName))
+			{
+				runOptions.setDurationsFile(requireValue(parameterName, parameterValue));
+			}
+			else if (RERUN_FAILED_FLAG.equals(parameterName))
+			{
+				runOptions.setRerunFailed(parameterValue == null || Boolean.parseBoolean(parameterValue));
+			}
+			else if (FAILED_FIRST_FLAG.equals(parameterName))
+			{
+				runOptions.setFailedFirst(parameterValue == null || Boolean.parseBoolean(parameterValue));
+			}
+			else if (SKIP_PASSED_FLAG.equals(parameterName))
+			{
+				runOptions.setSkipPassedMinutes(parameterValue == null ? RerunPlanner.DEFAULT_SKIP_PASSED_MINUTES : parseLong(parameterName, parameterValue));
+			}
+			else if (BUILD_ID_FLAG.equals(parameterName))
+			{
+				runOptions.setBuildId(requireValue(parameterName, parameterValue));
+			}
+			else if (COMMAND_METRICS_FLAG.equals(parameterName))
+			{
+				configuration.setCommandMetricsEnabled(parameterValue == null || Boolean.parseBoolean(parameterValue));
+			}
+			else if (FIXTURE_DIR_FLAG.equals(parameterName))
+			{
+				configuration.setFixtureDirectory(requireValue(parameterName, parameterValue));
+			}
+			else if (FIXTURE_LATENCY_FLAG.equals(parameterName))
+			{
+				configuration.setFixtureLatencyMillis(parseLong(parameterName, parameterValue));
+			}
+			else if (FIXTURE_BANDWIDTH_FLAG.equals(parameterName))
+			{
+				configuration.setFixtureBandwidthBytesPerSecond(parseLong(parameterName, parameterValue));
+			}
+			else if (BLOCK_URLS_FLAG.equals(parameterName))
+			{
+				for (String pattern : splitList(parameterValue))
+				{
+					if (RequestBlocker.DEFAULTS.equals(pattern))
+					{
+						configuration.getBlockedUrlPatterns().addAll(RequestBlocker.DEFAULT_BLOCKED_URL_PATTERNS);
+					}
+					else
+					{
+						configuration.getBlockedUrlPatterns().add(pattern);
+					}
+				}
+			}
+			else if (BLOCK_TYPES_FLAG.equals(parameterName))
+			{
+				splitList(parameterValue).stream().map(RequestBlocker::normalizeResourceType)
+						.forEach(configuration.getBlockedResourceTypes()::add);
+			}
+			else if (CACHING_PROXY_FLAG.equals(parameterName))
+			{
+				configuration.setCachingProxyEnabled(parameterValue == null || Boolean.parseBoolean(parameterValue));
+			}
+			else if (CACHE_MEMORY_FLAG.equals(parameterName))
+			{
+				configuration.setCacheMemoryMegabytes(parseLong(parameterName, parameterValue));
+			}
+			else if (CACHE_DISK_FLAG.equals(parameterName))
+			{
+				configuration.setCacheDiskMegabytes(parseLong(parameterName, parameterValue));
+			}
+			else if (CACHE_IMMUTABLE_FLAG.equals(parameterName))
+			{
+				configuration.setCacheImmutableAggressively(parameterValue == null || Boolean.parseBoolean(parameterValue));
+			}
+			else if (PROFILE_TEMPLATE_FLAG.equals(parameterName))
+			{
+				configuration.setProfileTemplateEnabled(parameterValue == null || Boolean.parseBoolean(parameterValue));
+			}
+			else if (PROFILE_WARM_UP_FLAG.equals(parameterName))
+			{
+				configuration.getProfileWarmUpUrls().addAll(splitList(parameterValue));
+			}
+			else if (GRID_FLAG.equals(parameterName))
+			{
+				configuration.setGridUrl(requireValue(parameterName, parameterValue));
+			}
+			else if (GRID_TIMEOUT_FLAG.equals(parameterName))
+			{
+				configuration.setGridSessionTimeoutSeconds(parseLong(parameterName, parameterValue));
+			}
+			else if (GRID_CONCURRENCY_FLAG.equals(parameterName))
+			{
+				configuration.setGridConcurrentRequests(parseInt(parameterName, parameterValue));
+			}
+			else if (REPORT_FLUSH_FLAG.equals(parameterName))
+			{
+				runOptions.setReportFlushSeconds(parseLong(parameterName, parameterValue));
+			}
+			else if (FAILURE_ARTIFACTS_FLAG.equals(parameterName))
+			{
+				configuration.setFailureArtifactsEnabled(parameterValue == null || Boolean.parseBoolean(parameterValue));
+			}
+			else if (FAILURE_ARTIFACT_MEMORY_FLAG.equals(parameterName))
+			{
+				configuration.setFailureArtifactMemoryMegabytes(parseLong(parameterName, parameterValue));
+			}
+			else if (SESSION_MAX_MEMORY_FLAG.equals(parameterName))
+			{
+				configuration.setSessionMemoryLimitMegabytes(parseLong(parameterName, parameterValue));
+			}
+			else if (SESSION_MAX_TESTS_FLAG.equals(parameterName))
+			{
+				configuration.setSessionMaxTests(parseInt(parameterName, parameterValue));
+			}
+			else if (SESSION_HANG_TIMEOUT_FLAG.equals(parameterName))
+			{
+				configuration.setSessionHangTimeoutSeconds(parseLong(parameterName, parameterValue));
+			}
+			else if (PAGE_PERFORMANCE_FLAG.equals(parameterName))
+			{
+				configuration.setPagePerformanceEnabled(parameterValue == null || Boolean.parseBoolean(parameterValue));
+			}
+			else if (PERF_BUDGETS_FLAG.equals(parameterName))
+			{
+				PagePerformance.getInstance().addBudgets(PerformanceBudget.load(Paths.get(requireValue(parameterName, parameterValue))));
+				configuration.setPagePerformanceEnabled(true);
+			}
+			else if (PERF_HISTORY_FLAG.equals(parameterName))
+			{
+				runOptions.setPerformanceHistoryFile(requireValue(parameterName, parameterValue));
+			}
+			else if (LOAD_FLAG.equals(parameterName))
+			{
+				runOptions.getLoadProfile().getJourneys().addAll(splitList(requireValue(parameterName, parameterValue)));
+			}
+			else if (LOAD_USERS_FLAG.equals(parameterName))
+			{
+				runOptions.getLoadProfile().setUsers(parseInt(parameterName, parameterValue));
+			}
+			else if (LOAD_RAMP_UP_FLAG.equals(parameterName))
+			{
+				runOptions.getLoadProfile().setRampUpSeconds(parseLong(parameterName, parameterValue));
+			}
+			else if (LOAD_RATE_FLAG.equals(parameterName))
+			{
+				runOptions.getLoadProfile().setIterationsPerSecond(parseDouble(parameterName, parameterValue));
+			}
+			else if (LOAD_DURATION_FLAG.equals(parameterName))
+			{
+				runOptions.getLoadProfile().setDurationSeconds(parseLong(parameterName, parameterValue));
+			}
+			else if (POOL_IDLE_TIMEOUT_FLAG.equals(parameterName))
+			{
+				configuration.setIdleTimeoutSeconds(parseLong(parameterName, parameterValue));
+			}
+			else
+			{
+				configuration.getWebDriverOptions().put(parameterName, parameterValue);
+			}
+		}
+	}
+
+	/**
+	 * @return Returns the value of a flag that needs one.
+	 * @throws IllegalArgumentException -> In case the flag was given without '=value'.
+	 */
+	private static String requireValue(String parameterName, String parameterValue)
+	{
+		if (parameterValue == null || parameterValue.trim().isEmpty())
+		{
+			throw new IllegalArgumentException("Flag " + parameterName + " needs a value, e.g. " + parameterName + "=<value>");
 		}
+
+		return parameterValue.trim();
+	}
+
+	private static int parseInt(String parameterName, String parameterValue)
+	{
+		String value = requireValue(parameterName, parameterValue);
+
+		try
+		{
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException nfe)
+		{
+			throw new IllegalArgumentException("Flag " + parameterName + " needs a whole number, got: " + value, nfe);
+		}
+	}
+
+	private static long parseLong(String parameterName, String parameterValue)
+	{
+		String value = requireValue(parameterName, parameterValue);
+
+		try
+		{
+			return Long.parseLong(value);
+		}
+		catch (NumberFormatException nfe)
+		{
+			throw new IllegalArgumentException("Flag " + parameterName + " needs a whole number, got: " + value, nfe);
+		}
+	}
+
+	private static double parseDouble(String parameterName, String parameterValue)
+	{
+		String value = requireValue(parameterName, parameterValue);
+
+		try
+		{
+			return Double.parseDouble(value);
+		}
+		catch (NumberFormatException nfe)
+		{
+			throw new IllegalArgumentException("Flag " + parameterName + " needs a number, got: " + value, nfe);
+		}
+	}
+
+	/**
+	 * Method splits a comma separated flag value.
+	 */
+	private static List<String> splitList(String value)
+	{
+		List<String> values = new ArrayList<String>();
+
+		if (value != null)
+		{
+			Arrays.stream(value.split(",")).map(String::trim).filter(item -> !item.isEmpty()).forEach(values::add);
+		}
+
+		return values;
 	}
 }
\ No newline at end of file
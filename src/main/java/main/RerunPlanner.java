@@ -0,0 +1,69 @@
+package main;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.xml.XmlSuite;
+
+/**
+ * Class that picks the tests of an incremental run from the outcomes of previous runs (see
+ * {@link TestDurations}), so a red build gives feedback in minutes instead of the whole suite:
+ *
+ * <ul>
+ * <li>'--rerun-failed' only runs the tests that failed or were skipped the last time,</li>
+ * <li>'--skip-passed' leaves out the tests that passed on the same build within a time window,</li>
+ * <li>'--failed-first' runs everything, previous failures first, see {@link DurationOrderInterceptor}.</li>
+ * </ul>
+ *
+ * @author karlomijaljevic
+ */
+public class RerunPlanner
+{
+	public static final long DEFAULT_SKIP_PASSED_MINUTES = 24 * 60;
+
+	private final TestDurations durations;
+
+	public RerunPlanner(TestDurations durations)
+	{
+		this.durations = durations;
+	}
+
+	/**
+	 * Method narrows the suites down to the tests that failed or were skipped the last time
+	 * they ran.
+	 *
+	 * @param suites -> The {@link XmlSuite}s of the run, they are modified in place.
+	 * @return Returns the number of test methods left.
+	 */
+	public int retainFailed(List<XmlSuite> suites)
+	{
+		Set<String> ids = new LinkedHashSet<String>(ShardPlanner.testIds(suites));
+		ids.retainAll(durations.getFailedIds());
+
+		ShardPlanner.retain(suites, ids);
+
+		return ids.size();
+	}
+
+	/**
+	 * Method removes the tests that passed on the given build within the last minutes.
+	 *
+	 * @param suites -> The {@link XmlSuite}s of the run, they are modified in place.
+	 * @param build -> Id of the running build, see {@link BuildIdentity}.
+	 * @param windowMinutes -> How long a pass counts.
+	 * @return Returns the number of test methods left.
+	 */
+	public int skipPassed(List<XmlSuite> suites, String build, long windowMinutes)
+	{
+		long notBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(windowMinutes);
+
+		Set<String> ids = new LinkedHashSet<String>(ShardPlanner.testIds(suites));
+		ids.removeIf(id -> durations.passedOn(id, build, notBefore));
+
+		ShardPlanner.retain(suites, ids);
+
+		return ids.size();
+	}
+}
@@ -0,0 +1,209 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.xml.XmlSuite.ParallelMode;
+
+import load.LoadProfile;
+import metrics.PagePerformanceHistory;
+import report.ExtentReportManager;
+
+/**
+ * Options that control which tests the {@link Main} class runs and how. These are the
+ * command line flags that are not passed on to the chromedriver.
+ *
+ * @author karlomijaljevic
+ */
+public class RunOptions
+{
+	private final List<String> packages = new ArrayList<String>();
+	private final List<String> groups = new ArrayList<String>();
+	private final List<String> excludedGroups = new ArrayList<String>();
+	private final List<String> suites = new ArrayList<String>();
+	private ParallelMode parallelMode;
+	private Integer threadCount;
+	private int shardIndex = 1;
+	private int shardCount = 1;
+	private String durationsFile = TestDurations.DEFAULT_FILE;
+	private long reportFlushSeconds = ExtentReportManager.DEFAULT_FLUSH_INTERVAL_SECONDS;
+	private boolean rerunFailed = false;
+	private boolean failedFirst = false;
+	private long skipPassedMinutes = 0;
+	private String buildId;
+	private String performanceHistoryFile = PagePerformanceHistory.DEFAULT_FILE;
+	private final LoadProfile loadProfile = new LoadProfile();
+
+	/**
+	 * @return Returns the package prefixes test classes are scanned in, empty means all.
+	 */
+	public List<String> getPackages()
+	{
+		return packages;
+	}
+
+	public List<String> getGroups()
+	{
+		return groups;
+	}
+
+	public List<String> getExcludedGroups()
+	{
+		return excludedGroups;
+	}
+
+	/**
+	 * @return Returns the suite XML files to run, either names of bundled suites in
+	 * resources/suites or paths on disk.
+	 */
+	public List<String> getSuites()
+	{
+		return suites;
+	}
+
+	/**
+	 * @return Returns the TestNG parallel mode or NULL in case it was not set.
+	 */
+	public ParallelMode getParallelMode()
+	{
+		return parallelMode;
+	}
+
+	public void setParallelMode(ParallelMode parallelMode)
+	{
+		this.parallelMode = parallelMode;
+	}
+
+	/**
+	 * @return Returns the TestNG thread count or NULL in case it was not set.
+	 */
+	public Integer getThreadCount()
+	{
+		return threadCount;
+	}
+
+	public void setThreadCount(Integer threadCount)
+	{
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * @return Returns the 1 based index of the shard this run executes.
+	 */
+	public int getShardIndex()
+	{
+		return shardIndex;
+	}
+
+	public int getShardCount()
+	{
+		return shardCount;
+	}
+
+	public void setShard(int shardIndex, int shardCount)
+	{
+		this.shardIndex = shardIndex;
+		this.shardCount = shardCount;
+	}
+
+	/**
+	 * @return Returns the path of the {@link TestDurations} file.
+	 */
+	public String getDurationsFile()
+	{
+		return durationsFile;
+	}
+
+	public void setDurationsFile(String durationsFile)
+	{
+		this.durationsFile = durationsFile;
+	}
+
+	/**
+	 * @return Returns the seconds between two flushes of the report during the run.
+	 */
+	public long getReportFlushSeconds()
+	{
+		return reportFlushSeconds;
+	}
+
+	public void setReportFlushSeconds(long reportFlushSeconds)
+	{
+		this.reportFlushSeconds = reportFlushSeconds;
+	}
+
+	/**
+	 * @return Returns true in case only the tests that failed last time should run, see
+	 * {@link RerunPlanner}.
+	 */
+	public boolean isRerunFailed()
+	{
+		return rerunFailed;
+	}
+
+	public void setRerunFailed(boolean rerunFailed)
+	{
+		this.rerunFailed = rerunFailed;
+	}
+
+	/**
+	 * @return Returns true in case the tests that failed last time should run before the others.
+	 */
+	public boolean isFailedFirst()
+	{
+		return failedFirst;
+	}
+
+	public void setFailedFirst(boolean failedFirst)
+	{
+		this.failedFirst = failedFirst;
+	}
+
+	/**
+	 * @return Returns the minutes a pass on the same build counts for, zero or less runs every test.
+	 */
+	public long getSkipPassedMinutes()
+	{
+		return skipPassedMinutes;
+	}
+
+	public void setSkipPassedMinutes(long skipPassedMinutes)
+	{
+		this.skipPassedMinutes = skipPassedMinutes;
+	}
+
+	/**
+	 * @return Returns the build id given on the command line or NULL in case it should be
+	 * computed, see {@link BuildIdentity}.
+	 */
+	public String getBuildId()
+	{
+		return buildId;
+	}
+
+	public void setBuildId(String buildId)
+	{
+		this.buildId = buildId;
+	}
+
+	/**
+	 * @return Returns the path of the {@link PagePerformanceHistory} file.
+	 */
+	public String getPerformanceHistoryFile()
+	{
+		return performanceHistoryFile;
+	}
+
+	public void setPerformanceHistoryFile(String performanceHistoryFile)
+	{
+		this.performanceHistoryFile = performanceHistoryFile;
+	}
+
+	/**
+	 * @return Returns the shape of a '--load' run, see {@link LoadProfile#isEnabled()}.
+	 */
+	public LoadProfile getLoadProfile()
+	{
+		return loadProfile;
+	}
+}
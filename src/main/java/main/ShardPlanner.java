@@ -0,0 +1,246 @@
+package main;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+import org.testng.xml.XmlClass;
+import org.testng.xml.XmlInclude;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+/**
+ * Class that splits the test methods of a run into N shards so one run can be spread over
+ * several JVMs or machines, e.g. '--shard=2/8' runs the second of eight shards.
+ *
+ * Tests with a known duration (see {@link TestDurations}) are packed longest processing time
+ * first: every test goes to the shard with the least work so far. Tests without a known
+ * duration go to a shard picked by a stable hash of their id. Every shard computes the same
+ * plan on its own, so no coordination is needed besides the shared durations file.
+ *
+ * @implNote
+ * Test methods that depend on methods in another shard (dependsOnMethods) will be skipped,
+ * keep such methods in their own group and run them unsharded.
+ *
+ * @author karlomijaljevic
+ */
+public class ShardPlanner
+{
+	private final TestDurations durations;
+
+	public ShardPlanner(TestDurations durations)
+	{
+		this.durations = durations;
+	}
+
+	/**
+	 * Method computes which of the given tests belong to a shard.
+	 *
+	 * @param ids -> Ids of every test method in the run, see {@link TestDurations#id(String, String)}.
+	 * @param shardIndex -> 1 based index of the shard.
+	 * @param shardCount -> Total number of shards.
+	 * @return Returns the ids of the tests in the shard.
+	 */
+	public Set<String> plan(Collection<String> ids, int shardIndex, int shardCount)
+	{
+		List<String> known = new ArrayList<String>();
+		Set<String> shard = new LinkedHashSet<String>();
+
+		for (String id : new LinkedHashSet<String>(ids))
+		{
+			if (durations.get(id) != null)
+			{
+				known.add(id);
+			}
+			else if (Math.floorMod(id.hashCode(), shardCount) == shardIndex - 1)
+			{
+				shard.add(id);
+			}
+		}
+
+		known.sort(Comparator.comparing((String id) -> durations.get(id)).reversed().thenComparing(Comparator.naturalOrder()));
+
+		long[] loads = new long[shardCount];
+
+		for (String id : known)
+		{
+			int lightest = 0;
+			for (int i = 1; i < shardCount; i++)
+			{
+				if (loads[i] < loads[lightest])
+				{
+					lightest = i;
+				}
+			}
+
+			loads[lightest] += durations.get(id);
+
+			if (lightest == shardIndex - 1)
+			{
+				shard.add(id);
+			}
+		}
+
+		return shard;
+	}
+
+	/**
+	 * Method narrows the given suites down to the test methods of one shard. Classes and tests
+	 * without any method left are removed.
+	 *
+	 * @param suites -> The {@link XmlSuite}s of the whole run, they are modified in place.
+	 * @param shardIndex -> 1 based index of the shard.
+	 * @param shardCount -> Total number of shards.
+	 * @return Returns the number of test methods in the shard.
+	 */
+	public int applyTo(List<XmlSuite> suites, int shardIndex, int shardCount)
+	{
+		Set<String> shard = plan(testIds(suites), shardIndex, shardCount);
+
+		retain(suites, shard);
+
+		return shard.size();
+	}
+
+	/**
+	 * @return Returns the ids of every test method in the suites, see {@link TestDurations#id(String, String)}.
+	 */
+	static List<String> testIds(List<XmlSuite> suites)
+	{
+		List<String> ids = new ArrayList<String>();
+
+		for (XmlSuite suite : suites)
+		{
+			for (XmlTest test : suite.getTests())
+			{
+				for (XmlClass xmlClass : test.getXmlClasses())
+				{
+					for (String methodName : testMethodNames(xmlClass))
+					{
+						ids.add(TestDurations.id(xmlClass.getName(), methodName));
+					}
+				}
+			}
+		}
+
+		return ids;
+	}
+
+	/**
+	 * Method narrows the suites down to the given test methods. Classes and tests without any
+	 * method left are removed.
+	 *
+	 * @param suites -> The {@link XmlSuite}s, they are modified in place.
+	 * @param ids -> Ids of the test methods to keep.
+	 */
+	static void retain(List<XmlSuite> suites, Set<String> ids)
+	{
+		for (XmlSuite suite : suites)
+		{
+			for (Iterator<XmlTest> tests = suite.getTests().iterator(); tests.hasNext();)
+			{
+				XmlTest test = tests.next();
+				List<XmlClass> classes = new ArrayList<XmlClass>();
+
+				for (XmlClass xmlClass : test.getXmlClasses())
+				{
+					List<XmlInclude> includes = new ArrayList<XmlInclude>();
+
+					for (String methodName : testMethodNames(xmlClass))
+					{
+						if (ids.contains(TestDurations.id(xmlClass.getName(), methodName)))
+						{
+							includes.add(new XmlInclude(methodName));
+						}
+					}
+
+					if (!includes.isEmpty())
+					{
+						xmlClass.setIncludedMethods(includes);
+						classes.add(xmlClass);
+					}
+				}
+
+				test.setXmlClasses(classes);
+
+				if (classes.isEmpty())
+				{
+					tests.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method lists the test methods of a class, honouring the includes and excludes of the
+	 * suite XML.
+	 */
+	public static List<String> testMethodNames(XmlClass xmlClass)
+	{
+		Set<String> names = new LinkedHashSet<String>();
+
+		if (!xmlClass.getIncludedMethods().isEmpty())
+		{
+			xmlClass.getIncludedMethods().forEach(include -> names.add(include.getName()));
+		}
+		else
+		{
+			Class<?> testClass = xmlClass.getSupportClass();
+			boolean classLevelTest = testClass.isAnnotationPresent(Test.class);
+
+			Method[] methods = testClass.getMethods();
+			Arrays.sort(methods, Comparator.comparing(Method::getName));
+
+			for (Method method : methods)
+			{
+				if (method.isAnnotationPresent(Test.class)
+						|| (classLevelTest && method.getDeclaringClass() != Object.class && !hasConfigurationAnnotation(method)))
+				{
+					names.add(method.getName());
+				}
+			}
+		}
+
+		names.removeAll(new HashSet<String>(xmlClass.getExcludedMethods()));
+
+		return new ArrayList<String>(names);
+	}
+
+	private static boolean hasConfigurationAnnotation(Method method)
+	{
+		return Arrays.stream(method.getAnnotations())
+				.anyMatch(annotation -> annotation.annotationType().getPackage().getName().equals("org.testng.annotations"));
+	}
+
+	/**
+	 * Method parses a shard definition like '2/8'.
+	 *
+	 * @return Returns {index, count}.
+	 * @throws IllegalArgumentException -> In case the definition is not valid.
+	 */
+	public static int[] parseShard(String shard)
+	{
+		String[] parts = shard == null ? new String[0] : shard.split("/");
+
+		if (parts.length == 2)
+		{
+			int index = Integer.parseInt(parts[0].trim());
+			int count = Integer.parseInt(parts[1].trim());
+
+			if (count > 0 && index >= 1 && index <= count)
+			{
+				return new int[] { index, count };
+			}
+		}
+
+		throw new IllegalArgumentException("Shard must look like <index>/<count> with 1 <= index <= count, got: " + shard);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,348 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import org.testng.annotations.Test;
+
+/**
+ * Class that finds TestNG test classes and bundled suite XML files on the classpath. Only the
+ * location {@link Main} was loaded from is scanned (the tests.jar or the build output folder).
+ *
+ * To keep the scan cheap the classes of the libraries bundled in the tests.jar are skipped unless
+ * '--packages' asks for them, and the constant pool of every other class file is checked for a
+ * reference to the {@link Test} annotation first. Only those classes are loaded (without being
+ * initialised) and inspected with reflection.
+ *
+ * @author karlomijaljevic
+ */
+public class TestClassScanner
+{
+	public static final String SUITES_FOLDER = "suites/";
+
+	private static final byte[] TEST_ANNOTATION_DESCRIPTOR = "Lorg/testng/annotations/Test;".getBytes(StandardCharsets.UTF_8);
+	private static final String[] EXCLUDED_PREFIXES = { "module-info", "META-INF/" };
+	private static final String[] DEPENDENCY_PREFIXES = { "org/testng/", "org/openqa/", "org/apache/", "org/eclipse/",
+			"org/checkerframework/", "org/codehaus/", "org/asynchttpclient/", "org/objectweb/", "org/slf4j/", "org/sonatype/",
+			"org/reactivestreams/", "org/aopalliance/", "com/google/", "com/aventstack/", "com/beust/", "com/thoughtworks/",
+			"com/typesafe/", "com/sun/", "net/bytebuddy/", "io/netty/", "io/reactivex/", "io/opentelemetry/", "io/ous/",
+			"dev/failsafe/", "freemarker/", "lombok/", "javax/", "kotlin/", "okhttp3/", "okio/" };
+	private static final int CLASS_MAGIC = 0xCAFEBABE;
+	private static final String CLASS_SUFFIX = ".class";
+
+	private final ClassLoader classLoader;
+	private final Path root;
+
+	public TestClassScanner()
+	{
+		this.classLoader = Main.class.getClassLoader();
+		this.root = codeSource();
+	}
+
+	/**
+	 * Method finds every class with a {@link Test} annotation on the class or on one of its
+	 * methods.
+	 *
+	 * @param packages -> Package prefixes to limit the scan to, empty means all packages except
+	 * the ones of bundled libraries.
+	 * @return Returns the found test classes sorted by name.
+	 * @throws IOException -> In case the classpath could not be read.
+	 */
+	public List<Class<?>> findTestClasses(List<String> packages) throws IOException
+	{
+		Set<String> classNames = new LinkedHashSet<String>();
+
+		for (String entry : listEntries())
+		{
+			if (!entry.endsWith(CLASS_SUFFIX) || entry.contains("$") || isExcluded(entry))
+			{
+				continue;
+			}
+
+			String className = entry.substring(0, entry.length() - CLASS_SUFFIX.length()).replace('/', '.');
+
+			if ((packages.isEmpty() ? !isDependency(entry) : isInPackages(className, packages)) && referencesTestAnnotation(entry))
+			{
+				classNames.add(className);
+			}
+		}
+
+		List<Class<?>> testClasses = new ArrayList<Class<?>>();
+
+		for (String className : classNames)
+		{
+			try
+			{
+				Class<?> candidate = Class.forName(className, false, classLoader);
+
+				if (isTestClass(candidate))
+				{
+					testClasses.add(candidate);
+				}
+			}
+			catch (ClassNotFoundException | LinkageError e)
+			{
+				System.err.println("Skipping " + className + ": " + e);
+			}
+		}
+
+		testClasses.sort((first, second) -> first.getName().compareTo(second.getName()));
+
+		return testClasses;
+	}
+
+	/**
+	 * @return Returns the names of every suite XML file bundled in resources/suites.
+	 * @throws IOException -> In case the classpath could not be read.
+	 */
+	public List<String> findBundledSuites() throws IOException
+	{
+		List<String> suites = new ArrayList<String>();
+
+		for (String entry : listEntries())
+		{
+			if (entry.startsWith(SUITES_FOLDER) && entry.endsWith(".xml"))
+			{
+				suites.add(entry.substring(SUITES_FOLDER.length()));
+			}
+		}
+
+		suites.sort(String::compareTo);
+
+		return suites;
+	}
+
+	private static boolean isTestClass(Class<?> candidate)
+	{
+		if (candidate.isInterface() || candidate.isAnnotation() || Modifier.isAbstract(candidate.getModifiers()))
+		{
+			return false;
+		}
+
+		if (candidate.isAnnotationPresent(Test.class))
+		{
+			return true;
+		}
+
+		for (Method method : candidate.getMethods())
+		{
+			if (method.isAnnotationPresent(Test.class))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean isInPackages(String className, List<String> packages)
+	{
+		for (String packageName : packages)
+		{
+			if (className.startsWith(packageName + "."))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean isExcluded(String entry)
+	{
+		return startsWithAny(entry, EXCLUDED_PREFIXES);
+	}
+
+	/**
+	 * @return Returns true in case the entry belongs to one of the libraries bundled in the
+	 * tests.jar, they do not contain tests of this project.
+	 */
+	private static boolean isDependency(String entry)
+	{
+		return startsWithAny(entry, DEPENDENCY_PREFIXES);
+	}
+
+	private static boolean startsWithAny(String entry, String[] prefixes)
+	{
+		for (String prefix : prefixes)
+		{
+			if (entry.startsWith(prefix))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Method checks the constant pool of the class file for the {@link Test} annotation
+	 * descriptor. The file is streamed and only read up to the end of the constant pool, which
+	 * holds every type the class refers to. Class files that can not be parsed are reported as
+	 * a match, so the reflection check decides.
+	 */
+	private boolean referencesTestAnnotation(String entry)
+	{
+		try (InputStream resource = classLoader.getResourceAsStream(entry))
+		{
+			if (resource == null)
+			{
+				return false;
+			}
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(resource));
+
+			if (in.readInt() != CLASS_MAGIC)
+			{
+				return false;
+			}
+
+			// Minor and major version.
+			in.skipBytes(4);
+
+			int constantPoolCount = in.readUnsignedShort();
+
+			for (int index = 1; index < constantPoolCount; index++)
+			{
+				int tag = in.readUnsignedByte();
+
+				switch (tag)
+				{
+					case 1: // Utf8
+						int length = in.readUnsignedShort();
+
+						if (length == TEST_ANNOTATION_DESCRIPTOR.length)
+						{
+							byte[] value = new byte[length];
+							in.readFully(value);
+
+							if (Arrays.equals(value, TEST_ANNOTATION_DESCRIPTOR))
+							{
+								return true;
+							}
+						}
+						else
+						{
+							skipFully(in, length);
+						}
+						break;
+					case 7: // Class
+					case 8: // String
+					case 16: // MethodType
+					case 19: // Module
+					case 20: // Package
+						skipFully(in, 2);
+						break;
+					case 15: // MethodHandle
+						skipFully(in, 3);
+						break;
+					case 3: // Integer
+					case 4: // Float
+					case 9: // Fieldref
+					case 10: // Methodref
+					case 11: // InterfaceMethodref
+					case 12: // NameAndType
+					case 17: // Dynamic
+					case 18: // InvokeDynamic
+						skipFully(in, 4);
+						break;
+					case 5: // Long
+					case 6: // Double
+						skipFully(in, 8);
+						// Takes up two entries of the pool.
+						index++;
+						break;
+					default:
+						return true;
+				}
+			}
+
+			return false;
+		}
+		catch (IOException ioe)
+		{
+			return false;
+		}
+	}
+
+	private static void skipFully(DataInputStream in, int bytes) throws IOException
+	{
+		if (in.skipBytes(bytes) != bytes)
+		{
+			throw new IOException("Unexpected end of class file.");
+		}
+	}
+
+	/**
+	 * Method lists every entry (with '/' separators) of the jar or folder {@link Main} was
+	 * loaded from.
+	 */
+	private List<String> listEntries() throws IOException
+	{
+		List<String> entries = new ArrayList<String>();
+
+		if (root == null)
+		{
+			return entries;
+		}
+
+		if (Files.isDirectory(root))
+		{
+			try (Stream<Path> paths = Files.walk(root))
+			{
+				paths.filter(Files::isRegularFile)
+						.forEach(path -> entries.add(root.relativize(path).toString().replace(File.separatorChar, '/')));
+			}
+		}
+		else
+		{
+			try (JarFile jarFile = new JarFile(root.toFile()))
+			{
+				Enumeration<JarEntry> jarEntries = jarFile.entries();
+				while (jarEntries.hasMoreElements())
+				{
+					JarEntry jarEntry = jarEntries.nextElement();
+
+					if (!jarEntry.isDirectory())
+					{
+						entries.add(jarEntry.getName());
+					}
+				}
+			}
+		}
+
+		return entries;
+	}
+
+	private static Path codeSource()
+	{
+		try
+		{
+			return Paths.get(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		}
+		catch (URISyntaxException | NullPointerException | SecurityException e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+	}
+}
\ No newline at end of file
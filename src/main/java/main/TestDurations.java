@@ -0,0 +1,300 @@
+package main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.testng.ITestNGMethod;
+
+import helper.FileHelper;
+
+/**
+ * Per test method durations and outcomes from previous runs, stored in a small properties
+ * file where every line is 'package.Class#method=milliseconds,outcome,build,finishedAt', e.g.
+ * 'tests.LoginTest#login=5120,FAILED,3f2a9c81d0e4,1700000000000'. Files with durations only
+ * ('package.Class#method=milliseconds') are still read. Used by the {@link ShardPlanner} to
+ * balance shards and the {@link RerunPlanner} to pick the tests of an incremental run, written
+ * by the {@link DurationListener}.
+ *
+ * The file is the only thing shards need to share. Updates are merged into the file under a
+ * file lock and written with an atomic rename, so several JVMs on the same machine can update
+ * it at the end of their run.
+ *
+ * @author karlomijaljevic
+ */
+public class TestDurations
+{
+	public static final String DEFAULT_FILE = "test-durations.properties";
+
+	private static final String LOCK_SUFFIX = ".lock";
+	private static final String SEPARATOR = ",";
+	private static final long UNKNOWN_DURATION = -1;
+
+	/**
+	 * Outcome of the last run of a test method. Invocations of the same method are combined,
+	 * one failed invocation fails the method.
+	 */
+	public enum Outcome
+	{
+		PASSED, SKIPPED, FAILED;
+
+		/**
+		 * @return Returns the worse of the two outcomes.
+		 */
+		public static Outcome worse(Outcome first, Outcome second)
+		{
+			return first.compareTo(second) >= 0 ? first : second;
+		}
+	}
+
+	/**
+	 * What is known about one test method, the duration is {@link #UNKNOWN_DURATION} for tests
+	 * that were only ever skipped.
+	 */
+	private static final class Record
+	{
+		private final long duration;
+		private final Outcome outcome;
+		private final String build;
+		private final long finishedAt;
+
+		private Record(long duration, Outcome outcome, String build, long finishedAt)
+		{
+			this.duration = duration;
+			this.outcome = outcome;
+			this.build = build;
+			this.finishedAt = finishedAt;
+		}
+
+		/**
+		 * @return Returns the record parsed from a properties value or NULL in case it is broken.
+		 */
+		private static Record parse(String value)
+		{
+			String[] parts = value.trim().split(SEPARATOR);
+
+			try
+			{
+				if (parts.length == 4)
+				{
+					return new Record(Long.parseLong(parts[0]), Outcome.valueOf(parts[1]), parts[2].isEmpty() ? null : parts[2],
+							Long.parseLong(parts[3]));
+				}
+
+				return new Record(Long.parseLong(parts[0]), null, null, 0);
+			}
+			catch (IllegalArgumentException iae)
+			{
+				return null;
+			}
+		}
+
+		private String format()
+		{
+			if (outcome == null)
+			{
+				return String.valueOf(duration);
+			}
+
+			return String.join(SEPARATOR, String.valueOf(duration), outcome.name(), build == null ? "" : build, String.valueOf(finishedAt));
+		}
+	}
+
+	private final Map<String, Record> records;
+
+	private TestDurations(Map<String, Record> records)
+	{
+		this.records = records;
+	}
+
+	/**
+	 * Method reads the durations file. A missing or unreadable file results in no durations
+	 * and outcomes.
+	 *
+	 * @param file -> {@link Path} of the durations file.
+	 * @return Returns the {@link TestDurations}.
+	 */
+	public static TestDurations load(Path file)
+	{
+		Map<String, Record> records = new HashMap<String, Record>();
+
+		if (Files.isRegularFile(file))
+		{
+			try (InputStream in = Files.newInputStream(file))
+			{
+				Properties properties = new Properties();
+				properties.load(in);
+
+				for (String id : properties.stringPropertyNames())
+				{
+					Record record = Record.parse(properties.getProperty(id));
+
+					// Broken lines are ignored, the test will simply count as unknown.
+					if (record != null)
+					{
+						records.put(id, record);
+					}
+				}
+			}
+			catch (IOException ioe)
+			{
+				ioe.printStackTrace();
+			}
+		}
+
+		return new TestDurations(records);
+	}
+
+	/**
+	 * Method merges freshly measured durations into the durations file. Known tests are
+	 * averaged with their previous duration to smooth out noise.
+	 *
+	 * @param file -> {@link Path} of the durations file.
+	 * @param measured -> Measured durations in milliseconds keyed by test id.
+	 * @throws IOException -> In case the file could not be written.
+	 */
+	public static void merge(Path file, Map<String, Long> measured) throws IOException
+	{
+		merge(file, measured, Collections.<String, Outcome>emptyMap(), null);
+	}
+
+	/**
+	 * Same as {@link #merge(Path, Map)} but also replaces the last outcome of every test that ran.
+	 * Tests that did not run keep their previous outcome.
+	 *
+	 * @param outcomes -> Outcomes keyed by test id.
+	 * @param build -> Id of the build the tests ran on, see {@link BuildIdentity}, NULL in case it
+	 * is not known.
+	 */
+	public static void merge(Path file, Map<String, Long> measured, Map<String, Outcome> outcomes, String build) throws IOException
+	{
+		Path absolute = file.toAbsolutePath();
+		Files.createDirectories(absolute.getParent());
+
+		Path lockFile = absolute.resolveSibling(absolute.getFileName() + LOCK_SUFFIX);
+
+		FileHelper.withFileLock(lockFile, () -> {
+			Map<String, Record> records = load(absolute).records;
+			long finishedAt = System.currentTimeMillis();
+
+			Set<String> ran = new TreeSet<String>(measured.keySet());
+			ran.addAll(outcomes.keySet());
+
+			for (String id : ran)
+			{
+				Record previous = records.get(id);
+				Outcome outcome = outcomes.get(id);
+				long average = average(previous == null ? UNKNOWN_DURATION : previous.duration, measured.getOrDefault(id, UNKNOWN_DURATION));
+
+				if (outcome == null)
+				{
+					records.put(id, previous == null ? new Record(average, null, null, 0)
+							: new Record(average, previous.outcome, previous.build, previous.finishedAt));
+				}
+				else
+				{
+					records.put(id, new Record(average, outcome, build, finishedAt));
+				}
+			}
+
+			Properties properties = new Properties();
+			records.forEach((id, record) -> properties.setProperty(id, record.format()));
+
+			FileHelper.writeAtomically(absolute, temporary -> {
+				try (OutputStream out = Files.newOutputStream(temporary))
+				{
+					properties.store(out, "Test durations in milliseconds, last outcome, build and finish time");
+				}
+			});
+
+			return null;
+		});
+	}
+
+	private static long average(long previous, long latest)
+	{
+		if (previous < 0 || latest < 0)
+		{
+			return Math.max(previous, latest);
+		}
+
+		return (previous + latest) / 2;
+	}
+
+	/**
+	 * @return Returns the id used for a test method, 'package.Class#method'.
+	 */
+	public static String id(String className, String methodName)
+	{
+		return className + "#" + methodName;
+	}
+
+	public static String id(ITestNGMethod method)
+	{
+		return id(method.getRealClass().getName(), method.getMethodName());
+	}
+
+	/**
+	 * @return Returns the duration in milliseconds or NULL in case the test is unknown.
+	 */
+	public Long get(String id)
+	{
+		Record record = records.get(id);
+
+		return record == null || record.duration < 0 ? null : record.duration;
+	}
+
+	/**
+	 * @return Returns the outcome of the last run of the test or NULL in case it is unknown.
+	 */
+	public Outcome getOutcome(String id)
+	{
+		Record record = records.get(id);
+
+		return record == null ? null : record.outcome;
+	}
+
+	/**
+	 * @return Returns the ids of the tests that failed or were skipped the last time they ran.
+	 */
+	public Set<String> getFailedIds()
+	{
+		Set<String> failed = new TreeSet<String>();
+
+		records.forEach((id, record) -> {
+			if (record.outcome == Outcome.FAILED || record.outcome == Outcome.SKIPPED)
+			{
+				failed.add(id);
+			}
+		});
+
+		return failed;
+	}
+
+	/**
+	 * Method checks if a test passed the last time it ran, on the given build and not before
+	 * the given time.
+	 *
+	 * @param build -> Id of the build, see {@link BuildIdentity}.
+	 * @param notBefore -> Epoch milliseconds.
+	 */
+	public boolean passedOn(String id, String build, long notBefore)
+	{
+		Record record = records.get(id);
+
+		return record != null && record.outcome == Outcome.PASSED && build.equals(record.build) && record.finishedAt >= notBefore;
+	}
+
+	public boolean isEmpty()
+	{
+		return records.isEmpty();
+	}
+}
\ No newline at end of file
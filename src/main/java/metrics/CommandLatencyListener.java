@@ -0,0 +1,69 @@
+package metrics;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.events.EventFiringDecorator;
+import org.openqa.selenium.support.events.WebDriverListener;
+
+/**
+ * {@link WebDriverListener} that times every command of a {@link WebDriver} decorated with an
+ * {@link EventFiringDecorator} and records it in the {@link CommandMetrics}. Failed commands
+ * (e.g. a findElement that runs into the implicit wait) are recorded as well.
+ *
+ * @implNote
+ * Start times are kept on a small per thread stack that is allocated once per thread, so
+ * recording does not allocate. The decorator itself still does some reflection per call.
+ *
+ * @author karlomijaljevic
+ */
+public class CommandLatencyListener implements WebDriverListener
+{
+	private static final int MAX_NESTING = 16;
+
+	private final CommandMetrics metrics = CommandMetrics.getInstance();
+	private final ThreadLocal<long[]> startTimes = ThreadLocal.withInitial(() -> new long[MAX_NESTING + 1]);
+
+	@Override
+	public void beforeAnyCall(Object target, Method method, Object[] args)
+	{
+		long[] stack = startTimes.get();
+		int depth = (int) stack[0]++;
+
+		if (depth < MAX_NESTING)
+		{
+			stack[depth + 1] = System.nanoTime();
+		}
+	}
+
+	@Override
+	public void afterAnyCall(Object target, Method method, Object[] args, Object result)
+	{
+		finish(method);
+	}
+
+	@Override
+	public void onError(Object target, Method method, Object[] args, InvocationTargetException e)
+	{
+		finish(method);
+	}
+
+	private void finish(Method method)
+	{
+		long end = System.nanoTime();
+		long[] stack = startTimes.get();
+
+		if (stack[0] == 0)
+		{
+			return;
+		}
+
+		int depth = (int) --stack[0];
+
+		if (depth < MAX_NESTING)
+		{
+			metrics.record(method, end - stack[depth + 1]);
+		}
+	}
+}
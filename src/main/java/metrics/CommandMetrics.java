@@ -0,0 +1,136 @@
+package metrics;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Singleton;
+
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Singleton registry of {@link WebDriver} command latencies. Every command is recorded into a
+ * {@link LatencyHistogram} keyed by the test that issued it and the command type, e.g.
+ * 'WebDriver.get' or 'WebElement.click'. The time it takes to start a browser session is kept
+ * in its own histogram since it dwarfs everything else.
+ *
+ * The test a thread is currently running is set by the {@link CommandMetricsListener}.
+ * Commands issued outside of a test method (e.g. while the pool resets a session) are
+ * recorded under {@link #UNATTRIBUTED}.
+ *
+ * @author karlomijaljevic
+ */
+@Singleton
+public class CommandMetrics
+{
+	public static final String UNATTRIBUTED = "unattributed";
+
+	private static CommandMetrics instance;
+
+	private final LatencyHistogram sessionCreation = new LatencyHistogram();
+	private final Map<String, Map<String, LatencyHistogram>> byTest = new ConcurrentHashMap<String, Map<String, LatencyHistogram>>();
+	private final Map<Method, String> commandNames = new ConcurrentHashMap<Method, String>();
+	private final ThreadLocal<Map<String, LatencyHistogram>> currentTest = ThreadLocal.withInitial(() -> histogramsOf(UNATTRIBUTED));
+
+	private CommandMetrics()
+	{
+	}
+
+	public static synchronized CommandMetrics getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new CommandMetrics();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Method attributes the commands of the calling thread to a test from now on.
+	 *
+	 * @param testId -> Id of the test, NULL attributes commands to {@link #UNATTRIBUTED}.
+	 */
+	public void setCurrentTest(String testId)
+	{
+		currentTest.set(histogramsOf(testId == null ? UNATTRIBUTED : testId));
+	}
+
+	public void recordSessionCreation(long nanos)
+	{
+		sessionCreation.record(nanos);
+	}
+
+	/**
+	 * Method records a command of the calling thread's current test. Only the first command
+	 * of a type in a test allocates, later ones are two map lookups and the histogram update.
+	 *
+	 * @param command -> The interface {@link Method} that was invoked.
+	 * @param nanos -> The latency in nanoseconds.
+	 */
+	void record(Method command, long nanos)
+	{
+		String commandName = commandNames.get(command);
+
+		if (commandName == null)
+		{
+			commandName = command.getDeclaringClass().getSimpleName() + "." + command.getName();
+			commandNames.put(command, commandName);
+		}
+
+		Map<String, LatencyHistogram> histograms = currentTest.get();
+		LatencyHistogram histogram = histograms.get(commandName);
+
+		if (histogram == null)
+		{
+			histograms.putIfAbsent(commandName, new LatencyHistogram());
+			histogram = histograms.get(commandName);
+		}
+
+		histogram.record(nanos);
+	}
+
+	/**
+	 * Method summarizes everything recorded so far: session creation, every command type over
+	 * all tests and every command type per test.
+	 *
+	 * @return Returns a {@link Map} ready to be serialized to JSON.
+	 */
+	public Map<String, Object> summarize()
+	{
+		Map<String, LatencyHistogram> totals = new TreeMap<String, LatencyHistogram>();
+		Map<String, Map<String, LatencyHistogram.Summary>> tests = new TreeMap<String, Map<String, LatencyHistogram.Summary>>();
+
+		byTest.forEach((testId, histograms) -> {
+			if (histograms.isEmpty())
+			{
+				return;
+			}
+
+			Map<String, LatencyHistogram.Summary> commands = new TreeMap<String, LatencyHistogram.Summary>();
+
+			histograms.forEach((commandName, histogram) -> {
+				commands.put(commandName, histogram.summarize());
+				totals.computeIfAbsent(commandName, key -> new LatencyHistogram()).add(histogram);
+			});
+
+			tests.put(testId, commands);
+		});
+
+		Map<String, LatencyHistogram.Summary> commands = new TreeMap<String, LatencyHistogram.Summary>();
+		totals.forEach((commandName, histogram) -> commands.put(commandName, histogram.summarize()));
+
+		Map<String, Object> summary = new TreeMap<String, Object>();
+		summary.put("sessionCreation", sessionCreation.summarize());
+		summary.put("commands", commands);
+		summary.put("tests", tests);
+
+		return summary;
+	}
+
+	private Map<String, LatencyHistogram> histogramsOf(String testId)
+	{
+		return byTest.computeIfAbsent(testId, key -> new ConcurrentHashMap<String, LatencyHistogram>());
+	}
+}
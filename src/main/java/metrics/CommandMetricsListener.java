@@ -0,0 +1,78 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.testng.IExecutionListener;
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
+import org.testng.ITestResult;
+
+import com.aventstack.extentreports.ExtentTest;
+import com.aventstack.extentreports.markuputils.CodeLanguage;
+import com.aventstack.extentreports.markuputils.MarkupHelper;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import report.ExtentReportManager;
+
+/**
+ * TestNG listener that attributes {@link CommandMetrics} to the test (or configuration)
+ * method running on each thread and exports them once the run is finished. The export is
+ * written as {@link #EXPORT_FILE} next to the ExtentReports report and attached to it.
+ *
+ * @author karlomijaljevic
+ */
+public class CommandMetricsListener implements IInvokedMethodListener, IExecutionListener
+{
+	public static final String EXPORT_FILE = "command-latency.json";
+
+	private final CommandMetrics metrics = CommandMetrics.getInstance();
+
+	@Override
+	public void beforeInvocation(IInvokedMethod method, ITestResult testResult)
+	{
+		metrics.setCurrentTest(method.getTestMethod().getRealClass().getName() + "#" + method.getTestMethod().getMethodName());
+	}
+
+	@Override
+	public void afterInvocation(IInvokedMethod method, ITestResult testResult)
+	{
+		metrics.setCurrentTest(null);
+	}
+
+	@Override
+	public void onExecutionFinish()
+	{
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		String json = gson.toJson(metrics.summarize());
+
+		ExtentReportManager reportManager = ExtentReportManager.getInstance();
+		Path exportFile = reportManager.getReportDirectory().resolve(EXPORT_FILE);
+
+		try
+		{
+			Files.createDirectories(exportFile.getParent());
+
+			try (Writer writer = Files.newBufferedWriter(exportFile, StandardCharsets.UTF_8))
+			{
+				writer.write(json);
+			}
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+		}
+
+		reportManager.submit(reports -> {
+			ExtentTest test = reports.createTest("WebDriver command latency");
+			test.info("Latencies in milliseconds, also written to " + EXPORT_FILE);
+			test.info(MarkupHelper.createCodeBlock(json, CodeLanguage.JSON));
+		});
+
+		reportManager.flush();
+	}
+}
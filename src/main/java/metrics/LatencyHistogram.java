@@ -0,0 +1,222 @@
+package metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets. Values below 16 nanoseconds get a
+ * bucket each, above that every power of two is split into 8 buckets, so a recorded value is
+ * off by at most 12.5%. All buckets are allocated up front which makes {@link #record(long)}
+ * a handful of atomic increments without any allocation.
+ *
+ * @author karlomijaljevic
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_BUCKETS = SUB_BUCKETS * 2;
+	private static final int BUCKET_COUNT = LINEAR_BUCKETS + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Method records a single latency.
+	 *
+	 * @param nanos -> The latency in nanoseconds, negative values count as 0.
+	 */
+	public void record(long nanos)
+	{
+		long value = Math.max(0, nanos);
+
+		counts.incrementAndGet(bucketOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+
+		long currentMax;
+		while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value))
+		{
+			// Another thread raised the max in between, try again.
+		}
+	}
+
+	/**
+	 * Method adds every value recorded by another histogram to this one.
+	 */
+	public void add(LatencyHistogram other)
+	{
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			long bucketCount = other.counts.get(i);
+
+			if (bucketCount > 0)
+			{
+				counts.addAndGet(i, bucketCount);
+			}
+		}
+
+		count.addAndGet(other.count.get());
+		sum.addAndGet(other.sum.get());
+
+		long otherMax = other.max.get();
+		long currentMax;
+		while (otherMax > (currentMax = max.get()) && !max.compareAndSet(currentMax, otherMax))
+		{
+			// Another thread raised the max in between, try again.
+		}
+	}
+
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	public long getMaxNanos()
+	{
+		return max.get();
+	}
+
+	public double getMeanNanos()
+	{
+		long total = count.get();
+
+		return total == 0 ? 0 : (double) sum.get() / total;
+	}
+
+	/**
+	 * Method estimates a percentile from the buckets. Since recording may go on concurrently
+	 * the result is only as exact as the moment it was read.
+	 *
+	 * @param percentile -> Percentile between 0 and 100.
+	 * @return Returns the upper bound of the bucket the percentile falls into in nanoseconds.
+	 */
+	public long getPercentileNanos(double percentile)
+	{
+		long[] snapshot = new long[BUCKET_COUNT];
+		long total = 0;
+
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+
+		if (total == 0)
+		{
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+		long seen = 0;
+
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			seen += snapshot[i];
+
+			if (seen >= rank)
+			{
+				return Math.min(upperBoundOf(i), max.get());
+			}
+		}
+
+		return max.get();
+	}
+
+	/**
+	 * @return Returns a summary in milliseconds, count, mean, p50, p90, p99 and max.
+	 */
+	public Summary summarize()
+	{
+		return new Summary(this);
+	}
+
+	static int bucketOf(long value)
+	{
+		if (value < LINEAR_BUCKETS)
+		{
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+
+		return LINEAR_BUCKETS + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBoundOf(int bucket)
+	{
+		if (bucket < LINEAR_BUCKETS)
+		{
+			return bucket;
+		}
+
+		int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+		long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+		int shift = exponent - SUB_BUCKET_BITS;
+
+		return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * Point in time summary of a {@link LatencyHistogram}, the field names are used as is in the
+	 * JSON export.
+	 */
+	public static class Summary
+	{
+		private final long count;
+		private final double meanMillis;
+		private final double p50Millis;
+		private final double p90Millis;
+		private final double p99Millis;
+		private final double maxMillis;
+
+		private Summary(LatencyHistogram histogram)
+		{
+			count = histogram.getCount();
+			meanMillis = toMillis(Math.round(histogram.getMeanNanos()));
+			p50Millis = toMillis(histogram.getPercentileNanos(50));
+			p90Millis = toMillis(histogram.getPercentileNanos(90));
+			p99Millis = toMillis(histogram.getPercentileNanos(99));
+			maxMillis = toMillis(histogram.getMaxNanos());
+		}
+
+		private static double toMillis(long nanos)
+		{
+			return Math.round((double) nanos / TimeUnit.MILLISECONDS.toNanos(1) * 1000) / 1000.0;
+		}
+
+		public long getCount()
+		{
+			return count;
+		}
+
+		public double getMeanMillis()
+		{
+			return meanMillis;
+		}
+
+		public double getP50Millis()
+		{
+			return p50Millis;
+		}
+
+		public double getP90Millis()
+		{
+			return p90Millis;
+		}
+
+		public double getP99Millis()
+		{
+			return p99Millis;
+		}
+
+		public double getMaxMillis()
+		{
+			return maxMillis;
+		}
+	}
+}
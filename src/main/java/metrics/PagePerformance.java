@@ -0,0 +1,357 @@
+package metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.inject.Singleton;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chromium.HasCdp;
+
+/**
+ * Singleton that captures the {@link PageTimings} of the page a browser shows, checks them
+ * against the matching {@link PerformanceBudget}s and keeps them for the percentile summary
+ * of the report. One capture is a single script (Navigation Timing, Resource Timing, paint,
+ * largest contentful paint and layout shift entries) plus the DevTools 'Performance.getMetrics'
+ * command, so it can follow every navigation without slowing a suite down:
+ *
+ * <pre>
+ * webDriver.get(url);
+ * PagePerformance.getInstance().assertWithinBudget(webDriver);
+ *
+ * checkoutButton.click();
+ * PagePerformance.getInstance().capture(webDriver, "checkout: submit");
+ * </pre>
+ *
+ * With '--page-performance' every page loaded through {@link WebDriver#get(String)} is captured
+ * automatically, see {@link PageTimingListener}. Budget violations of those captures fail the
+ * test that caused them, see {@link PagePerformanceListener}, so explicit captures are then only
+ * needed after actions (a second capture of the same load counts twice in the percentiles).
+ *
+ * @implNote
+ * Navigation timings always describe the last full navigation, after an action on a single
+ * page application only the resource, layout shift and DevTools figures change.
+ *
+ * @author karlomijaljevic
+ */
+@Singleton
+public class PagePerformance
+{
+	private static final String CAPTURE_SCRIPT =
+			"var navigation = performance.getEntriesByType('navigation')[0];"
+			+ "var resources = performance.getEntriesByType('resource');"
+			+ "function buffered(type) {"
+			+ "  try {"
+			+ "    var observer = new PerformanceObserver(function() {});"
+			+ "    observer.observe({ type: type, buffered: true });"
+			+ "    var entries = observer.takeRecords();"
+			+ "    observer.disconnect();"
+			+ "    return entries;"
+			+ "  } catch (e) { return []; }"
+			+ "}"
+			+ "function positive(value) { return value > 0 ? value : -1; }"
+			+ "var timings = { url: location.href };"
+			+ "timings.ttfbMillis = navigation ? positive(navigation.responseStart) : -1;"
+			+ "timings.domContentLoadedMillis = navigation ? positive(navigation.domContentLoadedEventEnd) : -1;"
+			+ "timings.loadMillis = navigation ? positive(navigation.loadEventEnd) : -1;"
+			+ "var paint = performance.getEntriesByName('first-contentful-paint')[0];"
+			+ "timings.firstContentfulPaintMillis = paint ? paint.startTime : -1;"
+			+ "var largest = buffered('largest-contentful-paint');"
+			+ "timings.largestContentfulPaintMillis = largest.length ? largest[largest.length - 1].startTime : -1;"
+			+ "timings.cumulativeLayoutShift = buffered('layout-shift').reduce(function(sum, shift) {"
+			+ "  return shift.hadRecentInput ? sum : sum + shift.value;"
+			+ "}, 0);"
+			+ "timings.transferBytes = resources.reduce(function(sum, resource) {"
+			+ "  return sum + (resource.transferSize || 0);"
+			+ "}, navigation ? navigation.transferSize || 0 : 0);"
+			+ "timings.resourceCount = resources.length;"
+			+ "timings.jsHeapUsedBytes = performance.memory ? performance.memory.usedJSHeapSize : -1;"
+			+ "return timings;";
+
+	private static final Map<String, String> DEVTOOLS_METRICS = new LinkedHashMap<String, String>();
+
+	static
+	{
+		DEVTOOLS_METRICS.put("JSHeapUsedSize", PageTimings.JS_HEAP_USED_BYTES);
+		DEVTOOLS_METRICS.put("LayoutCount", PageTimings.LAYOUT_COUNT);
+		DEVTOOLS_METRICS.put("ScriptDuration", PageTimings.SCRIPT_DURATION);
+		DEVTOOLS_METRICS.put("TaskDuration", PageTimings.TASK_DURATION);
+	}
+
+	private static PagePerformance instance;
+
+	private final List<PerformanceBudget> budgets = new CopyOnWriteArrayList<PerformanceBudget>();
+	private final Map<String, Map<String, List<Double>>> samples = new ConcurrentHashMap<String, Map<String, List<Double>>>();
+	private final List<String> violations = Collections.synchronizedList(new ArrayList<String>());
+	private final ThreadLocal<List<String>> pendingViolations = ThreadLocal.withInitial(ArrayList::new);
+
+	private PagePerformance()
+	{
+	}
+
+	public static synchronized PagePerformance getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new PagePerformance();
+		}
+
+		return instance;
+	}
+
+	public void addBudget(PerformanceBudget budget)
+	{
+		budgets.add(budget);
+	}
+
+	public void addBudgets(List<PerformanceBudget> budgets)
+	{
+		this.budgets.addAll(budgets);
+	}
+
+	/**
+	 * Method captures the page the browser shows, aggregated under its URL without query and
+	 * fragment.
+	 *
+	 * @return Returns the {@link PageTimings} or NULL in case the browser could not be asked.
+	 */
+	public PageTimings capture(WebDriver webDriver)
+	{
+		return capture(webDriver, null);
+	}
+
+	/**
+	 * Same as {@link #capture(WebDriver)} but aggregated under a label, e.g. for the state
+	 * after an action.
+	 *
+	 * @param label -> Key the timings are aggregated and budgeted under, NULL for the URL.
+	 * @return Returns the {@link PageTimings} or NULL in case the browser could not be asked.
+	 */
+	public PageTimings capture(WebDriver webDriver, String label)
+	{
+		PageTimings timings = measure(webDriver, label);
+
+		if (timings != null)
+		{
+			pendingViolations.get().addAll(record(timings));
+		}
+
+		return timings;
+	}
+
+	/**
+	 * Method captures the page and fails in case it exceeds one of its budgets.
+	 *
+	 * @throws AssertionError -> In case a budget is exceeded.
+	 */
+	public PageTimings assertWithinBudget(WebDriver webDriver)
+	{
+		return assertWithinBudget(webDriver, null);
+	}
+
+	/**
+	 * @see #assertWithinBudget(WebDriver)
+	 * @see #capture(WebDriver, String)
+	 */
+	public PageTimings assertWithinBudget(WebDriver webDriver, String label)
+	{
+		PageTimings timings = measure(webDriver, label);
+
+		if (timings != null)
+		{
+			// Reported right here, so not queued for the listener to fail the test again.
+			List<String> exceeded = record(timings);
+
+			if (!exceeded.isEmpty())
+			{
+				throw new AssertionError(String.join("\n", exceeded));
+			}
+		}
+
+		return timings;
+	}
+
+	/**
+	 * @return Returns the budget violations of the calling thread since the last call and
+	 * forgets them.
+	 */
+	public List<String> takeViolations()
+	{
+		List<String> pending = pendingViolations.get();
+		List<String> taken = new ArrayList<String>(pending);
+		pending.clear();
+
+		return taken;
+	}
+
+	/**
+	 * @return Returns every budget violation of the run.
+	 */
+	public List<String> getViolations()
+	{
+		synchronized (violations)
+		{
+			return new ArrayList<String>(violations);
+		}
+	}
+
+	/**
+	 * @return Returns a copy of the values captured in this run by page and metric.
+	 */
+	public Map<String, Map<String, List<Double>>> getSamples()
+	{
+		Map<String, Map<String, List<Double>>> copy = new TreeMap<String, Map<String, List<Double>>>();
+
+		samples.forEach((page, metrics) -> {
+			Map<String, List<Double>> metricsCopy = new TreeMap<String, List<Double>>();
+
+			metrics.forEach((metric, values) -> {
+				synchronized (values)
+				{
+					metricsCopy.put(metric, new ArrayList<Double>(values));
+				}
+			});
+
+			copy.put(page, metricsCopy);
+		});
+
+		return copy;
+	}
+
+	/**
+	 * Method adds the timings to the samples and checks them against the budgets.
+	 *
+	 * @return Returns the violations of these timings, already added to the run's violations.
+	 */
+	private List<String> record(PageTimings timings)
+	{
+		Map<String, List<Double>> pageSamples = samples.computeIfAbsent(timings.getPage(),
+				key -> new ConcurrentHashMap<String, List<Double>>());
+		timings.getValues().forEach((metric, value) -> pageSamples
+				.computeIfAbsent(metric, key -> Collections.synchronizedList(new ArrayList<Double>())).add(value));
+
+		List<String> exceeded = checkBudgets(timings);
+		violations.addAll(exceeded);
+
+		return exceeded;
+	}
+
+	private List<String> checkBudgets(PageTimings timings)
+	{
+		List<String> exceeded = new ArrayList<String>();
+
+		for (PerformanceBudget budget : budgets)
+		{
+			if (budget.appliesTo(timings))
+			{
+				exceeded.addAll(budget.check(timings));
+			}
+		}
+
+		return exceeded;
+	}
+
+	private PageTimings measure(WebDriver webDriver, String label)
+	{
+		if (!(webDriver instanceof JavascriptExecutor))
+		{
+			return null;
+		}
+
+		Map<String, Double> values = new HashMap<String, Double>();
+		String url;
+
+		try
+		{
+			Object result = ((JavascriptExecutor) webDriver).executeScript(CAPTURE_SCRIPT);
+
+			if (!(result instanceof Map))
+			{
+				return null;
+			}
+
+			Map<?, ?> script = (Map<?, ?>) result;
+			url = String.valueOf(script.get("url"));
+
+			for (String metric : PageTimings.METRICS)
+			{
+				Object value = script.get(metric);
+
+				if (value instanceof Number)
+				{
+					values.put(metric, ((Number) value).doubleValue());
+				}
+			}
+
+			if (webDriver instanceof HasCdp)
+			{
+				addDevToolsMetrics((HasCdp) webDriver, values);
+			}
+		}
+		catch (WebDriverException wde)
+		{
+			wde.printStackTrace();
+			return null;
+		}
+
+		return new PageTimings(label != null ? label : pageOf(url), url, values);
+	}
+
+	/**
+	 * Method adds the DevTools performance metrics, the JS heap from there is exact where
+	 * 'performance.memory' is rounded.
+	 */
+	private void addDevToolsMetrics(HasCdp devTools, Map<String, Double> values)
+	{
+		devTools.executeCdpCommand("Performance.enable", new HashMap<String, Object>());
+		Object metrics = devTools.executeCdpCommand("Performance.getMetrics", new HashMap<String, Object>()).get("metrics");
+
+		if (!(metrics instanceof List))
+		{
+			return;
+		}
+
+		for (Object metric : (List<?>) metrics)
+		{
+			Map<?, ?> entry = (Map<?, ?>) metric;
+			String name = DEVTOOLS_METRICS.get(String.valueOf(entry.get("name")));
+
+			if (name != null && entry.get("value") instanceof Number)
+			{
+				double value = ((Number) entry.get("value")).doubleValue();
+
+				// DevTools reports durations in seconds.
+				values.put(name, name.endsWith("Millis") ? value * 1000 : value);
+			}
+		}
+	}
+
+	/**
+	 * @return Returns the URL without query and fragment.
+	 */
+	static String pageOf(String url)
+	{
+		int end = url.length();
+
+		for (char separator : new char[] { '?', '#' })
+		{
+			int index = url.indexOf(separator);
+
+			if (index >= 0 && index < end)
+			{
+				end = index;
+			}
+		}
+
+		return url.substring(0, end);
+	}
+}
@@ -0,0 +1,131 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import helper.FileHelper;
+
+/**
+ * The {@link PageTimings} of previous runs, so the report can show percentiles over many runs
+ * and not only the handful of captures of one. Stored as a JSON file of values by page and
+ * metric, only the latest {@link #MAX_SAMPLES} values of every metric are kept. Like the
+ * {@link main.TestDurations} file it is merged under a file lock and written with an atomic
+ * rename, so shards on the same machine can share it.
+ *
+ * @author karlomijaljevic
+ */
+public class PagePerformanceHistory
+{
+	public static final String DEFAULT_FILE = "page-performance-history.json";
+	public static final int MAX_SAMPLES = 500;
+
+	private static final String LOCK_SUFFIX = ".lock";
+	private static final Type HISTORY_TYPE = new TypeToken<TreeMap<String, TreeMap<String, List<Double>>>>()
+	{
+	}.getType();
+
+	private PagePerformanceHistory()
+	{
+	}
+
+	/**
+	 * Method reads the history file. A missing or unreadable file results in no history.
+	 *
+	 * @return Returns the values by page and metric, oldest first.
+	 */
+	public static Map<String, Map<String, List<Double>>> load(Path file)
+	{
+		if (!Files.isRegularFile(file))
+		{
+			return new TreeMap<String, Map<String, List<Double>>>();
+		}
+
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+		{
+			Map<String, Map<String, List<Double>>> history = new Gson().fromJson(reader, HISTORY_TYPE);
+
+			return history == null ? new TreeMap<String, Map<String, List<Double>>>() : history;
+		}
+		catch (IOException | JsonParseException e)
+		{
+			e.printStackTrace();
+			return new TreeMap<String, Map<String, List<Double>>>();
+		}
+	}
+
+	/**
+	 * Method appends the values of a run to the history file.
+	 *
+	 * @param file -> {@link Path} of the history file.
+	 * @param samples -> Values of the run by page and metric, see {@link PagePerformance#getSamples()}.
+	 * @return Returns the merged history.
+	 * @throws IOException -> In case the file could not be written.
+	 */
+	public static Map<String, Map<String, List<Double>>> merge(Path file, Map<String, Map<String, List<Double>>> samples)
+			throws IOException
+	{
+		Path absolute = file.toAbsolutePath();
+		Files.createDirectories(absolute.getParent());
+
+		Path lockFile = absolute.resolveSibling(absolute.getFileName() + LOCK_SUFFIX);
+
+		return FileHelper.withFileLock(lockFile, () -> {
+			Map<String, Map<String, List<Double>>> history = load(absolute);
+
+			samples.forEach((page, metrics) -> metrics.forEach((metric, values) -> {
+				List<Double> kept = history.computeIfAbsent(page, key -> new TreeMap<String, List<Double>>())
+						.computeIfAbsent(metric, key -> new ArrayList<Double>());
+				kept.addAll(values);
+
+				if (kept.size() > MAX_SAMPLES)
+				{
+					kept.subList(0, kept.size() - MAX_SAMPLES).clear();
+				}
+			}));
+
+			FileHelper.writeAtomically(absolute, temporary -> {
+				try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8))
+				{
+					new Gson().toJson(history, writer);
+				}
+			});
+
+			return history;
+		});
+	}
+
+	/**
+	 * Method computes the nearest rank percentile of a list of values.
+	 *
+	 * @param percentile -> Percentile between 0 and 100.
+	 * @return Returns the percentile or -1 in case there are no values.
+	 */
+	public static double percentile(List<Double> values, double percentile)
+	{
+		if (values.isEmpty())
+		{
+			return -1;
+		}
+
+		List<Double> sorted = new ArrayList<Double>(values);
+		Collections.sort(sorted);
+
+		int rank = (int) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * sorted.size());
+
+		return sorted.get(Math.max(0, rank - 1));
+	}
+}
@@ -0,0 +1,199 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.testng.IExecutionListener;
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
+import org.testng.ITestResult;
+
+import com.aventstack.extentreports.ExtentTest;
+import com.aventstack.extentreports.markuputils.MarkupHelper;
+import com.google.gson.GsonBuilder;
+
+import report.ExtentReportManager;
+
+/**
+ * TestNG listener that turns {@link PagePerformance} into a regression gate: a test whose page
+ * captures exceeded a {@link PerformanceBudget} fails, even if the captures happened
+ * automatically. Once the run is finished the captures are added to the
+ * {@link PagePerformanceHistory} and the percentiles of this run and of all kept runs are
+ * written as {@link #EXPORT_FILE} next to the ExtentReports report and shown in it.
+ *
+ * @author karlomijaljevic
+ */
+public class PagePerformanceListener implements IInvokedMethodListener, IExecutionListener
+{
+	public static final String EXPORT_FILE = "page-performance.json";
+
+	private static final double[] PERCENTILES = { 50, 90, 99 };
+
+	private final PagePerformance pagePerformance = PagePerformance.getInstance();
+	private final Path historyFile;
+
+	/**
+	 * @param historyFile -> {@link Path} of the {@link PagePerformanceHistory} file.
+	 */
+	public PagePerformanceListener(Path historyFile)
+	{
+		this.historyFile = historyFile;
+	}
+
+	@Override
+	public void beforeInvocation(IInvokedMethod method, ITestResult testResult)
+	{
+		// Violations of a configuration method or an earlier test are not this test's fault.
+		pagePerformance.takeViolations();
+	}
+
+	@Override
+	public void afterInvocation(IInvokedMethod method, ITestResult testResult)
+	{
+		List<String> violations = pagePerformance.takeViolations();
+
+		if (method.isTestMethod() && testResult.getStatus() == ITestResult.SUCCESS && !violations.isEmpty())
+		{
+			testResult.setStatus(ITestResult.FAILURE);
+			testResult.setThrowable(new AssertionError("Performance budget exceeded:\n" + String.join("\n", violations)));
+		}
+	}
+
+	@Override
+	public void onExecutionFinish()
+	{
+		Map<String, Map<String, List<Double>>> samples = pagePerformance.getSamples();
+
+		if (samples.isEmpty())
+		{
+			return;
+		}
+
+		Map<String, Map<String, List<Double>>> history;
+
+		try
+		{
+			history = PagePerformanceHistory.merge(historyFile, samples);
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+			history = samples;
+		}
+
+		Map<String, Object> summary = new LinkedHashMap<String, Object>();
+		summary.put("pages", summarize(samples, history));
+		summary.put("violations", pagePerformance.getViolations());
+
+		String json = new GsonBuilder().setPrettyPrinting().create().toJson(summary);
+
+		ExtentReportManager reportManager = ExtentReportManager.getInstance();
+		Path exportFile = reportManager.getReportDirectory().resolve(EXPORT_FILE);
+
+		try
+		{
+			Files.createDirectories(exportFile.getParent());
+
+			try (Writer writer = Files.newBufferedWriter(exportFile, StandardCharsets.UTF_8))
+			{
+				writer.write(json);
+			}
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+		}
+
+		Map<String, Map<String, List<Double>>> allRuns = history;
+		List<String> violations = pagePerformance.getViolations();
+
+		reportManager.submit(reports -> {
+			ExtentTest test = reports.createTest("Page performance");
+			test.info("Percentiles of this run and of the last " + PagePerformanceHistory.MAX_SAMPLES
+					+ " captures of every page, also written to " + EXPORT_FILE);
+
+			samples.keySet().forEach(page -> test.info(MarkupHelper.createTable(table(page, samples.get(page), allRuns.get(page)))));
+
+			if (!violations.isEmpty())
+			{
+				test.fail(MarkupHelper.createOrderedList(violations));
+			}
+		});
+
+		reportManager.flush();
+	}
+
+	private static Map<String, Object> summarize(Map<String, Map<String, List<Double>>> samples,
+			Map<String, Map<String, List<Double>>> history)
+	{
+		Map<String, Object> pages = new TreeMap<String, Object>();
+
+		samples.forEach((page, metrics) -> {
+			Map<String, Object> summaries = new TreeMap<String, Object>();
+			Map<String, List<Double>> pageHistory = history.getOrDefault(page, Collections.<String, List<Double>>emptyMap());
+
+			metrics.forEach((metric, values) -> {
+				Map<String, Object> metricSummary = new LinkedHashMap<String, Object>();
+				metricSummary.put("run", percentiles(values));
+				metricSummary.put("allRuns", percentiles(pageHistory.getOrDefault(metric, values)));
+				summaries.put(metric, metricSummary);
+			});
+
+			pages.put(page, summaries);
+		});
+
+		return pages;
+	}
+
+	private static Map<String, Object> percentiles(List<Double> values)
+	{
+		Map<String, Object> percentiles = new LinkedHashMap<String, Object>();
+		percentiles.put("count", values.size());
+
+		for (double percentile : PERCENTILES)
+		{
+			percentiles.put("p" + (int) percentile, round(PagePerformanceHistory.percentile(values, percentile)));
+		}
+
+		percentiles.put("max", round(PagePerformanceHistory.percentile(values, 100)));
+
+		return percentiles;
+	}
+
+	/**
+	 * @return Returns the report table of a page, one row per metric.
+	 */
+	private static String[][] table(String page, Map<String, List<Double>> run, Map<String, List<Double>> allRuns)
+	{
+		List<String[]> rows = new ArrayList<String[]>();
+		rows.add(new String[] { page, "run n", "run p50", "run p90", "run p99", "all n", "all p50", "all p90", "all p99" });
+
+		run.forEach((metric, values) -> {
+			List<Double> kept = allRuns == null ? values : allRuns.getOrDefault(metric, values);
+
+			rows.add(new String[] { metric, String.valueOf(values.size()), format(values, 50), format(values, 90), format(values, 99),
+					String.valueOf(kept.size()), format(kept, 50), format(kept, 90), format(kept, 99) });
+		});
+
+		return rows.toArray(new String[0][]);
+	}
+
+	private static String format(List<Double> values, double percentile)
+	{
+		return String.valueOf(round(PagePerformanceHistory.percentile(values, percentile)));
+	}
+
+	private static double round(double value)
+	{
+		return Math.round(value * 1000) / 1000.0;
+	}
+}
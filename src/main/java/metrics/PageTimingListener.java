@@ -0,0 +1,35 @@
+package metrics;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.events.EventFiringDecorator;
+import org.openqa.selenium.support.events.WebDriverListener;
+
+/**
+ * {@link WebDriverListener} that captures the {@link PageTimings} of every page loaded through
+ * {@link WebDriver#get(String)} of a driver decorated with an {@link EventFiringDecorator}, see
+ * {@link PagePerformance}. The capture goes through the undecorated driver so it does not show
+ * up in the {@link CommandMetrics}. Blank and inline pages ('about:' and 'data:' URLs) are not
+ * captured.
+ *
+ * @author karlomijaljevic
+ */
+public class PageTimingListener implements WebDriverListener
+{
+	private static final String[] IGNORED_SCHEMES = { "about:", "data:" };
+
+	private final PagePerformance pagePerformance = PagePerformance.getInstance();
+
+	@Override
+	public void afterGet(WebDriver driver, String url)
+	{
+		for (String scheme : IGNORED_SCHEMES)
+		{
+			if (url.regionMatches(true, 0, scheme, 0, scheme.length()))
+			{
+				return;
+			}
+		}
+
+		pagePerformance.capture(driver);
+	}
+}
@@ -0,0 +1,113 @@
+package metrics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Performance figures of one page as the browser saw them, captured by {@link PagePerformance}.
+ * Times are milliseconds since the navigation started, values the browser did not report
+ * (e.g. no largest contentful paint yet) are -1. The field names are used as is in the JSON
+ * export.
+ *
+ * @author karlomijaljevic
+ */
+public class PageTimings
+{
+	public static final String TTFB = "ttfbMillis";
+	public static final String DOM_CONTENT_LOADED = "domContentLoadedMillis";
+	public static final String LOAD = "loadMillis";
+	public static final String FIRST_CONTENTFUL_PAINT = "firstContentfulPaintMillis";
+	public static final String LARGEST_CONTENTFUL_PAINT = "largestContentfulPaintMillis";
+	public static final String CUMULATIVE_LAYOUT_SHIFT = "cumulativeLayoutShift";
+	public static final String TRANSFER_BYTES = "transferBytes";
+	public static final String RESOURCE_COUNT = "resourceCount";
+	public static final String JS_HEAP_USED_BYTES = "jsHeapUsedBytes";
+	public static final String LAYOUT_COUNT = "layoutCount";
+	public static final String SCRIPT_DURATION = "scriptDurationMillis";
+	public static final String TASK_DURATION = "taskDurationMillis";
+
+	public static final List<String> METRICS = Collections.unmodifiableList(Arrays.asList(TTFB, DOM_CONTENT_LOADED, LOAD,
+			FIRST_CONTENTFUL_PAINT, LARGEST_CONTENTFUL_PAINT, CUMULATIVE_LAYOUT_SHIFT, TRANSFER_BYTES, RESOURCE_COUNT,
+			JS_HEAP_USED_BYTES, LAYOUT_COUNT, SCRIPT_DURATION, TASK_DURATION));
+
+	private final String page;
+	private final String url;
+	private final Map<String, Double> values;
+
+	PageTimings(String page, String url, Map<String, Double> values)
+	{
+		this.page = page;
+		this.url = url;
+		this.values = new LinkedHashMap<String, Double>(values);
+	}
+
+	/**
+	 * @return Returns the key the timings are aggregated under, the URL without query and
+	 * fragment or the label given to {@link PagePerformance#capture(org.openqa.selenium.WebDriver, String)}.
+	 */
+	public String getPage()
+	{
+		return page;
+	}
+
+	public String getUrl()
+	{
+		return url;
+	}
+
+	/**
+	 * @param metric -> One of the constants of this class, e.g. {@link #TTFB}.
+	 * @return Returns the value or -1 in case the browser did not report it.
+	 */
+	public double get(String metric)
+	{
+		Double value = values.get(metric);
+
+		return value == null ? -1 : value;
+	}
+
+	/**
+	 * @return Returns every reported value keyed by metric.
+	 */
+	public Map<String, Double> getValues()
+	{
+		Map<String, Double> reported = new LinkedHashMap<String, Double>();
+		values.forEach((metric, value) -> {
+			if (value != null && value >= 0)
+			{
+				reported.put(metric, value);
+			}
+		});
+
+		return reported;
+	}
+
+	public double getTtfbMillis()
+	{
+		return get(TTFB);
+	}
+
+	public double getLargestContentfulPaintMillis()
+	{
+		return get(LARGEST_CONTENTFUL_PAINT);
+	}
+
+	public double getTransferBytes()
+	{
+		return get(TRANSFER_BYTES);
+	}
+
+	public double getJsHeapUsedBytes()
+	{
+		return get(JS_HEAP_USED_BYTES);
+	}
+
+	@Override
+	public String toString()
+	{
+		return page + " " + getValues();
+	}
+}
@@ -0,0 +1,216 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Upper limits for the {@link PageTimings} of the pages matching a URL pattern ('*' wildcards),
+ * checked by {@link PagePerformance} every time such a page is captured. Budgets are declared in
+ * code
+ *
+ * <pre>
+ * PagePerformance.getInstance().addBudget(PerformanceBudget.forPages("*&#47;checkout*")
+ * 		.ttfb(800)
+ * 		.largestContentfulPaint(2500)
+ * 		.transferBytes(2 * 1024 * 1024)
+ * 		.build());
+ * </pre>
+ *
+ * or in a JSON file passed with '--perf-budgets', where every key besides 'page' is a metric of
+ * {@link PageTimings}:
+ *
+ * <pre>
+ * [
+ *   { "page": "*&#47;index.html", "ttfbMillis": 800, "largestContentfulPaintMillis": 2500,
+ *     "transferBytes": 2000000, "jsHeapUsedBytes": 50000000 }
+ * ]
+ * </pre>
+ *
+ * @author karlomijaljevic
+ */
+public final class PerformanceBudget
+{
+	private static final String PAGE_KEY = "page";
+
+	private final String pagePattern;
+	private final Pattern page;
+	private final Map<String, Double> limits;
+
+	private PerformanceBudget(String pagePattern, Map<String, Double> limits)
+	{
+		this.pagePattern = pagePattern;
+		this.page = compile(pagePattern);
+		this.limits = Collections.unmodifiableMap(new LinkedHashMap<String, Double>(limits));
+	}
+
+	/**
+	 * @param pagePattern -> URL (or capture label) pattern with '*' wildcards.
+	 */
+	public static Builder forPages(String pagePattern)
+	{
+		return new Builder(pagePattern);
+	}
+
+	/**
+	 * Method reads the budgets of a JSON file.
+	 *
+	 * @throws IOException -> In case the file can not be read or is not a list of budgets.
+	 */
+	public static List<PerformanceBudget> load(Path file) throws IOException
+	{
+		List<PerformanceBudget> budgets = new ArrayList<PerformanceBudget>();
+
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+		{
+			for (JsonElement element : JsonParser.parseReader(reader).getAsJsonArray())
+			{
+				JsonObject object = element.getAsJsonObject();
+				Builder builder = forPages(object.get(PAGE_KEY).getAsString());
+
+				for (Map.Entry<String, JsonElement> entry : object.entrySet())
+				{
+					if (!PAGE_KEY.equals(entry.getKey()))
+					{
+						builder.limit(entry.getKey(), entry.getValue().getAsDouble());
+					}
+				}
+
+				budgets.add(builder.build());
+			}
+		}
+		catch (JsonParseException | IllegalArgumentException | IllegalStateException | NullPointerException | UnsupportedOperationException e)
+		{
+			throw new IOException("Invalid performance budget file " + file, e);
+		}
+
+		return budgets;
+	}
+
+	/**
+	 * @return Returns true in case the budget applies to the captured page.
+	 */
+	public boolean appliesTo(PageTimings timings)
+	{
+		return page.matcher(timings.getPage()).matches() || (timings.getUrl() != null && page.matcher(timings.getUrl()).matches());
+	}
+
+	/**
+	 * Method compares the timings against every limit. Metrics the browser did not report are
+	 * not checked.
+	 *
+	 * @return Returns a description of every exceeded limit, empty in case the page is within budget.
+	 */
+	public List<String> check(PageTimings timings)
+	{
+		List<String> violations = new ArrayList<String>();
+
+		limits.forEach((metric, limit) -> {
+			double value = timings.get(metric);
+
+			if (value > limit)
+			{
+				violations.add(timings.getPage() + ": " + metric + " " + format(value) + " exceeds the budget of " + format(limit)
+						+ " (" + pagePattern + ")");
+			}
+		});
+
+		return violations;
+	}
+
+	public String getPagePattern()
+	{
+		return pagePattern;
+	}
+
+	public Map<String, Double> getLimits()
+	{
+		return limits;
+	}
+
+	private static String format(double value)
+	{
+		return value == Math.rint(value) ? String.valueOf((long) value) : String.format("%.3f", value);
+	}
+
+	private static Pattern compile(String pagePattern)
+	{
+		List<String> parts = new ArrayList<String>();
+
+		for (String part : pagePattern.split("\\*", -1))
+		{
+			parts.add(Pattern.quote(part));
+		}
+
+		return Pattern.compile(String.join(".*", parts));
+	}
+
+	public static final class Builder
+	{
+		private final String pagePattern;
+		private final Map<String, Double> limits = new LinkedHashMap<String, Double>();
+
+		private Builder(String pagePattern)
+		{
+			this.pagePattern = pagePattern;
+		}
+
+		public Builder ttfb(double millis)
+		{
+			return limit(PageTimings.TTFB, millis);
+		}
+
+		public Builder largestContentfulPaint(double millis)
+		{
+			return limit(PageTimings.LARGEST_CONTENTFUL_PAINT, millis);
+		}
+
+		public Builder cumulativeLayoutShift(double score)
+		{
+			return limit(PageTimings.CUMULATIVE_LAYOUT_SHIFT, score);
+		}
+
+		public Builder transferBytes(long bytes)
+		{
+			return limit(PageTimings.TRANSFER_BYTES, bytes);
+		}
+
+		public Builder jsHeapBytes(long bytes)
+		{
+			return limit(PageTimings.JS_HEAP_USED_BYTES, bytes);
+		}
+
+		/**
+		 * @param metric -> One of the metric constants of {@link PageTimings}.
+		 * @throws IllegalArgumentException -> In case the metric does not exist.
+		 */
+		public Builder limit(String metric, double value)
+		{
+			if (!PageTimings.METRICS.contains(metric))
+			{
+				throw new IllegalArgumentException("Unknown metric " + metric + ", expected one of " + PageTimings.METRICS);
+			}
+
+			limits.put(metric, value);
+			return this;
+		}
+
+		public PerformanceBudget build()
+		{
+			return new PerformanceBudget(pagePattern, limits);
+		}
+	}
+}
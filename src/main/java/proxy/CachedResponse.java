@@ -0,0 +1,246 @@
+package proxy;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * A response stored in the {@link ProxyCache}: status line, headers and where the body is kept
+ * (in memory or in a file on disk), plus what is needed to decide whether it is still fresh.
+ *
+ * Freshness follows RFC 9111 for a shared cache: s-maxage, max-age and Expires, 'no-cache'
+ * means the response always has to be revalidated. In aggressive mode responses marked
+ * 'immutable' and responses from fingerprinted URLs (e.g. app.3f9a2c1b.js) stay fresh for the
+ * whole run.
+ *
+ * @author karlomijaljevic
+ */
+class CachedResponse
+{
+	private static final Pattern FINGERPRINTED_URL = Pattern.compile(".*[.\\-_][0-9a-fA-F]{8,}\\.[a-zA-Z0-9]+(\\?.*)?$");
+
+	private final int status;
+	private final String reason;
+	private final long length;
+
+	private volatile List<String[]> headers;
+	private volatile long storedAt;
+	private volatile long lifetimeMillis;
+	private volatile long initialAgeMillis;
+	private volatile boolean immutable;
+
+	volatile byte[] memoryBody;
+	volatile Path diskBody;
+
+	CachedResponse(int status, String reason, List<String[]> headers, long length, long storedAt)
+	{
+		this.status = status;
+		this.reason = reason;
+		this.length = length;
+		refresh(headers, storedAt);
+	}
+
+	/**
+	 * Method updates the headers and freshness, e.g. after a successful revalidation.
+	 */
+	void refresh(List<String[]> newHeaders, long now)
+	{
+		List<String[]> merged = new ArrayList<String[]>();
+
+		if (headers != null)
+		{
+			for (String[] header : headers)
+			{
+				if (HttpMessage.header(newHeaders, header[0]) == null)
+				{
+					merged.add(header);
+				}
+			}
+		}
+
+		merged.addAll(newHeaders);
+
+		this.headers = Collections.unmodifiableList(merged);
+		this.storedAt = now;
+		this.lifetimeMillis = freshnessLifetime(merged);
+		this.initialAgeMillis = parseSeconds(HttpMessage.header(merged, "Age")) * 1000;
+		this.immutable = cacheControl(merged).contains("immutable");
+	}
+
+	/**
+	 * @param url -> The URL the response belongs to.
+	 * @param now -> Current time in milliseconds.
+	 * @param aggressive -> True to keep immutable and fingerprinted responses fresh forever.
+	 * @return Returns true in case the response can be served without asking the origin.
+	 */
+	boolean isFresh(String url, long now, boolean aggressive)
+	{
+		if (aggressive && (immutable || FINGERPRINTED_URL.matcher(url).matches()))
+		{
+			return true;
+		}
+
+		return currentAgeMillis(now) < lifetimeMillis;
+	}
+
+	long currentAgeMillis(long now)
+	{
+		return initialAgeMillis + Math.max(0, now - storedAt);
+	}
+
+	boolean hasValidators()
+	{
+		return getETag() != null || getLastModified() != null;
+	}
+
+	String getETag()
+	{
+		return HttpMessage.header(headers, "ETag");
+	}
+
+	String getLastModified()
+	{
+		return HttpMessage.header(headers, "Last-Modified");
+	}
+
+	int getStatus()
+	{
+		return status;
+	}
+
+	String getReason()
+	{
+		return reason;
+	}
+
+	List<String[]> getHeaders()
+	{
+		return headers;
+	}
+
+	long getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * Method decides whether a response may be stored by a shared cache at all.
+	 *
+	 * @param aggressive -> True in case responses without explicit freshness or validators
+	 * may still be stored because their URL is fingerprinted.
+	 */
+	static boolean isStorable(String url, int status, List<String[]> headers, boolean aggressive)
+	{
+		if (status != 200)
+		{
+			return false;
+		}
+
+		String cacheControl = cacheControl(headers);
+
+		if (cacheControl.contains("no-store") || cacheControl.contains("private") || HttpMessage.header(headers, "Set-Cookie") != null)
+		{
+			return false;
+		}
+
+		String vary = HttpMessage.header(headers, "Vary");
+
+		if (vary != null)
+		{
+			for (String field : vary.split(","))
+			{
+				if (!field.trim().isEmpty() && !"accept-encoding".equalsIgnoreCase(field.trim()))
+				{
+					return false;
+				}
+			}
+		}
+
+		return freshnessLifetime(headers) > 0
+				|| HttpMessage.header(headers, "ETag") != null
+				|| HttpMessage.header(headers, "Last-Modified") != null
+				|| (aggressive && (cacheControl.contains("immutable") || FINGERPRINTED_URL.matcher(url).matches()));
+	}
+
+	private static long freshnessLifetime(List<String[]> headers)
+	{
+		String cacheControl = cacheControl(headers);
+
+		if (cacheControl.contains("no-cache"))
+		{
+			return 0;
+		}
+
+		long sharedMaxAge = directiveSeconds(cacheControl, "s-maxage");
+		if (sharedMaxAge >= 0)
+		{
+			return sharedMaxAge * 1000;
+		}
+
+		long maxAge = directiveSeconds(cacheControl, "max-age");
+		if (maxAge >= 0)
+		{
+			return maxAge * 1000;
+		}
+
+		long expires = HttpMessage.parseDate(HttpMessage.header(headers, "Expires"));
+		if (expires > 0)
+		{
+			long date = HttpMessage.parseDate(HttpMessage.header(headers, "Date"));
+
+			return Math.max(0, expires - (date > 0 ? date : System.currentTimeMillis()));
+		}
+
+		return 0;
+	}
+
+	private static String cacheControl(List<String[]> headers)
+	{
+		StringBuilder cacheControl = new StringBuilder();
+
+		for (String[] header : headers)
+		{
+			if ("Cache-Control".equalsIgnoreCase(header[0]))
+			{
+				cacheControl.append(header[1].toLowerCase(Locale.ROOT)).append(',');
+			}
+		}
+
+		return cacheControl.toString();
+	}
+
+	private static long directiveSeconds(String cacheControl, String directive)
+	{
+		for (String part : cacheControl.split(","))
+		{
+			String trimmed = part.trim();
+
+			if (trimmed.startsWith(directive + "="))
+			{
+				return parseSeconds(trimmed.substring(directive.length() + 1).replace("\"", ""));
+			}
+		}
+
+		return -1;
+	}
+
+	private static long parseSeconds(String value)
+	{
+		if (value == null)
+		{
+			return 0;
+		}
+
+		try
+		{
+			return Math.max(0, Long.parseLong(value.trim()));
+		}
+		catch (NumberFormatException nfe)
+		{
+			return 0;
+		}
+	}
+}
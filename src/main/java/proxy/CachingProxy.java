@@ -0,0 +1,879 @@
+package proxy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import javax.inject.Singleton;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Singleton HTTP proxy with a shared response cache, every browser session of the run goes
+ * through it so static assets (scripts, stylesheets, images, fonts) are downloaded once per
+ * run instead of once per session. Chrome is pointed at it by the {@link driver.Driver} when
+ * it is enabled in the {@link configuration.DriverConfiguration}.
+ *
+ * Only GET responses are cached and only the way a shared cache is allowed to: no-store,
+ * private, Set-Cookie, Authorization and Vary (other than Accept-Encoding) keep a response out
+ * of the cache, stale responses with an ETag or Last-Modified are revalidated. In aggressive
+ * mode responses marked 'immutable' and responses from fingerprinted URLs are never
+ * revalidated during the run, see {@link CachedResponse}. Every other request is forwarded
+ * as it is.
+ *
+ * HTTPS is intercepted with a self-signed certificate generated by the JDK keytool on start,
+ * which is why Chrome is launched with '--ignore-certificate-errors' alongside the proxy. In
+ * case keytool is not available HTTPS is tunnelled without caching.
+ *
+ * @implNote
+ * Forwarded requests keep headers like Origin, for that the
+ * 'sun.net.http.allowRestrictedHeaders' system property is set on start.
+ *
+ * @author karlomijaljevic
+ */
+@Singleton
+public class CachingProxy
+{
+	private static final String CACHE_DIRECTORY_PREFIX = "tests-proxy-cache-";
+	private static final String KEYSTORE_FILE = "proxy.p12";
+	private static final String KEYSTORE_ALIAS = "tests-caching-proxy";
+	private static final String KEYSTORE_PASSWORD = "tests-caching-proxy";
+	private static final long KEYTOOL_TIMEOUT_SECONDS = 60;
+
+	private static final int CLIENT_IDLE_TIMEOUT_MILLIS = 60000;
+	private static final int UPSTREAM_CONNECT_TIMEOUT_MILLIS = 30000;
+	private static final int UPSTREAM_READ_TIMEOUT_MILLIS = 120000;
+	private static final int BUFFER_SIZE = 16 * 1024;
+	private static final int MAX_INITIAL_COPY_BYTES = 4 * 1024 * 1024;
+
+	private static CachingProxy instance;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong revalidated = new AtomicLong();
+	private final AtomicLong uncacheable = new AtomicLong();
+	private final AtomicLong bytesFromCache = new AtomicLong();
+
+	private volatile ServerSocket serverSocket;
+	private Path directory;
+	private ProxyCache cache;
+	private SSLSocketFactory interceptionFactory;
+	private boolean aggressive;
+
+	private CachingProxy()
+	{
+	}
+
+	public static synchronized CachingProxy getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new CachingProxy();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Method starts the proxy on a free loopback port, it keeps running until stop() is
+	 * called or the JVM exits. Calling it while the proxy runs does nothing.
+	 *
+	 * @param memoryBudget -> Bytes of responses kept in memory.
+	 * @param diskBudget -> Bytes of responses kept in a temporary directory.
+	 * @param aggressive -> True to never revalidate immutable and fingerprinted responses.
+	 * @throws IOException -> In case the port or the cache directory could not be set up.
+	 */
+	public synchronized void start(long memoryBudget, long diskBudget, boolean aggressive) throws IOException
+	{
+		if (isRunning())
+		{
+			return;
+		}
+
+		System.setProperty("sun.net.http.allowRestrictedHeaders", "true");
+
+		directory = Files.createTempDirectory(CACHE_DIRECTORY_PREFIX);
+		cache = new ProxyCache(memoryBudget, diskBudget, Files.createDirectory(directory.resolve("bodies")));
+		interceptionFactory = createInterceptionFactory(directory.resolve(KEYSTORE_FILE));
+		this.aggressive = aggressive;
+
+		serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+
+		Thread acceptor = new Thread(this::accept, "caching-proxy");
+		acceptor.setDaemon(true);
+		acceptor.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "caching-proxy-shutdown"));
+	}
+
+	/**
+	 * Method stops the proxy and deletes the cache.
+	 */
+	public synchronized void stop()
+	{
+		if (serverSocket == null)
+		{
+			return;
+		}
+
+		try
+		{
+			serverSocket.close();
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+		}
+
+		serverSocket = null;
+		cache.clear();
+
+		try (Stream<Path> paths = Files.walk(directory))
+		{
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+		}
+	}
+
+	public boolean isRunning()
+	{
+		return serverSocket != null;
+	}
+
+	/**
+	 * @return Returns the value for Chrome's '--proxy-server' switch.
+	 */
+	public String getProxyServer()
+	{
+		return "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return Returns true in case HTTPS responses are cached as well.
+	 */
+	public boolean isInterceptingHttps()
+	{
+		return interceptionFactory != null;
+	}
+
+	/**
+	 * @return Returns the hit/miss counters and the cache size.
+	 */
+	public Map<String, Long> getStatistics()
+	{
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		statistics.put("hits", hits.get());
+		statistics.put("revalidated", revalidated.get());
+		statistics.put("misses", misses.get());
+		statistics.put("uncacheable", uncacheable.get());
+		statistics.put("bytesFromCache", bytesFromCache.get());
+
+		ProxyCache current = cache;
+		if (current != null)
+		{
+			statistics.put("entries", (long) current.size());
+			statistics.put("memoryBytes", current.getMemoryBytes());
+			statistics.put("diskBytes", current.getDiskBytes());
+		}
+
+		return statistics;
+	}
+
+	/**
+	 * @return Returns the share of cacheable requests answered from the cache, a revalidated
+	 * response counts as a hit since its body was not downloaded again.
+	 */
+	public double getHitRatio()
+	{
+		long served = hits.get() + revalidated.get();
+		long total = served + misses.get();
+
+		return total == 0 ? 0 : (double) served / total;
+	}
+
+	/**
+	 * Method generates a self-signed key pair with the keytool of the running JDK.
+	 *
+	 * @return Returns a factory for server side TLS sockets or NULL in case the key pair could
+	 * not be created.
+	 */
+	private static SSLSocketFactory createInterceptionFactory(Path keyStoreFile)
+	{
+		String executable = System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("win") ? "keytool.exe" : "keytool";
+		Path keytool = Paths.get(System.getProperty("java.home"), "bin", executable);
+
+		ProcessBuilder processBuilder = new ProcessBuilder(keytool.toString(), "-genkeypair",
+				"-alias", KEYSTORE_ALIAS, "-keyalg", "RSA", "-keysize", "2048", "-validity", "3650",
+				"-dname", "CN=" + KEYSTORE_ALIAS, "-storetype", "PKCS12", "-keystore", keyStoreFile.toString(),
+				"-storepass", KEYSTORE_PASSWORD, "-keypass", KEYSTORE_PASSWORD);
+		processBuilder.redirectErrorStream(true);
+		processBuilder.redirectOutput(keyStoreFile.resolveSibling("keytool.log").toFile());
+
+		try
+		{
+			Process process = processBuilder.start();
+
+			if (!process.waitFor(KEYTOOL_TIMEOUT_SECONDS, TimeUnit.SECONDS) || process.exitValue() != 0)
+			{
+				process.destroyForcibly();
+				System.err.println("Caching proxy: keytool failed, HTTPS is tunnelled without caching.");
+				return null;
+			}
+
+			KeyStore keyStore = KeyStore.getInstance("PKCS12");
+			try (InputStream in = Files.newInputStream(keyStoreFile))
+			{
+				keyStore.load(in, KEYSTORE_PASSWORD.toCharArray());
+			}
+
+			KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			keyManagerFactory.init(keyStore, KEYSTORE_PASSWORD.toCharArray());
+
+			SSLContext context = SSLContext.getInstance("TLS");
+			context.init(keyManagerFactory.getKeyManagers(), null, null);
+
+			return context.getSocketFactory();
+		}
+		catch (IOException | GeneralSecurityException e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	private void accept()
+	{
+		ServerSocket server = serverSocket;
+
+		while (server != null && !server.isClosed())
+		{
+			try
+			{
+				Socket client = server.accept();
+
+				Thread handler = new Thread(() -> handle(client), "caching-proxy-" + client.getPort());
+				handler.setDaemon(true);
+				handler.start();
+			}
+			catch (IOException ioe)
+			{
+				// The server socket was closed by stop().
+				return;
+			}
+		}
+	}
+
+	private void handle(Socket client)
+	{
+		try (Socket socket = client)
+		{
+			socket.setSoTimeout(CLIENT_IDLE_TIMEOUT_MILLIS);
+			serve(socket, null);
+		}
+		catch (IOException ioe)
+		{
+			// The browser closed the connection or a peer misbehaved, nothing to recover.
+		}
+	}
+
+	/**
+	 * Method serves the requests of one client connection until it is closed.
+	 *
+	 * @param origin -> NULL for plain connections to the proxy, the "https://host:port" of the
+	 * CONNECT request for intercepted ones.
+	 */
+	private void serve(Socket client, String origin) throws IOException
+	{
+		InputStream in = new BufferedInputStream(client.getInputStream(), BUFFER_SIZE);
+		OutputStream out = new BufferedOutputStream(client.getOutputStream(), BUFFER_SIZE);
+
+		while (true)
+		{
+			String requestLine = HttpMessage.readLine(in);
+
+			if (requestLine == null)
+			{
+				return;
+			}
+
+			if (requestLine.isEmpty())
+			{
+				continue;
+			}
+
+			String[] parts = requestLine.split(" ");
+			List<String[]> headers = HttpMessage.readHeaders(in);
+
+			if (parts.length != 3)
+			{
+				sendError(out, 400, "Bad Request", true);
+				return;
+			}
+
+			String method = parts[0];
+			String target = parts[1];
+
+			if ("CONNECT".equals(method))
+			{
+				if (origin == null)
+				{
+					connect(client, in, out, target);
+				}
+				else
+				{
+					sendError(out, 400, "Bad Request", true);
+				}
+				return;
+			}
+
+			String url = origin == null ? target : origin + target;
+
+			if (!url.startsWith("http://") && !url.startsWith("https://"))
+			{
+				sendError(out, 400, "Bad Request", true);
+				return;
+			}
+
+			boolean keepAlive = !HttpMessage.hasToken(headers, "Connection", "close")
+					&& !HttpMessage.hasToken(headers, "Proxy-Connection", "close");
+
+			if (!"GET".equals(method) || HttpMessage.header(headers, "Upgrade") != null)
+			{
+				// Bodies, websockets and anything else that is never cached go straight through.
+				uncacheable.incrementAndGet();
+				forward(client, in, out, method, new URL(url), parts[2], headers);
+				return;
+			}
+
+			get(out, url, headers, keepAlive);
+
+			if (!keepAlive)
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Method answers a CONNECT request. With interception the TLS connection of the browser
+	 * is terminated here and its requests are served like plain ones, otherwise the
+	 * connection is tunnelled to the origin.
+	 */
+	private void connect(Socket client, InputStream in, OutputStream out, String authority) throws IOException
+	{
+		int colon = authority.lastIndexOf(':');
+		String host = colon > 0 ? authority.substring(0, colon) : authority;
+		int port = colon > 0 ? Integer.parseInt(authority.substring(colon + 1)) : 443;
+
+		if (interceptionFactory == null)
+		{
+			Socket upstream = new Socket();
+			upstream.connect(new InetSocketAddress(host, port), UPSTREAM_CONNECT_TIMEOUT_MILLIS);
+
+			out.write("HTTP/1.1 200 Connection Established\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+			out.flush();
+
+			pipe(client, in, upstream);
+			return;
+		}
+
+		out.write("HTTP/1.1 200 Connection Established\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+		out.flush();
+
+		// Hand whatever the buffer already read of the TLS handshake over to the TLS socket.
+		byte[] consumed = new byte[in.available()];
+		int read = 0;
+		while (read < consumed.length)
+		{
+			read += in.read(consumed, read, consumed.length - read);
+		}
+
+		SSLSocket tls = (SSLSocket) interceptionFactory.createSocket(client, new ByteArrayInputStream(consumed), true);
+		tls.setUseClientMode(false);
+
+		serve(tls, "https://" + (port == 443 ? host : authority));
+	}
+
+	/**
+	 * Method answers a GET request from the cache or the origin.
+	 */
+	private void get(OutputStream out, String url, List<String[]> headers, boolean keepAlive) throws IOException
+	{
+		String requestCacheControl = String.valueOf(HttpMessage.header(headers, "Cache-Control")).toLowerCase(Locale.ROOT);
+
+		boolean cacheable = HttpMessage.header(headers, "Authorization") == null
+				&& HttpMessage.header(headers, "Range") == null
+				&& HttpMessage.header(headers, "If-None-Match") == null
+				&& HttpMessage.header(headers, "If-Modified-Since") == null
+				&& !requestCacheControl.contains("no-store");
+
+		if (!cacheable)
+		{
+			uncacheable.incrementAndGet();
+			fetch(out, url, headers, keepAlive, null, null);
+			return;
+		}
+
+		String key = url + " " + String.valueOf(HttpMessage.header(headers, "Accept-Encoding")).replace(" ", "");
+		CachedResponse cached = cache.get(key);
+
+		// A hard reload asks for an end to end check, immutable assets included.
+		boolean reload = requestCacheControl.contains("no-cache") || HttpMessage.hasToken(headers, "Pragma", "no-cache");
+
+		if (cached != null && !reload && cached.isFresh(url, System.currentTimeMillis(), aggressive)
+				&& sendCached(out, cached, keepAlive, "HIT"))
+		{
+			hits.incrementAndGet();
+			return;
+		}
+
+		fetch(out, url, headers, keepAlive, key, cached != null && cached.hasValidators() ? cached : null);
+	}
+
+	/**
+	 * Method requests the URL from the origin, revalidating the cached response if there is one.
+	 *
+	 * @param key -> Cache key or NULL in case the response must not be stored.
+	 * @param cached -> Response to revalidate or NULL.
+	 */
+	private void fetch(OutputStream out, String url, List<String[]> headers, boolean keepAlive, String key,
+			CachedResponse cached) throws IOException
+	{
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection(Proxy.NO_PROXY);
+		connection.setInstanceFollowRedirects(false);
+		connection.setUseCaches(false);
+		connection.setConnectTimeout(UPSTREAM_CONNECT_TIMEOUT_MILLIS);
+		connection.setReadTimeout(UPSTREAM_READ_TIMEOUT_MILLIS);
+
+		for (String[] header : headers)
+		{
+			if (!HttpMessage.isHopByHop(header[0], headers) && !"Host".equalsIgnoreCase(header[0]))
+			{
+				connection.addRequestProperty(header[0], header[1]);
+			}
+		}
+
+		if (cached != null)
+		{
+			if (cached.getETag() != null)
+			{
+				connection.setRequestProperty("If-None-Match", cached.getETag());
+			}
+			if (cached.getLastModified() != null)
+			{
+				connection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+			}
+		}
+
+		int status;
+		try
+		{
+			status = connection.getResponseCode();
+		}
+		catch (IOException ioe)
+		{
+			sendError(out, 502, "Bad Gateway", !keepAlive);
+			return;
+		}
+
+		List<String[]> responseHeaders = new ArrayList<String[]>();
+		for (int i = 1; connection.getHeaderFieldKey(i) != null; i++)
+		{
+			responseHeaders.add(new String[] { connection.getHeaderFieldKey(i), connection.getHeaderField(i) });
+		}
+
+		if (cached != null && status == 304)
+		{
+			// Headers like Content-Length describe the stored body and are kept as they were.
+			cached.refresh(endToEnd(responseHeaders, "Content-Length", "Content-Encoding"), System.currentTimeMillis());
+			drain(connection);
+
+			if (sendCached(out, cached, keepAlive, "REVALIDATED"))
+			{
+				revalidated.incrementAndGet();
+				return;
+			}
+
+			// The stored body was dropped in the meantime, ask for the whole response.
+			cache.remove(key);
+			fetch(out, url, headers, keepAlive, key, null);
+			return;
+		}
+
+		String reason = connection.getResponseMessage() == null ? "" : connection.getResponseMessage();
+		boolean store = key != null && CachedResponse.isStorable(url, status, responseHeaders, aggressive);
+
+		if (key != null)
+		{
+			(store ? misses : uncacheable).incrementAndGet();
+		}
+
+		if (!store && key != null && cached != null)
+		{
+			cache.remove(key);
+		}
+
+		List<String[]> clientHeaders = endToEnd(responseHeaders, "Content-Length");
+		String contentLength = HttpMessage.header(responseHeaders, "Content-Length");
+		long declaredLength = parseLength(contentLength);
+		boolean hasBody = status >= 200 && status != 204 && status != 304;
+
+		if (hasBody)
+		{
+			clientHeaders.add(declaredLength >= 0
+					? new String[] { "Content-Length", Long.toString(declaredLength) }
+					: new String[] { "Transfer-Encoding", "chunked" });
+		}
+		clientHeaders.add(new String[] { "X-Cache", store ? "MISS" : "BYPASS" });
+		clientHeaders.add(new String[] { "Connection", keepAlive ? "keep-alive" : "close" });
+
+		HttpMessage.writeHead(out, "HTTP/1.1 " + status + " " + reason, clientHeaders);
+
+		InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+
+		if (!hasBody || body == null)
+		{
+			if (hasBody)
+			{
+				out.write(declaredLength >= 0 ? new byte[0] : "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+			}
+			out.flush();
+			return;
+		}
+
+		long maxEntryBytes = cache.getMaxEntryBytes();
+		ByteArrayOutputStream copy = store && declaredLength <= maxEntryBytes
+				? new ByteArrayOutputStream((int) Math.max(BUFFER_SIZE, Math.min(declaredLength, MAX_INITIAL_COPY_BYTES)))
+				: null;
+
+		try (InputStream in = body)
+		{
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+
+			while ((read = in.read(buffer)) != -1)
+			{
+				if (declaredLength < 0)
+				{
+					out.write((Integer.toHexString(read) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+					out.write(buffer, 0, read);
+					out.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+				}
+				else
+				{
+					out.write(buffer, 0, read);
+				}
+
+				if (copy != null)
+				{
+					copy.write(buffer, 0, read);
+
+					if (copy.size() > maxEntryBytes)
+					{
+						copy = null;
+					}
+				}
+			}
+		}
+
+		if (declaredLength < 0)
+		{
+			out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+		}
+		out.flush();
+
+		if (copy != null)
+		{
+			byte[] bytes = copy.toByteArray();
+			List<String[]> storedHeaders = endToEnd(responseHeaders, "Content-Length");
+
+			cache.put(key, new CachedResponse(status, reason, storedHeaders, bytes.length, System.currentTimeMillis()), bytes);
+		}
+	}
+
+	/**
+	 * Method sends a cached response.
+	 *
+	 * @return Returns false in case the body is gone and nothing was sent.
+	 */
+	private boolean sendCached(OutputStream out, CachedResponse cached, boolean keepAlive, String cacheStatus) throws IOException
+	{
+		InputStream body;
+
+		try
+		{
+			body = cache.open(cached);
+		}
+		catch (IOException ioe)
+		{
+			return false;
+		}
+
+		List<String[]> headers = endToEnd(cached.getHeaders(), "Age");
+		headers.add(new String[] { "Age", Long.toString(cached.currentAgeMillis(System.currentTimeMillis()) / 1000) });
+		headers.add(new String[] { "Content-Length", Long.toString(cached.getLength()) });
+		headers.add(new String[] { "X-Cache", cacheStatus });
+		headers.add(new String[] { "Connection", keepAlive ? "keep-alive" : "close" });
+
+		HttpMessage.writeHead(out, "HTTP/1.1 " + cached.getStatus() + " " + cached.getReason(), headers);
+
+		try (InputStream in = body)
+		{
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+
+			while ((read = in.read(buffer)) != -1)
+			{
+				out.write(buffer, 0, read);
+			}
+		}
+
+		out.flush();
+		bytesFromCache.addAndGet(cached.getLength());
+
+		return true;
+	}
+
+	/**
+	 * Method sends a request the cache has nothing to do with to the origin on a connection of
+	 * its own and relays everything in both directions until either side closes.
+	 */
+	private void forward(Socket client, InputStream in, OutputStream out, String method, URL url, String version,
+			List<String[]> headers) throws IOException
+	{
+		boolean https = "https".equals(url.getProtocol());
+		int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+		Socket upstream;
+
+		try
+		{
+			upstream = new Socket();
+			upstream.connect(new InetSocketAddress(url.getHost(), port), UPSTREAM_CONNECT_TIMEOUT_MILLIS);
+
+			if (https)
+			{
+				SSLSocket tls = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(upstream, url.getHost(), port, true);
+				SSLParameters parameters = tls.getSSLParameters();
+				parameters.setEndpointIdentificationAlgorithm("HTTPS");
+				tls.setSSLParameters(parameters);
+				tls.startHandshake();
+				upstream = tls;
+			}
+		}
+		catch (IOException ioe)
+		{
+			sendError(out, 502, "Bad Gateway", true);
+			return;
+		}
+
+		boolean upgrade = HttpMessage.header(headers, "Upgrade") != null;
+		List<String[]> upstreamHeaders = new ArrayList<String[]>();
+
+		for (String[] header : headers)
+		{
+			String name = header[0].toLowerCase(Locale.ROOT);
+
+			if (name.startsWith("proxy-") || name.equals("connection") || name.equals("keep-alive"))
+			{
+				continue;
+			}
+
+			upstreamHeaders.add(header);
+		}
+
+		// Upgrades need the Connection header, everything else ends with the response.
+		upstreamHeaders.add(new String[] { "Connection", upgrade ? HttpMessage.header(headers, "Connection") : "close" });
+
+		String path = url.getFile().isEmpty() ? "/" : url.getFile();
+		OutputStream upstreamOut = upstream.getOutputStream();
+		HttpMessage.writeHead(upstreamOut, method + " " + path + " " + version, upstreamHeaders);
+		upstreamOut.flush();
+
+		out.flush();
+		pipe(client, in, upstream);
+	}
+
+	/**
+	 * Method relays bytes between the client and the upstream socket until either side is
+	 * done, then closes the upstream socket.
+	 */
+	private void pipe(Socket client, InputStream clientIn, Socket upstream) throws IOException
+	{
+		client.setSoTimeout(0);
+
+		Thread toUpstream = new Thread(() -> {
+			try
+			{
+				copy(clientIn, upstream.getOutputStream());
+			}
+			catch (IOException ioe)
+			{
+				// Either side went away, closing below ends the other direction.
+			}
+			finally
+			{
+				closeQuietly(upstream);
+			}
+		}, Thread.currentThread().getName() + "-upstream");
+		toUpstream.setDaemon(true);
+		toUpstream.start();
+
+		try
+		{
+			copy(upstream.getInputStream(), client.getOutputStream());
+		}
+		finally
+		{
+			closeQuietly(upstream);
+		}
+	}
+
+	private static void copy(InputStream in, OutputStream out) throws IOException
+	{
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+
+		while ((read = in.read(buffer)) != -1)
+		{
+			out.write(buffer, 0, read);
+			out.flush();
+		}
+	}
+
+	/**
+	 * @return Returns the Content-Length or -1 in case it is missing or malformed.
+	 */
+	private static long parseLength(String contentLength)
+	{
+		if (contentLength == null)
+		{
+			return -1;
+		}
+
+		try
+		{
+			return Long.parseLong(contentLength.trim());
+		}
+		catch (NumberFormatException nfe)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * Method reads the rest of a response so its connection can be reused.
+	 */
+	private static void drain(HttpURLConnection connection)
+	{
+		try (InputStream in = connection.getInputStream())
+		{
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (in.read(buffer) != -1)
+			{
+				// Discard.
+			}
+		}
+		catch (IOException ioe)
+		{
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * @return Returns the headers without hop-by-hop ones and without the excluded ones.
+	 */
+	private static List<String[]> endToEnd(List<String[]> headers, String... excluded)
+	{
+		List<String[]> filtered = new ArrayList<String[]>();
+
+		outer:
+		for (String[] header : headers)
+		{
+			if (HttpMessage.isHopByHop(header[0], headers))
+			{
+				continue;
+			}
+
+			for (String name : excluded)
+			{
+				if (name.equalsIgnoreCase(header[0]))
+				{
+					continue outer;
+				}
+			}
+
+			filtered.add(header);
+		}
+
+		return filtered;
+	}
+
+	private static void sendError(OutputStream out, int status, String reason, boolean close) throws IOException
+	{
+		byte[] body = (status + " " + reason + "\n").getBytes(StandardCharsets.ISO_8859_1);
+
+		List<String[]> headers = new ArrayList<String[]>();
+		headers.add(new String[] { "Content-Type", "text/plain" });
+		headers.add(new String[] { "Content-Length", Integer.toString(body.length) });
+		headers.add(new String[] { "Connection", close ? "close" : "keep-alive" });
+
+		HttpMessage.writeHead(out, "HTTP/1.1 " + status + " " + reason, headers);
+		out.write(body);
+		out.flush();
+	}
+
+	private static void closeQuietly(Socket socket)
+	{
+		try
+		{
+			socket.close();
+		}
+		catch (IOException ioe)
+		{
+			// Already closed.
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(Locale.ROOT, "Caching proxy: %.1f%% hit ratio %s", getHitRatio() * 100, getStatistics());
+	}
+}
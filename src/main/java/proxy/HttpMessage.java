@@ -0,0 +1,203 @@
+package proxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Minimal HTTP/1.1 message helpers used by the {@link CachingProxy}. Headers are kept as a
+ * list of name/value pairs in the order they were received since names may repeat.
+ *
+ * @author karlomijaljevic
+ */
+final class HttpMessage
+{
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+	private static final int MAX_HEADERS = 200;
+
+	/**
+	 * Headers that only make sense between two directly connected peers, they are never
+	 * forwarded or cached.
+	 */
+	private static final Set<String> HOP_BY_HOP = new HashSet<String>(Arrays.asList(
+			"connection", "keep-alive", "proxy-connection", "proxy-authenticate", "proxy-authorization",
+			"te", "trailer", "transfer-encoding", "upgrade"));
+
+	private HttpMessage()
+	{
+	}
+
+	/**
+	 * @return Returns the line without its line break or NULL in case the stream ended
+	 * before anything was read.
+	 * @throws IOException -> In case the line is too long or the stream fails.
+	 */
+	static String readLine(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+		int read;
+
+		while ((read = in.read()) != -1)
+		{
+			if (read == '\n')
+			{
+				byte[] bytes = line.toByteArray();
+				int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+
+				return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+			}
+
+			if (line.size() >= MAX_LINE_LENGTH)
+			{
+				throw new IOException("HTTP line longer than " + MAX_LINE_LENGTH + " bytes");
+			}
+
+			line.write(read);
+		}
+
+		return line.size() == 0 ? null : new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Method reads header lines up to and including the empty line that ends them.
+	 */
+	static List<String[]> readHeaders(InputStream in) throws IOException
+	{
+		List<String[]> headers = new ArrayList<String[]>();
+		String line;
+
+		while ((line = readLine(in)) != null && !line.isEmpty())
+		{
+			int colon = line.indexOf(':');
+
+			if (colon <= 0)
+			{
+				continue;
+			}
+
+			if (headers.size() >= MAX_HEADERS)
+			{
+				throw new IOException("More than " + MAX_HEADERS + " HTTP headers");
+			}
+
+			headers.add(new String[] { line.substring(0, colon).trim(), line.substring(colon + 1).trim() });
+		}
+
+		return headers;
+	}
+
+	/**
+	 * @return Returns the value of the first header with the given name (ignoring case) or
+	 * NULL in case there is none.
+	 */
+	static String header(List<String[]> headers, String name)
+	{
+		for (String[] header : headers)
+		{
+			if (header[0].equalsIgnoreCase(name))
+			{
+				return header[1];
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return Returns true in case the header must not be forwarded. Headers named in the
+	 * Connection header count as well.
+	 */
+	static boolean isHopByHop(String name, List<String[]> headers)
+	{
+		String lowerCase = name.toLowerCase(Locale.ROOT);
+
+		if (HOP_BY_HOP.contains(lowerCase))
+		{
+			return true;
+		}
+
+		String connection = header(headers, "Connection");
+
+		if (connection != null)
+		{
+			for (String token : connection.split(","))
+			{
+				if (token.trim().equalsIgnoreCase(lowerCase))
+				{
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return Returns true in case the header names a token, e.g. Connection: close.
+	 */
+	static boolean hasToken(List<String[]> headers, String name, String token)
+	{
+		for (String[] header : headers)
+		{
+			if (header[0].equalsIgnoreCase(name))
+			{
+				for (String value : header[1].split(","))
+				{
+					if (value.trim().equalsIgnoreCase(token))
+					{
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return Returns the date in milliseconds or 0 in case it is missing or malformed.
+	 */
+	static long parseDate(String value)
+	{
+		if (value == null)
+		{
+			return 0;
+		}
+
+		try
+		{
+			return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		}
+		catch (DateTimeParseException dtpe)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * Method writes a status or request line followed by the headers and the empty line.
+	 */
+	static void writeHead(OutputStream out, String firstLine, List<String[]> headers) throws IOException
+	{
+		StringBuilder head = new StringBuilder(firstLine).append("\r\n");
+
+		for (String[] header : headers)
+		{
+			head.append(header[0]).append(": ").append(header[1]).append("\r\n");
+		}
+
+		head.append("\r\n");
+		out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+	}
+}
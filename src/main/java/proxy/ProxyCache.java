@@ -0,0 +1,223 @@
+package proxy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size bounded LRU store behind the {@link CachingProxy}. Bodies are kept in memory until the
+ * memory budget is used up, then the least recently used ones are moved to disk. Once the disk
+ * budget is used up as well the least recently used entries are dropped.
+ *
+ * @implNote
+ * A body that is being read while it is dropped stays readable since the open file handle
+ * keeps it alive, a body dropped before it was opened is treated as a cache miss.
+ *
+ * @author karlomijaljevic
+ */
+class ProxyCache
+{
+	private static final long MAX_ENTRY_BYTES = 256L * 1024 * 1024;
+
+	private final long memoryBudget;
+	private final long diskBudget;
+	private final Path directory;
+	private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<String, CachedResponse>(256, 0.75f, true);
+
+	private long memoryBytes = 0;
+	private long diskBytes = 0;
+	private long fileCounter = 0;
+
+	/**
+	 * @param memoryBudget -> Bytes of response bodies kept in memory.
+	 * @param diskBudget -> Bytes of response bodies kept in the directory.
+	 * @param directory -> An existing directory owned by this cache.
+	 */
+	ProxyCache(long memoryBudget, long diskBudget, Path directory)
+	{
+		this.memoryBudget = memoryBudget;
+		this.diskBudget = diskBudget;
+		this.directory = directory;
+	}
+
+	/**
+	 * @return Returns the largest body that is stored, bigger ones would push out too much
+	 * of the cache at once.
+	 */
+	long getMaxEntryBytes()
+	{
+		return Math.min(Math.max(memoryBudget, diskBudget) / 8, MAX_ENTRY_BYTES);
+	}
+
+	synchronized CachedResponse get(String key)
+	{
+		return entries.get(key);
+	}
+
+	/**
+	 * Method stores a response, replacing an older one with the same key.
+	 */
+	synchronized void put(String key, CachedResponse response, byte[] body)
+	{
+		release(entries.remove(key));
+
+		response.memoryBody = body;
+		memoryBytes += body.length;
+		entries.put(key, response);
+
+		trim();
+	}
+
+	synchronized void remove(String key)
+	{
+		release(entries.remove(key));
+	}
+
+	/**
+	 * @return Returns a stream of the body.
+	 * @throws IOException -> In case the body was dropped from disk in the meantime.
+	 */
+	InputStream open(CachedResponse response) throws IOException
+	{
+		byte[] memoryBody = response.memoryBody;
+
+		if (memoryBody != null)
+		{
+			return new ByteArrayInputStream(memoryBody);
+		}
+
+		Path diskBody = response.diskBody;
+
+		if (diskBody == null)
+		{
+			throw new IOException("Cached body is gone");
+		}
+
+		return Files.newInputStream(diskBody);
+	}
+
+	synchronized int size()
+	{
+		return entries.size();
+	}
+
+	synchronized long getMemoryBytes()
+	{
+		return memoryBytes;
+	}
+
+	synchronized long getDiskBytes()
+	{
+		return diskBytes;
+	}
+
+	/**
+	 * Method drops every entry and deletes the bodies on disk.
+	 */
+	synchronized void clear()
+	{
+		entries.values().forEach(this::release);
+		entries.clear();
+	}
+
+	private void trim()
+	{
+		Iterator<Map.Entry<String, CachedResponse>> iterator = entries.entrySet().iterator();
+
+		while (memoryBytes > memoryBudget && iterator.hasNext())
+		{
+			CachedResponse response = iterator.next().getValue();
+			byte[] body = response.memoryBody;
+
+			if (body == null)
+			{
+				continue;
+			}
+
+			if (body.length <= diskBudget && spill(response, body))
+			{
+				continue;
+			}
+
+			iterator.remove();
+			release(response);
+		}
+
+		iterator = entries.entrySet().iterator();
+
+		while (diskBytes > diskBudget && iterator.hasNext())
+		{
+			CachedResponse response = iterator.next().getValue();
+
+			if (response.diskBody != null)
+			{
+				iterator.remove();
+				release(response);
+			}
+		}
+	}
+
+	/**
+	 * Method moves a body from memory to disk.
+	 *
+	 * @return Returns true on success and false otherwise.
+	 */
+	private boolean spill(CachedResponse response, byte[] body)
+	{
+		Path file = directory.resolve(Long.toString(fileCounter++));
+
+		try
+		{
+			Files.write(file, body);
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+			return false;
+		}
+
+		// Readers look at the memory body first, so the file has to be there before it is cleared.
+		response.diskBody = file;
+		response.memoryBody = null;
+		memoryBytes -= body.length;
+		diskBytes += body.length;
+
+		return true;
+	}
+
+	private void release(CachedResponse response)
+	{
+		if (response == null)
+		{
+			return;
+		}
+
+		if (response.memoryBody != null)
+		{
+			memoryBytes -= response.memoryBody.length;
+			response.memoryBody = null;
+		}
+
+		Path file = response.diskBody;
+
+		if (file != null)
+		{
+			diskBytes -= response.getLength();
+			response.diskBody = null;
+
+			try
+			{
+				Files.deleteIfExists(file);
+			}
+			catch (IOException ioe)
+			{
+				ioe.printStackTrace();
+			}
+		}
+	}
+}
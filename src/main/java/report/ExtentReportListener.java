@@ -0,0 +1,185 @@
+package report;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+import org.testng.Reporter;
+
+import com.aventstack.extentreports.ExtentReports;
+import com.aventstack.extentreports.ExtentTest;
+import com.aventstack.extentreports.Status;
+import com.aventstack.extentreports.markuputils.MarkupHelper;
+
+/**
+ * TestNG listener that adds every finished test to the ExtentReports report, grouped by test
+ * class. The test thread only takes a snapshot of the result, the report is changed on the
+ * writer thread of the {@link ExtentReportManager} which also flushes it during the run.
+ *
+ * The report keeps every test in memory until the run is over, so only small things are put
+ * into it. Stack traces and {@link Reporter} output longer than {@link #SPILL_THRESHOLD_CHARS}
+ * are written to {@link #LOG_DIRECTORY} next to the report, the report only shows their first
+ * lines and a link. Exceptions are kept as text, never as objects.
+ *
+ * @author karlomijaljevic
+ */
+public class ExtentReportListener implements ITestListener
+{
+	public static final String LOG_DIRECTORY = "tests";
+	public static final int SPILL_THRESHOLD_CHARS = 4096;
+
+	private static final int EXCERPT_CHARS = 1024;
+	private static final int MAX_PARAMETERS_CHARS = 200;
+
+	private final ExtentReportManager reportManager;
+	private final AtomicInteger sequence = new AtomicInteger();
+
+	/**
+	 * Class nodes by class name, only used on the writer thread.
+	 */
+	private final Map<String, ExtentTest> classNodes = new HashMap<String, ExtentTest>();
+
+	public ExtentReportListener(ExtentReportManager reportManager)
+	{
+		this.reportManager = reportManager;
+	}
+
+	@Override
+	public void onTestSuccess(ITestResult result)
+	{
+		report(result, Status.PASS);
+	}
+
+	@Override
+	public void onTestFailure(ITestResult result)
+	{
+		report(result, Status.FAIL);
+	}
+
+	@Override
+	public void onTestSkipped(ITestResult result)
+	{
+		report(result, Status.SKIP);
+	}
+
+	@Override
+	public void onTestFailedButWithinSuccessPercentage(ITestResult result)
+	{
+		report(result, Status.WARNING);
+	}
+
+	private void report(ITestResult result, Status status)
+	{
+		String className = result.getTestClass().getName();
+		String name = result.getMethod().getMethodName() + parameters(result.getParameters());
+		String description = result.getMethod().getDescription();
+		String[] groups = result.getMethod().getGroups();
+		Date start = new Date(result.getStartMillis());
+		Date end = new Date(Math.max(result.getStartMillis(), result.getEndMillis()));
+		String details = details(result);
+		int id = sequence.incrementAndGet();
+
+		reportManager.submit(reports -> {
+			ExtentTest test = classNode(reports, className).createNode(name, description);
+			test.assignCategory(groups);
+
+			if (details == null)
+			{
+				test.log(status, status == Status.PASS ? "Passed" : status.toString());
+			}
+			else if (details.length() <= SPILL_THRESHOLD_CHARS)
+			{
+				test.log(status, MarkupHelper.createCodeBlock(details));
+			}
+			else
+			{
+				test.log(status, MarkupHelper.createCodeBlock(details.substring(0, EXCERPT_CHARS) + "\n..."));
+				test.info(spill(id, details));
+			}
+
+			test.getModel().setStartTime(start);
+			test.getModel().setEndTime(end);
+		});
+	}
+
+	private ExtentTest classNode(ExtentReports reports, String className)
+	{
+		return classNodes.computeIfAbsent(className, reports::createTest);
+	}
+
+	/**
+	 * Method writes the details of a test to its own file.
+	 *
+	 * @return Returns the link to the file or the reason it could not be written.
+	 */
+	private String spill(int id, String details)
+	{
+		String file = LOG_DIRECTORY + "/" + id + ".txt";
+		Path path = reportManager.getReportDirectory().resolve(file);
+
+		try
+		{
+			Files.createDirectories(path.getParent());
+
+			try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8))
+			{
+				writer.write(details);
+			}
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+			return "Full output could not be written: " + ioe;
+		}
+
+		return "<a href='" + file + "'>Full output</a> (" + details.length() + " characters)";
+	}
+
+	/**
+	 * @return Returns the stack trace and the {@link Reporter} output of the test or NULL in
+	 * case there is neither.
+	 */
+	private static String details(ITestResult result)
+	{
+		StringWriter details = new StringWriter();
+
+		if (result.getThrowable() != null)
+		{
+			result.getThrowable().printStackTrace(new PrintWriter(details));
+		}
+
+		List<String> output = Reporter.getOutput(result);
+
+		if (!output.isEmpty())
+		{
+			details.append(details.getBuffer().length() > 0 ? "\nOutput:\n" : "");
+			output.forEach(line -> details.append(line).append('\n'));
+		}
+
+		return details.getBuffer().length() == 0 ? null : details.toString();
+	}
+
+	private static String parameters(Object[] parameters)
+	{
+		if (parameters == null || parameters.length == 0)
+		{
+			return "";
+		}
+
+		String text = Arrays.toString(parameters);
+
+		return text.length() > MAX_PARAMETERS_CHARS ? text.substring(0, MAX_PARAMETERS_CHARS) + "...]" : text;
+	}
+}
@@ -0,0 +1,189 @@
+package report;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import javax.inject.Singleton;
+
+import com.aventstack.extentreports.ExtentReports;
+import com.aventstack.extentreports.reporter.ExtentSparkReporter;
+
+/**
+ * Singleton that owns the {@link ExtentReports} of a run. The HTML report is written to
+ * {@link #REPORT_DIRECTORY} every time {@link #flush()} is called, other report artifacts
+ * (e.g. JSON exports) are placed next to it.
+ *
+ * ExtentReports is not meant to be changed from many threads, so every change is handed to
+ * {@link #submit(Consumer)} and applied on a single writer thread. The same thread flushes
+ * the report periodically once {@link #startIncrementalFlush(long)} was called, and once more
+ * when the JVM exits, so a run that is killed or times out still leaves a usable report.
+ *
+ * @author karlomijaljevic
+ */
+@Singleton
+public class ExtentReportManager
+{
+	public static final String REPORT_DIRECTORY = "test-output/extent";
+	public static final String REPORT_FILE = "report.html";
+	public static final long DEFAULT_FLUSH_INTERVAL_SECONDS = 30;
+
+	private static final long CLOSE_TIMEOUT_SECONDS = 60;
+
+	private static ExtentReportManager instance;
+
+	private final ExtentReports extentReports;
+	private final ScheduledExecutorService writer;
+
+	private volatile boolean dirty = false;
+
+	private ExtentReportManager()
+	{
+		extentReports = new ExtentReports();
+		extentReports.attachReporter(new ExtentSparkReporter(getReportDirectory().resolve(REPORT_FILE).toFile()));
+
+		writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "extent-report-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close, "extent-report-shutdown"));
+	}
+
+	public static synchronized ExtentReportManager getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new ExtentReportManager();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Please change the report through {@link #submit(Consumer)} while tests are running.
+	 */
+	public ExtentReports getExtentReports()
+	{
+		return extentReports;
+	}
+
+	/**
+	 * @return Returns the {@link Path} of the directory the report and its artifacts are written to.
+	 */
+	public Path getReportDirectory()
+	{
+		return Paths.get(REPORT_DIRECTORY).toAbsolutePath();
+	}
+
+	/**
+	 * Method applies a change to the report on the writer thread, or right away in case the
+	 * writer is already closed.
+	 *
+	 * @param update -> Change of the {@link ExtentReports}, e.g. creating a test.
+	 */
+	public void submit(Consumer<ExtentReports> update)
+	{
+		try
+		{
+			writer.execute(() -> apply(update));
+		}
+		catch (RejectedExecutionException ree)
+		{
+			apply(update);
+		}
+	}
+
+	/**
+	 * Method flushes the report every interval in case something changed since the last flush.
+	 * Every flush renders the whole report, so the interval should grow with the suite.
+	 *
+	 * @param intervalSeconds -> Seconds between two flushes, zero or less only flushes at the end.
+	 */
+	public void startIncrementalFlush(long intervalSeconds)
+	{
+		if (intervalSeconds > 0)
+		{
+			writer.scheduleWithFixedDelay(() -> {
+				if (dirty)
+				{
+					flushNow();
+				}
+			}, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Method writes the report to disk once every change submitted so far was applied.
+	 */
+	public void flush()
+	{
+		Future<?> flushed;
+
+		try
+		{
+			flushed = writer.submit(this::flushNow);
+		}
+		catch (RejectedExecutionException ree)
+		{
+			flushNow();
+			return;
+		}
+
+		try
+		{
+			flushed.get(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException | TimeoutException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Method applies the pending changes, writes the report a last time and stops the writer
+	 * thread. Later changes are applied on the calling thread.
+	 */
+	public void close()
+	{
+		if (writer.isShutdown())
+		{
+			return;
+		}
+
+		flush();
+		writer.shutdownNow();
+	}
+
+	private synchronized void apply(Consumer<ExtentReports> update)
+	{
+		try
+		{
+			update.accept(extentReports);
+		}
+		catch (RuntimeException re)
+		{
+			re.printStackTrace();
+		}
+
+		dirty = true;
+	}
+
+	private synchronized void flushNow()
+	{
+		dirty = false;
+		extentReports.flush();
+	}
+}
@@ -0,0 +1,144 @@
+package report;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.logging.LogEntry;
+import org.openqa.selenium.logging.LogType;
+import org.testng.IExecutionListener;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+
+import driver.DriverPool;
+import driver.DriverSession;
+
+/**
+ * TestNG listener that captures a screenshot, the page source and the browser log whenever a
+ * test fails. Only the raw data is fetched from the browser on the test thread, everything
+ * else is left to the {@link FailureArtifactWriter} so the session goes back to the pool as
+ * soon as possible.
+ *
+ * The browser of a failed test is the {@link WebDriver} field of the test instance, or the
+ * session the test thread leased from the {@link DriverPool} in case there is no such field.
+ *
+ * @author karlomijaljevic
+ */
+public class FailureArtifactListener implements ITestListener, IExecutionListener
+{
+	private final FailureArtifactWriter writer;
+
+	/**
+	 * @param budgetBytes -> Memory captures waiting to be written may take up.
+	 */
+	public FailureArtifactListener(long budgetBytes)
+	{
+		this.writer = new FailureArtifactWriter(ExtentReportManager.getInstance(), budgetBytes);
+	}
+
+	@Override
+	public void onTestFailure(ITestResult result)
+	{
+		WebDriver webDriver = findWebDriver(result);
+
+		if (webDriver == null)
+		{
+			return;
+		}
+
+		String screenshot = null;
+		String pageSource = null;
+		List<LogEntry> browserLog = null;
+
+		try
+		{
+			if (webDriver instanceof TakesScreenshot)
+			{
+				screenshot = ((TakesScreenshot) webDriver).getScreenshotAs(OutputType.BASE64);
+			}
+		}
+		catch (WebDriverException wde)
+		{
+			// E.g. an alert is open, the page source may still work.
+		}
+
+		try
+		{
+			pageSource = webDriver.getPageSource();
+		}
+		catch (WebDriverException wde)
+		{
+			// The browser is most likely gone.
+		}
+
+		try
+		{
+			browserLog = webDriver.manage().logs().get(LogType.BROWSER).getAll();
+		}
+		catch (WebDriverException | UnsupportedOperationException e)
+		{
+			// The driver does not keep logs.
+		}
+
+		if (screenshot == null && pageSource == null && browserLog == null)
+		{
+			return;
+		}
+
+		String testName = result.getMethod().getRealClass().getName() + "#" + result.getMethod().getMethodName();
+
+		writer.submit(new FailureArtifactWriter.Capture(testName, result.getThrowable(), screenshot, pageSource, browserLog));
+	}
+
+	@Override
+	public void onExecutionFinish()
+	{
+		writer.close();
+
+		if (writer.getWrittenCount() + writer.getDroppedCount() > 0)
+		{
+			System.out.println("Failure artifacts: " + writer.getWrittenCount() + " written, " + writer.getDroppedCount() + " dropped.");
+		}
+	}
+
+	/**
+	 * @return Returns the {@link WebDriver} the failed test used or NULL in case there is none.
+	 */
+	private static WebDriver findWebDriver(ITestResult result)
+	{
+		Object instance = result.getInstance();
+
+		for (Class<?> type = instance == null ? null : instance.getClass(); type != null && type != Object.class; type = type.getSuperclass())
+		{
+			for (Field field : type.getDeclaredFields())
+			{
+				if (!WebDriver.class.isAssignableFrom(field.getType()))
+				{
+					continue;
+				}
+
+				try
+				{
+					field.setAccessible(true);
+					Object value = field.get(instance);
+
+					if (value != null)
+					{
+						return (WebDriver) value;
+					}
+				}
+				catch (IllegalAccessException | RuntimeException e)
+				{
+					// Not readable, try the pool.
+				}
+			}
+		}
+
+		DriverSession session = DriverPool.getInstance().getSessionLeasedBy(Thread.currentThread());
+
+		return session == null ? null : session.getWebDriver();
+	}
+}
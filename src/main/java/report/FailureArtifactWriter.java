@@ -0,0 +1,279 @@
+package report;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.openqa.selenium.logging.LogEntry;
+
+import com.aventstack.extentreports.ExtentReports;
+import com.aventstack.extentreports.ExtentTest;
+
+/**
+ * Background writer of the artifacts captured when a test fails. The test thread only hands
+ * over what it grabbed from the browser (the screenshot as the browser encoded it, the page
+ * source and the log entries), decoding, compressing and writing them happens on a single
+ * writer thread, which then hands the report entry to the {@link ExtentReportManager}.
+ *
+ * Captures waiting to be written are bounded by a memory budget. A test thread that would
+ * exceed it waits up to {@link #OFFER_TIMEOUT} for the writer to catch up, after that the
+ * capture is dropped and only a note is added to the report, so a failure storm slows the
+ * run down a little instead of running out of memory.
+ *
+ * @implNote
+ * Screenshots are kept as the PNG Chrome produces, it is already compressed and the JDK has
+ * no WebP encoder. Page sources and logs are text and are written gzipped.
+ *
+ * @author karlomijaljevic
+ */
+public class FailureArtifactWriter
+{
+	public static final String ARTIFACT_DIRECTORY = "failures";
+	public static final Duration OFFER_TIMEOUT = Duration.ofSeconds(2);
+
+	private static final int KILOBYTE = 1024;
+	private static final long DRAIN_TIMEOUT_SECONDS = 60;
+
+	/**
+	 * What a test thread grabbed from the browser, every part may be NULL.
+	 */
+	public static final class Capture
+	{
+		private final String testName;
+		private final Throwable failure;
+		private final String screenshotBase64;
+		private final String pageSource;
+		private final List<LogEntry> browserLog;
+
+		public Capture(String testName, Throwable failure, String screenshotBase64, String pageSource, List<LogEntry> browserLog)
+		{
+			this.testName = testName;
+			this.failure = failure;
+			this.screenshotBase64 = screenshotBase64;
+			this.pageSource = pageSource;
+			this.browserLog = browserLog;
+		}
+
+		/**
+		 * @return Returns the approximate heap size of the capture in kilobytes.
+		 */
+		private int sizeKilobytes()
+		{
+			long chars = (screenshotBase64 == null ? 0 : screenshotBase64.length()) + (pageSource == null ? 0 : pageSource.length());
+
+			if (browserLog != null)
+			{
+				chars += browserLog.stream().mapToLong(entry -> entry.getMessage().length() + 64).sum();
+			}
+
+			return (int) Math.min(Integer.MAX_VALUE, chars * 2 / KILOBYTE + 1);
+		}
+	}
+
+	private final ExtentReportManager reportManager;
+	private final int budgetKilobytes;
+	private final Semaphore budget;
+	private final ExecutorService writer;
+	private final AtomicInteger sequence = new AtomicInteger();
+	private final AtomicInteger written = new AtomicInteger();
+	private final AtomicInteger dropped = new AtomicInteger();
+
+	/**
+	 * @param reportManager -> {@link ExtentReportManager} the artifacts are attached to.
+	 * @param budgetBytes -> Memory captures waiting to be written may take up.
+	 */
+	public FailureArtifactWriter(ExtentReportManager reportManager, long budgetBytes)
+	{
+		this.reportManager = reportManager;
+		this.budgetKilobytes = (int) Math.max(1, Math.min(Integer.MAX_VALUE, budgetBytes / KILOBYTE));
+		this.budget = new Semaphore(budgetKilobytes);
+		this.writer = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "failure-artifact-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Method queues a capture for writing. Blocks up to {@link #OFFER_TIMEOUT} in case the
+	 * memory budget is used up.
+	 *
+	 * @return Returns true in case the capture was queued and false in case it was dropped.
+	 */
+	public boolean submit(Capture capture)
+	{
+		int permits = Math.min(capture.sizeKilobytes(), budgetKilobytes);
+
+		try
+		{
+			if (!budget.tryAcquire(permits, OFFER_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS))
+			{
+				dropped.incrementAndGet();
+				writeDropped(capture);
+				return false;
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		writer.execute(() -> {
+			try
+			{
+				write(capture);
+			}
+			finally
+			{
+				budget.release(permits);
+			}
+		});
+
+		return true;
+	}
+
+	/**
+	 * Method waits for the queued captures to be written and stops the writer thread.
+	 */
+	public void close()
+	{
+		writer.shutdown();
+
+		try
+		{
+			if (!writer.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+			{
+				System.err.println("Failure artifacts were still being written after " + DRAIN_TIMEOUT_SECONDS + " seconds.");
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public int getWrittenCount()
+	{
+		return written.get();
+	}
+
+	public int getDroppedCount()
+	{
+		return dropped.get();
+	}
+
+	private void write(Capture capture)
+	{
+		String folder = ARTIFACT_DIRECTORY + "/" + capture.testName.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + sequence.incrementAndGet();
+		Path directory = reportManager.getReportDirectory().resolve(folder);
+		List<String> links = new ArrayList<String>();
+		String error = null;
+
+		try
+		{
+			Files.createDirectories(directory);
+
+			if (capture.pageSource != null)
+			{
+				try (Writer out = gzipWriter(directory.resolve("page-source.html.gz")))
+				{
+					out.write(capture.pageSource);
+				}
+				links.add("<a href='" + folder + "/page-source.html.gz'>Page source</a>");
+			}
+
+			if (capture.browserLog != null)
+			{
+				try (Writer out = gzipWriter(directory.resolve("browser-log.txt.gz")))
+				{
+					for (LogEntry entry : capture.browserLog)
+					{
+						out.write(entry.toString());
+						out.write('\n');
+					}
+				}
+				links.add("<a href='" + folder + "/browser-log.txt.gz'>Browser log</a> (" + capture.browserLog.size() + " entries)");
+			}
+
+			if (capture.screenshotBase64 != null)
+			{
+				Files.write(directory.resolve("screenshot.png"), Base64.getMimeDecoder().decode(capture.screenshotBase64));
+			}
+
+			written.incrementAndGet();
+		}
+		catch (IOException | IllegalArgumentException e)
+		{
+			e.printStackTrace();
+			error = "Failure artifacts could not be written: " + e;
+		}
+
+		String screenshot = capture.screenshotBase64 != null && error == null ? folder + "/screenshot.png" : null;
+		String warning = error;
+
+		String testName = capture.testName;
+		String failure = capture.failure == null ? null : capture.failure.toString();
+
+		reportManager.submit(reports -> {
+			ExtentTest test = createTest(reports, testName, failure);
+
+			if (screenshot != null)
+			{
+				test.addScreenCaptureFromPath(screenshot);
+			}
+
+			links.forEach(test::info);
+
+			if (warning != null)
+			{
+				test.warning(warning);
+			}
+		});
+	}
+
+	private void writeDropped(Capture capture)
+	{
+		String testName = capture.testName;
+		String failure = capture.failure == null ? null : capture.failure.toString();
+
+		reportManager.submit(reports -> createTest(reports, testName, failure)
+				.warning("Artifacts were dropped, too many failures were waiting to be written."));
+	}
+
+	/**
+	 * Method creates the report entry of a capture. Only the message of the failure is kept,
+	 * the stack trace is part of the test's own entry.
+	 */
+	private static ExtentTest createTest(ExtentReports reports, String testName, String failure)
+	{
+		ExtentTest test = reports.createTest(testName + " (failure artifacts)");
+
+		if (failure != null)
+		{
+			test.fail(failure);
+		}
+
+		return test;
+	}
+
+	private static Writer gzipWriter(Path file) throws IOException
+	{
+		return new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(file)), StandardCharsets.UTF_8));
+	}
+}